@@ -27,6 +27,8 @@ import java.beans.PropertyChangeSupport;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.List;
@@ -80,11 +82,14 @@ import VASSAL.build.module.turn.TurnTracker;
 import VASSAL.build.widget.PieceSlot;
 import VASSAL.command.Command;
 import VASSAL.command.CommandEncoder;
+import VASSAL.command.CommandEncoderIndex;
 import VASSAL.command.Logger;
 import VASSAL.command.NullCommand;
+import VASSAL.command.StreamingCommandEncoder;
 import VASSAL.configure.CompoundValidityChecker;
 import VASSAL.configure.MandatoryComponent;
 import VASSAL.counters.GamePiece;
+import VASSAL.counters.VisualVersion;
 import VASSAL.i18n.ComponentI18nData;
 import VASSAL.i18n.Localization;
 import VASSAL.i18n.Resources;
@@ -101,9 +106,11 @@ import VASSAL.tools.ReadErrorDialog;
 import VASSAL.tools.ToolBarComponent;
 import VASSAL.tools.WarningDialog;
 import VASSAL.tools.WriteErrorDialog;
+import VASSAL.tools.concurrent.listener.EventListener;
 import VASSAL.tools.filechooser.FileChooser;
 import VASSAL.tools.image.ImageTileSource;
 import VASSAL.tools.image.tilecache.ImageTileDiskCache;
+import VASSAL.tools.image.tilecache.LazyImageTileDiskCache;
 import VASSAL.tools.io.IOUtils;
 
 /**
@@ -116,7 +123,7 @@ import VASSAL.tools.io.IOUtils;
  * such as {@link DataArchive}, {@link ServerConnection}, {@link Logger},
  * and {@link Prefs}.</p>
  */
-public abstract class GameModule extends AbstractConfigurable implements CommandEncoder, ToolBarComponent, PropertySource, MutablePropertiesContainer, GpIdSupport {
+public abstract class GameModule extends AbstractConfigurable implements StreamingCommandEncoder, ToolBarComponent, PropertySource, MutablePropertiesContainer, GpIdSupport {
   private static final org.slf4j.Logger log =
     LoggerFactory.getLogger(GameModule.class);
 
@@ -171,6 +178,8 @@ public abstract class GameModule extends AbstractConfigurable implements Command
   protected List<KeyStrokeListener> keyStrokeListeners =
     new ArrayList<KeyStrokeListener>();
   protected CommandEncoder[] commandEncoders = new CommandEncoder[0];
+  protected final CommandEncoderIndex commandEncoderIndex =
+    new CommandEncoderIndex();
   protected List<String> deferredChat = new ArrayList<String>();
 
   protected int nextGpId = 0;
@@ -467,6 +476,7 @@ public abstract class GameModule extends AbstractConfigurable implements Command
    */
   public void addCommandEncoder(CommandEncoder ce) {
     commandEncoders = ArrayUtils.append(commandEncoders, ce);
+    commandEncoderIndex.add(ce);
   }
 
   /**
@@ -479,6 +489,7 @@ public abstract class GameModule extends AbstractConfigurable implements Command
    */
   public void removeCommandEncoder(CommandEncoder ce) {
     commandEncoders = ArrayUtils.remove(commandEncoders, ce);
+    commandEncoderIndex.remove(ce);
   }
 
   /**
@@ -581,10 +592,7 @@ public abstract class GameModule extends AbstractConfigurable implements Command
       return null;
     }
     else {
-      Command c = null;
-      for (int i = 0; i < commandEncoders.length && c == null; ++i) {
-        c = commandEncoders[i].decode(command);
-      }
+      final Command c = commandEncoderIndex.decode(command);
       if (c == null) {
         System.err.println("Failed to decode " + command); //$NON-NLS-1$
       }
@@ -599,16 +607,49 @@ public abstract class GameModule extends AbstractConfigurable implements Command
     if (c == null) {
       return null;
     }
-    String s = null;
-    for (int i = 0; i < commandEncoders.length && s == null; ++i) {
-      s = commandEncoders[i].encode(c);
-    }
+    final String s = commandEncoderIndex.encode(c);
     if (s == null) {
       System.err.println("Failed to encode " + c); //$NON-NLS-1$
     }
     return s;
   }
 
+  /**
+   * Uses the registered {@link CommandEncoder}s to encode a {@link Command}
+   * directly to a {@link Writer}. Writes the same characters as
+   * {@link #encode(Command)}; subclasses which encode compound commands
+   * should override this so that the full encoding need not be held
+   * in memory at once.
+   *
+   * @param c the command to encode
+   * @param out the writer to which the encoding is written
+   * @throws IOException if writing fails
+   */
+  public void encode(Command c, Writer out) throws IOException {
+    final String s = encode(c);
+    if (s != null) {
+      out.write(s);
+    }
+  }
+
+  /**
+   * Uses the registered {@link CommandEncoder}s to decode characters read
+   * from a {@link Reader}. This implementation reads all of the characters
+   * before decoding them; subclasses which decode compound commands
+   * should override this to deliver each command as soon as it is read.
+   *
+   * @param in the reader from which the encoding is read
+   * @param l the listener which receives the decoded commands
+   * @throws IOException if reading fails
+   */
+  public void decode(Reader in, EventListener<? super Command> l)
+                                                          throws IOException {
+    final Command c = decode(IOUtils.toString(in));
+    if (c != null) {
+      l.receive(this, c);
+    }
+  }
+
   /**
    * @return a common FileChooser so that recent file locations
    * can be remembered
@@ -734,6 +775,11 @@ public abstract class GameModule extends AbstractConfigurable implements Command
         IOUtils.closeQuietly(p);
       }
 
+      // release the tile packs
+      if (tcache instanceof ImageTileDiskCache) {
+        ((ImageTileDiskCache) tcache).close();
+      }
+
       // close the module
       try {
         archive.close();
@@ -829,6 +875,7 @@ public abstract class GameModule extends AbstractConfigurable implements Command
    */
   public static void setUserId(String newId) {
     userId = newId;
+    VisualVersion.propertiesChanged();
   }
 
   /**
@@ -947,7 +994,16 @@ public abstract class GameModule extends AbstractConfigurable implements Command
         DigestUtils.shaHex(getGameName() + "_" + getGameVersion());
 
       final File tc = new File(Info.getConfDir(), "tiles/" + hstr);
-      tcache = new ImageTileDiskCache(tc.getAbsolutePath());
+
+      // the launcher skips tiling if tiles are to be sliced on demand
+      if (Boolean.getBoolean("VASSAL.lazyTiling")) {
+        tcache = new LazyImageTileDiskCache(
+          tc.getAbsolutePath(), getDataArchive(), 256, 256
+        );
+      }
+      else {
+        tcache = new ImageTileDiskCache(tc.getAbsolutePath());
+      }
     }
 
     return tcache;
@@ -19,8 +19,12 @@
 package VASSAL.build.module;
 
 import java.awt.Point;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +36,7 @@ import VASSAL.command.AddPiece;
 import VASSAL.command.ChangePiece;
 import VASSAL.command.Command;
 import VASSAL.command.CommandEncoder;
+import VASSAL.command.IndexedCommandEncoder;
 import VASSAL.command.MovePiece;
 import VASSAL.command.NullCommand;
 import VASSAL.command.PlayAudioClipCommand;
@@ -87,7 +92,7 @@ import VASSAL.tools.SequenceEncoder;
  * {@link #createPiece} methods to allow instantiation of the custom
  * {@link GamePiece} classes.
  */
-public class BasicCommandEncoder implements CommandEncoder, Buildable {
+public class BasicCommandEncoder implements IndexedCommandEncoder, Buildable {
   private static final Logger logger =
     LoggerFactory.getLogger(BasicCommandEncoder.class);
 
@@ -96,6 +101,37 @@ public class BasicCommandEncoder implements CommandEncoder, Buildable {
   private Map<String,DecoratorFactory> decoratorFactories =
     new HashMap<String,DecoratorFactory>();
 
+  /** The maximum number of piece types held by the type cache. */
+  protected static final int TYPE_CACHE_SIZE = 1024;
+
+  /**
+   * Piece types already split into their layers, most recently used last.
+   * Guarded by its own lock, as pieces may be created off the EDT while
+   * a game is loading.
+   */
+  private final Map<String,Chain> typeCache =
+    new LinkedHashMap<String,Chain>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String,Chain> e) {
+        return size() > TYPE_CACHE_SIZE;
+      }
+    };
+
+  private final AtomicLong typeCacheHits = new AtomicLong();
+  private final AtomicLong typeCacheMisses = new AtomicLong();
+
+  /**
+   * Subclasses which override {@link #createPiece} expect it to be called
+   * for each layer, and those which override {@link #createDecorator}
+   * expect it to be called for each decorator.
+   */
+  private final boolean overridesCreatePiece =
+    overrides("createPiece", String.class);
+  private final boolean overridesCreateDecorator =
+    overrides("createDecorator", String.class, GamePiece.class);
+
   public BasicCommandEncoder() {
     basicFactories.put(Stack.TYPE, new BasicPieceFactory() {
       public GamePiece createBasicPiece(String type) {
@@ -348,25 +384,139 @@ public class BasicCommandEncoder implements CommandEncoder, Buildable {
    * and forwards to {@link #createDecorator} or {@link #createBasic}. This
    * method should generally not need to be overridden. Instead, override
    * createDecorator or createBasic
+   *
+   * <p>The split of each type into the types of its layers is cached, so
+   * creating another piece of a recently seen type does not parse the
+   * type again.</p>
    */
   public GamePiece createPiece(String type) {
-    SequenceEncoder.Decoder st = new SequenceEncoder.Decoder(type, '\t');
-    type = st.nextToken();
-    String innerType = st.hasMoreTokens() ? st.nextToken() : null;
+    final Chain chain = getChain(type);
 
-    if (innerType != null) {
-      GamePiece inner = createPiece(innerType);
+    if (overridesCreatePiece && chain.inner != null) {
+      GamePiece inner = createPiece(chain.inner);
       if (inner == null) {
-        GameModule.getGameModule().getChatter().send("Invalid piece type - see Error Log for details"); //$NON-NLS-1$
-        logger.warn("Could not create piece with type " + innerType);
+        invalidInnerPiece(chain.inner);
         inner = new BasicPiece();
       }
-      Decorator d = createDecorator(type, inner);
+      final Decorator d = createDecorator(chain.types[0], inner);
       return d != null ? d : inner;
     }
-    else {
-      return createBasic(type);
+
+    final String[] types = chain.types;
+    GamePiece p = createBasic(types[types.length-1]);
+    for (int i = types.length-2; i >= 0; --i) {
+      if (p == null) {
+        invalidInnerPiece(types[i+1]);
+        p = new BasicPiece();
+      }
+
+      final DecoratorFactory f = chain.factories[i];
+      final Decorator d = f != null ?
+        f.createDecorator(types[i], p) : createDecorator(types[i], p);
+      if (d != null) {
+        p = d;
+      }
     }
+    return p;
+  }
+
+  private void invalidInnerPiece(String type) {
+    GameModule.getGameModule().getChatter().send("Invalid piece type - see Error Log for details"); //$NON-NLS-1$
+    logger.warn("Could not create piece with type " + type);
+  }
+
+  /**
+   * A piece type split into the types of its layers, outermost first and
+   * ending with the type of the basic piece, together with the factories
+   * for its decorators when they can be looked up in advance.
+   */
+  private static class Chain {
+    public final String[] types;
+    public final DecoratorFactory[] factories;
+    /** The type of the piece inside the outermost decorator, if any. */
+    public final String inner;
+
+    public Chain(String[] types, DecoratorFactory[] factories, String inner) {
+      this.types = types;
+      this.factories = factories;
+      this.inner = inner;
+    }
+  }
+
+  private Chain getChain(String type) {
+    Chain chain;
+    synchronized (typeCache) {
+      chain = typeCache.get(type);
+    }
+
+    if (chain != null) {
+      typeCacheHits.incrementAndGet();
+      return chain;
+    }
+
+    typeCacheMisses.incrementAndGet();
+
+    final List<String> l = new ArrayList<String>();
+    String inner = null;
+    String t = type;
+    do {
+      final SequenceEncoder.Decoder st = new SequenceEncoder.Decoder(t, '\t');
+      l.add(st.nextToken());
+      t = st.hasMoreTokens() ? st.nextToken() : null;
+      if (inner == null) {
+        inner = t;
+      }
+    } while (t != null);
+
+    final String[] types = l.toArray(new String[l.size()]);
+    final DecoratorFactory[] factories = new DecoratorFactory[types.length-1];
+    if (!overridesCreateDecorator) {
+      for (int i = 0; i < factories.length; ++i) {
+        // unknown types are left to createDecorator to report
+        factories[i] = decoratorFactories.get(getPrefix(types[i]));
+      }
+    }
+
+    chain = new Chain(types, factories, inner);
+    synchronized (typeCache) {
+      typeCache.put(type, chain);
+    }
+    return chain;
+  }
+
+  private static String getPrefix(String type) {
+    final String prefix = type.substring(0,type.indexOf(';')+1);
+    return prefix.length() == 0 ? type : prefix;
+  }
+
+  private boolean overrides(String name, Class<?>... params) {
+    for (Class<?> c = getClass(); c != BasicCommandEncoder.class;
+         c = c.getSuperclass()) {
+      try {
+        c.getDeclaredMethod(name, params);
+        return true;
+      }
+      catch (NoSuchMethodException e) {
+        // keep looking
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the number of pieces created from a type already in the
+   * type cache
+   */
+  public long getTypeCacheHits() {
+    return typeCacheHits.get();
+  }
+
+  /**
+   * @return the number of pieces created from a type which had to be
+   * parsed
+   */
+  public long getTypeCacheMisses() {
+    return typeCacheMisses.get();
   }
 
   public void build(org.w3c.dom.Element e) {
@@ -491,6 +641,23 @@ public class BasicCommandEncoder implements CommandEncoder, Buildable {
     }
   }
 
+  public String[] getCommandPrefixes() {
+    return new String[]{
+      ADD, REMOVE, CHANGE, MOVE, PlayAudioClipCommand.COMMAND_PREFIX
+    };
+  }
+
+  public Class<?>[] getCommandClasses() {
+    return new Class<?>[]{
+      AddPiece.class,
+      RemovePiece.class,
+      ChangePiece.class,
+      MovePiece.class,
+      NullCommand.class,
+      PlayAudioClipCommand.class
+    };
+  }
+
   public static interface DecoratorFactory {
     Decorator createDecorator(String type, GamePiece inner);
   }
@@ -24,9 +24,12 @@ import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
@@ -48,7 +51,7 @@ import VASSAL.build.module.metadata.AbstractMetaData;
 import VASSAL.build.module.metadata.MetaDataFactory;
 import VASSAL.build.module.metadata.SaveMetaData;
 import VASSAL.command.Command;
-import VASSAL.command.CommandEncoder;
+import VASSAL.command.IndexedCommandEncoder;
 import VASSAL.command.Logger;
 import VASSAL.configure.BooleanConfigurer;
 import VASSAL.configure.IconConfigurer;
@@ -61,7 +64,6 @@ import VASSAL.tools.NamedKeyStrokeListener;
 import VASSAL.tools.WriteErrorDialog;
 import VASSAL.tools.filechooser.FileChooser;
 import VASSAL.tools.filechooser.LogFileFilter;
-import VASSAL.tools.io.FastByteArrayOutputStream;
 import VASSAL.tools.io.FileArchive;
 import VASSAL.tools.io.IOUtils;
 import VASSAL.tools.io.ObfuscatingOutputStream;
@@ -69,7 +71,7 @@ import VASSAL.tools.io.ZipArchive;
 import VASSAL.tools.menu.MenuManager;
 import VASSAL.tools.swing.Dialogs;
 
-public class BasicLogger implements Logger, Buildable, GameComponent, CommandEncoder {
+public class BasicLogger implements Logger, Buildable, GameComponent, IndexedCommandEncoder {
   public static final String BEGIN = "begin_log";  //$NON-NLS-1$
   public static final String END = "end_log";  //$NON-NLS-1$
   public static final String LOG = "LOG\t";  //$NON-NLS-1$
@@ -301,23 +303,23 @@ public class BasicLogger implements Logger, Buildable, GameComponent, CommandEnc
         log.append(new LogCommand(c, logInput, stepAction));
       }
 
-// FIXME: Extremely inefficient! Make encode write to an OutputStream
-      final String s = GameModule.getGameModule().encode(log);
-      final FastByteArrayOutputStream ba = new FastByteArrayOutputStream();
-      OutputStream out = null;
-      try {
-        out = new ObfuscatingOutputStream(ba);
-        out.write(s.getBytes("UTF-8"));
-        out.close();
-      }
-      finally {
-        IOUtils.closeQuietly(out);
-      }
-
       FileArchive archive = null;
       try {
         archive = new ZipArchive(outputFile);
-        archive.add(GameState.SAVEFILE_ZIP_ENTRY, ba.toInputStream());
+
+        Writer out = null;
+        try {
+          out = new BufferedWriter(new OutputStreamWriter(
+            new ObfuscatingOutputStream(new BufferedOutputStream(
+              archive.getOutputStream(GameState.SAVEFILE_ZIP_ENTRY))),
+            "UTF-8"));
+          GameModule.getGameModule().encode(log, out);
+          out.close();
+        }
+        finally {
+          IOUtils.closeQuietly(out);
+        }
+
         metadata.save(archive);
         archive.close();
       }
@@ -458,6 +460,14 @@ public class BasicLogger implements Logger, Buildable, GameComponent, CommandEnc
     }
   }
 
+  public String[] getCommandPrefixes() {
+    return new String[]{LOG};
+  }
+
+  public Class<?>[] getCommandClasses() {
+    return new Class<?>[]{LogCommand.class};
+  }
+
   public Command decode(String command) {
     if (command.startsWith(LOG)) {
       Command logged = GameModule.getGameModule().decode(command.substring(LOG.length()));
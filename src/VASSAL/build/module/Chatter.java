@@ -54,6 +54,7 @@ import VASSAL.build.Buildable;
 import VASSAL.build.GameModule;
 import VASSAL.command.Command;
 import VASSAL.command.CommandEncoder;
+import VASSAL.command.IndexedCommandEncoder;
 import VASSAL.configure.ColorConfigurer;
 import VASSAL.configure.FontConfigurer;
 import VASSAL.i18n.Resources;
@@ -67,7 +68,7 @@ import VASSAL.tools.ScrollPane;
  * accepts input.  Also acts as a {@link CommandEncoder},
  * encoding/decoding commands that display message in the text area
  */
-public class Chatter extends JPanel implements CommandEncoder, Buildable {
+public class Chatter extends JPanel implements IndexedCommandEncoder, Buildable {
   private static final long serialVersionUID = 1L;
 
   protected JTextArea conversation;
@@ -218,6 +219,14 @@ public class Chatter extends JPanel implements CommandEncoder, Buildable {
     }
   }
 
+  public String[] getCommandPrefixes() {
+    return new String[]{"CHAT"};
+  }
+
+  public Class<?>[] getCommandClasses() {
+    return new Class<?>[]{DisplayText.class};
+  }
+
   /**
    * Displays the message, Also logs and sends to the server
    * a {@link Command} that displays this message
@@ -28,12 +28,12 @@ import VASSAL.build.AbstractBuildable;
 import VASSAL.build.Buildable;
 import VASSAL.build.GameModule;
 import VASSAL.command.Command;
-import VASSAL.command.CommandEncoder;
+import VASSAL.command.IndexedCommandEncoder;
 import VASSAL.configure.StringConfigurer;
 import VASSAL.tools.SequenceEncoder;
 
 public class EventLog extends AbstractBuildable
-                      implements CommandEncoder, GameComponent {
+                      implements IndexedCommandEncoder, GameComponent {
   public static final String EVENT_LIST = "Events"; //$NON-NLS-1$
 
   private List<Event> myEvents;
@@ -85,6 +85,14 @@ public class EventLog extends AbstractBuildable
     }
   }
 
+  public String[] getCommandPrefixes() {
+    return new String[]{EVENT_LIST};
+  }
+
+  public Class<?>[] getCommandClasses() {
+    return new Class<?>[]{StoreEvents.class};
+  }
+
   public void setup(boolean starting) {
     if (!starting) {
       clearSaved();
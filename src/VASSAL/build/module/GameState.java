@@ -21,21 +21,31 @@ package VASSAL.build.module;
 import java.awt.Cursor;
 import java.awt.event.ActionEvent;
 import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -44,6 +54,8 @@ import javax.swing.Action;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.output.NullOutputStream;
 import org.jdesktop.swingworker.SwingWorker;
 import org.slf4j.LoggerFactory;
 
@@ -55,29 +67,32 @@ import VASSAL.build.module.metadata.SaveMetaData;
 import VASSAL.command.AddPiece;
 import VASSAL.command.AlertCommand;
 import VASSAL.command.Command;
-import VASSAL.command.CommandEncoder;
 import VASSAL.command.CommandFilter;
 import VASSAL.command.ConditionalCommand;
+import VASSAL.command.IndexedCommandEncoder;
 import VASSAL.command.Logger;
 import VASSAL.command.NullCommand;
 import VASSAL.configure.DirectoryConfigurer;
+import VASSAL.counters.FlatState;
 import VASSAL.counters.GamePiece;
 import VASSAL.i18n.Resources;
 import VASSAL.launch.Launcher;
+import VASSAL.preferences.Prefs;
 import VASSAL.tools.ErrorDialog;
 import VASSAL.tools.ReadErrorDialog;
 import VASSAL.tools.ThrowableUtils;
 import VASSAL.tools.WarningDialog;
 import VASSAL.tools.WriteErrorDialog;
+import VASSAL.tools.concurrent.listener.EventListener;
 import VASSAL.tools.filechooser.FileChooser;
 import VASSAL.tools.filechooser.LogAndSaveFileFilter;
 import VASSAL.tools.io.DeobfuscatingInputStream;
-import VASSAL.tools.io.FastByteArrayOutputStream;
 import VASSAL.tools.io.FileArchive;
 import VASSAL.tools.io.IOUtils;
 import VASSAL.tools.io.ObfuscatingOutputStream;
 import VASSAL.tools.io.ZipArchive;
 import VASSAL.tools.menu.MenuManager;
+import VASSAL.tools.swing.EDT;
 import VASSAL.tools.swing.Dialogs;
 
 /**
@@ -85,11 +100,13 @@ import VASSAL.tools.swing.Dialogs;
  * Only one game can be open at once.
  * @see GameModule#getGameState
  */
-public class GameState implements CommandEncoder {
+public class GameState implements IndexedCommandEncoder {
   private static final org.slf4j.Logger log =
     LoggerFactory.getLogger(GameState.class);
 
-  protected Map<String,GamePiece> pieces = new HashMap<String,GamePiece>();
+  // concurrent, as pieces are added on the EDT while a game is being read
+  protected Map<String,GamePiece> pieces =
+    new ConcurrentHashMap<String,GamePiece>();
   protected List<GameComponent> gameComponents = new ArrayList<GameComponent>();
   protected List<GameSetupStep> setupSteps = new ArrayList<GameSetupStep>();
   protected Action loadGame, saveGame, newGame, closeGame;
@@ -165,7 +182,7 @@ public class GameState implements CommandEncoder {
    * @return true if the game state is different from when it was last saved
    */
   public boolean isModified() {
-    String s = saveString();
+    String s = saveDigest();
     return s != null && !s.equals(lastSave);
   }
 
@@ -307,7 +324,7 @@ public class GameState implements CommandEncoder {
     }
 
     gameStarted = gameStarted || this.gameStarting;
-    lastSave = gameStarting ? saveString() : null;
+    lastSave = gameStarting ? saveDigest() : null;
   }
 
   /** Return true if a game is currently in progress */
@@ -415,6 +432,43 @@ public class GameState implements CommandEncoder {
     return GameModule.getGameModule().encode(getRestoreCommand());
   }
 
+  /**
+   * @return a digest of the encoded restore command, or <code>null</code>
+   * if no game is in progress. Used in place of {@link #saveString} to
+   * detect modifications without holding the saved game in memory.
+   */
+  protected String saveDigest() {
+    if (!saveGame.isEnabled()) {
+      return null;
+    }
+
+    final MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-1");  //$NON-NLS-1$
+    }
+    catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-1
+      throw new IllegalStateException(e);
+    }
+
+    Writer out = null;
+    try {
+      out = new BufferedWriter(new OutputStreamWriter(
+        new DigestOutputStream(new NullOutputStream(), md), "UTF-8"));
+      writeSave(out);
+      out.close();
+    }
+    catch (IOException e) {
+      // can't happen, we're writing to a NullOutputStream
+      ErrorDialog.bug(e);
+    }
+    finally {
+      IOUtils.closeQuietly(out);
+    }
+
+    return Hex.encodeHexString(md.digest());
+  }
+
 
   /** Prompts the user for a file into which to save the game */
   public void saveGame() {
@@ -469,7 +523,7 @@ public class GameState implements CommandEncoder {
       lastSave = null;
     }
     else {
-      lastSave = saveString();
+      lastSave = saveDigest();
     }
   }
 
@@ -533,16 +587,21 @@ public class GameState implements CommandEncoder {
   public void loadContinuation(File f) throws IOException {
     GameModule.getGameModule().warn(
         Resources.getString("GameState.loading", f.getName()));  //$NON-NLS-1$
-    Command c = decodeSavedGame(f);
-    CommandFilter filter = new CommandFilter() {
+    final CommandFilter filter = new CommandFilter() {
       protected boolean accept(Command c) {
         return c instanceof BasicLogger.LogCommand;
       }
     };
-    c = filter.apply(c);
-    if (c != null) {
-      c.execute();
-    }
+    decodeSavedGame(new BufferedInputStream(new FileInputStream(f)),
+      new EventListener<Command>() {
+        public void receive(Object src, Command c) {
+          c = filter.apply(c);
+          if (c != null) {
+            c.execute();
+          }
+        }
+      }
+    );
     String msg = Resources.getString("GameState.loaded", f.getName());  //$NON-NLS-1$
     if (loadComments != null && loadComments.length() > 0) {
       msg += ": " + loadComments;
@@ -627,6 +686,14 @@ public class GameState implements CommandEncoder {
     }
   }
 
+  public String[] getCommandPrefixes() {
+    return new String[]{BEGIN_SAVE, END_SAVE};
+  }
+
+  public Class<?>[] getCommandClasses() {
+    return new Class<?>[]{SetupCommand.class};
+  }
+
   /**
    * A GameState recognizes instances of {@link SetupCommand}
    */
@@ -645,23 +712,10 @@ public class GameState implements CommandEncoder {
   public static final String END_SAVE = "end_save";  //$NON-NLS-1$
 
   public void saveGame(File f) throws IOException {
-// FIXME: Extremely inefficient! Write directly to ZipArchive OutputStream
-    final String save = saveString();
-    final FastByteArrayOutputStream ba = new FastByteArrayOutputStream();
-    OutputStream out = null;
-    try {
-      out = new ObfuscatingOutputStream(ba);
-      out.write(save.getBytes("UTF-8"));
-      out.close();
-    }
-    finally {
-      IOUtils.closeQuietly(out);
-    }
-
     FileArchive archive = null;
     try {
       archive = new ZipArchive(f);
-      archive.add(SAVEFILE_ZIP_ENTRY, ba.toInputStream());
+      writeSave(archive);
       (new SaveMetaData()).save(archive);
       archive.close();
     }
@@ -672,6 +726,38 @@ public class GameState implements CommandEncoder {
     Launcher.getInstance().sendSaveCmd(f);
   }
 
+  /**
+   * Writes the saved game entry, obfuscated, to an archive.
+   *
+   * @param archive the archive to which the saved game is written
+   * @throws IOException if writing fails
+   */
+  protected void writeSave(FileArchive archive) throws IOException {
+    Writer out = null;
+    try {
+      out = new BufferedWriter(new OutputStreamWriter(
+        new ObfuscatingOutputStream(new BufferedOutputStream(
+          archive.getOutputStream(SAVEFILE_ZIP_ENTRY))), "UTF-8"));
+      writeSave(out);
+      out.close();
+    }
+    finally {
+      IOUtils.closeQuietly(out);
+    }
+  }
+
+  /**
+   * Writes the encoded restore command for the current game to
+   * <code>out</code>. The encoding is streamed, so the saved game is
+   * never held in memory as a single <code>String</code>.
+   *
+   * @param out the writer to which the saved game is written
+   * @throws IOException if writing fails
+   */
+  protected void writeSave(Writer out) throws IOException {
+    GameModule.getGameModule().encode(getRestoreCommand(), out);
+  }
+
   public void loadGameInBackground(final File f) {
     try {
       loadGameInBackground(f.getName(),
@@ -690,13 +776,23 @@ public class GameState implements CommandEncoder {
     final JFrame frame = GameModule.getGameModule().getFrame();
     frame.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
 
-    new SwingWorker<Command,Void>() {
+    new SwingWorker<Void,Void>() {
+      private final CommandExecutor executor = new CommandExecutor();
+
       @Override
-      public Command doInBackground() throws Exception {
+      public Void doInBackground() throws Exception {
+        boolean ok = false;
         try {
-          return decodeSavedGame(in);
+          decodeSavedGame(in, executor);
+          executor.flush();
+          executor.await();
+          ok = true;
+          return null;
         }
         finally {
+          if (!ok) {
+            executor.discard();
+          }
           IOUtils.closeQuietly(in);
         }
       }
@@ -704,12 +800,11 @@ public class GameState implements CommandEncoder {
       @Override
       protected void done() {
         try {
-          Command loadCommand = null;
           String msg = null;
           try {
-            loadCommand = get();
+            get();
 
-            if (loadCommand != null) {
+            if (executor.hasExecuted()) {
               msg = Resources.getString("GameState.loaded", shortName);  //$NON-NLS-1$
               if (loadComments != null && loadComments.length() > 0) {
                 msg += ": " + loadComments;
@@ -736,10 +831,13 @@ public class GameState implements CommandEncoder {
               log.error("", e);
             }
             msg = Resources.getString("GameState.error_loading", shortName);
-          }
 
-          if (loadCommand != null) {
-            loadCommand.execute();
+            // Part of the file has already been applied; close the partly
+            // loaded game rather than leave it half set up.
+            if (executor.hasStarted()) {
+              setModified(false);
+              setup(false);
+            }
           }
 
           GameModule.getGameModule().warn(msg);
@@ -755,6 +853,104 @@ public class GameState implements CommandEncoder {
     }.execute();
   }
 
+  /**
+   * Executes {@link Command}s on the EDT in batches as they are decoded,
+   * so that a saved game is applied while it is still being read. At
+   * most one batch is queued on the EDT while the next is decoded.
+   * If reading fails, the caller must {@link #discard} the remaining
+   * commands and close the game, if any batch has been queued.
+   */
+  private static class CommandExecutor implements EventListener<Command> {
+    private static final int BATCH_SIZE = 100;
+
+    private List<Command> batch = new ArrayList<Command>(BATCH_SIZE);
+    private Future<?> pending;
+    private volatile boolean executed = false;
+    private volatile boolean started = false;
+
+    public void receive(Object src, Command c) {
+      batch.add(c);
+      if (batch.size() >= BATCH_SIZE) {
+        flush();
+      }
+    }
+
+    /** Queues the current batch, once the previous batch has finished. */
+    public void flush() {
+      await();
+
+      if (batch.isEmpty()) {
+        return;
+      }
+
+      final List<Command> b = batch;
+      batch = new ArrayList<Command>(BATCH_SIZE);
+
+      started = true;
+      pending = EDT.submit(new Runnable() {
+        public void run() {
+          for (Command c : b) {
+            c.execute();
+            executed |= !c.isNull();
+          }
+        }
+      });
+    }
+
+    /** Waits for the last queued batch to finish executing. */
+    public void await() {
+      if (pending == null) {
+        return;
+      }
+
+      try {
+        pending.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      }
+      catch (ExecutionException e) {
+        final Throwable t = e.getCause();
+        if (t instanceof Error) {
+          throw (Error) t;
+        }
+        else if (t instanceof RuntimeException) {
+          throw (RuntimeException) t;
+        }
+        throw new IllegalStateException(t);
+      }
+      finally {
+        pending = null;
+      }
+    }
+
+    /**
+     * Drops the commands not yet queued and waits for the last queued
+     * batch to finish, so that nothing more is executed.
+     */
+    public void discard() {
+      batch.clear();
+      try {
+        await();
+      }
+      catch (RuntimeException e) {
+        // the failure which led to the discard is reported instead
+        log.error("", e);
+      }
+    }
+
+    /** @return whether any batch has been queued for execution */
+    public boolean hasStarted() {
+      return started;
+    }
+
+    /** @return whether any non-null command has been executed */
+    public boolean hasExecuted() {
+      return executed;
+    }
+  }
+
   /**
    * @return a Command that, when executed, will add all pieces currently
    * in the game. Used when saving a game.
@@ -770,9 +966,12 @@ public class GameState implements CommandEncoder {
       pieceList.add(index, p);
     }
 
+    final boolean flat = Boolean.TRUE.equals(
+      Prefs.getGlobalPrefs().getValue(Prefs.FLAT_SAVED_STATES));
+
     final Command c = new NullCommand();
     for (GamePiece p : pieceList) {
-      c.append(new AddPiece(p));
+      c.append(new AddPiece(p, FlatState.getState(p, flat)));
     }
     return c;
   }
@@ -791,20 +990,39 @@ public class GameState implements CommandEncoder {
   }
 
   public Command decodeSavedGame(InputStream in) throws IOException {
+    final Command c = new NullCommand();
+    decodeSavedGame(in, new EventListener<Command>() {
+      public void receive(Object src, Command next) {
+        c.append(next);
+      }
+    });
+    return c.isNull() ? null : c;
+  }
+
+  /**
+   * Read a saved game, passing each {@link Command} to the listener as
+   * soon as it has been decoded. Executing the commands in the order
+   * received will load the saved game.
+   *
+   * @param in the saved game
+   * @param l the listener which receives the decoded commands
+   * @throws IOException
+   */
+  public void decodeSavedGame(InputStream in, EventListener<? super Command> l)
+                                                           throws IOException {
     ZipInputStream zipInput = null;
     try {
       zipInput = new ZipInputStream(in);
       for (ZipEntry entry = zipInput.getNextEntry(); entry != null;
            entry = zipInput.getNextEntry()) {
         if (SAVEFILE_ZIP_ENTRY.equals(entry.getName())) {
-          InputStream din = null;
+          Reader din = null;
           try {
-            din = new DeobfuscatingInputStream(zipInput);
-// FIXME: toString() is very inefficient, make decode() use the stream directly
-            final Command c = GameModule.getGameModule().decode(
-              IOUtils.toString(din, "UTF-8"));
+            din = new BufferedReader(new InputStreamReader(
+              new DeobfuscatingInputStream(zipInput), "UTF-8"));
+            GameModule.getGameModule().decode(din, l);
             din.close();
-            return c;
+            return;
           }
           finally {
             IOUtils.closeQuietly(din);
@@ -19,6 +19,8 @@
 package VASSAL.build.module;
 
 import java.awt.Container;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -57,6 +59,7 @@ import VASSAL.preferences.StringPreference;
 import VASSAL.preferences.TextPreference;
 import VASSAL.tools.ErrorDialog;
 import VASSAL.tools.FormattedString;
+import VASSAL.tools.imageop.Op;
 
 public class GlobalOptions extends AbstractConfigurable {
   public static final String NON_OWNER_UNMASKABLE = "nonOwnerUnmaskable"; //$NON-NLS-1$
@@ -70,6 +73,7 @@ public class GlobalOptions extends AbstractConfigurable {
   public static final String SINGLE_WINDOW = "singleWindow"; //$NON-NLS-1$
   public static final String MAXIMUM_HEAP = "maximumHeap"; //$NON-NLS-1$
   public static final String INITIAL_HEAP = "initialHeap"; //$NON-NLS-1$
+  public static final String IMAGE_CACHE_SIZE = "imageCacheSize"; //$NON-NLS-1$
 
   public static final String PLAYER_NAME = "PlayerName"; //$NON-NLS-1$
   public static final String PLAYER_NAME_ALT = "playerName"; //$NON-NLS-1$
@@ -120,9 +124,27 @@ public class GlobalOptions extends AbstractConfigurable {
       Integer.valueOf(512));
     GameModule.getGameModule().getPrefs().addOption(maxHeapConf);
 
+    // the memory for images held in the image cache, 0 for the default
+    final IntConfigurer cacheConf = new IntConfigurer(
+      IMAGE_CACHE_SIZE,
+      Resources.getString("GlobalOptions.image_cache_size"),  //$NON-NLS-1$
+      Integer.valueOf(0));
+    GameModule.getGameModule().getPrefs().addOption(cacheConf);
+    setImageCacheSize(cacheConf.getIntValue(0));
+    cacheConf.addPropertyChangeListener(new PropertyChangeListener() {
+      public void propertyChange(PropertyChangeEvent evt) {
+        setImageCacheSize(cacheConf.getIntValue(0));
+      }
+    });
+
     validator = new SingleChildInstance(GameModule.getGameModule(), getClass());
   }
 
+  private static void setImageCacheSize(int mb) {
+    Op.setCacheBudget(mb > 0 ? mb*1024L*1024L :
+                               Runtime.getRuntime().maxMemory()/4);
+  }
+
   public static GlobalOptions getInstance() {
     return instance;
   }
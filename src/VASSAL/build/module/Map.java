@@ -76,6 +76,8 @@ import net.miginfocom.swing.MigLayout;
 
 import org.jdesktop.animation.timing.Animator;
 import org.jdesktop.animation.timing.TimingTargetAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.w3c.dom.Element;
 
 import VASSAL.build.AbstractConfigurable;
@@ -96,9 +98,11 @@ import VASSAL.build.module.map.GlobalMap;
 import VASSAL.build.module.map.HidePiecesButton;
 import VASSAL.build.module.map.HighlightLastMoved;
 import VASSAL.build.module.map.ImageSaver;
+import VASSAL.build.module.map.IndexedPieceCollection;
 import VASSAL.build.module.map.KeyBufferer;
 import VASSAL.build.module.map.LOS_Thread;
 import VASSAL.build.module.map.LayeredPieceCollection;
+import VASSAL.build.module.map.LocationIndex;
 import VASSAL.build.module.map.MapCenterer;
 import VASSAL.build.module.map.MapShader;
 import VASSAL.build.module.map.MassKeyCommand;
@@ -143,6 +147,7 @@ import VASSAL.counters.ColoredBorder;
 import VASSAL.counters.Deck;
 import VASSAL.counters.DeckVisitor;
 import VASSAL.counters.DeckVisitorDispatcher;
+import VASSAL.counters.Decorator;
 import VASSAL.counters.DragBuffer;
 import VASSAL.counters.GamePiece;
 import VASSAL.counters.Highlighter;
@@ -181,6 +186,8 @@ import org.jdesktop.swinghelper.layer.demo.DebugPainter;
  */
 public class Map extends AbstractConfigurable implements GameComponent, MouseListener, MouseMotionListener, DropTargetListener, Configurable,
     UniqueIdManager.Identifyable, ToolBarComponent, MutablePropertiesContainer, PropertySource, PlayerRoster.SideChangeListener {
+  private static final Logger logger = LoggerFactory.getLogger(Map.class);
+
   protected static boolean changeReportingEnabled = true;
   protected String mapID = ""; //$NON-NLS-1$
   protected String mapName = ""; //$NON-NLS-1$
@@ -211,6 +218,7 @@ public class Map extends AbstractConfigurable implements GameComponent, MouseLis
   protected int[][] boardWidths; // Cache of board widths by row/column
   protected int[][] boardHeights; // Cache of board heights by row/column
   protected PieceCollection pieces = new DefaultPieceCollection();
+  protected LocationIndex locationIndex = new LocationIndex(this);
   protected Highlighter highlighter = new ColoredBorder();
   protected ArrayList<Highlighter> highlighters = new ArrayList<Highlighter>();
   protected boolean clearFirst = false; // Whether to clear the display before
@@ -236,6 +244,8 @@ public class Map extends AbstractConfigurable implements GameComponent, MouseLis
   };
   protected PieceMover pieceMover;
   protected KeyListener[] saveKeyListeners = null;
+  protected long lastPaintTime; // Duration of the last paintRegion(), in ns
+  protected int lastPiecesDrawn; // Top-level pieces drawn by the last paint
 
   public Map() {
     getView();
@@ -760,6 +770,7 @@ mainWindowDock = splitter.splitBottom(splitter.getSplitAncestor(GameModule.getGa
       boards.add(b);
     }
     setBoardBoundaries();
+    locationIndex.invalidate();
   }
 
   /**
@@ -1472,11 +1483,36 @@ mainWindowDock = splitter.splitBottom(splitter.getSplitAncestor(GameModule.getGa
   }
 
   public void paintRegion(Graphics g, Rectangle visibleRect, Component c) {
+    final long start = System.nanoTime();
+
     clearMapBorder(g); // To avoid ghost pieces around the edge
     drawBoardsInRegion(g, visibleRect, c);
     drawDrawable(g, false);
-    drawPiecesInRegion(g, visibleRect, c);
+    drawPiecesInRegion(g, visibleRect, c, getHighlightMargin());
     drawDrawable(g, true);
+
+    lastPaintTime = System.nanoTime() - start;
+    if (logger.isDebugEnabled()) {
+      logger.debug("Painted " + getMapName() + " in " +
+        (lastPaintTime / 1000) + " us, drawing " + lastPiecesDrawn +
+        " pieces");
+    }
+  }
+
+  /**
+   * @return the time taken by the last call to {@link #paintRegion}, in
+   * nanoseconds
+   */
+  public long getLastPaintTime() {
+    return lastPaintTime;
+  }
+
+  /**
+   * @return the number of top-level pieces (including {@link Stack}s)
+   * drawn by the last call to {@link #drawPiecesInRegion}
+   */
+  public int getLastPiecesDrawn() {
+    return lastPiecesDrawn;
   }
 
   public void drawBoardsInRegion(Graphics g,
@@ -1498,12 +1534,28 @@ mainWindowDock = splitter.splitBottom(splitter.getSplitAncestor(GameModule.getGa
   public void drawPiecesInRegion(Graphics g,
                                  Rectangle visibleRect,
                                  Component c) {
+    drawPiecesInRegion(g, visibleRect, c, getHighlightMargin());
+  }
+
+  /**
+   * As {@link #drawPiecesInRegion(Graphics,Rectangle,Component)}, with
+   * the highlight margin already found, so that it is found only once for
+   * each paint.
+   *
+   * @param highlightMargin the value of {@link #getHighlightMargin}
+   */
+  protected void drawPiecesInRegion(Graphics g,
+                                    Rectangle visibleRect,
+                                    Component c,
+                                    int highlightMargin) {
     if (!hideCounters) {
       Graphics2D g2d = (Graphics2D) g;
       Composite oldComposite = g2d.getComposite();
       g2d.setComposite(
         AlphaComposite.getInstance(AlphaComposite.SRC_OVER, pieceOpacity));
-      GamePiece[] stack = pieces.getPieces();
+      GamePiece[] stack =
+        getPiecesToDraw(g.getClipBounds(), highlightMargin);
+      lastPiecesDrawn = stack.length;
       for (int i = 0; i < stack.length; ++i) {
         Point pt = componentCoordinates(stack[i].getPosition());
         if (stack[i].getClass() == Stack.class) {
@@ -1525,6 +1577,53 @@ mainWindowDock = splitter.splitBottom(splitter.getSplitAncestor(GameModule.getGa
     drawPiecesInRegion(g, visibleRect, theMap);
   }
 
+  /**
+   * Return the pieces which may be drawn within a clip rectangle, in
+   * drawing order. Pieces which lie wholly outside it are omitted.
+   *
+   * @param clip the clip rectangle, in component coordinates, or
+   * <code>null</code> for all pieces
+   * @param highlightMargin the value of {@link #getHighlightMargin}
+   */
+  protected GamePiece[] getPiecesToDraw(Rectangle clip,
+                                        int highlightMargin) {
+    if (clip == null) {
+      return pieces.getPieces();
+    }
+
+    final Rectangle area = mapRectangle(clip);
+
+    // allow for rounding, and for highlighting beyond the piece
+    final int margin = 2 + highlightMargin;
+    area.grow(margin, margin);
+
+    return getPiecesNear(area);
+  }
+
+  /**
+   * @return the greatest distance by which the highlighting of a selected
+   * piece on this map extends beyond its bounding box
+   */
+  protected int getHighlightMargin() {
+    int margin = 0;
+    for (Iterator<GamePiece> i = KeyBuffer.getBuffer().getPiecesIterator();
+         i.hasNext(); ) {
+      final GamePiece p = i.next();
+      if (p.getMap() == this) {
+        final Rectangle b = p.boundingBox();
+        final Rectangle h = highlighter.boundingBox(p);
+        for (Highlighter hl : highlighters) {
+          h.add(hl.boundingBox(p));
+        }
+
+        margin = Math.max(margin, Math.max(
+          Math.max(b.x - h.x, h.x + h.width - b.x - b.width),
+          Math.max(b.y - h.y, h.y + h.height - b.y - b.height)));
+      }
+    }
+    return margin;
+  }
+
   public void drawPieces(Graphics g, int xOffset, int yOffset) {
     if (!hideCounters) {
       Graphics2D g2d = (Graphics2D) g;
@@ -1677,6 +1776,82 @@ mainWindowDock = splitter.splitBottom(splitter.getSplitAncestor(GameModule.getGa
     return pieces.getAllPieces();
   }
 
+  /**
+   * Return the visible pieces whose position has the given name
+   *
+   * @param location a location name, as returned by {@link #locationName}
+   * @return the top-level pieces (including {@link Stack}s) at the
+   * location, in no particular order
+   */
+  public GamePiece[] getPiecesInLocation(String location) {
+    return locationIndex.getPieces(location);
+  }
+
+  /**
+   * Return the total of a property over the visible pieces whose position
+   * has the given name, including those in {@link Stack}s. Values which
+   * are not integers count as 0.
+   *
+   * @param location a location name, as returned by {@link #locationName}
+   * @param property a property name
+   * @return the total
+   * @since 3.2.3
+   */
+  public int getTotalInLocation(String location, String property) {
+    return locationIndex.getTotal(location, property);
+  }
+
+  /**
+   * Return the visible pieces which may lie at or overlap an area of the
+   * map. No piece in {@link #getPieces()} which does is omitted, but some
+   * which do not may be included.
+   *
+   * @param area the area, in map coordinates
+   * @return the pieces near the area, in the order of {@link #getPieces()}
+   */
+  public GamePiece[] getPiecesNear(Rectangle area) {
+    return pieces instanceof IndexedPieceCollection ?
+      ((IndexedPieceCollection) pieces).getPiecesNear(area) :
+      pieces.getPieces();
+  }
+
+  /**
+   * Called by a piece on this map when it has moved, so that the indices
+   * of the pieces on the map can be brought up to date. Only the moves of
+   * top-level pieces (including {@link Stack}s) matter, as pieces in a
+   * {@link Stack} are at the position of the {@link Stack}.
+   *
+   * @param p the piece, or any of its traits
+   * @since 3.2.3
+   */
+  public void pieceMoved(GamePiece p) {
+    p = Decorator.getOutermost(p);
+    if (pieces instanceof IndexedPieceCollection) {
+      ((IndexedPieceCollection) pieces).pieceMoved(p);
+    }
+    locationIndex.move(p);
+  }
+
+  /**
+   * Called by a piece on this map when it may have changed shape or
+   * state, so that the indices of the pieces on the map can be brought
+   * up to date.
+   *
+   * @param p the piece, or any of its traits
+   * @since 3.2.3
+   */
+  public void pieceChanged(GamePiece p) {
+    p = Decorator.getOutermost(p);
+    if (p.getParent() != null) {
+      // the shape of a Stack is that of its contents
+      p = p.getParent();
+    }
+    if (pieces instanceof IndexedPieceCollection) {
+      ((IndexedPieceCollection) pieces).pieceChanged(p);
+    }
+    locationIndex.changed(p);
+  }
+
   public void setPieceCollection(PieceCollection pieces) {
     this.pieces = pieces;
   }
@@ -1920,6 +2095,7 @@ mainWindowDock = splitter.splitBottom(splitter.getSplitAncestor(GameModule.getGa
     }
     else {
       pieces.clear();
+      locationIndex.clear();
       boards.clear();
       if (mainWindowDock != null) {
         if (mainWindowDock.getHideableComponent().isShowing()) {
@@ -1967,7 +2143,7 @@ mainWindowDock = splitter.splitBottom(splitter.getSplitAncestor(GameModule.getGa
    * Use the provided {@link PieceFinder} instance to locate a visible piece at the given location
    */
   public GamePiece findPiece(Point pt, PieceFinder finder) {
-    GamePiece[] stack = pieces.getPieces();
+    GamePiece[] stack = getPiecesNear(new Rectangle(pt));
     for (int i = stack.length - 1; i >= 0; --i) {
       GamePiece p = finder.select(this, stack[i], pt);
       if (p != null) {
@@ -1982,7 +2158,9 @@ mainWindowDock = splitter.splitBottom(splitter.getSplitAncestor(GameModule.getGa
    * is visible or not
    */
   public GamePiece findAnyPiece(Point pt, PieceFinder finder) {
-    GamePiece[] stack = pieces.getAllPieces();
+    GamePiece[] stack = pieces instanceof IndexedPieceCollection ?
+      ((IndexedPieceCollection) pieces).getAllPiecesNear(new Rectangle(pt)) :
+      pieces.getAllPieces();
     for (int i = stack.length - 1; i >= 0; --i) {
       GamePiece p = finder.select(this, stack[i], pt);
       if (p != null) {
@@ -2068,6 +2246,7 @@ mainWindowDock = splitter.splitBottom(splitter.getSplitAncestor(GameModule.getGa
       }
       pieces.add(p);
       p.setMap(this);
+      locationIndex.add(p);
       theMap.repaint();
     }
   }
@@ -2093,6 +2272,7 @@ mainWindowDock = splitter.splitBottom(splitter.getSplitAncestor(GameModule.getGa
    */
   public void removePiece(GamePiece p) {
     pieces.remove(p);
+    locationIndex.remove(p);
     theMap.repaint();
   }
 
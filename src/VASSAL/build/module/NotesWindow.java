@@ -37,10 +37,12 @@ import VASSAL.build.Buildable;
 import VASSAL.build.Configurable;
 import VASSAL.build.GameModule;
 import VASSAL.build.module.documentation.HelpFile;
+import VASSAL.build.module.noteswindow.AddSecretNoteCommand;
 import VASSAL.build.module.noteswindow.PrivateNotesController;
 import VASSAL.build.module.noteswindow.SecretNotesController;
+import VASSAL.build.module.noteswindow.SetPrivateTextCommand;
 import VASSAL.command.Command;
-import VASSAL.command.CommandEncoder;
+import VASSAL.command.IndexedCommandEncoder;
 import VASSAL.command.NullCommand;
 import VASSAL.configure.Configurer;
 import VASSAL.configure.ConfigurerFactory;
@@ -57,7 +59,7 @@ import VASSAL.tools.NamedKeyStroke;
  * him
  */
 public class NotesWindow extends AbstractConfigurable
-    implements GameComponent, CommandEncoder {
+    implements GameComponent, IndexedCommandEncoder {
 
   protected JDialog frame;
   protected LaunchButton launch;
@@ -222,6 +224,24 @@ public class NotesWindow extends AbstractConfigurable
     return s;
   }
 
+  public String[] getCommandPrefixes() {
+    return new String[]{
+      SCENARIO_NOTE_COMMAND_PREFIX,
+      PUBLIC_NOTE_COMMAND_PREFIX,
+      PrivateNotesController.COMMAND_PREFIX,
+      SecretNotesController.COMMAND_PREFIX
+    };
+  }
+
+  public Class<?>[] getCommandClasses() {
+    return new Class<?>[]{
+      SetScenarioNote.class,
+      SetPublicNote.class,
+      SetPrivateTextCommand.class,
+      AddSecretNoteCommand.class
+    };
+  }
+
   public Command decode(String command) {
     Command comm;
     if (command.startsWith(SCENARIO_NOTE_COMMAND_PREFIX)) {
@@ -34,7 +34,7 @@ import java.util.Vector;
 
 import VASSAL.build.GameModule;
 import VASSAL.command.Command;
-import VASSAL.command.CommandEncoder;
+import VASSAL.command.IndexedCommandEncoder;
 import VASSAL.configure.BooleanConfigurer;
 import VASSAL.configure.Configurer;
 import VASSAL.tools.SequenceEncoder;
@@ -43,7 +43,7 @@ import VASSAL.tools.SequenceEncoder;
  * Determines whether players are allowed to unmask other players pieces.  The module designer may
  * set the option to always on, always off, or let the players determine it with a Preferences setting.
  */
-public class ObscurableOptions implements CommandEncoder, GameComponent {
+public class ObscurableOptions implements IndexedCommandEncoder, GameComponent {
   private static ObscurableOptions instance;
   public static final String COMMAND_ID = "UNMASK\t"; //$NON-NLS-1$
   public static final String PREFS_KEY = "OpponentUnmaskable"; //$NON-NLS-1$
@@ -172,6 +172,14 @@ public class ObscurableOptions implements CommandEncoder, GameComponent {
     }
   }
 
+  public String[] getCommandPrefixes() {
+    return new String[]{COMMAND_ID};
+  }
+
+  public Class<?>[] getCommandClasses() {
+    return new Class<?>[]{SetAllowed.class};
+  }
+
   /**
    * Encode the current ObscurableOptions as a String
    * @return encoded options
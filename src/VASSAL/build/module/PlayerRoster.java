@@ -45,12 +45,13 @@ import VASSAL.build.Configurable;
 import VASSAL.build.GameModule;
 import VASSAL.build.module.documentation.HelpFile;
 import VASSAL.command.Command;
-import VASSAL.command.CommandEncoder;
+import VASSAL.command.IndexedCommandEncoder;
 import VASSAL.configure.Configurer;
 import VASSAL.configure.IconConfigurer;
 import VASSAL.configure.StringArrayConfigurer;
 import VASSAL.configure.StringConfigurer;
 import VASSAL.configure.StringEnumConfigurer;
+import VASSAL.counters.VisualVersion;
 import VASSAL.i18n.Localization;
 import VASSAL.i18n.Resources;
 import VASSAL.tools.DataArchive;
@@ -60,7 +61,7 @@ import VASSAL.tools.SequenceEncoder;
 /**
  * Maintains a list of players involved in the current game
  */
-public class PlayerRoster extends AbstractConfigurable implements CommandEncoder, GameComponent, GameSetupStep {
+public class PlayerRoster extends AbstractConfigurable implements IndexedCommandEncoder, GameComponent, GameSetupStep {
   public static final String BUTTON_ICON = "buttonIcon"; //$NON-NLS-1$
   public static final String BUTTON_TEXT = "buttonText"; //$NON-NLS-1$
   public static final String TOOL_TIP = "buttonToolTip"; //$NON-NLS-1$
@@ -269,6 +270,8 @@ public class PlayerRoster extends AbstractConfigurable implements CommandEncoder
   }
 
   protected void fireSideChange(String oldSide, String newSide) {
+    // pieces may look different to a different side
+    VisualVersion.propertiesChanged();
     for (SideChangeListener l : sideChangeListeners) {
       l.sideChanged(oldSide, newSide);
     }
@@ -349,6 +352,14 @@ public class PlayerRoster extends AbstractConfigurable implements CommandEncoder
     }
   }
 
+  public String[] getCommandPrefixes() {
+    return new String[]{COMMAND_PREFIX};
+  }
+
+  public Class<?>[] getCommandClasses() {
+    return new Class<?>[]{Add.class};
+  }
+
   public Command getRestoreCommand() {
     Command c = null;
     for (PlayerInfo entry : players) {
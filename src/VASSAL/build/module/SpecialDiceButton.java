@@ -49,7 +49,7 @@ import VASSAL.build.module.properties.MutablePropertiesContainer;
 import VASSAL.build.module.properties.MutableProperty;
 import VASSAL.build.module.properties.MutableProperty.Impl;
 import VASSAL.command.Command;
-import VASSAL.command.CommandEncoder;
+import VASSAL.command.IndexedCommandEncoder;
 import VASSAL.command.NullCommand;
 import VASSAL.configure.ColorConfigurer;
 import VASSAL.configure.Configurer;
@@ -72,7 +72,7 @@ import VASSAL.tools.imageop.Op;
  * ...
  */
 // TODO Expose result as property
-public class SpecialDiceButton extends AbstractConfigurable implements CommandEncoder, UniqueIdManager.Identifyable {
+public class SpecialDiceButton extends AbstractConfigurable implements IndexedCommandEncoder, UniqueIdManager.Identifyable {
   private static final Logger logger =
     LoggerFactory.getLogger(SpecialDiceButton.class);
 
@@ -567,6 +567,18 @@ public class SpecialDiceButton extends AbstractConfigurable implements CommandEn
     }
   }
 
+  public String[] getCommandPrefixes() {
+    return new String[]{
+      SHOW_RESULTS_COMMAND + getConfigureName(),
+      SHOW_RESULTS_COMMAND + getId(),
+      getId() + '\t'
+    };
+  }
+
+  public Class<?>[] getCommandClasses() {
+    return new Class<?>[]{ShowResults.class};
+  }
+
   public Command decode(String s) {
     SequenceEncoder.Decoder st = null;
     if (s.startsWith(SHOW_RESULTS_COMMAND + getConfigureName()) || s.startsWith(SHOW_RESULTS_COMMAND + getId())) {
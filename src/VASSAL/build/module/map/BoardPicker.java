@@ -66,6 +66,7 @@ import VASSAL.build.module.map.boardPicker.Board;
 import VASSAL.build.module.map.boardPicker.BoardSlot;
 import VASSAL.command.Command;
 import VASSAL.command.CommandEncoder;
+import VASSAL.command.IndexedCommandEncoder;
 import VASSAL.configure.ConfigureTree;
 import VASSAL.configure.Configurer;
 import VASSAL.configure.DoubleConfigurer;
@@ -84,7 +85,7 @@ import VASSAL.tools.SequenceEncoder;
  * recognizes {@link Command}s that specify the set of boards to be used on a map. As a {@link GameComponent} it reacts
  * to the start of a game by prompting the player to select boards if none have been specified.
  */
-public class BoardPicker extends AbstractBuildable implements ActionListener, GameComponent, GameSetupStep, Configurable, CommandEncoder, ValidityChecker {
+public class BoardPicker extends AbstractBuildable implements ActionListener, GameComponent, GameSetupStep, Configurable, IndexedCommandEncoder, ValidityChecker {
   private static final long serialVersionUID = 1L;
   public static final String ID = "BoardPicker"; //$NON-NLS-1$
   protected List<Board> possibleBoards = new ArrayList<Board>();
@@ -734,6 +735,14 @@ public class BoardPicker extends AbstractBuildable implements ActionListener, Ga
     }
   }
 
+  public String[] getCommandPrefixes() {
+    return new String[]{map.getId() + ID, map.getConfigureName() + ID};
+  }
+
+  public Class<?>[] getCommandClasses() {
+    return new Class<?>[]{SetBoards.class};
+  }
+
   public static class SetBoards extends Command {
     private BoardPicker target;
     private List<Board> boards;
@@ -18,6 +18,7 @@
  */
 package VASSAL.build.module.map;
 
+import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -31,7 +32,7 @@ import VASSAL.counters.Stack;
  * pieces into distinct layers.  The layers are drawn in order of their index, i.e.
  * layer 0 is on the bottom.
  */
-public abstract class CompoundPieceCollection implements PieceCollection {
+public abstract class CompoundPieceCollection implements IndexedPieceCollection {
   protected SimplePieceCollection[] layers;
   protected int bottomLayer = 0;
   protected boolean[] enabled;
@@ -103,6 +104,42 @@ public abstract class CompoundPieceCollection implements PieceCollection {
 
   }
 
+  public GamePiece[] getPiecesNear(Rectangle area) {
+    return getPiecesNear(area, false);
+  }
+
+  public GamePiece[] getAllPiecesNear(Rectangle area) {
+    return getPiecesNear(area, true);
+  }
+
+  protected GamePiece[] getPiecesNear(Rectangle area, boolean includeDisabled) {
+    ArrayList<GamePiece> l = new ArrayList<GamePiece>();
+    int layer = bottomLayer;
+    for (int i = 0; i < layers.length; ++i) {
+      if (includeDisabled || enabled[layer]) {
+        l.addAll(Arrays.asList(layers[layer].getPiecesNear(area)));
+      }
+      layer++;
+      if (layer >= layers.length) {
+        layer = 0;
+      }
+    }
+    return l.toArray(new GamePiece[l.size()]);
+  }
+
+  public void pieceMoved(GamePiece p) {
+    // the layer of a piece can change with its properties, so look in all
+    for (int i = 0; i < layers.length; ++i) {
+      layers[i].pieceMoved(p);
+    }
+  }
+
+  public void pieceChanged(GamePiece p) {
+    for (int i = 0; i < layers.length; ++i) {
+      layers[i].pieceChanged(p);
+    }
+  }
+
   public int indexOf(GamePiece p) {
     int layer = getLayerForPiece(p);
     int index = layers[layer].indexOf(p);
@@ -244,6 +281,14 @@ public abstract class CompoundPieceCollection implements PieceCollection {
     }
   }
 
+  /**
+   * @return whether the pieces in the given layer are shown
+   * @since 3.2.3
+   */
+  public boolean isLayerEnabled(int layer) {
+    return layer >= 0 && layer < layers.length && enabled[layer];
+  }
+
   public void setLayerEnabled(String layer, boolean b) {
     setLayerEnabled(getLayerForName(layer), b);
   }
@@ -427,10 +427,12 @@ public class CounterDetailViewer extends AbstractConfigurable implements Drawabl
    * on selection criteria setup in config.
    */
   protected List<GamePiece> getDisplayablePieces() {
-    GamePiece[] allPieces = map.getPieces(); // All pieces from bottom up
+    final Point pt = map.mapCoordinates(currentMousePosition.getPoint());
 
-    Visitor visitor = new Visitor(new Filter(), map,
-      map.mapCoordinates(currentMousePosition.getPoint()));
+    // All pieces near the point from bottom up
+    GamePiece[] allPieces = map.getPiecesNear(new Rectangle(pt));
+
+    Visitor visitor = new Visitor(new Filter(), map, pt);
     DeckVisitorDispatcher dispatcher = new DeckVisitorDispatcher(visitor);
 
     /*
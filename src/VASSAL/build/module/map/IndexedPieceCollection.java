@@ -0,0 +1,68 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.build.module.map;
+
+import java.awt.Rectangle;
+
+import VASSAL.counters.GamePiece;
+
+/**
+ * A {@link PieceCollection} which can quickly find the pieces near
+ * an area of the map.
+ *
+ * @since 3.2.3
+ */
+public interface IndexedPieceCollection extends PieceCollection {
+  /**
+   * Return the pieces which may lie at or overlap an area. No piece in
+   * {@link #getPieces()} which does is omitted, but some which do not
+   * may be included.
+   *
+   * @param area the area, in map coordinates
+   * @return the pieces near the area, in the order of {@link #getPieces()}
+   */
+  GamePiece[] getPiecesNear(Rectangle area);
+
+  /**
+   * As {@link #getPiecesNear}, but for the pieces in
+   * {@link #getAllPieces()}.
+   *
+   * @param area the area, in map coordinates
+   * @return the pieces near the area, in the order of
+   * {@link #getAllPieces()}
+   */
+  GamePiece[] getAllPiecesNear(Rectangle area);
+
+  /**
+   * Called when a piece in the collection has moved, so that it can be
+   * found near its new position.
+   *
+   * @param p the piece. Pieces not in the collection are ignored.
+   */
+  void pieceMoved(GamePiece p);
+
+  /**
+   * Called when a piece in the collection may have changed shape, so that
+   * it can be found near any area it now overlaps.
+   *
+   * @param p the piece. Pieces not in the collection are ignored.
+   */
+  void pieceChanged(GamePiece p);
+}
@@ -165,7 +165,9 @@ public class KeyBufferer extends MouseAdapter implements Buildable, MouseMotionL
       if (!evt.isShiftDown() && !evt.isControlDown()) {
         KeyBuffer.getBuffer().clear();
       }
-      map.apply(d);
+      for (GamePiece p : map.getPiecesNear(selection)) {
+        d.accept(p);
+      }
       repaintSelectionRect();
     }
     selection = null;
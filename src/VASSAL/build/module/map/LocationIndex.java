@@ -0,0 +1,294 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.build.module.map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import VASSAL.build.module.Map;
+import VASSAL.build.module.properties.PropertyValue;
+import VASSAL.counters.GamePiece;
+import VASSAL.counters.Stack;
+import VASSAL.counters.VisualVersion;
+
+/**
+ * Groups the pieces on a {@link Map} by the name of their location, as
+ * given by {@link Map#locationName}, and keeps totals of their numeric
+ * properties at each location.
+ *
+ * <p>The index is kept up to date piece by piece. The map must
+ * {@link #add} and {@link #remove} its top-level pieces as they join and
+ * leave it, and pass those which have moved to {@link #move}, which finds
+ * the name of the new location of that piece alone. Only when location
+ * names change, as when the boards are set, is the index
+ * {@link #invalidate invalidated} and rebuilt from all the pieces.</p>
+ *
+ * <p>The total of a property at a location is kept from when it is first
+ * asked for until a piece there {@link #changed changes} or moves away,
+ * another piece moves there, layers are enabled or disabled, or
+ * properties held outside of pieces {@link VisualVersion#propertiesChanged
+ * change}. Totals over pieces which have
+ * {@link VisualVersion#countsProperties uncounted properties}, such as
+ * calculated properties, are not kept, but found afresh each time.</p>
+ *
+ * <p>Pieces in disabled layers are left out of the pieces and totals at a
+ * location.</p>
+ *
+ * @since 3.2.3
+ */
+public class LocationIndex {
+  private static final GamePiece[] EMPTY = new GamePiece[0];
+
+  private static class Location {
+    final List<GamePiece> pieces = new ArrayList<GamePiece>(1);
+    final HashMap<String,Integer> totals = new HashMap<String,Integer>();
+  }
+
+  private final Map map;
+
+  private final HashMap<String,Location> locations =
+    new HashMap<String,Location>();
+  private final IdentityHashMap<GamePiece,String> names =
+    new IdentityHashMap<GamePiece,String>();
+
+  private boolean valid = false;
+
+  // the state in which the totals were taken
+  private long propertiesAt;
+  private boolean[] layersAt;
+
+  public LocationIndex(Map map) {
+    this.map = map;
+  }
+
+  /**
+   * Mark the index as out of date, as when location names change.
+   */
+  public synchronized void invalidate() {
+    valid = false;
+  }
+
+  /**
+   * Remove all pieces from the index.
+   */
+  public synchronized void clear() {
+    locations.clear();
+    names.clear();
+    valid = true;
+  }
+
+  /**
+   * Add a top-level piece to the index.
+   *
+   * @param p the piece
+   */
+  public synchronized void add(GamePiece p) {
+    if (valid && !names.containsKey(p)) {
+      put(p, map.locationName(p.getPosition()));
+    }
+  }
+
+  /**
+   * Remove a piece from the index.
+   *
+   * @param p the piece
+   */
+  public synchronized void remove(GamePiece p) {
+    if (valid) {
+      final String name = names.remove(p);
+      if (name != null) {
+        final Location l = locations.get(name);
+        l.pieces.remove(p);
+        if (l.pieces.isEmpty()) {
+          locations.remove(name);
+        }
+        else {
+          l.totals.clear();
+        }
+      }
+    }
+  }
+
+  /**
+   * Move a piece to the location of its current position. Pieces which
+   * are not in the index are ignored.
+   *
+   * @param p the piece
+   */
+  public synchronized void move(GamePiece p) {
+    if (valid && names.containsKey(p)) {
+      final String name = map.locationName(p.getPosition());
+      if (!eq(name, names.get(p))) {
+        remove(p);
+        put(p, name);
+      }
+    }
+  }
+
+  /**
+   * Drop the totals at the location of a piece whose state has changed.
+   * Pieces which are not in the index are ignored.
+   *
+   * @param p the top-level piece
+   */
+  public synchronized void changed(GamePiece p) {
+    if (valid && names.containsKey(p)) {
+      locations.get(names.get(p)).totals.clear();
+    }
+  }
+
+  private void put(GamePiece p, String name) {
+    names.put(p, name);
+    Location l = locations.get(name);
+    if (l == null) {
+      l = new Location();
+      locations.put(name, l);
+    }
+    l.pieces.add(p);
+    l.totals.clear();
+  }
+
+  private static boolean eq(String a, String b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  private void validate() {
+    if (!valid) {
+      locations.clear();
+      names.clear();
+      for (GamePiece p : map.getAllPieces()) {
+        put(p, map.locationName(p.getPosition()));
+      }
+      valid = true;
+    }
+
+    final long c = VisualVersion.getPropertyChanges();
+    final boolean[] layers = getLayers();
+    if (c != propertiesAt || !Arrays.equals(layers, layersAt)) {
+      for (Location l : locations.values()) {
+        l.totals.clear();
+      }
+      propertiesAt = c;
+      layersAt = layers;
+    }
+  }
+
+  /** @return which layers of the map are enabled */
+  private boolean[] getLayers() {
+    final PieceCollection pc = map.getPieceCollection();
+    if (!(pc instanceof CompoundPieceCollection)) {
+      return null;
+    }
+
+    final CompoundPieceCollection c = (CompoundPieceCollection) pc;
+    final boolean[] layers = new boolean[c.getLayerCount()];
+    for (int i = 0; i < layers.length; ++i) {
+      layers[i] = c.isLayerEnabled(i);
+    }
+    return layers;
+  }
+
+  private List<GamePiece> getVisible(Location l) {
+    final PieceCollection pc = map.getPieceCollection();
+    if (!(pc instanceof CompoundPieceCollection)) {
+      return l.pieces;
+    }
+
+    final CompoundPieceCollection c = (CompoundPieceCollection) pc;
+    final List<GamePiece> visible = new ArrayList<GamePiece>(l.pieces.size());
+    for (GamePiece p : l.pieces) {
+      if (c.isLayerEnabled(c.getLayerForPiece(p))) {
+        visible.add(p);
+      }
+    }
+    return visible;
+  }
+
+  /**
+   * @param location a location name
+   * @return the top-level pieces (including {@link Stack}s) in enabled
+   * layers at the location
+   */
+  public synchronized GamePiece[] getPieces(String location) {
+    validate();
+
+    final Location l = locations.get(location);
+    if (l == null) {
+      return EMPTY;
+    }
+
+    final List<GamePiece> visible = getVisible(l);
+    return visible.toArray(new GamePiece[visible.size()]);
+  }
+
+  /**
+   * Return the total of a property over the pieces in enabled layers at a
+   * location, including those in {@link Stack}s. Values which are not
+   * integers count as 0.
+   *
+   * @param location a location name
+   * @param property a property name
+   * @return the total
+   */
+  public synchronized int getTotal(String location, String property) {
+    validate();
+
+    final Location l = locations.get(location);
+    if (l == null) {
+      return 0;
+    }
+
+    final Integer kept = l.totals.get(property);
+    if (kept != null) {
+      return kept;
+    }
+
+    int total = 0;
+    boolean counted = true;
+    for (GamePiece p : getVisible(l)) {
+      if (p instanceof Stack) {
+        final Stack s = (Stack) p;
+        for (int i = 0; i < s.getPieceCount(); ++i) {
+          final GamePiece child = s.getPieceAt(i);
+          total += intValue(property, child);
+          counted = counted && VisualVersion.countsProperties(child);
+        }
+      }
+      else {
+        total += intValue(property, p);
+        counted = counted && VisualVersion.countsProperties(p);
+      }
+    }
+
+    if (counted) {
+      l.totals.put(property, total);
+    }
+    return total;
+  }
+
+  /** @return the value of a property if it is an integer, or 0 */
+  private static int intValue(String property, GamePiece p) {
+    final PropertyValue v = PropertyValue.get(p, property, false);
+    return v.isInt() ? v.intValue() : 0;
+  }
+}
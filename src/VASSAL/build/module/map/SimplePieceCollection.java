@@ -18,14 +18,20 @@
  */
 package VASSAL.build.module.map;
 
+import java.awt.Rectangle;
+
 import VASSAL.counters.GamePiece;
 import VASSAL.tools.ArrayUtils;
 
-/** Stores {@link VASSAL.counters.GamePiece}s in a simple array */
-public class SimplePieceCollection implements PieceCollection {
+/**
+ * Stores {@link VASSAL.counters.GamePiece}s in a simple array, with a
+ * {@link SpatialIndex} to find those near an area
+ */
+public class SimplePieceCollection implements IndexedPieceCollection {
   private int capacity = 100, incr = 25;
   private GamePiece pieces[] = new GamePiece[capacity];
   private int pieceCount = 0;
+  private final SpatialIndex spatialIndex = new SpatialIndex();
 
   /**
    * Returns the index of a piece.  When painting the map, pieces
@@ -48,11 +54,13 @@ public class SimplePieceCollection implements PieceCollection {
       pieces = new GamePiece[capacity];
       System.arraycopy(oldStack, 0, pieces, 0, pieceCount);
     }
+    spatialIndex.add(p, pieceCount);
     pieces[pieceCount++] = p;
   }
 
   public void clear() {
     pieceCount = 0;
+    spatialIndex.clear();
   }
 
   public void remove(GamePiece p) {
@@ -67,10 +75,29 @@ public class SimplePieceCollection implements PieceCollection {
     return getPieces();
   }
 
+  public GamePiece[] getPiecesNear(Rectangle area) {
+    return spatialIndex.getPieces(area);
+  }
+
+  public GamePiece[] getAllPiecesNear(Rectangle area) {
+    return getPiecesNear(area);
+  }
+
+  public void pieceMoved(GamePiece p) {
+    spatialIndex.move(p);
+  }
+
+  public void pieceChanged(GamePiece p) {
+    spatialIndex.reshape(p);
+  }
+
   private void removePieceAt(int gone) {
     if (gone >= 0) {
-      for (int i = gone; i < pieceCount - 1; ++i)
+      spatialIndex.remove(pieces[gone]);
+      for (int i = gone; i < pieceCount - 1; ++i) {
         pieces[i] = pieces[i + 1];
+        spatialIndex.setOrder(pieces[i], i);
+      }
       pieceCount--;
     }
   }
@@ -85,6 +112,9 @@ public class SimplePieceCollection implements PieceCollection {
         pieces[i] = pieces[i - 1];
       }
       pieces[pos] = s;
+      for (int i = Math.min(index, pos); i <= Math.max(index, pos); ++i) {
+        spatialIndex.setOrder(pieces[i], i);
+      }
     }
   }
 
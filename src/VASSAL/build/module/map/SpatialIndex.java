@@ -0,0 +1,365 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.build.module.map;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import VASSAL.build.module.Map;
+import VASSAL.counters.Deck;
+import VASSAL.counters.GamePiece;
+import VASSAL.counters.Stack;
+
+/**
+ * A uniform grid over the positions of a collection of pieces, used to
+ * find the pieces which may lie at or overlap an area without testing
+ * every piece.
+ *
+ * <p>The grid also records the <em>reach</em> of the pieces, the greatest
+ * distance from its position at which any part of a piece (or, for a
+ * {@link Stack}, of its contents) is drawn. Pieces are found by looking up
+ * positions within that distance of the area.</p>
+ *
+ * <p>The index is kept up to date piece by piece. The owner of the index
+ * must {@link #add} and {@link #remove} pieces as they join and leave the
+ * collection, and tell it of a new drawing order with {@link #setOrder}.
+ * A piece which has moved must be passed to {@link #move}, which moves it
+ * to its new cell, and one which may have changed shape to
+ * {@link #reshape}, which has its reach measured again on the next query.
+ * Only when the piece of greatest reach shrinks is the reach of the grid
+ * found again from all the pieces.</p>
+ *
+ * <p>Pieces may report changes while they are drawn, so the index is
+ * safe for use by several threads.</p>
+ *
+ * @since 3.2.3
+ */
+public class SpatialIndex {
+  /** log2 of the width and height of a cell of the grid */
+  protected static final int CELL_SHIFT = 7;
+
+  /** Allowance added to the reach of each piece */
+  protected static final int SLACK = 2;
+
+  private static final GamePiece[] EMPTY = new GamePiece[0];
+
+  private static class Entry {
+    final GamePiece piece;
+    int order;
+    int x;
+    int y;
+    Long cell;
+    int reach;
+    boolean queued;
+
+    Entry(GamePiece piece, int order) {
+      this.piece = piece;
+      this.order = order;
+    }
+  }
+
+  private static final Comparator<Entry> DRAWING_ORDER =
+    new Comparator<Entry>() {
+      public int compare(Entry a, Entry b) {
+        return a.order < b.order ? -1 : (a.order == b.order ? 0 : 1);
+      }
+    };
+
+  private final IdentityHashMap<GamePiece,Entry> entries =
+    new IdentityHashMap<GamePiece,Entry>();
+  private final HashMap<Long,List<Entry>> cells =
+    new HashMap<Long,List<Entry>>();
+
+  // pieces whose reach is to be measured on the next query
+  private final List<Entry> unmeasured = new ArrayList<Entry>();
+
+  private int reach;
+  private boolean reachStale = false;
+
+  /**
+   * Add a piece to the index.
+   *
+   * @param p the piece
+   * @param order the position of the piece in drawing order
+   */
+  public synchronized void add(GamePiece p, int order) {
+    if (entries.containsKey(p)) {
+      setOrder(p, order);
+      move(p);
+      return;
+    }
+
+    final Entry e = new Entry(p, order);
+    entries.put(p, e);
+    place(e);
+    e.queued = true;
+    unmeasured.add(e);
+  }
+
+  /**
+   * Remove a piece from the index.
+   *
+   * @param p the piece
+   */
+  public synchronized void remove(GamePiece p) {
+    final Entry e = entries.remove(p);
+    if (e != null) {
+      unplace(e);
+      if (e.reach > 0 && e.reach >= reach) {
+        reachStale = true;
+      }
+    }
+  }
+
+  /**
+   * Remove all pieces from the index.
+   */
+  public synchronized void clear() {
+    entries.clear();
+    cells.clear();
+    unmeasured.clear();
+    reach = 0;
+    reachStale = false;
+  }
+
+  /**
+   * Set the position of a piece in drawing order.
+   *
+   * @param p the piece
+   * @param order the position of the piece in drawing order
+   */
+  public synchronized void setOrder(GamePiece p, int order) {
+    final Entry e = entries.get(p);
+    if (e != null) {
+      e.order = order;
+    }
+  }
+
+  /**
+   * Move a piece to the cell of its current position. Pieces which are
+   * not in the index are ignored.
+   *
+   * @param p the piece
+   */
+  public synchronized void move(GamePiece p) {
+    final Entry e = entries.get(p);
+    if (e != null) {
+      final Point pos = p.getPosition();
+      if (pos.x != e.x || pos.y != e.y) {
+        unplace(e);
+        place(e);
+      }
+    }
+  }
+
+  /**
+   * Measure the reach of a piece again on the next query, as it may have
+   * changed shape. Pieces which are not in the index are ignored.
+   *
+   * @param p the piece
+   */
+  public synchronized void reshape(GamePiece p) {
+    final Entry e = entries.get(p);
+    if (e != null && !e.queued) {
+      e.queued = true;
+      unmeasured.add(e);
+    }
+  }
+
+  /**
+   * @return whether the piece is in the index
+   */
+  public synchronized boolean contains(GamePiece p) {
+    return entries.containsKey(p);
+  }
+
+  private void place(Entry e) {
+    final Point pos = e.piece.getPosition();
+    e.x = pos.x;
+    e.y = pos.y;
+    e.cell = key(pos.x >> CELL_SHIFT, pos.y >> CELL_SHIFT);
+
+    List<Entry> cell = cells.get(e.cell);
+    if (cell == null) {
+      cell = new ArrayList<Entry>(1);
+      cells.put(e.cell, cell);
+    }
+    cell.add(e);
+  }
+
+  private void unplace(Entry e) {
+    final List<Entry> cell = cells.get(e.cell);
+    if (cell != null) {
+      cell.remove(e);
+      if (cell.isEmpty()) {
+        cells.remove(e.cell);
+      }
+    }
+  }
+
+  private void measure() {
+    // pieces are measured outside of the lock, as they may report
+    // changes to this and other indices while they are measured
+    final Entry[] todo;
+    synchronized (this) {
+      if (unmeasured.isEmpty() && !reachStale) {
+        return;
+      }
+      todo = unmeasured.toArray(new Entry[unmeasured.size()]);
+      unmeasured.clear();
+      for (Entry e : todo) {
+        e.queued = false;
+      }
+    }
+
+    final int[] r = new int[todo.length];
+    for (int i = 0; i < todo.length; ++i) {
+      r[i] = getReach(todo[i].piece);
+    }
+
+    synchronized (this) {
+      for (int i = 0; i < todo.length; ++i) {
+        final Entry e = todo[i];
+        if (entries.get(e.piece) != e) {
+          // removed since
+          continue;
+        }
+
+        if (r[i] < e.reach && e.reach >= reach) {
+          reachStale = true;
+        }
+        e.reach = r[i];
+        reach = Math.max(reach, r[i]);
+      }
+
+      if (reachStale) {
+        reach = 0;
+        for (Entry e : entries.values()) {
+          reach = Math.max(reach, e.reach);
+        }
+        reachStale = false;
+      }
+    }
+  }
+
+  /**
+   * Return the pieces which may lie at or overlap an area. No piece which
+   * does is omitted, but some which do not may be included.
+   *
+   * @param area the area, in map coordinates
+   * @return the pieces near the area, in drawing order
+   */
+  public GamePiece[] getPieces(Rectangle area) {
+    measure();
+    return find(area);
+  }
+
+  private synchronized GamePiece[] find(Rectangle area) {
+    if (entries.isEmpty()) {
+      return EMPTY;
+    }
+
+    final long x0 = (long) area.x - reach;
+    final long y0 = (long) area.y - reach;
+    final long x1 = (long) area.x + area.width + reach;
+    final long y1 = (long) area.y + area.height + reach;
+
+    final List<Entry> found = new ArrayList<Entry>();
+
+    final long cx0 = x0 >> CELL_SHIFT;
+    final long cy0 = y0 >> CELL_SHIFT;
+    final long cx1 = x1 >> CELL_SHIFT;
+    final long cy1 = y1 >> CELL_SHIFT;
+
+    if ((cx1 - cx0 + 1) * (cy1 - cy0 + 1) > cells.size()) {
+      // the area covers more cells than are occupied
+      for (java.util.Map.Entry<Long,List<Entry>> e : cells.entrySet()) {
+        final long k = e.getKey();
+        final long cx = k >> 32;
+        final long cy = (int) k;
+        if (cx >= cx0 && cx <= cx1 && cy >= cy0 && cy <= cy1) {
+          found.addAll(e.getValue());
+        }
+      }
+    }
+    else {
+      for (long cx = cx0; cx <= cx1; ++cx) {
+        for (long cy = cy0; cy <= cy1; ++cy) {
+          final List<Entry> cell = cells.get(key((int) cx, (int) cy));
+          if (cell != null) {
+            found.addAll(cell);
+          }
+        }
+      }
+    }
+
+    Collections.sort(found, DRAWING_ORDER);
+
+    final List<GamePiece> l = new ArrayList<GamePiece>(found.size());
+    for (Entry e : found) {
+      if (e.x >= x0 && e.x <= x1 && e.y >= y0 && e.y <= y1) {
+        l.add(e.piece);
+      }
+    }
+    return l.toArray(new GamePiece[l.size()]);
+  }
+
+  /**
+   * @return the greatest distance from its position at which any part of
+   * the piece lies
+   */
+  protected int getReach(GamePiece p) {
+    final Rectangle r;
+    if (p instanceof Stack && !(p instanceof Deck)) {
+      // the contents of an expanded Stack are spread out
+      final Stack s = (Stack) p;
+      final Map m = s.getMap();
+      final StackMetrics metrics =
+        m == null ? s.getDefaultMetrics() : m.getStackMetrics();
+      final Rectangle[] bounds = new Rectangle[s.getPieceCount()];
+      final Point[] positions = new Point[bounds.length];
+      metrics.getContents(s, positions, null, bounds, 0, 0);
+      r = new Rectangle();
+      for (int i = 0; i < bounds.length; ++i) {
+        if (bounds[i] != null) {
+          r.add(bounds[i]);
+          r.add(positions[i]);
+        }
+      }
+    }
+    else {
+      r = p.boundingBox();
+      r.add(p.getShape().getBounds());
+    }
+
+    return Math.max(Math.max(-r.x, r.x + r.width),
+                    Math.max(-r.y, r.y + r.height)) + SLACK;
+  }
+
+  private static Long key(int cx, int cy) {
+    return ((long) cx << 32) | (cy & 0xffffffffL);
+  }
+}
@@ -228,6 +228,15 @@ public class Zoomer extends AbstractConfigurable implements GameComponent {
       return custom < 0 ? cur < levels.length-1 : cur < levels.length;
     }
 
+    public double getHigherZoom() {
+      if (!hasHigherLevel()) return -1;
+      return levels[custom < 0 ? cur+1 : cur];
+    }
+
+    public double getLowerZoom() {
+      return hasLowerLevel() ? levels[cur-1] : -1;
+    }
+
     public List<Double> getLevels() {
       final ArrayList<Double> l = new ArrayList<Double>(levels.length);
       for (double d : levels) l.add(d);
@@ -838,6 +847,24 @@ public class Zoomer extends AbstractConfigurable implements GameComponent {
     updateZoomer(center);
   }
 
+  /**
+   * @return the zoom factor which {@link #zoomIn} would set, or
+   * <code>-1</code> if there is no higher zoom level
+   * @since 3.2.3
+   */
+  public double getZoomInFactor() {
+    return state.getHigherZoom();
+  }
+
+  /**
+   * @return the zoom factor which {@link #zoomOut} would set, or
+   * <code>-1</code> if there is no lower zoom level
+   * @since 3.2.3
+   */
+  public double getZoomOutFactor() {
+    return state.getLowerZoom();
+  }
+
   public void zoomIn() {
     if (state.hasHigherLevel()) {
       final Point center = getMapCenter();
@@ -30,9 +30,12 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
@@ -49,6 +52,7 @@ import VASSAL.build.Builder;
 import VASSAL.build.GameModule;
 import VASSAL.build.module.GameComponent;
 import VASSAL.build.module.Map;
+import VASSAL.build.module.map.Zoomer;
 import VASSAL.build.module.documentation.HelpFile;
 import VASSAL.build.module.map.boardPicker.board.HexGrid;
 import VASSAL.build.module.map.boardPicker.board.MapGrid;
@@ -300,6 +304,8 @@ public class Board extends AbstractConfigurable implements GridContainer {
   private ConcurrentMap<Point,Future<BufferedImage>> o_requested =
     new ConcurrentHashMap<Point,Future<BufferedImage>>();
 
+  private final TilePrefetcher prefetcher = new TilePrefetcher();
+
   private static Comparator<Point> tileOrdering = new Comparator<Point>() {
     public int compare(Point t1, Point t2) {
       if (t1.y < t2.y) return -1;
@@ -314,8 +320,9 @@ public class Board extends AbstractConfigurable implements GridContainer {
       g.drawImage(fim.get(), tx, ty, obs);
     }
     catch (CancellationException e) {
-      // FIXME: bug until we permit cancellation
-      ErrorDialog.bug(e);
+      // Another view of this board no longer wanted the tile. It will be
+      // requested again when we repaint.
+      if (obs != null) obs.repaint();
     }
     catch (InterruptedException e) {
       // This happens if taking a snapshot of the map is cancelled.
@@ -431,11 +438,13 @@ public class Board extends AbstractConfigurable implements GridContainer {
                 }
               }
               else {
-                if ((map != null) && (obs == map.getView())) {
-                  requested.putIfAbsent(tile, fim);
-                }
-                else {
-                  o_requested.putIfAbsent(tile, fim);
+                final Future<BufferedImage> old =
+                  (map != null) && (obs == map.getView()) ?
+                  requested.put(tile, fim) : o_requested.put(tile, fim);
+
+                // a request for this tile at another zoom is not wanted
+                if (old != null && old != fim && !old.isDone()) {
+                  Op.cancel(old);
                 }
               }
             }
@@ -452,39 +461,23 @@ public class Board extends AbstractConfigurable implements GridContainer {
           }
         }
 
-        if ((map != null) && (obs == map.getView())) {
-          for (Point tile : requested.keySet().toArray(new Point[0])) {
-            if (Arrays.binarySearch(tiles, tile, tileOrdering) < 0) {
-              requested.remove(tile);
-            }
-          }
-        }
-        else {
-          for (Point tile : o_requested.keySet().toArray(new Point[0])) {
-            if (Arrays.binarySearch(tiles, tile, tileOrdering) < 0) {
-              o_requested.remove(tile);
-            }
-          }
-        }
-/*
-        final StringBuilder sb = new StringBuilder();
-        for (Point tile : requested.keySet().toArray(new Point[0])) {
+        // cancel requests for tiles which are no longer visible
+        final ConcurrentMap<Point,Future<BufferedImage>> req =
+          (map != null) && (obs == map.getView()) ? requested : o_requested;
+
+        for (Point tile : req.keySet().toArray(new Point[0])) {
           if (Arrays.binarySearch(tiles, tile, tileOrdering) < 0) {
-            final Future<Image> fim = requested.remove(tile);
-            if (!fim.isDone()) {
-              sb.append("(")
-                .append(tile.x)
-                .append(",")
-                .append(tile.y)
-                .append(") ");
+            final Future<BufferedImage> fim = req.remove(tile);
+            if (fim != null && !fim.isDone()) {
+              Op.cancel(fim);
             }
           }
         }
-        if (sb.length() > 0) {
-          sb.insert(0, "cancelling: ").append("\n");
-          System.out.print(sb.toString());
+
+        // request the tiles which will probably be wanted next
+        if (req == requested) {
+          prefetcher.prefetch(op, r, tiles, getAdjacentImageOps(zoom));
         }
-*/
       }
       else if (color != null) {
         g.setColor(color);
@@ -498,6 +491,35 @@ public class Board extends AbstractConfigurable implements GridContainer {
     }
   }
 
+  /**
+   * @return the operations producing the board image at the zoom levels
+   * adjacent to the current one
+   */
+  protected List<ImageOp> getAdjacentImageOps(double zoom) {
+    final Zoomer zoomer = map.getZoomer();
+    if (zoomer == null) {
+      return Collections.emptyList();
+    }
+
+    final List<ImageOp> ops = new ArrayList<ImageOp>(2);
+    for (double z : new double[] { zoomer.getZoomInFactor(),
+                                   zoomer.getZoomOutFactor() }) {
+      if (z <= 0) {
+        continue;
+      }
+
+      z *= magnification;
+      if (z == 1.0 && !reversed) {
+        ops.add(boardImageOp);
+      }
+      else {
+        final ImageOp sop = Op.scale(boardImageOp, z);
+        ops.add(reversed ? Op.rotate(sop, 180) : sop);
+      }
+    }
+    return ops;
+  }
+
   @Deprecated
   public synchronized Image getScaledImage(double zoom, Component obs) {
     try {
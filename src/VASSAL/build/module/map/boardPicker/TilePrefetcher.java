@@ -0,0 +1,144 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.build.module.map.boardPicker;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+import VASSAL.tools.imageop.ImageOp;
+import VASSAL.tools.imageop.Op;
+
+/**
+ * Requests tiles of a board which are not visible yet, but probably soon
+ * will be, so that they are ready when the view reaches them.
+ *
+ * <p>Each time the visible region of the board is drawn, the tiles just
+ * beyond it in the direction the view is moving are prefetched. If the
+ * view has not moved, or the zoom has changed, the tiles all around the
+ * visible region are prefetched instead. The visible region is also
+ * prefetched at the adjacent zoom levels. Prefetched tiles which are no
+ * longer expected to be wanted are cancelled.</p>
+ *
+ * <p>Prefetch requests are queued behind all requests for visible tiles.
+ * See {@link VASSAL.tools.opcache.OpCache#prefetch}.</p>
+ *
+ * @since 3.2.3
+ */
+public class TilePrefetcher {
+  private ImageOp lastOp;
+  private Rectangle lastRect;
+
+  private final Map<ImageOp,Future<BufferedImage>> prefetched =
+    new ConcurrentHashMap<ImageOp,Future<BufferedImage>>();
+
+  /**
+   * Prefetches the tiles which are likely to be drawn next.
+   *
+   * @param op the operation producing the board image at the current zoom
+   * @param r the visible region, relative to the board
+   * @param visible the indices of the visible tiles
+   * @param adjacent the operations producing the board image at the
+   * adjacent zoom levels
+   */
+  public void prefetch(ImageOp op, Rectangle r, Point[] visible,
+                       List<ImageOp> adjacent) {
+    final Set<ImageOp> wanted = new HashSet<ImageOp>();
+
+    // the visible tiles have been requested already
+    final Set<ImageOp> shown = new HashSet<ImageOp>();
+    for (Point p : visible) {
+      shown.add(op.getTileOp(p));
+    }
+
+    // tiles which the view is moving toward
+    final int tw = op.getTileWidth();
+    final int th = op.getTileHeight();
+
+    final Rectangle ahead;
+    if (op.equals(lastOp) && !r.getLocation().equals(lastRect.getLocation())) {
+      ahead = r.union(new Rectangle(
+        r.x + Integer.signum(r.x - lastRect.x)*tw,
+        r.y + Integer.signum(r.y - lastRect.y)*th,
+        r.width, r.height
+      ));
+    }
+    else {
+      ahead = new Rectangle(r.x - tw, r.y - th,
+                            r.width + 2*tw, r.height + 2*th);
+    }
+
+    for (Point p : op.getTileIndices(ahead)) {
+      final ImageOp top = op.getTileOp(p);
+      if (!shown.contains(top)) {
+        wanted.add(top);
+      }
+    }
+
+    // the visible region at the adjacent zoom levels
+    for (ImageOp aop : adjacent) {
+      final double s = (double) aop.getWidth() / op.getWidth();
+      final Rectangle ar = new Rectangle(
+        (int) (r.x*s), (int) (r.y*s),
+        (int) Math.ceil(r.width*s), (int) Math.ceil(r.height*s)
+      );
+
+      for (Point p : aop.getTileIndices(ar)) {
+        wanted.add(aop.getTileOp(p));
+      }
+    }
+
+    lastOp = op;
+    lastRect = new Rectangle(r);
+
+    // cancel prefetches which are no longer expected to be wanted
+    for (Iterator<Map.Entry<ImageOp,Future<BufferedImage>>> i =
+           prefetched.entrySet().iterator(); i.hasNext(); ) {
+      final Map.Entry<ImageOp,Future<BufferedImage>> e = i.next();
+      final ImageOp top = e.getKey();
+      final Future<BufferedImage> fim = e.getValue();
+
+      if (fim.isDone() || shown.contains(top)) {
+        // done, or now wanted by the view itself
+        i.remove();
+      }
+      else if (!wanted.contains(top)) {
+        Op.cancel(fim);
+        i.remove();
+      }
+    }
+
+    for (ImageOp top : wanted) {
+      if (!prefetched.containsKey(top)) {
+        final Future<BufferedImage> fim = Op.prefetch(top);
+        if (!fim.isDone()) {
+          prefetched.put(top, fim);
+        }
+      }
+    }
+  }
+}
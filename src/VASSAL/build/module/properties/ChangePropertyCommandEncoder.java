@@ -19,7 +19,7 @@
 package VASSAL.build.module.properties;
 
 import VASSAL.command.Command;
-import VASSAL.command.CommandEncoder;
+import VASSAL.command.IndexedCommandEncoder;
 import VASSAL.tools.SequenceEncoder;
 
 /**
@@ -28,7 +28,7 @@ import VASSAL.tools.SequenceEncoder;
  * @author rodneykinney
  *
  */
-public class ChangePropertyCommandEncoder implements CommandEncoder {
+public class ChangePropertyCommandEncoder implements IndexedCommandEncoder {
   protected static final String COMMAND_PREFIX = "MutableProperty\t";
   private MutablePropertiesContainer container;
 
@@ -76,4 +76,12 @@ public class ChangePropertyCommandEncoder implements CommandEncoder {
     }
     return s;
   }
+
+  public String[] getCommandPrefixes() {
+    return new String[]{COMMAND_PREFIX};
+  }
+
+  public Class<?>[] getCommandClasses() {
+    return new Class<?>[]{ChangePropertyCommand.class};
+  }
 }
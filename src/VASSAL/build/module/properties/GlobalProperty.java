@@ -28,7 +28,7 @@ import VASSAL.build.GameModule;
 import VASSAL.build.module.GameComponent;
 import VASSAL.build.module.documentation.HelpFile;
 import VASSAL.command.Command;
-import VASSAL.command.CommandEncoder;
+import VASSAL.command.IndexedCommandEncoder;
 import VASSAL.configure.VisibilityCondition;
 import VASSAL.tools.FormattedString;
 import VASSAL.tools.SequenceEncoder;
@@ -41,7 +41,7 @@ import VASSAL.tools.ToolBarComponent;
  * @author rkinney
  *
  */
-public class GlobalProperty extends AbstractConfigurable implements ToolBarComponent, GameComponent, CommandEncoder, PropertySource, MutableProperty {
+public class GlobalProperty extends AbstractConfigurable implements ToolBarComponent, GameComponent, IndexedCommandEncoder, PropertySource, MutableProperty {
   public static final String NAME = "name";
   public static final String INITIAL_VALUE = "initialValue";
   public static final String DESCRIPTION = "description";
@@ -254,6 +254,16 @@ public class GlobalProperty extends AbstractConfigurable implements ToolBarCompo
     }
     return s;
   }
+
+  public String[] getCommandPrefixes() {
+    final SequenceEncoder se = new SequenceEncoder(COMMAND_PREFIX, ';');
+    se.append(getPropertyId());
+    return new String[]{se.getValue() + ';'};
+  }
+
+  public Class<?>[] getCommandClasses() {
+    return new Class<?>[]{SetGlobalProperty.class};
+  }
   /**
    * Command to pass a new Global property value to other players or into the logfile.
    */
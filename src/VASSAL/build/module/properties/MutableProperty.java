@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import VASSAL.command.Command;
+import VASSAL.counters.VisualVersion;
 
 /**
  * A container for a String property that can be updated
@@ -143,6 +144,7 @@ public interface MutableProperty {
       String oldValue = value;
       Command c = getChangeCommand(value, newValue);
       value = newValue;
+      VisualVersion.propertiesChanged();
       propSupport.firePropertyChange(propertyName, oldValue, newValue);
       return c;
     }
@@ -0,0 +1,226 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+package VASSAL.build.module.properties;
+
+/**
+ * The value of a property together with its parsed forms. A property
+ * value is parsed once, when the <code>PropertyValue</code> is created,
+ * rather than each time it is compared or bound to an expression.
+ *
+ * <p>The text of a value is <code>String.valueOf</code> the property,
+ * or the empty string if the property's <code>toString()</code> returns
+ * <code>null</code>. The text is an <code>int</code> if {@link Integer#valueOf(String)}
+ * accepts it, else a <code>float</code> if {@link Float#valueOf(String)}
+ * accepts it. Common cases are recognized without throwing exceptions.</p>
+ *
+ * @since 3.2.3
+ */
+public final class PropertyValue {
+  private static final int STRING = 0;
+  private static final int BOOLEAN = 1;
+  private static final int INT = 2;
+  private static final int FLOAT = 3;
+
+  public static final PropertyValue NULL = new PropertyValue(null);
+
+  private final Object object;
+  private final String text;
+  private final int kind;
+  private final int intValue;
+  private final float floatValue;
+
+  private PropertyValue(Object object) {
+    this.object = object;
+
+    // toString() may return null, which we treat as empty
+    final String t = String.valueOf(object);
+    text = t == null ? "" : t;
+
+    int k = STRING;
+    int i = 0;
+    float f = 0.0f;
+
+    if (object == null) {
+      // not parsed
+    }
+    else if ("true".equals(text) || "false".equals(text)) {
+      k = BOOLEAN;
+    }
+    else if (isSimpleInt(text)) {
+      k = INT;
+      i = parseSimpleInt(text);
+    }
+    else if (mayBeNumber(text)) {
+      try {
+        i = Integer.valueOf(text).intValue();
+        k = INT;
+      }
+      catch (NumberFormatException e) {
+        try {
+          f = Float.valueOf(text).floatValue();
+          k = FLOAT;
+        }
+        catch (NumberFormatException e1) {
+          // Not a number
+        }
+      }
+    }
+
+    kind = k;
+    intValue = i;
+    floatValue = f;
+  }
+
+  /**
+   * @param object a property value
+   * @return the parsed value
+   */
+  public static PropertyValue valueOf(Object object) {
+    return object == null ? NULL : new PropertyValue(object);
+  }
+
+  /**
+   * Parse a property value unless it is the immutable object already
+   * parsed in <code>last</code>.
+   *
+   * @param object a property value
+   * @param last a previously parsed value, or <code>null</code>
+   * @return the parsed value
+   */
+  public static PropertyValue valueOf(Object object, PropertyValue last) {
+    return last != null && last.object == object && isImmutable(object) ?
+      last : valueOf(object);
+  }
+
+  /**
+   * @return the parsed value of a property of a {@link PropertySource},
+   * supplied directly if it is a {@link TypedPropertySource}
+   */
+  public static PropertyValue get(PropertySource source, Object key,
+                                  boolean localized) {
+    if (source instanceof TypedPropertySource) {
+      final TypedPropertySource ts = (TypedPropertySource) source;
+      return localized ?
+        ts.getLocalizedPropertyValue(key) : ts.getPropertyValue(key);
+    }
+    else {
+      return valueOf(localized ?
+        source.getLocalizedProperty(key) : source.getProperty(key));
+    }
+  }
+
+  /** @return the property value */
+  public Object getObject() {
+    return object;
+  }
+
+  /** @return whether the property value is <code>null</code> */
+  public boolean isNull() {
+    return object == null;
+  }
+
+  /** @return whether the text is <code>"true"</code> or <code>"false"</code> */
+  public boolean isBoolean() {
+    return kind == BOOLEAN;
+  }
+
+  public boolean booleanValue() {
+    return kind == BOOLEAN && "true".equals(text);
+  }
+
+  /** @return whether the text is an <code>int</code> */
+  public boolean isInt() {
+    return kind == INT;
+  }
+
+  public int intValue() {
+    return intValue;
+  }
+
+  /** @return whether the text is a <code>float</code> but not an <code>int</code> */
+  public boolean isFloat() {
+    return kind == FLOAT;
+  }
+
+  public float floatValue() {
+    return floatValue;
+  }
+
+  /** @return the text of the property value */
+  public String toString() {
+    return text;
+  }
+
+  private static boolean isImmutable(Object o) {
+    return o instanceof String || o instanceof Integer ||
+           o instanceof Boolean || o instanceof Long ||
+           o instanceof Float || o instanceof Double;
+  }
+
+  /** @return whether s is an optional '-' followed by 1 to 9 digits */
+  private static boolean isSimpleInt(String s) {
+    final int len = s.length();
+    final int start = len > 0 && s.charAt(0) == '-' ? 1 : 0;
+    if (len == start || len - start > 9) {
+      return false;
+    }
+
+    for (int i = start; i < len; ++i) {
+      final char c = s.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int parseSimpleInt(String s) {
+    final boolean neg = s.charAt(0) == '-';
+    int n = 0;
+    for (int i = neg ? 1 : 0; i < s.length(); ++i) {
+      n = 10*n + (s.charAt(i) - '0');
+    }
+    return neg ? -n : n;
+  }
+
+  /**
+   * @return false if neither {@link Integer#valueOf(String)} nor
+   * {@link Float#valueOf(String)} could accept s
+   */
+  private static boolean mayBeNumber(String s) {
+    // Float.valueOf ignores leading whitespace
+    final int len = s.length();
+    int i = 0;
+    while (i < len && s.charAt(i) <= ' ') {
+      ++i;
+    }
+
+    if (i < len && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+      ++i;
+    }
+
+    if (i == len) {
+      return false;
+    }
+
+    // a digit, a decimal point, NaN or Infinity
+    final char c = s.charAt(i);
+    return (c >= '0' && c <= '9') || c == '.' || c == 'N' || c == 'I';
+  }
+}
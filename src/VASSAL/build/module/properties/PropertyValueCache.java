@@ -0,0 +1,48 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+package VASSAL.build.module.properties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the last parsed value of each property of a
+ * {@link TypedPropertySource}. A property is parsed again only when the
+ * object its source returns for it changes.
+ *
+ * @since 3.2.3
+ */
+public class PropertyValueCache {
+  private final Map<Object,PropertyValue> values =
+    new HashMap<Object,PropertyValue>();
+
+  /**
+   * @param key the property key
+   * @param object the current value of the property
+   * @return the parsed value
+   */
+  public PropertyValue get(Object key, Object object) {
+    final PropertyValue last = values.get(key);
+    final PropertyValue pv = PropertyValue.valueOf(object, last);
+    if (pv != last) {
+      values.put(key, pv);
+    }
+    return pv;
+  }
+}
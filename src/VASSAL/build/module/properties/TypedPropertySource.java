@@ -0,0 +1,39 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+package VASSAL.build.module.properties;
+
+/**
+ * A {@link PropertySource} which can supply its property values already
+ * parsed, so that comparing them or binding them to expressions does not
+ * parse them again each time.
+ *
+ * @see PropertyValue#get
+ * @since 3.2.3
+ */
+public interface TypedPropertySource extends PropertySource {
+  /**
+   * @return the parsed value of {@link #getProperty(Object)}
+   */
+  PropertyValue getPropertyValue(Object key);
+
+  /**
+   * @return the parsed value of {@link #getLocalizedProperty(Object)}
+   */
+  PropertyValue getLocalizedPropertyValue(Object key);
+}
@@ -59,7 +59,7 @@ import VASSAL.build.module.documentation.HelpFile;
 import VASSAL.build.module.properties.MutablePropertiesContainer;
 import VASSAL.build.module.properties.MutableProperty;
 import VASSAL.command.Command;
-import VASSAL.command.CommandEncoder;
+import VASSAL.command.IndexedCommandEncoder;
 import VASSAL.configure.BooleanConfigurer;
 import VASSAL.configure.Configurer;
 import VASSAL.configure.ConfigurerFactory;
@@ -84,7 +84,7 @@ import VASSAL.tools.UniqueIdManager;
 /**
  * Generic Turn Counter
  */
-public class TurnTracker extends TurnComponent implements CommandEncoder, GameComponent, ActionListener, UniqueIdManager.Identifyable {
+public class TurnTracker extends TurnComponent implements IndexedCommandEncoder, GameComponent, ActionListener, UniqueIdManager.Identifyable {
 
   protected static UniqueIdManager idMgr = new UniqueIdManager("TurnTracker"); //$NON-NLS-1$
 
@@ -736,6 +736,14 @@ public class TurnTracker extends TurnComponent implements CommandEncoder, GameCo
     return s;
   }
 
+  public String[] getCommandPrefixes() {
+    return new String[]{COMMAND_PREFIX + getId()};
+  }
+
+  public Class<?>[] getCommandClasses() {
+    return new Class<?>[]{SetTurn.class};
+  }
+
   public void setup(boolean gameStarting) {
     launch.setEnabled(gameStarting);
     turnWindow.setVisible(false);
@@ -29,7 +29,7 @@ import java.nio.charset.Charset;
  * Copyright (c) 2003 by Rodney Kinney.  All rights reserved.
  * Date: Aug 27, 2003
  */
-public class BufferedSocketHandler extends SocketHandler {
+public class BufferedSocketHandler extends ThreadedSocketHandler {
   protected BufferedReader reader;
   protected BufferedWriter writer;
 
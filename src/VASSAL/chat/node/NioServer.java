@@ -0,0 +1,73 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+package VASSAL.chat.node;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * An alternative to {@link Server} which serves all connections from a
+ * small pool of {@link SelectorThread}s, instead of starting a read and a
+ * write thread for each connection. The protocol and the routing of
+ * messages by the {@link AsynchronousServerNode} are unchanged.
+ *
+ * @since 3.2.3
+ */
+public class NioServer extends Thread {
+  private AsynchronousServerNode rootNode;
+  private ServerSocketChannel socket;
+  private SelectorThread[] selectors;
+  private int next = 0;
+
+  public NioServer(AsynchronousServerNode rootNode, int port, int threads)
+                                                         throws IOException {
+    this.rootNode = rootNode;
+    socket = ServerSocketChannel.open();
+    socket.socket().bind(new InetSocketAddress(port));
+
+    selectors = new SelectorThread[threads];
+    for (int i = 0; i < threads; ++i) {
+      selectors[i] = new SelectorThread("selector " + i); //$NON-NLS-1$
+      selectors[i].start();
+    }
+
+    System.err.println("Started server on port " + port + " with " + threads + " selector threads"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    start();
+  }
+
+  public void run() {
+    int consecutiveFailures = 0;
+    while (consecutiveFailures < 10) {
+      try {
+        final SocketChannel s = socket.accept();
+        new PlayerNode(s, selectors[next], rootNode);
+        next = (next + 1) % selectors.length;
+        consecutiveFailures = 0;
+      }
+      // FIXME: review error message
+      catch (Exception e) {
+        e.printStackTrace();
+        consecutiveFailures++;
+      }
+    }
+    System.exit(1);
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+package VASSAL.chat.node;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link SocketHandler} for a non-blocking {@link SocketChannel}, read
+ * and written by a {@link SelectorThread} shared with other connections
+ * instead of by threads of its own.
+ *
+ * <p>Lines are framed as by {@link BufferedSocketHandler}: UTF-8 text
+ * terminated by <code>\n</code>, <code>\r</code> or <code>\r\n</code>.
+ * Messages are passed to the {@link SocketWatcher} on the selector
+ * thread.</p>
+ *
+ * <p>Lines written are queued without blocking. While more than
+ * {@link #HIGH_WATER} bytes are waiting to be sent, no more is read from
+ * the connection, so that a client cannot make the server queue replies
+ * faster than it accepts them. If more than {@link #MAX_PENDING} bytes
+ * are waiting, the client is taken to be unresponsive and the connection
+ * is closed.</p>
+ *
+ * @since 3.2.3
+ */
+public class NioSocketHandler extends SocketHandler {
+  private static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+  private static final String SIGN_OFF = "!BYE"; //$NON-NLS-1$
+
+  /** Queued bytes above which reading is suspended */
+  protected static final long HIGH_WATER = 1L << 20;
+
+  /** Queued bytes above which the connection is closed */
+  protected static final long MAX_PENDING = 32L << 20;
+
+  protected final SocketChannel channel;
+  protected final SelectorThread selector;
+
+  private final Queue<ByteBuffer> writeQueue =
+    new ConcurrentLinkedQueue<ByteBuffer>();
+  private final AtomicLong pending = new AtomicLong();
+  private final AtomicBoolean updateQueued = new AtomicBoolean();
+  private final AtomicBoolean signedOff = new AtomicBoolean();
+  private final AtomicBoolean open = new AtomicBoolean(true);
+  private volatile ByteBuffer signOff;
+
+  // accessed only by the selector thread
+  private SelectionKey key;
+  private final ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+  private byte[] line = new byte[256];
+  private int lineLength = 0;
+  private boolean afterCR = false;
+
+  public NioSocketHandler(SocketChannel channel, SelectorThread selector,
+                          SocketWatcher handler) throws IOException {
+    super(channel.socket(), handler);
+    this.channel = channel;
+    this.selector = selector;
+    channel.configureBlocking(false);
+  }
+
+  public void start() {
+    selector.register(this);
+  }
+
+  public void writeLine(String msg) {
+    if (!signedOff.get()) {
+      enqueue(encode(msg));
+    }
+  }
+
+  public void close() {
+    if (signedOff.compareAndSet(false, true)) {
+      signOff = encode(SIGN_OFF);
+      enqueue(signOff);
+    }
+  }
+
+  private static ByteBuffer encode(String msg) {
+    return UTF8.encode(msg + '\n');
+  }
+
+  private void enqueue(ByteBuffer b) {
+    final int size = b.remaining();
+    writeQueue.add(b);
+    if (pending.addAndGet(size) > MAX_PENDING) {
+      closeSocket();
+    }
+    else if (updateQueued.compareAndSet(false, true)) {
+      selector.update(this);
+    }
+  }
+
+  /** Called on the selector thread to start selecting the channel. */
+  void register(Selector sel) {
+    try {
+      key = channel.register(sel, 0, this);
+      updateInterest();
+    }
+    catch (IOException e) {
+      closeSocket();
+    }
+  }
+
+  /** Called on the selector thread when the write queue has changed. */
+  void updateInterest() {
+    updateQueued.set(false);
+    if (key != null && key.isValid()) {
+      int ops = 0;
+      if (pending.get() <= HIGH_WATER) {
+        ops |= SelectionKey.OP_READ;
+      }
+      if (!writeQueue.isEmpty()) {
+        ops |= SelectionKey.OP_WRITE;
+      }
+      key.interestOps(ops);
+    }
+  }
+
+  /** Called on the selector thread when the channel is ready. */
+  void handle() {
+    try {
+      if (key.isValid() && key.isReadable()) {
+        read();
+      }
+      if (key.isValid() && key.isWritable()) {
+        write();
+      }
+    }
+    catch (IOException e) {
+      closeSocket();
+    }
+  }
+
+  private void read() throws IOException {
+    readBuffer.clear();
+    final int n = channel.read(readBuffer);
+    if (n < 0) {
+      // like readLine(), pass on an unterminated last line
+      if (lineLength > 0) {
+        handleLine();
+      }
+      closeSocket();
+      return;
+    }
+
+    readBuffer.flip();
+    while (readBuffer.hasRemaining()) {
+      final byte b = readBuffer.get();
+      if (b == '\n' && afterCR) {
+        afterCR = false;
+        continue;
+      }
+
+      afterCR = b == '\r';
+      if (b == '\n' || b == '\r') {
+        if (!handleLine()) {
+          return;
+        }
+      }
+      else {
+        if (lineLength == line.length) {
+          final byte[] l = new byte[line.length * 2];
+          System.arraycopy(line, 0, l, 0, lineLength);
+          line = l;
+        }
+        line[lineLength++] = b;
+      }
+    }
+  }
+
+  /**
+   * @return <code>false</code> if the client signed off
+   */
+  private boolean handleLine() {
+    final String msg =
+      UTF8.decode(ByteBuffer.wrap(line, 0, lineLength)).toString();
+    lineLength = 0;
+
+    if (SIGN_OFF.equals(msg)) {
+      closeSocket();
+      return false;
+    }
+    else if (msg.length() > 0) {
+      try {
+        handler.handleMessage(msg);
+      }
+      // FIXME: review error message
+      catch (Exception e) {
+        // Handler threw an exception.  Keep reading.
+        System.err.println("Caught " + e.getClass().getName() + " handling " + msg); //$NON-NLS-1$ //$NON-NLS-2$
+        e.printStackTrace();
+      }
+    }
+    return true;
+  }
+
+  private void write() throws IOException {
+    ByteBuffer b;
+    while ((b = writeQueue.peek()) != null) {
+      pending.addAndGet(-channel.write(b));
+      if (b.hasRemaining()) {
+        // the socket buffer is full
+        break;
+      }
+
+      writeQueue.poll();
+      if (b == signOff) {
+        closeSocket();
+        return;
+      }
+    }
+    updateInterest();
+  }
+
+  /**
+   * Close the connection at once, discarding any lines not yet written.
+   */
+  void closeSocket() {
+    if (open.compareAndSet(true, false)) {
+      signedOff.set(true);
+      try {
+        channel.close();
+      }
+      // FIXME: review error message
+      catch (IOException ignore) {
+      }
+      writeQueue.clear();
+      handler.socketClosed(this);
+    }
+  }
+}
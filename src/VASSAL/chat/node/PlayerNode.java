@@ -23,6 +23,7 @@ package VASSAL.chat.node;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.util.Iterator;
 import java.util.Properties;
 
@@ -48,6 +49,17 @@ public class PlayerNode extends Node implements SocketWatcher {
     input.start();
   }
 
+  /**
+   * Create a node for a player connected to a non-blocking channel
+   * served by a {@link SelectorThread}.
+   */
+  public PlayerNode(SocketChannel channel, SelectorThread selector, AsynchronousServerNode server) throws IOException {
+    super(null,null,null);
+    this.server = server;
+    this.input = new NioSocketHandler(channel,selector,this);
+    input.start();
+  }
+
   public String getId() {
     return id;
   }
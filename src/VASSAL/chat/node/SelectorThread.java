@@ -0,0 +1,128 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+package VASSAL.chat.node;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A thread which reads and writes the channels of many
+ * {@link NioSocketHandler}s with a single {@link Selector}.
+ *
+ * @since 3.2.3
+ */
+public class SelectorThread extends Thread {
+  private final Selector selector;
+  private final Queue<NioSocketHandler> registrations =
+    new ConcurrentLinkedQueue<NioSocketHandler>();
+  private final Queue<NioSocketHandler> updates =
+    new ConcurrentLinkedQueue<NioSocketHandler>();
+
+  public SelectorThread(String name) throws IOException {
+    super(name);
+    selector = Selector.open();
+  }
+
+  /**
+   * Start selecting the channel of a handler.
+   */
+  public void register(NioSocketHandler h) {
+    registrations.add(h);
+    selector.wakeup();
+  }
+
+  /**
+   * Update the operations selected for a handler, which must happen on
+   * this thread.
+   */
+  public void update(NioSocketHandler h) {
+    updates.add(h);
+    selector.wakeup();
+  }
+
+  public void run() {
+    while (true) {
+      try {
+        selector.select();
+      }
+      // FIXME: review error message
+      catch (IOException e) {
+        e.printStackTrace();
+        continue;
+      }
+
+      NioSocketHandler h;
+      while ((h = registrations.poll()) != null) {
+        try {
+          h.register(selector);
+        }
+        catch (RuntimeException e) {
+          drop(h, e);
+        }
+      }
+      while ((h = updates.poll()) != null) {
+        try {
+          h.updateInterest();
+        }
+        catch (RuntimeException e) {
+          drop(h, e);
+        }
+      }
+
+      final Iterator<SelectionKey> i = selector.selectedKeys().iterator();
+      while (i.hasNext()) {
+        final SelectionKey key = i.next();
+        i.remove();
+        h = (NioSocketHandler) key.attachment();
+        try {
+          h.handle();
+        }
+        catch (RuntimeException e) {
+          key.cancel();
+          drop(h, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Close the connection of a handler which failed, leaving the other
+   * connections on this thread to be served.
+   */
+  private void drop(NioSocketHandler h, RuntimeException e) {
+    // a key cancelled by closing the channel on another thread is expected
+    if (!(e instanceof CancelledKeyException)) {
+      // FIXME: review error message
+      e.printStackTrace();
+    }
+
+    try {
+      h.closeSocket();
+    }
+    // FIXME: review error message
+    catch (RuntimeException e2) {
+      e2.printStackTrace();
+    }
+  }
+}
@@ -69,7 +69,13 @@ public class Server extends Thread {
       reportURL = null;
     }
     if (!"true".equals(p.getProperty("test"))) { //$NON-NLS-1$ //$NON-NLS-2$
-      new Server(new AsynchronousServerNode(reportURL), port);
+      if ("true".equals(p.getProperty("nio"))) { //$NON-NLS-1$ //$NON-NLS-2$
+        final int threads = Integer.parseInt(p.getProperty("selectors", "4")); //$NON-NLS-1$ //$NON-NLS-2$
+        new NioServer(new AsynchronousServerNode(reportURL), port, threads);
+      }
+      else {
+        new Server(new AsynchronousServerNode(reportURL), port);
+      }
       new LockWatcher(1000L*60*30,1000L*60,port).start();
     }
     if (p.getProperty("test") != null) { //$NON-NLS-1$
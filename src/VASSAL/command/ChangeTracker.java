@@ -1,6 +1,7 @@
 package VASSAL.command;
 
 import VASSAL.counters.Decorator;
+import VASSAL.counters.FlatState;
 import VASSAL.counters.GamePiece;
 
 /*
@@ -25,22 +26,30 @@ import VASSAL.counters.GamePiece;
 /**
  * Utility class for generating {@link ChangePiece} commands.
  * To use, construct a new ChangeTracker, make any changes
- * to the target {@link VASSAL.counters.GamePiece}, then invoke {@link #getChangeCommand}
+ * to the target {@link VASSAL.counters.GamePiece}, then invoke {@link #getChangeCommand}.
+ * The states are {@link FlatState flat} if {@link FlatState#isUsedForMoves}.
  */
 public class ChangeTracker {
   private GamePiece piece;
   private String oldState;
+  private final boolean flat;
 
   public ChangeTracker(GamePiece p) {
-    oldState = Decorator.getOutermost(p).getState();
+    // both states must be in the same encoding to be merged
+    flat = FlatState.isUsedForMoves();
+    oldState = getState(p);
     piece = p;
   }
 
+  private String getState(GamePiece p) {
+    return FlatState.getState(Decorator.getOutermost(p), flat);
+  }
+
   public Command getChangeCommand() {
-    return new ChangePiece(piece.getId(), oldState, Decorator.getOutermost(piece).getState());
+    return new ChangePiece(piece.getId(), oldState, getState(piece));
   }
 
   public boolean isChanged() {
-    return !oldState.equals(Decorator.getOutermost(piece).getState());
+    return !oldState.equals(getState(piece));
   }
 }
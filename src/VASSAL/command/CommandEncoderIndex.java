@@ -0,0 +1,353 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+package VASSAL.command;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import VASSAL.tools.ArrayUtils;
+
+/**
+ * Dispatches encoding and decoding to a list of {@link CommandEncoder}s.
+ *
+ * <p>As before, encoders are tried in the order in which they were added,
+ * and the first non-<code>null</code> result wins. However, an
+ * {@link IndexedCommandEncoder} is tried only for <code>String</code>s
+ * starting with one of its prefixes and for {@link Command}s which are
+ * instances of one of its classes. Prefixes are held in a trie and
+ * candidate encoders for each <code>Command</code> class are cached, so
+ * dispatch no longer costs a call to every registered encoder. Encoders
+ * which are not indexed are tried for everything, in their usual place
+ * in the order.</p>
+ *
+ * <p>Each encoder is indexed by what the instance declares, and prefixes
+ * often hold the id or name of their encoder. As these may change, the
+ * declarations are read again whenever an encoder is added or removed,
+ * and a <code>String</code> which no candidate decodes is offered to the
+ * indexed encoders which were passed over. The empty <code>String</code>
+ * is offered to every encoder. Declarations made by a class are ignored
+ * for a subclass which overrides its <code>decode</code> or
+ * <code>encode</code>, as the subclass may handle more.</p>
+ *
+ * <p>This class is thread-safe. Lookups use an immutable snapshot which
+ * is built when first needed after an encoder is added or removed.</p>
+ *
+ * @since 3.2.3
+ */
+public class CommandEncoderIndex {
+  private final List<CommandEncoder> encoders =
+    new ArrayList<CommandEncoder>();
+
+  private volatile Snapshot snapshot;
+
+  /**
+   * Adds an encoder after all those already added.
+   *
+   * @param ce the encoder
+   */
+  public synchronized void add(CommandEncoder ce) {
+    encoders.add(ce);
+    snapshot = null;
+  }
+
+  /**
+   * Removes the first occurrence of an encoder.
+   *
+   * @param ce the encoder
+   */
+  public synchronized void remove(CommandEncoder ce) {
+    if (encoders.remove(ce)) {
+      snapshot = null;
+    }
+  }
+
+  private Snapshot getSnapshot() {
+    Snapshot s = snapshot;
+    if (s == null) {
+      synchronized (this) {
+        s = snapshot;
+        if (s == null) {
+          s = snapshot = new Snapshot(encoders);
+        }
+      }
+    }
+    return s;
+  }
+
+  /**
+   * @return the result of the first encoder which decodes
+   * <code>command</code>, or <code>null</code> if none does
+   */
+  public Command decode(String command) {
+    return getSnapshot().decode(command);
+  }
+
+  /**
+   * @return the result of the first encoder which encodes <code>c</code>,
+   * or <code>null</code> if none does
+   */
+  public String encode(Command c) {
+    return getSnapshot().encode(c);
+  }
+
+  /** Whether each class may be indexed, for decoding and encoding. */
+  private static final Map<Class<?>,boolean[]> indexable =
+    new ConcurrentHashMap<Class<?>,boolean[]>();
+
+  /**
+   * @return whether the declarations of an encoder may be trusted, for
+   * decoding and for encoding; they are not if made by a class which a
+   * subclass extends by overriding <code>decode</code> or
+   * <code>encode</code>
+   */
+  private static boolean[] isIndexable(IndexedCommandEncoder ice) {
+    final Class<?> cl = ice.getClass();
+    boolean[] ok = indexable.get(cl);
+    if (ok == null) {
+      try {
+        ok = new boolean[] {
+          declaredBelow(cl.getMethod("getCommandPrefixes"),
+                        cl.getMethod("decode", String.class)),
+          declaredBelow(cl.getMethod("getCommandClasses"),
+                        cl.getMethod("encode", Command.class))
+        };
+      }
+      catch (NoSuchMethodException e) {
+        // cannot happen, as these are interface methods
+        throw new IllegalStateException(e);
+      }
+      indexable.put(cl, ok);
+    }
+    return ok;
+  }
+
+  /**
+   * @return whether <code>decl</code> is declared by the class which
+   * declares <code>impl</code>, or by a subclass of it
+   */
+  private static boolean declaredBelow(Method decl, Method impl) {
+    return impl.getDeclaringClass().isAssignableFrom(
+      decl.getDeclaringClass());
+  }
+
+  private static final int[] EMPTY = new int[0];
+
+  private static class Snapshot {
+    private final CommandEncoder[] encoders;
+
+    /** Positions of encoders which may decode anything. */
+    private final int[] unprefixed;
+
+    /** Positions of encoders which declare prefixes. */
+    private final int[] prefixedAll;
+
+    /** Root of the prefix trie; holds encoders with the empty prefix. */
+    private final Node root = new Node();
+
+    /** Declared classes of each encoder; <code>null</code> if unindexed. */
+    private final Class<?>[][] classes;
+
+    private final Map<Class<?>,CommandEncoder[]> byClass =
+      new ConcurrentHashMap<Class<?>,CommandEncoder[]>();
+
+    public Snapshot(List<CommandEncoder> list) {
+      encoders = list.toArray(new CommandEncoder[list.size()]);
+      classes = new Class<?>[encoders.length][];
+
+      final List<Integer> unp = new ArrayList<Integer>();
+      final List<Integer> pre = new ArrayList<Integer>();
+      for (int i = 0; i < encoders.length; ++i) {
+        String[] prefixes = null;
+        if (encoders[i] instanceof IndexedCommandEncoder) {
+          final IndexedCommandEncoder ice =
+            (IndexedCommandEncoder) encoders[i];
+          final boolean[] ok = isIndexable(ice);
+          if (ok[0]) {
+            prefixes = ice.getCommandPrefixes();
+          }
+          if (ok[1]) {
+            classes[i] = ice.getCommandClasses();
+          }
+        }
+
+        if (prefixes == null) {
+          unp.add(i);
+        }
+        else {
+          pre.add(i);
+          for (String p : prefixes) {
+            root.add(p, 0, i);
+          }
+        }
+      }
+
+      unprefixed = toArray(unp);
+      prefixedAll = toArray(pre);
+    }
+
+    public Command decode(String command) {
+      // no prefix can begin the empty string, but it has meaning
+      final int[] prefixed =
+        command.length() == 0 ? prefixedAll : root.match(command);
+
+      // merge the two ascending lists of positions to keep the order
+      int i = 0, j = 0;
+      while (i < prefixed.length || j < unprefixed.length) {
+        final int k;
+        if (j >= unprefixed.length ||
+            (i < prefixed.length && prefixed[i] < unprefixed[j])) {
+          k = prefixed[i++];
+        }
+        else {
+          k = unprefixed[j++];
+        }
+
+        final Command c = encoders[k].decode(command);
+        if (c != null) {
+          return c;
+        }
+      }
+
+      // a prefix may be out of date, if the id or name it holds changed
+      if (prefixed != prefixedAll) {
+        for (int k : prefixedAll) {
+          if (Arrays.binarySearch(prefixed, k) >= 0) continue;
+
+          final Command c = encoders[k].decode(command);
+          if (c != null) {
+            return c;
+          }
+        }
+      }
+
+      return null;
+    }
+
+    public String encode(Command c) {
+      final Class<?> cl = c.getClass();
+      CommandEncoder[] cand = byClass.get(cl);
+      if (cand == null) {
+        cand = candidates(cl);
+        byClass.put(cl, cand);
+      }
+
+      for (CommandEncoder ce : cand) {
+        final String s = ce.encode(c);
+        if (s != null) {
+          return s;
+        }
+      }
+
+      return null;
+    }
+
+    /** @return the encoders which may encode instances of <code>cl</code> */
+    private CommandEncoder[] candidates(Class<?> cl) {
+      final List<CommandEncoder> l = new ArrayList<CommandEncoder>();
+      for (int i = 0; i < encoders.length; ++i) {
+        if (classes[i] == null) {
+          l.add(encoders[i]);
+        }
+        else {
+          for (Class<?> dc : classes[i]) {
+            if (dc.isAssignableFrom(cl)) {
+              l.add(encoders[i]);
+              break;
+            }
+          }
+        }
+      }
+      return l.toArray(new CommandEncoder[l.size()]);
+    }
+  }
+
+  /** A node in the prefix trie. */
+  private static class Node {
+    private final Map<Character,Node> children =
+      new HashMap<Character,Node>();
+    private int[] positions = EMPTY;
+
+    public void add(String prefix, int depth, int pos) {
+      if (depth == prefix.length()) {
+        positions = ArrayUtils.append(positions, pos);
+      }
+      else {
+        final Character ch = prefix.charAt(depth);
+        Node n = children.get(ch);
+        if (n == null) {
+          n = new Node();
+          children.put(ch, n);
+        }
+        n.add(prefix, depth + 1, pos);
+      }
+    }
+
+    /**
+     * @return the ascending, distinct positions of encoders having a
+     * prefix of <code>s</code>
+     */
+    public int[] match(String s) {
+      int[] found = positions;
+      int count = positions.length;
+
+      Node n = this;
+      for (int i = 0; i < s.length(); ++i) {
+        n = n.children.get(s.charAt(i));
+        if (n == null) {
+          break;
+        }
+
+        if (n.positions.length > 0) {
+          final int[] f = new int[count + n.positions.length];
+          System.arraycopy(found, 0, f, 0, count);
+          System.arraycopy(n.positions, 0, f, count, n.positions.length);
+          found = f;
+          count = f.length;
+        }
+      }
+
+      if (found == positions) {
+        return found;
+      }
+
+      // an encoder may have several prefixes along the same path
+      Arrays.sort(found);
+      int u = 0;
+      for (int i = 0; i < count; ++i) {
+        if (u == 0 || found[u-1] != found[i]) {
+          found[u++] = found[i];
+        }
+      }
+      return u == count ? found : ArrayUtils.copyOf(found, u);
+    }
+  }
+
+  private static int[] toArray(List<Integer> l) {
+    final int[] a = new int[l.size()];
+    for (int i = 0; i < a.length; ++i) {
+      a[i] = l.get(i);
+    }
+    return a;
+  }
+}
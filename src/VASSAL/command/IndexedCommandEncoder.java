@@ -0,0 +1,47 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+package VASSAL.command;
+
+/**
+ * A {@link CommandEncoder} which declares which commands it handles, so
+ * that a {@link CommandEncoderIndex} need offer it only those commands.
+ * Prefixes should be as specific to the instance as its
+ * <code>decode</code> is, for instance by including its id. They are read
+ * again whenever an encoder is added or removed; should they change in
+ * between, the encoder is still offered the commands it decodes, only
+ * less quickly. The empty <code>String</code> is offered to every
+ * encoder.
+ *
+ * @since 3.2.3
+ */
+public interface IndexedCommandEncoder extends CommandEncoder {
+  /**
+   * @return prefixes, one of which begins every <code>String</code> this
+   * encoder can decode, or <code>null</code> if any <code>String</code>
+   * might be decoded
+   */
+  public String[] getCommandPrefixes();
+
+  /**
+   * @return classes, one of which every {@link Command} this encoder can
+   * encode is an instance of, or <code>null</code> if any
+   * <code>Command</code> might be encoded
+   */
+  public Class<?>[] getCommandClasses();
+}
@@ -0,0 +1,60 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+package VASSAL.command;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import VASSAL.tools.concurrent.listener.EventListener;
+
+/**
+ * A {@link CommandEncoder} which can also translate {@link Command}s to
+ * and from character streams. This permits encoding and decoding large
+ * compound commands, such as saved games, without holding their complete
+ * encoding in memory.
+ *
+ * @since 3.2.3
+ */
+public interface StreamingCommandEncoder extends CommandEncoder {
+  /**
+   * Translate a {@link Command} into characters written to a
+   * {@link Writer}. The characters written are the same as those
+   * returned by {@link #encode(Command)}.
+   *
+   * @param c the command to encode
+   * @param out the writer to which to write the encoding
+   * @throws IOException if writing fails
+   */
+  public void encode(Command c, Writer out) throws IOException;
+
+  /**
+   * Translate characters read from a {@link Reader} into {@link Command}s.
+   * Commands are passed to the listener in execution order as soon as
+   * they are decoded; executing each in turn is equivalent to executing
+   * the command which {@link #decode(String)} would return for the
+   * same characters.
+   *
+   * @param in the reader from which to read the encoding
+   * @param l the listener which receives the decoded commands
+   * @throws IOException if reading fails
+   */
+  public void decode(Reader in, EventListener<? super Command> l)
+                                                            throws IOException;
+}
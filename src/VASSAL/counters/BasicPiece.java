@@ -46,6 +46,9 @@ import VASSAL.build.module.documentation.HelpFile;
 import VASSAL.build.module.map.boardPicker.Board;
 import VASSAL.build.module.map.boardPicker.board.mapgrid.Zone;
 import VASSAL.build.module.properties.PropertyNameSource;
+import VASSAL.build.module.properties.PropertyValue;
+import VASSAL.build.module.properties.PropertyValueCache;
+import VASSAL.build.module.properties.TypedPropertySource;
 import VASSAL.command.AddPiece;
 import VASSAL.command.ChangePiece;
 import VASSAL.command.Command;
@@ -61,7 +64,7 @@ import VASSAL.tools.imageop.ScaledImagePainter;
 /**
  * Basic class for representing a physical component of the game Can be a counter, a card, or an overlay
  */
-public class BasicPiece implements TranslatablePiece, StateMergeable, PropertyNameSource {
+public class BasicPiece implements TranslatablePiece, StateMergeable, PropertyNameSource, TypedPropertySource {
   public static final String ID = "piece;";
   private static Highlighter highlighter;
   /**
@@ -98,6 +101,11 @@ public class BasicPiece implements TranslatablePiece, StateMergeable, PropertyNa
   private Point pos = new Point(0, 0);
   private String id;
   private java.util.Map<Object, Object> props;
+
+  /** Counts changes to this piece which may alter its appearance. */
+  volatile int visualVersion;
+  private PropertyValueCache propertyValues;
+  private PropertyValueCache localizedPropertyValues;
   /** @deprecated Moved into own traits, retained for backward compatibility */
   @Deprecated
   private char cloneKey;
@@ -144,6 +152,7 @@ public class BasicPiece implements TranslatablePiece, StateMergeable, PropertyNa
     if (map != this.map) {
       commands = null;
       this.map = map;
+      ++visualVersion;
     }
   }
 
@@ -159,6 +168,20 @@ public class BasicPiece implements TranslatablePiece, StateMergeable, PropertyNa
         return getPublicProperty(key);
   }
 
+  public PropertyValue getPropertyValue(Object key) {
+    if (propertyValues == null) {
+      propertyValues = new PropertyValueCache();
+    }
+    return propertyValues.get(key, getProperty(key));
+  }
+
+  public PropertyValue getLocalizedPropertyValue(Object key) {
+    if (localizedPropertyValues == null) {
+      localizedPropertyValues = new PropertyValueCache();
+    }
+    return localizedPropertyValues.get(key, getLocalizedProperty(key));
+  }
+
   /*
    * Properties visible in a masked unit
    */
@@ -320,6 +343,7 @@ public class BasicPiece implements TranslatablePiece, StateMergeable, PropertyNa
   }
 
   public void setProperty(Object key, Object val) {
+    ++visualVersion;
     if (props == null) {
       props = new HashMap<Object, Object>();
     }
@@ -329,6 +353,9 @@ public class BasicPiece implements TranslatablePiece, StateMergeable, PropertyNa
     else {
       props.put(key, val);
     }
+    if (getMap() != null) {
+      getMap().pieceChanged(this);
+    }
   }
 
   protected Object prefsValue(String s) {
@@ -394,7 +421,9 @@ public class BasicPiece implements TranslatablePiece, StateMergeable, PropertyNa
       getMap().repaint(getMap().boundingBoxOf(Decorator.getOutermost(this)));
     }
     pos = p;
+    ++visualVersion;
     if (getMap() != null && getParent() == null) {
+      getMap().pieceMoved(this);
       getMap().repaint(getMap().boundingBoxOf(Decorator.getOutermost(this)));
     }
   }
@@ -557,6 +586,7 @@ public class BasicPiece implements TranslatablePiece, StateMergeable, PropertyNa
   }
 
   public void setState(String s) {
+    ++visualVersion;
     final GamePiece outer = Decorator.getOutermost(this);
     final Map oldMap = getMap();
     final SequenceEncoder.Decoder st = new SequenceEncoder.Decoder(s, ';');
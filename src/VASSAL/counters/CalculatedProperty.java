@@ -160,6 +160,12 @@ public class CalculatedProperty extends Decorator implements EditablePiece, Loop
     return super.getLocalizedProperty(key);
   }
 
+  /** The value is evaluated afresh on each request. */
+  @Override
+  protected boolean hasUncountedProperties() {
+    return name.length() > 0;
+  }
+
   /**
    * Evaluate the calculated property. Do not call Decorator.reportDataError as this will probably
    * cause an infinite reporting loop.
@@ -33,6 +33,9 @@ import VASSAL.build.module.Map;
 import VASSAL.build.module.map.boardPicker.Board;
 import VASSAL.build.module.map.boardPicker.board.mapgrid.Zone;
 import VASSAL.build.module.properties.PropertyNameSource;
+import VASSAL.build.module.properties.PropertyValue;
+import VASSAL.build.module.properties.PropertyValueCache;
+import VASSAL.build.module.properties.TypedPropertySource;
 import VASSAL.command.Command;
 import VASSAL.i18n.Localization;
 import VASSAL.i18n.PieceI18nData;
@@ -45,15 +48,21 @@ import VASSAL.tools.SequenceEncoder;
  * The abstract class describing a generic 'trait' of a GamePiece.  Follows the Decorator design pattern
  * of wrapping around another instance of GamePiece (the 'inner' piece) and delegating some of the GamePiece methods to it
  */
-public abstract class Decorator implements GamePiece, StateMergeable, PropertyNameSource {
+public abstract class Decorator implements GamePiece, StateMergeable, PropertyNameSource, TypedPropertySource {
   protected GamePiece piece;
   private Decorator dec;
+  private PropertyValueCache propertyValues;
+  private PropertyValueCache localizedPropertyValues;
+
+  /** Counts changes to this trait which may alter its appearance. */
+  volatile int visualVersion;
 
   public Decorator() {
   }
 
   /** Set the inner GamePiece */
   public void setInner(GamePiece p) {
+    ++visualVersion;
     piece = p;
     if (p != null) {
       p.setProperty(Properties.OUTER, this);
@@ -119,6 +128,20 @@ public abstract class Decorator implements GamePiece, StateMergeable, PropertyNa
     }
   }
 
+  public PropertyValue getPropertyValue(Object key) {
+    if (propertyValues == null) {
+      propertyValues = new PropertyValueCache();
+    }
+    return propertyValues.get(key, getProperty(key));
+  }
+
+  public PropertyValue getLocalizedPropertyValue(Object key) {
+    if (localizedPropertyValues == null) {
+      localizedPropertyValues = new PropertyValueCache();
+    }
+    return localizedPropertyValues.get(key, getLocalizedProperty(key));
+  }
+
   public void setProperty(Object key, Object val) {
     if (Properties.INNER.equals(key)) {
       setInner((GamePiece) val);
@@ -156,6 +179,17 @@ public abstract class Decorator implements GamePiece, StateMergeable, PropertyNa
    * @param newState the new state of this trait and all inner pieces
    */
   public void setState(String newState) {
+    if (FlatState.isFlat(newState)) {
+      final String[] s = FlatState.split(newState);
+      mySetState(s[0]);
+      if (s[1] == null) {
+        throw new IllegalStateException("No state for Decorator=" + myGetType());
+      }
+      piece.setState(innerState(s[1]));
+      visualChanged();
+      return;
+    }
+
     SequenceEncoder.Decoder st = new SequenceEncoder.Decoder(newState, '\t');
     mySetState(st.nextToken());
     try {
@@ -164,6 +198,7 @@ public abstract class Decorator implements GamePiece, StateMergeable, PropertyNa
     catch (NoSuchElementException e) {
       throw new IllegalStateException("No state for Decorator=" + myGetType());
     }
+    visualChanged();
   }
 
   /**
@@ -173,6 +208,32 @@ public abstract class Decorator implements GamePiece, StateMergeable, PropertyNa
    * @param oldState
    */
   public void mergeState(String newState, String oldState) {
+    if (FlatState.isFlat(newState) || FlatState.isFlat(oldState)) {
+      if (!FlatState.isFlat(newState) || !FlatState.isFlat(oldState)) {
+        // the states are not comparable
+        setState(newState);
+        return;
+      }
+
+      final String[] sNew = FlatState.split(newState);
+      final String[] sOld = FlatState.split(oldState);
+      if (sNew[1] == null || sOld[1] == null) {
+        throw new IllegalStateException("No state for Decorator=" + myGetType());
+      }
+      if (!sOld[0].equals(sNew[0])) {
+        mySetState(sNew[0]);
+      }
+      if (piece instanceof StateMergeable) {
+        ((StateMergeable) piece).mergeState(innerState(sNew[1]),
+                                            innerState(sOld[1]));
+      }
+      else {
+        piece.setState(innerState(sNew[1]));
+      }
+      visualChanged();
+      return;
+    }
+
     SequenceEncoder.Decoder stNew = new SequenceEncoder.Decoder(newState, '\t');
     String myNewState = stNew.nextToken();
     String innerNewState = stNew.nextToken();
@@ -188,6 +249,7 @@ public abstract class Decorator implements GamePiece, StateMergeable, PropertyNa
     else {
       piece.setState(innerNewState);
     }
+    visualChanged();
   }
 
   /**
@@ -197,11 +259,35 @@ public abstract class Decorator implements GamePiece, StateMergeable, PropertyNa
    */
   public abstract String myGetState();
 
-  /** The state of a Decorator is a composition of {@link #myGetState} and the inner piece's state */
+  /**
+   * Return the flat state of the inner piece, or, if it is not a
+   * Decorator, the state its {@link GamePiece#setState} expects.
+   */
+  private String innerState(String flat) {
+    return piece instanceof Decorator ? flat : FlatState.split(flat)[0];
+  }
+
+  /**
+   * The state of a Decorator is a composition of {@link #myGetState} and the inner piece's state
+   */
   public String getState() {
+    return getState(false);
+  }
+
+  /**
+   * @param flat whether to return a {@link FlatState flat state}
+   * @return the state of this trait and all inner pieces
+   * @since 3.2.3
+   */
+  public String getState(boolean flat) {
+    if (flat) {
+      return FlatState.encode(this);
+    }
+
     SequenceEncoder se = new SequenceEncoder(myGetState(), '\t');
     se.append(piece.getState());
-    return se.getValue();
+    final String state = se.getValue();
+    return FlatState.isFlat(state) ? FlatState.quote(state) : state;
   }
 
   /**
@@ -261,10 +347,56 @@ public abstract class Decorator implements GamePiece, StateMergeable, PropertyNa
    */
   public Command keyEvent(KeyStroke stroke) {
     Command c = myKeyEvent(stroke);
+    // traits may change the shape or state of the piece
+    visualChanged();
     return c == null ? piece.keyEvent(stroke)
       : c.append(piece.keyEvent(stroke));
   }
 
+  /**
+   * Notes that this trait may look different. Traits which change their
+   * state other than through {@link #setState}, {@link #mergeState} or
+   * {@link #keyEvent} must call this once the state has changed, so that
+   * images of the piece are redrawn and the indices of its {@link Map}
+   * are brought up to date.
+   *
+   * @see VisualVersion
+   * @since 3.2.3
+   */
+  protected void visualChanged() {
+    ++visualVersion;
+    final Map map = getMap();
+    if (map != null) {
+      map.pieceChanged(this);
+    }
+  }
+
+  /**
+   * Returns whether the appearance of this trait may depend on properties
+   * whose changes are not counted by {@link VisualVersion}, such as
+   * calculated properties or the properties of other pieces. Images of a
+   * piece with such a trait are checked against its visible state on
+   * every paint.
+   *
+   * @return <code>false</code>, unless overridden
+   * @since 3.2.3
+   */
+  protected boolean hasUncountedAppearance() {
+    return false;
+  }
+
+  /**
+   * Returns whether this trait has properties whose values may change
+   * without its state changing, such as calculated properties. Totals of
+   * such properties are not kept by {@link VASSAL.build.module.map.LocationIndex}.
+   *
+   * @return {@link #hasUncountedAppearance}, unless overridden
+   * @since 3.2.3
+   */
+  protected boolean hasUncountedProperties() {
+    return hasUncountedAppearance();
+  }
+
   public String getId() {
     return piece.getId();
   }
@@ -38,6 +38,7 @@ import VASSAL.build.module.properties.PropertyChanger;
 import VASSAL.build.module.properties.PropertyChangerConfigurer;
 import VASSAL.build.module.properties.PropertyPrompt;
 import VASSAL.build.module.properties.PropertySource;
+import VASSAL.build.module.properties.PropertyValue;
 import VASSAL.command.ChangeTracker;
 import VASSAL.command.Command;
 import VASSAL.configure.BooleanConfigurer;
@@ -64,6 +65,7 @@ public class DynamicProperty extends Decorator implements TranslatablePiece, Pro
   public static final String ID = "PROP;";
 
   protected String value;
+  private PropertyValue parsedValue;
 
   protected String key;
   protected boolean numeric;
@@ -154,6 +156,22 @@ public class DynamicProperty extends Decorator implements TranslatablePiece, Pro
     }
   }
 
+  public PropertyValue getPropertyValue(Object key) {
+    if (key.equals(getKey())) {
+      return parsedValue = PropertyValue.valueOf(getValue(), parsedValue);
+    }
+    return super.getPropertyValue(key);
+  }
+
+  public PropertyValue getLocalizedPropertyValue(Object key) {
+    if (key.equals(getKey())) {
+      return getPropertyValue(key);
+    }
+    else {
+      return super.getLocalizedPropertyValue(key);
+    }
+  }
+
   public void setProperty(Object key, Object value) {
     if (key.equals(getKey())) {
       setValue(null == value ? null : value.toString());
@@ -223,6 +241,7 @@ public class DynamicProperty extends Decorator implements TranslatablePiece, Pro
     else {
       this.value = value;
     }
+    visualChanged();
   }
 
   private String formatValue(String value) {
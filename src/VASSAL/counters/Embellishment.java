@@ -502,6 +502,15 @@ public class Embellishment extends Decorator implements TranslatablePiece {
     }
   }
 
+  /**
+   * A layer which follows a property may follow one whose changes are not
+   * counted.
+   */
+  @Override
+  protected boolean hasUncountedAppearance() {
+    return followProperty && propertyName.length() > 0;
+  }
+
   /*
    * Calculate the new level to display based on a property?
    */
@@ -519,7 +528,11 @@ public class Embellishment extends Decorator implements TranslatablePiece {
       if (v <= 0) v = 1;
       if (v > nValues) v = nValues;
 
-      value = isActive() ? v : -v;
+      v = isActive() ? v : -v;
+      if (v != value) {
+        value = v;
+        visualChanged();
+      }
     }
     catch (NumberFormatException e) {
       reportDataError(this, Resources.getString("Error.non_number_error"), "followProperty["+propertyName+"]="+val, e);
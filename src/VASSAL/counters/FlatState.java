@@ -0,0 +1,162 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+package VASSAL.counters;
+
+/**
+ * A flat encoding of the state of a {@link Decorator} and the pieces
+ * inside it.
+ *
+ * <p>The usual state of a <code>Decorator</code> nests the state of its
+ * inner piece in a {@link VASSAL.tools.SequenceEncoder}, so the state of
+ * the innermost trait is escaped once for every trait around it. A flat
+ * state is instead a sequence of records, one for each trait from the
+ * outermost inwards, followed by one for the innermost piece. Each record
+ * is the {@link #MARKER}, the length of the state in decimal, a colon and
+ * the state itself, as given by {@link Decorator#myGetState} or, for the
+ * innermost piece, {@link GamePiece#getState}. Nothing is escaped.</p>
+ *
+ * <p>{@link Decorator#setState} and {@link Decorator#mergeState} accept
+ * both encodings. {@link Decorator#getState()} always produces the usual
+ * state, so that module files, logs and commands built from it can still
+ * be read by older versions. Flat states are produced only on request,
+ * by {@link #getState}: for the changes sent during play if
+ * {@link #isUsedForMoves}, and for saved games if the preference for them
+ * is set. Flat states cannot be read by versions before 3.2.3.</p>
+ *
+ * <p>A usual state which begins with the {@link #MARKER} is quoted by
+ * {@link Decorator#getState(boolean)}, so it is never taken for a flat
+ * state. The quotes are removed by the usual decoding.</p>
+ *
+ * @since 3.2.3
+ */
+public class FlatState {
+  /** Begins each record. No usual state begins with it unquoted. */
+  public static final char MARKER = '\u001e';
+
+  private static volatile boolean usedForMoves = false;
+
+  private FlatState() {}
+
+  /**
+   * @return whether the changes to pieces sent during play, by
+   * {@link VASSAL.command.ChangeTracker}, use flat states
+   */
+  public static boolean isUsedForMoves() {
+    return usedForMoves;
+  }
+
+  /**
+   * Set whether the changes to pieces sent during play use flat states.
+   */
+  public static void setUsedForMoves(boolean flat) {
+    usedForMoves = flat;
+  }
+
+  /**
+   * @return whether <code>state</code> is a flat state
+   */
+  public static boolean isFlat(String state) {
+    return state != null && state.length() > 0 && state.charAt(0) == MARKER;
+  }
+
+  /**
+   * Return the state of a piece in the given encoding.
+   *
+   * @param p the piece
+   * @param flat whether to return a flat state
+   * @return the state of the piece
+   */
+  public static String getState(GamePiece p, boolean flat) {
+    return p instanceof Decorator ?
+      ((Decorator) p).getState(flat) : p.getState();
+  }
+
+  /**
+   * Quote the first token of a usual state, so that a state beginning
+   * with the {@link #MARKER} is not taken for a flat state.
+   *
+   * @param state a state encoded by a {@link VASSAL.tools.SequenceEncoder}
+   * with a tab delimiter, whose first token is not already quoted
+   * @return the same state, which decodes to the same tokens
+   */
+  static String quote(String state) {
+    // the first token ends at the first tab not escaped by a backslash
+    int end = state.indexOf('\t');
+    while (end > 0 && state.charAt(end - 1) == '\\') {
+      end = state.indexOf('\t', end + 1);
+    }
+    if (end < 0) {
+      end = state.length();
+    }
+
+    return "'" + state.substring(0, end) + "'" + state.substring(end);
+  }
+
+  /**
+   * Return the flat state of a trait and the pieces inside it.
+   */
+  static String encode(Decorator d) {
+    final StringBuilder sb = new StringBuilder();
+    GamePiece p = d;
+    while (p instanceof Decorator) {
+      append(sb, ((Decorator) p).myGetState());
+      p = ((Decorator) p).getInner();
+    }
+    append(sb, p.getState());
+    return sb.toString();
+  }
+
+  private static void append(StringBuilder sb, String state) {
+    if (state == null) {
+      state = "";
+    }
+    sb.append(MARKER).append(state.length()).append(':').append(state);
+  }
+
+  /**
+   * Split the first record from a flat state.
+   *
+   * @param state a flat state
+   * @return the state held by the first record, and the flat state made
+   * of the remaining records or <code>null</code> if there are none
+   * @throws IllegalArgumentException if <code>state</code> is malformed
+   */
+  static String[] split(String state) {
+    final int colon = state.indexOf(':', 1);
+    if (!isFlat(state) || colon < 0) {
+      throw new IllegalArgumentException("Malformed flat state");
+    }
+
+    final int end;
+    try {
+      end = colon + 1 + Integer.parseInt(state.substring(1, colon));
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Malformed flat state");
+    }
+    if (end <= colon || end > state.length()) {
+      throw new IllegalArgumentException("Malformed flat state");
+    }
+
+    return new String[] {
+      state.substring(colon + 1, end),
+      end == state.length() ? null : state.substring(end)
+    };
+  }
+}
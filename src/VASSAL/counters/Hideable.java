@@ -69,6 +69,7 @@ public class Hideable extends Decorator implements TranslatablePiece {
   public void setProperty(Object key, Object val) {
     if (HIDDEN_BY.equals(key)) {
       hiddenBy = (String) val;
+      visualChanged();
     }
     else {
       super.setProperty(key, val);
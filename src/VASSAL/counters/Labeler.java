@@ -544,6 +544,15 @@ public class Labeler extends Decorator implements TranslatablePiece, Loopable {
     }
   }
 
+  /**
+   * A label with a format may show any property, including those whose
+   * changes are not counted.
+   */
+  @Override
+  protected boolean hasUncountedAppearance() {
+    return labelFormat.getFormat().indexOf('$') >= 0;
+  }
+
   public String getLabel() {
     return labelFormat.getText(Decorator.getOutermost(this));
   }
@@ -31,6 +31,7 @@ import javax.swing.JPanel;
 import javax.swing.KeyStroke;
 
 import VASSAL.build.module.documentation.HelpFile;
+import VASSAL.build.module.properties.PropertyValue;
 import VASSAL.command.Command;
 import VASSAL.configure.StringConfigurer;
 import VASSAL.tools.SequenceEncoder;
@@ -46,6 +47,7 @@ public class Marker extends Decorator implements EditablePiece {
 
   protected String keys[];
   protected String values[];
+  private PropertyValue parsedValues[];
 
   public Marker() {
     this(ID, null);
@@ -70,6 +72,7 @@ public class Marker extends Decorator implements EditablePiece {
     keys = l.toArray(new String[l.size()]);
     values = new String[keys.length];
     Arrays.fill(values, "");
+    parsedValues = new PropertyValue[keys.length];
   }
 
   public void draw(Graphics g, int x, int y, Component obs, double zoom) {
@@ -106,10 +109,30 @@ public class Marker extends Decorator implements EditablePiece {
     return super.getLocalizedProperty(key);
   }
 
+  public PropertyValue getPropertyValue(Object key) {
+    for (int i = 0; i < keys.length; ++i) {
+      if (keys[i].equals(key)) {
+        return parsedValues[i] =
+          PropertyValue.valueOf(values[i], parsedValues[i]);
+      }
+    }
+    return super.getPropertyValue(key);
+  }
+
+  public PropertyValue getLocalizedPropertyValue(Object key) {
+    for (int i = 0; i < keys.length; ++i) {
+      if (keys[i].equals(key)) {
+        return getPropertyValue(key);
+      }
+    }
+    return super.getLocalizedPropertyValue(key);
+  }
+
   public void setProperty(Object key, Object value) {
     for (int i = 0; i < keys.length; ++i) {
       if (keys[i].equals(key)) {
         values[i] = (String) value;
+        visualChanged();
         return;
       }
     }
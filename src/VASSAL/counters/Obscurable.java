@@ -236,6 +236,7 @@ public class Obscurable extends Decorator implements TranslatablePiece {
           obscuredBy = null;
           obscuredOptions = null;
         }
+        visualChanged();
       }
     }
     else if (Properties.SELECTED.equals(key)) {
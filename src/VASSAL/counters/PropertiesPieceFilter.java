@@ -20,6 +20,7 @@ package VASSAL.counters;
 
 import java.util.regex.Pattern;
 
+import VASSAL.build.module.properties.PropertyValue;
 import VASSAL.script.expression.BeanShellExpression;
 import VASSAL.script.expression.FormattedStringExpression;
 
@@ -147,10 +148,12 @@ public class PropertiesPieceFilter {
     protected String name;
     protected String value;
     protected Object alternate;
+    protected PropertyValue parsedValue;
 
     public ComparisonFilter(String name, String value) {
       this.name = name;
       this.value = value;
+      parsedValue = PropertyValue.valueOf(value);
       if ("true".equals(value)) {
         alternate = Boolean.TRUE;
       }
@@ -160,13 +163,15 @@ public class PropertiesPieceFilter {
     }
 
     protected int compareTo(GamePiece piece) {
-      String property = String.valueOf(piece.getProperty(name));
-      try {
-        return Integer.valueOf(property).compareTo(Integer.valueOf(value));
+      final PropertyValue property = PropertyValue.get(piece, name, false);
+      if (property.isInt() && parsedValue.isInt()) {
+        final int p = property.intValue();
+        final int v = parsedValue.intValue();
+        return p < v ? -1 : (p == v ? 0 : 1);
       }
-      catch (NumberFormatException e) {
+      else {
         // If both properties are not numbers, compare alphabetically
-        return property.compareTo(value);
+        return property.toString().compareTo(value);
       }
     }
 
@@ -37,6 +37,7 @@ import VASSAL.build.module.documentation.HelpFile;
 import VASSAL.build.module.map.boardPicker.board.mapgrid.Zone;
 import VASSAL.build.module.properties.MutablePropertiesContainer;
 import VASSAL.build.module.properties.MutableProperty;
+import VASSAL.build.module.properties.PropertyValue;
 import VASSAL.command.Command;
 import VASSAL.command.NullCommand;
 import VASSAL.configure.BooleanConfigurer;
@@ -162,6 +163,24 @@ public class SetGlobalProperty extends DynamicProperty {
     }
   }
 
+  /*
+   * Our key is not one of our properties, so DynamicProperty must not
+   * supply its value.
+   */
+  public PropertyValue getPropertyValue(Object key) {
+    if (key.equals(getKey())) {
+      return PropertyValue.valueOf(getProperty(key));
+    }
+    return super.getPropertyValue(key);
+  }
+
+  public PropertyValue getLocalizedPropertyValue(Object key) {
+    if (key.equals(getKey())) {
+      return PropertyValue.valueOf(getLocalizedProperty(key));
+    }
+    return super.getLocalizedPropertyValue(key);
+  }
+
   public void setProperty(Object key, Object val) {
     if (Properties.INNER.equals(key)) {
       setInner((GamePiece) val);
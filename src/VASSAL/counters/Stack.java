@@ -131,6 +131,9 @@ public class Stack implements GamePiece, StateMergeable {
         contents[i] = contents[i + 1];
       }
       expanded = expanded && pieceCount > 1;
+      if (getMap() != null) {
+        getMap().pieceChanged(this);
+      }
     }
   }
 
@@ -163,11 +166,17 @@ public class Stack implements GamePiece, StateMergeable {
 
     contents[index] = p;
     pieceCount++;
+    if (getMap() != null) {
+      getMap().pieceChanged(this);
+    }
   }
 
   public void removeAll() {
     pieceCount = 0;
     expanded = false;
+    if (getMap() != null) {
+      getMap().pieceChanged(this);
+    }
   }
 
   public int indexOf(GamePiece p) {
@@ -452,6 +461,9 @@ public class Stack implements GamePiece, StateMergeable {
 
   public void setExpanded(boolean b) {
     expanded = b && getPieceCount() > 1;
+    if (getMap() != null) {
+      getMap().pieceChanged(this);
+    }
   }
 
   public String getState() {
@@ -468,6 +480,9 @@ public class Stack implements GamePiece, StateMergeable {
     final String mapId = st.nextToken();
     setPosition(new Point(st.nextInt(0), st.nextInt(0)));
     pieceCount = 0;
+    if (getMap() != null) {
+      getMap().pieceChanged(this);
+    }
 
     final GameState gs = GameModule.getGameModule().getGameState();
     while (st.hasMoreTokens()) {
@@ -581,6 +596,9 @@ public class Stack implements GamePiece, StateMergeable {
 
   public void setPosition(Point p) {
     pos = p;
+    if (getMap() != null) {
+      getMap().pieceMoved(this);
+    }
   }
 
   public Stack getParent() {
@@ -0,0 +1,105 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.counters;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts changes which may alter the appearance of pieces, so that an
+ * image of a piece need be checked against its
+ * {@link Properties#VISIBLE_STATE} only when the count has changed.
+ *
+ * <p>Each {@link BasicPiece} and {@link Decorator} counts changes to its
+ * own state. Changes to properties held outside of pieces, which pieces
+ * may display, such as global properties, are counted here. The visual
+ * version of a piece is the sum of these counts, so it increases whenever
+ * any of them does.</p>
+ *
+ * <p>Properties such as calculated properties, or those summed over a
+ * stack or location, change without being counted. A piece with a trait
+ * which shows them has no visual version, and its images are always
+ * checked against its visible state.</p>
+ *
+ * @since 3.2.3
+ */
+public final class VisualVersion {
+  private VisualVersion() {}
+
+  private static final AtomicLong changes = new AtomicLong();
+
+  /**
+   * Notify all pieces that properties outside of pieces, which they may
+   * display, have changed.
+   */
+  public static void propertiesChanged() {
+    changes.incrementAndGet();
+  }
+
+  /**
+   * @return a count which increases whenever {@link #propertiesChanged}
+   * is called
+   */
+  public static long getPropertyChanges() {
+    return changes.get();
+  }
+
+  /**
+   * Returns whether every change to the properties of a piece is counted
+   * by its visual version. This is not so for a piece with a trait which
+   * {@link Decorator#hasUncountedProperties has properties} whose changes
+   * are not counted.
+   *
+   * @param p the piece
+   * @return whether the properties of the piece change only when its
+   * visual version does
+   */
+  public static boolean countsProperties(GamePiece p) {
+    while (p instanceof Decorator) {
+      final Decorator d = (Decorator) p;
+      if (d.hasUncountedProperties()) return false;
+      p = d.piece;
+    }
+
+    return p instanceof BasicPiece;
+  }
+
+  /**
+   * Gets the visual version of a piece. This does not allocate, so it is
+   * cheap enough to check on every paint.
+   *
+   * @param p the piece
+   * @return a count which increases whenever the appearance of the piece
+   * may have changed, or <code>-1</code> if the piece contains pieces
+   * which do not count their changes, or traits which
+   * {@link Decorator#hasUncountedAppearance depend on properties} whose
+   * changes are not counted
+   */
+  public static long of(GamePiece p) {
+    long v = changes.get();
+    while (p instanceof Decorator) {
+      final Decorator d = (Decorator) p;
+      if (d.hasUncountedAppearance()) return -1;
+      v += d.visualVersion;
+      p = d.piece;
+    }
+
+    return p instanceof BasicPiece ? v + ((BasicPiece) p).visualVersion : -1;
+  }
+}
@@ -189,9 +189,82 @@ e.printStackTrace();
       }
     }
 
+    // idle warm players have nothing to lose
+    PlayerPool.getInstance().shutDown();
+
     return true;
   }
 
+  /**
+   * Gets the options with which to start the JVM for a child process.
+   * The initial and maximum heap sizes are always the second and third
+   * options, after the path to the Java binary.
+   *
+   * @param initialHeap the initial heap size, in MB
+   * @param maximumHeap the maximum heap size, in MB
+   * @param moduleName the name of the module, or <code>null</code> if
+   * there is none
+   * @param lazyTiling whether the child is to slice tiles as needed
+   * @return the JVM options
+   * @since 3.2.3
+   */
+  protected static List<String> getJvmOptions(int initialHeap,
+                                              int maximumHeap,
+                                              String moduleName,
+                                              boolean lazyTiling) {
+    final List<String> al = new ArrayList<String>();
+    al.add(Info.javaBinPath);
+    al.add("-Xms" + initialHeap + "M");
+    al.add("-Xmx" + maximumHeap + "M");
+
+    // pass on the user's home, if it's set
+    final String userHome = System.getProperty("user.home");
+    if (userHome != null) al.add("-Duser.home=" + userHome);
+
+    // set the classpath
+    al.add("-cp");
+    al.add(System.getProperty("java.class.path"));
+
+    if (SystemUtils.IS_OS_MAC_OSX) {
+      // set the MacOS X dock parameters
+
+      // use the module name for the dock if we found a module name
+// FIXME: should "Unnamed module" be localized?
+      final String d_name = moduleName != null && moduleName.length() > 0
+        ? moduleName : "Unnamed module";
+
+      // get the path to the app icon
+      final String d_icon = new File(Info.getBaseDir(),
+        "Contents/Resources/VASSAL.icns").getAbsolutePath();
+
+      al.add("-Xdock:name=" + d_name);
+      al.add("-Xdock:icon=" + d_icon);
+
+      // Quartz can cause font rendering problems; turn it off
+      al.add("-Dapple.awt.graphics.UseQuartz=false");
+    }
+    else if (SystemUtils.IS_OS_WINDOWS) {
+      // Disable the 2D to Direct3D pipeline?
+      final Boolean disableD3d =
+        (Boolean) Prefs.getGlobalPrefs().getValue(Prefs.DISABLE_D3D);
+      if (Boolean.TRUE.equals(disableD3d)) {
+        al.add("-Dsun.java2d.d3d=false");
+      }
+    }
+
+    // have the player slice tiles as they are needed
+    if (lazyTiling) {
+      al.add("-DVASSAL.lazyTiling=true");
+
+      final String codec = System.getProperty("VASSAL.tileCodec");
+      if (codec != null) {
+        al.add("-DVASSAL.tileCodec=" + codec);
+      }
+    }
+
+    return al;
+  }
+
   /** {@inheritDoc} */
   public void actionPerformed(ActionEvent e) {
     ModuleManagerWindow.getInstance().setWaitCursor(true);
@@ -255,40 +328,27 @@ e.printStackTrace();
     @Override
     public Void doInBackground() throws InterruptedException,
                                         IOException {
+      final boolean lazyTiling = Boolean.TRUE.equals(
+        Prefs.getGlobalPrefs().getValue(Prefs.LAZY_TILING));
+
 // FIXME: this should be in an abstract method and farmed out to subclasses
       // send some basic information to the log
       if (lr.module != null) {
         logger.info("Loading module file {}", lr.module.getAbsolutePath());
 
-        // slice tiles for module
-        final String aname = lr.module.getAbsolutePath();
-        final ModuleMetaData meta = new ModuleMetaData(new ZipFile(aname));
-        final String hstr =
-          DigestUtils.shaHex(meta.getName() + "_" + meta.getVersion());
+        // slice tiles before loading the module, unless the player is to
+        // slice them as they are needed
+        if (!lazyTiling) {
+          // slice tiles for module
+          final String aname = lr.module.getAbsolutePath();
+          final ModuleMetaData meta = new ModuleMetaData(new ZipFile(aname));
+          final String hstr =
+            DigestUtils.shaHex(meta.getName() + "_" + meta.getVersion());
 
-        final File cdir = new File(Info.getConfDir(), "tiles/" + hstr);
+          final File cdir = new File(Info.getConfDir(), "tiles/" + hstr);
 
-        final TilingHandler th = new TilingHandler(
-          aname,
-          cdir,
-          new Dimension(256, 256),
-          PHYS_MEMORY,
-          nextId.getAndIncrement()
-        );
-
-        try {
-          th.sliceTiles();
-        }
-        catch (CancellationException e) {
-          cancel(true);
-          return null;
-        }
-
-        // slice tiles for extensions
-        final ExtensionsManager mgr = new ExtensionsManager(lr.module);
-        for (File ext : mgr.getActiveExtensions()) {
-          final TilingHandler eth = new TilingHandler(
-            ext.getAbsolutePath(),
+          final TilingHandler th = new TilingHandler(
+            aname,
             cdir,
             new Dimension(256, 256),
             PHYS_MEMORY,
@@ -296,12 +356,32 @@ e.printStackTrace();
           );
 
           try {
-            eth.sliceTiles();
+            th.sliceTiles();
           }
           catch (CancellationException e) {
             cancel(true);
             return null;
           }
+
+          // slice tiles for extensions
+          final ExtensionsManager mgr = new ExtensionsManager(lr.module);
+          for (File ext : mgr.getActiveExtensions()) {
+            final TilingHandler eth = new TilingHandler(
+              ext.getAbsolutePath(),
+              cdir,
+              new Dimension(256, 256),
+              PHYS_MEMORY,
+              nextId.getAndIncrement()
+            );
+
+            try {
+              eth.sliceTiles();
+            }
+            catch (CancellationException e) {
+              cancel(true);
+              return null;
+            }
+          }
         }
       }
 
@@ -437,59 +517,115 @@ e.printStackTrace();
       ssrv.addEventListener(ConnectionSignal.class, clistener);
 */
 
+      final List<String> options =
+        getJvmOptions(initialHeap, maximumHeap, moduleName, lazyTiling);
 
-      // create a socket for communicating which the child process
-      final InetAddress lo = InetAddress.getByName(null);
-      serverSocket = new ServerSocket(0, 0, lo);
+      // use a warm process, if one was started with the same options
+      final PlayerPool pool = getPlayerPool();
+      final PlayerPool.WarmPlayer warm =
+        pool == null ? null : pool.take(options);
 
-      final int port = serverSocket.getLocalPort();
+      ProcessWrapper proc = null;
+      if (warm != null) {
+        logger.info("Using a warm player");
+        clientSocket = warm.socket;
+        ipc = warm.ipc;
+        addListeners(ipc);
 
+        try {
+          if (warm.isAlive()) {
+            ipc.send(new Launcher.WarmLaunchRequest(lr));
+            proc = warm.proc;
+          }
+        }
+        catch (IOException e) {
+          logger.error("", e);
+        }
 
+        if (proc == null) {
+          // the warm player died after it was taken, so start a new one
+          logger.info("Warm player died, starting a new player");
+          warm.destroy();
+        }
+      }
 
+      if (proc == null) {
+        proc = launch(options);
+        if (proc == null) {
+          cancel(true);
+          return null;
+        }
 
+        clientSocket = serverSocket.accept();
+        ipc = new IPCMessenger(clientSocket);
+        addListeners(ipc);
+        ipc.start();
+      }
 
-      // build the argument list
-      final ArrayList<String> al = new ArrayList<String>();
-      al.add(Info.javaBinPath);
-      al.add("");   // reserved for initial heap
-      al.add("");   // reserved for maximum heap
-      al.add("-DVASSAL.id=" + id);  // instance id
-      al.add("-DVASSAL.port=" + port); // MM socket port
+      children.add(ipc);
 
-      // pass on the user's home, if it's set
-      final String userHome = System.getProperty("user.home");
-      if (userHome != null) al.add("-Duser.home=" + userHome);
+      // replace the process we used, for the next launch
+      if (pool != null) pool.warm(options);
 
-      // set the classpath
-      al.add("-cp");
-      al.add(System.getProperty("java.class.path"));
+      // block until the process ends
+      try {
+        proc.future.get();
+      }
+      catch (ExecutionException e) {
+        logger.error("", e);
+      }
 
-      if (SystemUtils.IS_OS_MAC_OSX) {
-        // set the MacOS X dock parameters
+      return null;
+    }
 
-        // use the module name for the dock if we found a module name
-// FIXME: should "Unnamed module" be localized?
-        final String d_name = moduleName != null && moduleName.length() > 0
-          ? moduleName : "Unnamed module";
+    private void addListeners(IPCMessenger ipc) {
+      ipc.addEventListener(
+        NotifyOpenModuleOk.class,
+        new NotifyOpenModuleOkListener()
+      );
 
-        // get the path to the app icon
-        final String d_icon = new File(Info.getBaseDir(),
-          "Contents/Resources/VASSAL.icns").getAbsolutePath();
+      ipc.addEventListener(
+        NotifyNewModuleOk.class,
+        new NotifyNewModuleOkListener()
+      );
 
-        al.add("-Xdock:name=" + d_name);
-        al.add("-Xdock:icon=" + d_icon);
+      ipc.addEventListener(
+        NotifyImportModuleOk.class,
+        new NotifyImportModuleOkListener()
+      );
 
-        // Quartz can cause font rendering problems; turn it off
-        al.add("-Dapple.awt.graphics.UseQuartz=false");
-      }
-      else if (SystemUtils.IS_OS_WINDOWS) {
-        // Disable the 2D to Direct3D pipeline?
-        final Boolean disableD3d =
-          (Boolean) Prefs.getGlobalPrefs().getValue(Prefs.DISABLE_D3D);
-        if (Boolean.TRUE.equals(disableD3d)) {
-          al.add("-Dsun.java2d.d3d=false");
-        }
-      }
+      ipc.addEventListener(
+        NotifyOpenModuleFailed.class,
+        new NotifyOpenModuleFailedListener()
+      );
+
+      ipc.addEventListener(
+        NotifySaveFileOk.class,
+        new NotifySaveFileOkListener()
+      );
+    }
+
+    /**
+     * Starts a child process with the given JVM options, falling back to
+     * failsafe heap sizes if it cannot be started with the given ones.
+     *
+     * @param options the JVM options, which are updated to those used
+     * @return the process, or <code>null</code> if launching was cancelled
+     * @throws IOException if the process could not be started
+     * @since 3.2.3
+     */
+    protected ProcessWrapper launch(List<String> options)
+                                   throws InterruptedException, IOException {
+      // create a socket for communicating which the child process
+      final InetAddress lo = InetAddress.getByName(null);
+      serverSocket = new ServerSocket(0, 0, lo);
+
+      final int port = serverSocket.getLocalPort();
+
+      // build the argument list
+      final ArrayList<String> al = new ArrayList<String>(options);
+      al.add("-DVASSAL.id=" + id);  // instance id
+      al.add("-DVASSAL.port=" + port); // MM socket port
 
       al.add(entryPoint);
 
@@ -497,18 +633,12 @@ e.printStackTrace();
 
       final String[] args = al.toArray(new String[al.size()]);
 
-      // try to start a child process with the given heap sizes
-      args[1] = "-Xms" + initialHeap + "M";
-      args[2] = "-Xmx" + maximumHeap + "M";
-
-
       ProcessWrapper proc = new ProcessLauncher().launch(args);
 
       try {
         proc.future.get(1000L, TimeUnit.MILLISECONDS);
       }
       catch (CancellationException e) {
-        cancel(true);
         return null;
       }
       catch (ExecutionException e) {
@@ -522,6 +652,8 @@ e.printStackTrace();
       if (proc.future.isDone()) {
         args[1] = "-Xms" + FAILSAFE_INITIAL_HEAP + "M";
         args[2] = "-Xmx" + FAILSAFE_MAXIMUM_HEAP + "M";
+        options.set(1, args[1]);
+        options.set(2, args[2]);
         proc = new ProcessLauncher().launch(args);
 
         try {
@@ -545,46 +677,15 @@ e.printStackTrace();
         }
       }
 
-      clientSocket = serverSocket.accept();
-      ipc = new IPCMessenger(clientSocket);
-
-      ipc.addEventListener(
-        NotifyOpenModuleOk.class,
-        new NotifyOpenModuleOkListener()
-      );
-
-      ipc.addEventListener(
-        NotifyNewModuleOk.class,
-        new NotifyNewModuleOkListener()
-      );
-
-      ipc.addEventListener(
-        NotifyImportModuleOk.class,
-        new NotifyImportModuleOkListener()
-      );
-
-      ipc.addEventListener(
-        NotifyOpenModuleFailed.class,
-        new NotifyOpenModuleFailedListener()
-      );
-
-      ipc.addEventListener(
-        NotifySaveFileOk.class,
-        new NotifySaveFileOkListener()
-      );
-
-      ipc.start();
-
-      children.add(ipc);
-
-      // block until the process ends
-      try {
-        proc.future.get();
-      }
-      catch (ExecutionException e) {
-        logger.error("", e);
-      }
+      return proc;
+    }
 
+    /**
+     * @return the pool of warm processes to use for this launch, or
+     * <code>null</code> if warm processes are not to be used
+     * @since 3.2.3
+     */
+    PlayerPool getPlayerPool() {
       return null;
     }
 
@@ -24,7 +24,10 @@ import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FilterWriter;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -68,6 +71,7 @@ import VASSAL.preferences.Prefs;
 import VASSAL.tools.DataArchive;
 import VASSAL.tools.ReflectionUtils;
 import VASSAL.tools.SequenceEncoder;
+import VASSAL.tools.concurrent.listener.EventListener;
 import VASSAL.tools.io.IOUtils;
 import VASSAL.tools.menu.MenuManager;
 
@@ -229,12 +233,87 @@ public class BasicModule extends GameModule {
     return c;
   }
 
-  private Command decodeSubCommand(String subCommand) {
-    Command c = null;
-    for (int i = 0; i < commandEncoders.length && c == null; ++i) {
-      c = commandEncoders[i].decode(subCommand);
+  /**
+   * Decodes commands as {@link #decode(String)} would, but reads them one
+   * at a time from the stream. Subcommands of a compound command are
+   * delivered individually as soon as they are read, except where the
+   * enclosing command overrides {@link Command#execute} (e.g., logged
+   * commands), in which case it is delivered whole.
+   */
+  @Override
+  public void decode(Reader in, EventListener<? super Command> l)
+                                                          throws IOException {
+    TokenReader tr = new TokenReader(in);
+    final String raw = tr.readToken();
+    final String first = unquote(raw);
+
+    if (!tr.isDelimited()) {
+      // a single token; if it is unaltered, it is not a compound command
+      final Command c = tr.isAltered() || first != raw ?
+        decode(first) : decodeSubCommand(first);
+      if (c != null) {
+        l.receive(this, c);
+      }
+      return;
     }
-    return c;
+
+    final Command head = decode(first);
+    if (head != null && overridesExecute(head)) {
+      // the head must see its subcommands, so deliver them together
+      Command c = head;
+      do {
+        tr = new TokenReader(in);
+        final Command next = decode(unquote(tr.readToken()));
+        c = c == null ? next : c.append(next);
+      } while (tr.isDelimited());
+
+      l.receive(this, c);
+      return;
+    }
+
+    if (head != null) {
+      l.receive(this, head);
+    }
+
+    do {
+      tr = new TokenReader(in);
+      if (tr.startsWithQuote()) {
+        // we can't tell whether the quotes are stripped until we reach
+        // the end of the token, so read it whole
+        final Command next = decode(unquote(tr.readToken()));
+        if (next != null) {
+          l.receive(this, next);
+        }
+      }
+      else {
+        decode(tr, l);
+      }
+    } while (tr.isDelimited());
+  }
+
+  /**
+   * Strips quotes from a token as {@link SequenceEncoder.Decoder} does.
+   *
+   * @return <code>s</code> itself if it is unquoted
+   */
+  private static String unquote(String s) {
+    return s.length() > 1 && s.startsWith("'") && s.endsWith("'") ?
+      s.substring(1, s.length() - 1) : s;
+  }
+
+  private static boolean overridesExecute(Command c) {
+    try {
+      return c.getClass().getMethod("execute").getDeclaringClass() !=
+        Command.class;
+    }
+    catch (NoSuchMethodException e) {
+      // can't happen, execute() is public
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private Command decodeSubCommand(String subCommand) {
+    return commandEncoderIndex.decode(subCommand);
   }
 
   public String encode(Command c) {
@@ -258,11 +337,279 @@ public class BasicModule extends GameModule {
   }
 
   private String encodeSubCommand(Command c) {
-    String s = null;
-    for (int i = 0; i < commandEncoders.length && s == null; ++i) {
-      s = commandEncoders[i].encode(c);
+    return commandEncoderIndex.encode(c);
+  }
+
+  /**
+   * Writes the same characters as {@link #encode(Command)}, but streams
+   * each subcommand as it is encoded instead of building the nested
+   * {@link SequenceEncoder} strings. Only the encoding of a single
+   * (non-compound) command is held in memory at any time.
+   */
+  @Override
+  public void encode(Command c, Writer out) throws IOException {
+    if (c != null) {
+      write(c, encodeSubCommand(c), out);
+    }
+  }
+
+  /**
+   * Writes the encoding of <code>c</code>, whose own (non-compound)
+   * encoding is <code>head</code>, to <code>out</code>.
+   */
+  private void write(Command c, String head, Writer out) throws IOException {
+    final Command[] sub = c.getSubCommands();
+    if (sub.length == 0) {
+      if (head != null) {
+        out.write(head);
+      }
+      return;
+    }
+
+    if (head != null) {
+      writeToken(head, out);
+    }
+
+    for (Command s : sub) {
+      final String h = encodeSubCommand(s);
+      if (h == null && s.getSubCommands().length == 0) {
+        continue;
+      }
+
+      out.write(COMMAND_SEPARATOR);
+
+      final boolean quote = needsQuotes(s, h, lastChar(s, h));
+      if (quote) {
+        out.write('\'');
+      }
+      write(s, h, new EscapingWriter(out));
+      if (quote) {
+        out.write('\'');
+      }
+    }
+  }
+
+  /**
+   * Writes a single token as {@link SequenceEncoder#append(String)} would.
+   */
+  private void writeToken(String s, Writer out) throws IOException {
+    final boolean quote = needsQuotes(s);
+    if (quote) {
+      out.write('\'');
+    }
+    new EscapingWriter(out).write(s);
+    if (quote) {
+      out.write('\'');
+    }
+  }
+
+  private static boolean needsQuotes(String s) {
+    return s.endsWith("\\") || (s.startsWith("'") && s.endsWith("'"));
+  }
+
+  /**
+   * @return whether the encoding of <code>c</code> would be quoted when
+   * appended to a {@link SequenceEncoder}, given its last character
+   */
+  private boolean needsQuotes(Command c, String head, int last) {
+    if (c.getSubCommands().length == 0) {
+      return needsQuotes(head);
+    }
+    else if (last == '\\') {
+      return true;
+    }
+    else {
+      return last == '\'' && head != null &&
+        (head.startsWith("'") || needsQuotes(head));
+    }
+  }
+
+  /**
+   * Finds the last character of the encoding of <code>c</code> without
+   * encoding anything but the rightmost chain of subcommands.
+   *
+   * @return the last character, or -1 if the encoding is empty
+   */
+  private int lastChar(Command c, String head) {
+    final Command[] sub = c.getSubCommands();
+    for (int i = sub.length - 1; i >= 0; --i) {
+      final String h = encodeSubCommand(sub[i]);
+      if (h == null && sub[i].getSubCommands().length == 0) {
+        continue;
+      }
+
+      final int last = lastChar(sub[i], h);
+      if (needsQuotes(sub[i], h, last)) {
+        return '\'';
+      }
+      return last < 0 ? COMMAND_SEPARATOR : last;
+    }
+
+    if (head == null || head.length() == 0) {
+      return -1;
+    }
+    else if (sub.length > 0 && needsQuotes(head)) {
+      return '\'';
+    }
+    else {
+      return head.charAt(head.length() - 1);
+    }
+  }
+
+  /**
+   * A {@link Writer} which escapes {@link #COMMAND_SEPARATOR} in the same
+   * way as {@link SequenceEncoder}.
+   */
+  private static class EscapingWriter extends FilterWriter {
+    public EscapingWriter(Writer out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+      if (c == COMMAND_SEPARATOR) {
+        out.write('\\');
+      }
+      out.write(c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+      int begin = off;
+      final int end = off + len;
+      for (int i = off; i < end; ++i) {
+        if (cbuf[i] == COMMAND_SEPARATOR) {
+          out.write(cbuf, begin, i - begin);
+          out.write('\\');
+          begin = i;
+        }
+      }
+      out.write(cbuf, begin, end - begin);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+      int begin = off;
+      final int end = off + len;
+      for (int i = str.indexOf(COMMAND_SEPARATOR, off);
+           i >= 0 && i < end; i = str.indexOf(COMMAND_SEPARATOR, i + 1)) {
+        out.write(str, begin, i - begin);
+        out.write('\\');
+        begin = i;
+      }
+      out.write(str, begin, end - begin);
+    }
+
+    /** Does not close the underlying writer. */
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+
+  /**
+   * A {@link Reader} over a single token of a stream encoded with
+   * {@link #COMMAND_SEPARATOR}. Unescapes delimiters in the same way as
+   * {@link SequenceEncoder.Decoder}, but does not strip quotes. Reads
+   * from the underlying stream up to and including the delimiter which
+   * ends the token.
+   */
+  private static class TokenReader extends Reader {
+    private static final int NONE = -2;
+
+    private final Reader in;
+    private int pending = NONE;
+    private boolean ended = false;
+    private boolean delimited = false;
+    private boolean altered = false;
+
+    public TokenReader(Reader in) {
+      this.in = in;
+    }
+
+    /** @return whether the token was ended by a delimiter */
+    public boolean isDelimited() {
+      return delimited;
+    }
+
+    /** @return whether any escaped delimiters were unescaped */
+    public boolean isAltered() {
+      return altered;
+    }
+
+    /**
+     * Checks whether the token begins with a quote. Must be called
+     * before any characters are read.
+     */
+    public boolean startsWithQuote() throws IOException {
+      if (pending == NONE && !ended) {
+        pending = in.read();
+      }
+      return pending == '\'';
+    }
+
+    /** Reads the whole remainder of the token. */
+    public String readToken() throws IOException {
+      final StringBuilder sb = new StringBuilder();
+      for (int c = read(); c != -1; c = read()) {
+        sb.append((char) c);
+      }
+      return sb.toString();
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (ended) {
+        return -1;
+      }
+
+      int c;
+      if (pending != NONE) {
+        c = pending;
+        pending = NONE;
+      }
+      else {
+        c = in.read();
+      }
+
+      if (c == COMMAND_SEPARATOR) {
+        ended = delimited = true;
+        return -1;
+      }
+      else if (c == -1) {
+        ended = true;
+        return -1;
+      }
+      else if (c == '\\') {
+        final int next = in.read();
+        if (next == COMMAND_SEPARATOR) {
+          altered = true;
+          return next;
+        }
+        pending = next;
+      }
+
+      return c;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+
+      int n = 0;
+      for (int c; n < len && (c = read()) != -1; ++n) {
+        cbuf[off + n] = (char) c;
+      }
+      return n == 0 ? -1 : n;
+    }
+
+    /** Does not close the underlying reader. */
+    @Override
+    public void close() {
+      ended = true;
     }
-    return s;
   }
 
   protected void buildDefaultComponents() {
@@ -25,6 +25,9 @@ import java.io.PrintStream;
 import java.lang.reflect.InvocationTargetException;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.SwingUtilities;
 
@@ -65,22 +68,26 @@ public abstract class Launcher {
     if (instance != null) throw new IllegalStateException();
     instance = this;
 
+    // a warm process is started before there is anything for it to
+    // launch, and receives its launch request from the module manager
+    final boolean warm = Boolean.getBoolean("VASSAL.warm");
+
     LaunchRequest lreq = null;
-    try {
-      lreq = LaunchRequest.parseArgs(args);
-    }
-    catch (LaunchRequestException e) {
-      System.err.println("VASSAL: " + e.getMessage());
-      System.exit(1);
+    if (!warm) {
+      try {
+        lreq = LaunchRequest.parseArgs(args);
+      }
+      catch (LaunchRequestException e) {
+        System.err.println("VASSAL: " + e.getMessage());
+        System.exit(1);
+      }
     }
 
-    lr = lreq;
-
     // Note: We could do more sanity checking of the launch request
     // in standalone mode, but we don't bother because this is meant
     // only for debugging, not for normal use. If you pass nonsense
     // arguments (e.g., '-e' to the Player), don't expect it to work.
-    final boolean standalone = lr.standalone;
+    final boolean standalone = !warm && lreq.standalone;
 
 /*
     // parse the command line args now if we're standalone, since they
@@ -126,9 +133,27 @@ public abstract class Launcher {
 
         ipc.addEventListener(CloseRequest.class, new CloseRequestListener());
 
+        final BlockingQueue<LaunchRequest> requests =
+          new LinkedBlockingQueue<LaunchRequest>();
+        if (warm) {
+          ipc.addEventListener(
+            WarmLaunchRequest.class,
+            new EventListener<WarmLaunchRequest>() {
+              public void receive(Object src, WarmLaunchRequest msg) {
+                requests.offer(msg.lr);
+              }
+            }
+          );
+        }
+
         ipc.start();
 
         ipc.send(new StartedNotice(Info.getInstanceID()));
+
+        if (warm) {
+          warmUp();
+          lreq = awaitLaunchRequest(requests);
+        }
       }
       catch (IOException e) {
         // What we've got here is failure to communicate.
@@ -141,6 +166,8 @@ public abstract class Launcher {
       }
     }
 
+    lr = lreq;
+
     createMenuManager();
 
     SwingUtilities.invokeLater(new Runnable() {
@@ -193,6 +220,46 @@ public abstract class Launcher {
     });
   }
 
+  /**
+   * Waits for the module manager to hand a launch request to this warm
+   * process. Exits if the module manager goes away first.
+   *
+   * @param requests the queue to which launch requests are delivered
+   * @return the launch request
+   */
+  private LaunchRequest awaitLaunchRequest(
+                                      BlockingQueue<LaunchRequest> requests) {
+    logger.info("Waiting for a launch request");
+
+    try {
+      while (true) {
+        final LaunchRequest lreq = requests.poll(1L, TimeUnit.SECONDS);
+        if (lreq != null) return lreq;
+
+        if (!ipc.isReceiving() && requests.isEmpty()) {
+          // no request can come now
+          System.exit(0);
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      logger.error("", e);
+      System.exit(1);
+      return null;
+    }
+  }
+
+  /**
+   * Prepares this process for a launch request while it waits for one,
+   * by loading and initializing the classes which launching will need.
+   * This is called only when the process is started warm, before it
+   * knows what it will launch.
+   *
+   * @since 3.2.3
+   */
+  protected void warmUp() {
+  }
+
   protected abstract void launch() throws IOException;
 
   protected abstract MenuManager createMenuManager();
@@ -221,6 +288,21 @@ public abstract class Launcher {
     }
   }
 
+  /**
+   * Hands a launch request to a warm process.
+   *
+   * @since 3.2.3
+   */
+  public static class WarmLaunchRequest extends SimpleIPCMessage {
+    private static final long serialVersionUID = 1L;
+
+    public final LaunchRequest lr;
+
+    public WarmLaunchRequest(LaunchRequest lr) {
+      this.lr = lr;
+    }
+  }
+
   public static class StartedNotice extends SimpleIPCMessage {
     private static final long serialVersionUID = 1L;
 
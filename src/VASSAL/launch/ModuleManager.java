@@ -457,6 +457,19 @@ public class ModuleManager {
     final boolean isFirstTime = !prefsFile.exists();
 
     if (isFirstTime) new FirstTimeDialog(window).setVisible(true);
+
+    // have a player ready for modules which use the default heap sizes;
+    // on Mac OS X the dock name differs for every module, so players can
+    // be reused only for the module last opened
+    if (!SystemUtils.IS_OS_MAC_OSX) {
+      PlayerPool.getInstance().warm(AbstractLaunchAction.getJvmOptions(
+        AbstractLaunchAction.DEFAULT_INITIAL_HEAP,
+        AbstractLaunchAction.DEFAULT_MAXIMUM_HEAP,
+        null,
+        Boolean.TRUE.equals(
+          Prefs.getGlobalPrefs().getValue(Prefs.LAZY_TILING))
+      ));
+    }
   }
 
   protected String execute(Object req) {
@@ -19,15 +19,25 @@
 
 package VASSAL.launch;
 
+import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 
 import javax.swing.Action;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JMenu;
 import javax.swing.JMenuBar;
+import javax.swing.JScrollPane;
+import javax.swing.JToolBar;
+import javax.swing.SwingUtilities;
 
 import org.apache.commons.lang.SystemUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import VASSAL.Info;
 import VASSAL.build.GameModule;
@@ -38,11 +48,14 @@ import VASSAL.build.module.metadata.MetaDataFactory;
 import VASSAL.build.module.metadata.ModuleMetaData;
 import VASSAL.i18n.Localization;
 import VASSAL.i18n.Resources;
+import VASSAL.script.ExpressionInterpreter;
+import VASSAL.script.expression.ExpressionException;
 import VASSAL.tools.DataArchive;
 import VASSAL.tools.ErrorDialog;
 import VASSAL.tools.JarArchive;
 import VASSAL.tools.ThrowableUtils;
 import VASSAL.tools.icon.IconFactory;
+import VASSAL.tools.image.svg.SVGRenderer;
 import VASSAL.tools.menu.MacOSXMenuManager;
 import VASSAL.tools.menu.MenuBarProxy;
 import VASSAL.tools.menu.MenuManager;
@@ -52,6 +65,8 @@ import VASSAL.tools.menu.MenuManager;
  * @since 3.1.0
  */
 public class Player extends Launcher {
+  private static final Logger logger = LoggerFactory.getLogger(Player.class);
+
   public static void main(String[] args) {
     new Player(args);
   }
@@ -66,6 +81,50 @@ public class Player extends Launcher {
       new MacOSXMenuManager() : new PlayerMenuManager();
   }
 
+  @Override
+  protected void warmUp() {
+    // start Swing, and lay out a frame like those a module opens
+    try {
+      SwingUtilities.invokeAndWait(new Runnable() {
+        public void run() {
+          final JFrame frame = new JFrame();
+          final JMenuBar mb = new JMenuBar();
+          mb.add(new JMenu(Resources.getString("General.file")));
+          frame.setJMenuBar(mb);
+          frame.add(new JToolBar(), BorderLayout.NORTH);
+          frame.add(new JScrollPane(new JLabel(Info.getVersion())));
+          frame.pack();
+          frame.dispose();
+        }
+      });
+    }
+    catch (InterruptedException e) {
+      logger.error("", e);
+    }
+    catch (InvocationTargetException e) {
+      logger.error("", e);
+    }
+
+    // load Batik, which renders SVG images
+    try {
+      new SVGRenderer("file:/warm.svg", new ByteArrayInputStream((
+        "<svg xmlns='http://www.w3.org/2000/svg' width='8px' height='8px'>" +
+        "<circle cx='4' cy='4' r='3' fill='black'/></svg>").getBytes()
+      )).render();
+    }
+    catch (IOException e) {
+      logger.error("", e);
+    }
+
+    // load BeanShell, which evaluates expressions
+    try {
+      ExpressionInterpreter.createInterpreter("");
+    }
+    catch (ExpressionException e) {
+      logger.error("", e);
+    }
+  }
+
   protected void launch() throws IOException {
     new IconFactory();  // Initialise the Icon Factory
     if (lr.builtInModule) {
@@ -185,6 +244,11 @@ public class Player extends Launcher {
     @Override
     protected LaunchTask getLaunchTask() {
       return new LaunchTask() {
+        @Override
+        PlayerPool getPlayerPool() {
+          return PlayerPool.getInstance();
+        }
+
         @Override
         protected void done() {
           super.done();
@@ -0,0 +1,302 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.launch;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import VASSAL.preferences.Prefs;
+import VASSAL.tools.concurrent.DaemonThreadFactory;
+import VASSAL.tools.io.IOUtils;
+import VASSAL.tools.io.ProcessLauncher;
+import VASSAL.tools.io.ProcessWrapper;
+import VASSAL.tools.ipc.IPCMessenger;
+
+/**
+ * Keeps idle {@link Player} processes running, so that a module can be
+ * opened without waiting for a new JVM to start and load the classes
+ * every player needs.
+ *
+ * <p>A warm player is started with the JVM options of a launch, does its
+ * {@link Launcher#warmUp warm-up} and then waits for a
+ * {@link Launcher.WarmLaunchRequest}. Heap sizes and system properties
+ * cannot be changed once a JVM is running, so a warm player is used only
+ * for a launch with exactly the options it was started with. After each
+ * launch, the pool starts a replacement with the options of that launch,
+ * as the next launch is likely to be of the same module.</p>
+ *
+ * <p>A warm player reads the global preferences when it starts, and some
+ * of them, such as the language, are not read again. So a warm player is
+ * used only if the global preferences are the same as when it was
+ * started, and is stopped once they differ.</p>
+ *
+ * <p>The number of warm players kept is set by the
+ * {@link Prefs#WARM_PLAYERS} preference. There are none by default.</p>
+ *
+ * @since 3.2.3
+ */
+class PlayerPool {
+  private static final Logger logger =
+    LoggerFactory.getLogger(PlayerPool.class);
+
+  /** How long to wait for a warm player to connect, in seconds. */
+  private static final int CONNECT_TIMEOUT = 60;
+
+  private static final PlayerPool instance = new PlayerPool();
+
+  public static PlayerPool getInstance() {
+    return instance;
+  }
+
+  /** A warm player process, connected and waiting for a launch request. */
+  static class WarmPlayer {
+    final List<String> options;
+    final Map<String,String> prefs;
+    final ProcessWrapper proc;
+    final Socket socket;
+    final IPCMessenger ipc;
+
+    WarmPlayer(List<String> options, Map<String,String> prefs,
+               ProcessWrapper proc, Socket socket, IPCMessenger ipc) {
+      this.options = options;
+      this.prefs = prefs;
+      this.proc = proc;
+      this.socket = socket;
+      this.ipc = ipc;
+    }
+
+    boolean isAlive() {
+      return !proc.future.isDone() && ipc.isReceiving();
+    }
+
+    void destroy() {
+      proc.future.cancel(true);
+      IOUtils.closeQuietly(socket);
+    }
+  }
+
+  // oldest first
+  private final LinkedList<WarmPlayer> idle = new LinkedList<WarmPlayer>();
+
+  private boolean shutDown = false;
+
+  PlayerPool() {}
+
+  // players are started one at a time, in the background
+  private final ExecutorService starter = new ThreadPoolExecutor(
+    1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+    new DaemonThreadFactory(PlayerPool.class.getSimpleName())
+  );
+
+  /**
+   * @return the number of warm players to keep
+   */
+  int getSize() {
+    final Object val = Prefs.getGlobalPrefs().getValue(Prefs.WARM_PLAYERS);
+    return val instanceof Integer ? Math.max(0, (Integer) val) : 0;
+  }
+
+  /**
+   * @return the current values of the global preferences which a player
+   * reads, for comparison with those a warm player was started with
+   */
+  Map<String,String> getPrefs() {
+    final Map<String,String> prefs = Prefs.getGlobalPrefs().getValueStrings();
+    // the size of the pool does not matter to a player
+    prefs.remove(Prefs.WARM_PLAYERS);
+    return prefs;
+  }
+
+  /**
+   * Takes a warm player out of the pool.
+   *
+   * @param options the JVM options the player must have been started with
+   * @return a warm player started with the given options, or
+   * <code>null</code> if there is none
+   */
+  public synchronized WarmPlayer take(List<String> options) {
+    if (getSize() == 0) {
+      // the pool has been turned off
+      for (WarmPlayer wp : idle) wp.destroy();
+      idle.clear();
+      return null;
+    }
+
+    final Map<String,String> prefs = getPrefs();
+
+    for (Iterator<WarmPlayer> i = idle.iterator(); i.hasNext(); ) {
+      final WarmPlayer wp = i.next();
+      if (!wp.isAlive() || !wp.prefs.equals(prefs)) {
+        // dead, or started with preferences which have since changed
+        i.remove();
+        wp.destroy();
+      }
+      else if (wp.options.equals(options)) {
+        i.remove();
+        return wp;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Starts a warm player with the given options in the background, unless
+   * one is already waiting. The oldest warm players are stopped to keep
+   * the pool to its size.
+   *
+   * @param options the JVM options with which to start the player
+   */
+  public void warm(List<String> options) {
+    final List<String> opts = new ArrayList<String>(options);
+
+    synchronized (this) {
+      if (shutDown) return;
+    }
+
+    final Map<String,String> prefs = getPrefs();
+
+    starter.execute(new Runnable() {
+      public void run() {
+        if (!needs(opts, prefs)) return;
+
+        try {
+          add(start(opts, prefs));
+        }
+        catch (IOException e) {
+          logger.error("", e);
+        }
+      }
+    });
+  }
+
+  private synchronized boolean needs(List<String> options,
+                                     Map<String,String> prefs) {
+    if (shutDown || getSize() == 0) return false;
+
+    for (WarmPlayer wp : idle) {
+      if (wp.options.equals(options) && wp.prefs.equals(prefs) &&
+          wp.isAlive()) return false;
+    }
+
+    return true;
+  }
+
+  synchronized void add(WarmPlayer wp) {
+    if (shutDown) {
+      wp.destroy();
+      return;
+    }
+
+    idle.addLast(wp);
+
+    final int size = getSize();
+    while (idle.size() > size) {
+      idle.removeFirst().destroy();
+    }
+  }
+
+  /**
+   * Stops all idle warm players. No more will be started.
+   */
+  public synchronized void shutDown() {
+    shutDown = true;
+
+    for (WarmPlayer wp : idle) wp.destroy();
+    idle.clear();
+  }
+
+  /**
+   * @return the number of idle warm players
+   */
+  synchronized int getIdleCount() {
+    return idle.size();
+  }
+
+  /**
+   * Starts a warm player and waits for it to connect.
+   *
+   * @param options the JVM options with which to start the player
+   * @param prefs the global preferences the player will read
+   * @return the player
+   * @throws IOException if the player fails to start or to connect
+   */
+  WarmPlayer start(List<String> options, Map<String,String> prefs)
+                                                         throws IOException {
+    final InetAddress lo = InetAddress.getByName(null);
+    final ServerSocket serverSocket = new ServerSocket(0, 0, lo);
+
+    try {
+      final List<String> al = new ArrayList<String>(options);
+      al.add("-DVASSAL.id=" + AbstractLaunchAction.nextId.getAndIncrement());
+      al.add("-DVASSAL.port=" + serverSocket.getLocalPort());
+      al.add("-DVASSAL.warm=true");
+      al.add(Player.class.getName());
+
+      final ProcessWrapper proc =
+        new ProcessLauncher().launch(al.toArray(new String[al.size()]));
+
+      // wait for the player to connect, unless it fails to start
+      serverSocket.setSoTimeout(1000);
+      for (int i = 0; i < CONNECT_TIMEOUT; ++i) {
+        final Socket socket;
+        try {
+          socket = serverSocket.accept();
+        }
+        catch (SocketTimeoutException e) {
+          if (proc.future.isDone()) break;
+          continue;
+        }
+
+        try {
+          final IPCMessenger ipc = new IPCMessenger(socket);
+          ipc.start();
+          return new WarmPlayer(options, prefs, proc, socket, ipc);
+        }
+        catch (IOException e) {
+          proc.future.cancel(true);
+          IOUtils.closeQuietly(socket);
+          throw e;
+        }
+      }
+
+      proc.future.cancel(true);
+      throw new IOException("failed to start warm player");
+    }
+    finally {
+      IOUtils.closeQuietly(serverSocket);
+    }
+  }
+}
@@ -27,6 +27,7 @@ import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -34,6 +35,7 @@ import java.io.PrintWriter;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -50,8 +52,8 @@ import VASSAL.tools.DataArchive;
 import VASSAL.tools.image.ImageUtils;
 import VASSAL.tools.image.tilecache.ImageTileDiskCache;
 import VASSAL.tools.image.tilecache.TileUtils;
+import VASSAL.tools.image.tilecache.ZipFileImageTiler;
 import VASSAL.tools.io.FileArchive;
-import VASSAL.tools.io.FileStore;
 import VASSAL.tools.io.IOUtils;
 import VASSAL.tools.io.InputOutputStreamPump;
 import VASSAL.tools.io.InputStreamPump;
@@ -96,16 +98,41 @@ public class TilingHandler {
   }
 
   protected boolean isFresh(FileArchive archive,
-                            FileStore tcache, String ipath)
-                                                           throws IOException {
-    // look at the first 1:1 tile
-    final String tpath = TileUtils.tileName(ipath, 0, 0, 1);
+                            ImageTileDiskCache tcache, String ipath) {
+    try {
+      return tcache.isFresh(archive, ipath, tdim.width, tdim.height);
+    }
+    catch (IOException e) {
+      // slice the image again
+      logger.warn("Failed to check tiles for " + ipath, e);
+      return false;
+    }
+  }
 
-    // check whether the image is older than the tile
-    final long imtime = archive.getMTime(ipath);
+  /**
+   * Records in the tile cache manifest the content of the images which
+   * were sliced.
+   */
+  protected void setFresh(ImageTileDiskCache tcache, List<String> multi)
+                                                           throws IOException {
+    DataArchive archive = null;
+    try {
+      archive = new DataArchive(aname);
+      for (String ipath : multi) {
+        // packs which failed to be written were removed before slicing
+        if (new File(cdir, TileUtils.packName(ipath)).isFile()) {
+          tcache.setFresh(
+            archive.getArchive(), ipath, tdim.width, tdim.height
+          );
+        }
+      }
+      archive.close();
+    }
+    finally {
+      IOUtils.closeQuietly(archive);
+    }
 
-    return imtime > 0 && // time in archive might be goofy
-           imtime <= tcache.getMTime(tpath);
+    tcache.getManifest().save();
   }
 
   protected Dimension getImageSize(DataArchive archive, String ipath)
@@ -124,7 +151,7 @@ public class TilingHandler {
 
   protected Pair<Integer,Integer> findImages(
     DataArchive archive,
-    FileStore tcache,
+    ImageTileDiskCache tcache,
     List<String> multi,
     List<Pair<String,IOException>> failed) throws IOException
   {
@@ -173,6 +200,102 @@ public class TilingHandler {
   protected void runSlicer(List<String> multi, final int tcount, int maxheap)
                                    throws CancellationException, IOException {
 
+    // get the progress dialog
+    final ProgressDialog pd = ProgressDialog.createOnEDT(
+      ModuleManagerWindow.getInstance(),
+      "Processing Image Tiles",
+      " "
+    );
+
+    final Progressor progressor = new Progressor(0, tcount) {
+      @Override
+      protected void run(Pair<Integer,Integer> prog) {
+        pd.setProgress((100*prog.second)/max);
+      }
+    };
+
+    runTiler(aname, cdir, tdim, maxheap, String.valueOf(pid), multi,
+             new TilerListener() {
+      public void started(final ProcessWrapper proc) {
+        // setup the cancel button in the progress dialog
+        EDT.execute(new Runnable() {
+          public void run() {
+            pd.addActionListener(new ActionListener() {
+              public void actionPerformed(ActionEvent e) {
+                pd.setVisible(false);
+                proc.future.cancel(true);
+              }
+            });
+          }
+        });
+      }
+
+      public void startingImage(final String ipath) {
+        EDT.execute(new Runnable() {
+          public void run() {
+            pd.setLabel("Tiling " + ipath);
+            if (!pd.isVisible()) pd.setVisible(true);
+          }
+        });
+      }
+
+      public void tileWritten() {
+        progressor.increment();
+
+        if (progressor.get() >= tcount) {
+          pd.setVisible(false);
+        }
+      }
+    });
+  }
+
+  /**
+   * Receives the progress of a {@link ZipFileImageTiler} process.
+   *
+   * @since 3.2.3
+   */
+  public static interface TilerListener {
+    /**
+     * Called when the tiler has started and connected.
+     *
+     * @param proc the tiler process, which may be cancelled
+     */
+    public void started(ProcessWrapper proc);
+
+    /**
+     * Called when the tiler starts to slice an image.
+     *
+     * @param ipath the image path
+     */
+    public void startingImage(String ipath);
+
+    /** Called when the tiler has written a tile. */
+    public void tileWritten();
+  }
+
+  /** How long to wait for the tiler to connect, in seconds. */
+  private static final int CONNECT_TIMEOUT = 60;
+
+  /**
+   * Slices images in a {@link ZipFileImageTiler} process, and waits for
+   * it to end.
+   *
+   * @param aname the path to the ZIP archive
+   * @param cdir the tile cache directory
+   * @param tdim the tile size
+   * @param maxheap the maximum heap of the process, in MB
+   * @param pid the id of the process
+   * @param images the paths of the images to slice
+   * @param listener the listener to notify of progress
+   * @throws CancellationException if the process is cancelled
+   * @throws IOException if the process fails to start or to connect, or
+   * ends with an error
+   * @since 3.2.3
+   */
+  public static void runTiler(String aname, File cdir, Dimension tdim,
+                              int maxheap, String pid, List<String> images,
+                              TilerListener listener)
+                                   throws CancellationException, IOException {
     final InetAddress lo = InetAddress.getByName(null);
     final ServerSocket ssock = new ServerSocket(0, 0, lo);
 
@@ -186,37 +309,46 @@ public class TilingHandler {
       "-Xmx" + maxheap + "M",
       "-DVASSAL.id=" + pid,
       "-Duser.home=" + System.getProperty("user.home"),
-      "-DVASSAL.port=" + port,
-      "VASSAL.tools.image.tilecache.ZipFileImageTiler",
+      "-DVASSAL.port=" + port
+    }));
+
+    // pass on the choice of tile pack codec
+    final String codec = System.getProperty("VASSAL.tileCodec");
+    if (codec != null) {
+      args.add("-DVASSAL.tileCodec=" + codec);
+    }
+
+    args.addAll(Arrays.asList(new String[] {
+      ZipFileImageTiler.class.getName(),
       aname,
       cdir.getAbsolutePath(),
       String.valueOf(tdim.width),
       String.valueOf(tdim.height)
     }));
 
-    // get the progress dialog
-    final ProgressDialog pd = ProgressDialog.createOnEDT(
-      ModuleManagerWindow.getInstance(),
-      "Processing Image Tiles",
-      " "
-    );
-
     // set up the process
     final InputStreamPump outP = new InputOutputStreamPump(null, System.out);
     final InputStreamPump errP = new InputOutputStreamPump(null, System.err);
 
-    final ProcessWrapper proc = new ProcessLauncher().launch(
-      null,
-      outP,
-      errP,
-      args.toArray(new String[args.size()])
-    );
+    final ProcessWrapper proc;
+    try {
+      proc = new ProcessLauncher().launch(
+        null,
+        outP,
+        errP,
+        args.toArray(new String[args.size()])
+      );
+    }
+    catch (IOException e) {
+      IOUtils.closeQuietly(ssock);
+      throw e;
+    }
 
     // write the image paths to child's stdin, one per line
     PrintWriter stdin = null;
     try {
       stdin = new PrintWriter(proc.stdin);
-      for (String m : multi) {
+      for (String m : images) {
         stdin.println(m);
       }
     }
@@ -227,70 +359,57 @@ public class TilingHandler {
     Socket csock = null;
     DataInputStream in = null;
     try {
-      csock = ssock.accept();
-      csock.shutdownOutput();
-
-      in = new DataInputStream(csock.getInputStream());
-
-      final Progressor progressor = new Progressor(0, tcount) {
-        @Override
-        protected void run(Pair<Integer,Integer> prog) {
-          pd.setProgress((100*prog.second)/max);
+      // wait for the tiler to connect, unless it fails to start
+      ssock.setSoTimeout(1000);
+      for (int i = 0; csock == null; ++i) {
+        try {
+          csock = ssock.accept();
         }
-      };
-
-      // setup the cancel button in the progress dialog
-      EDT.execute(new Runnable() {
-        public void run() {
-          pd.addActionListener(new ActionListener() {
-            public void actionPerformed(ActionEvent e) {
-              pd.setVisible(false);
-              proc.future.cancel(true);
-            }
-          });
+        catch (SocketTimeoutException e) {
+          if (proc.future.isDone()) break;
+          if (i >= CONNECT_TIMEOUT) {
+            proc.future.cancel(true);
+            throw new IOException("tiler failed to connect");
+          }
         }
-      });
-
-      boolean done = false;
-      byte type;
-      while (!done) {
-        type = in.readByte();
-
-        switch (type) {
-        case STARTING_IMAGE:
-          final String ipath = in.readUTF();
+      }
 
-          EDT.execute(new Runnable() {
-            public void run() {
-              pd.setLabel("Tiling " + ipath);
-              if (!pd.isVisible()) pd.setVisible(true);
+      if (csock != null) {
+        csock.shutdownOutput();
+        listener.started(proc);
+
+        in = new DataInputStream(csock.getInputStream());
+        try {
+          boolean done = false;
+          while (!done) {
+            final byte type = in.readByte();
+            switch (type) {
+            case STARTING_IMAGE:
+              listener.startingImage(in.readUTF());
+              break;
+
+            case TILE_WRITTEN:
+              listener.tileWritten();
+              break;
+
+            case TILING_FINISHED:
+              done = true;
+              break;
+
+            default:
+              throw new IOException("bad type: " + type);
             }
-          });
-          break;
-
-        case TILE_WRITTEN:
-          progressor.increment();
-
-          if (progressor.get() >= tcount) {
-            pd.setVisible(false);
           }
-          break;
-
-        case TILING_FINISHED:
-          done = true;
-          break;
-
-        default:
-          throw new IllegalStateException("bad type: " + type);
         }
+        catch (EOFException e) {
+          // the tiler ended without finishing; its return value tells why
+        }
+
+        in.close();
+        csock.close();
       }
 
-      in.close();
-      csock.close();
       ssock.close();
-    }
-    catch (IOException e) {
-
     }
     finally {
       IOUtils.closeQuietly(in);
@@ -306,12 +425,15 @@ public class TilingHandler {
       }
     }
     catch (ExecutionException e) {
-      // should never happen
-      throw new IllegalStateException(e);
+      throw (IOException) new IOException().initCause(e);
     }
     catch (InterruptedException e) {
-      // should never happen
-      throw new IllegalStateException(e);
+      Thread.currentThread().interrupt();
+      throw (IOException) new IOException().initCause(e);
+    }
+
+    if (csock == null) {
+      throw new IOException("tiler did not connect");
     }
   }
 
@@ -338,11 +460,13 @@ public class TilingHandler {
     final List<Pair<String,IOException>> failed =
       new ArrayList<Pair<String,IOException>>();
 
+    final ImageTileDiskCache tcache =
+      new ImageTileDiskCache(cdir.getAbsolutePath());
+
     Pair<Integer,Integer> s;
     DataArchive archive = null;
     try {
       archive = new DataArchive(aname);
-      final FileStore tcache = new ImageTileDiskCache(cdir.getAbsolutePath());
       s = findImages(archive, tcache, multi, failed);
       archive.close();
     }
@@ -350,6 +474,9 @@ public class TilingHandler {
       IOUtils.closeQuietly(archive);
     }
 
+    // save tiles found to be fresh by content or copied from other caches
+    tcache.getManifest().save();
+
     // nothing to do if no images need tiling
     if (multi.isEmpty()) {
       logger.info("No images to tile.");
@@ -369,6 +496,11 @@ public class TilingHandler {
 
     final int maxheap = Math.min(maxheap_estimated, maxheap_limit);
 
+    // remove stale tile packs, so that those present after slicing are new
+    for (String ipath : multi) {
+      new File(cdir, TileUtils.packName(ipath)).delete();
+    }
+
     // slice, and cleanup on failure
     try {
       runSlicer(multi, s.first, maxheap);
@@ -381,5 +513,7 @@ public class TilingHandler {
       cleanup();
       throw e;
     }
+
+    setFresh(tcache, multi);
   }
 }
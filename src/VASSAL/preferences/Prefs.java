@@ -39,6 +39,8 @@ import VASSAL.build.module.WizardSupport;
 import VASSAL.configure.BooleanConfigurer;
 import VASSAL.configure.Configurer;
 import VASSAL.configure.DirectoryConfigurer;
+import VASSAL.configure.IntConfigurer;
+import VASSAL.counters.FlatState;
 import VASSAL.i18n.Resources;
 import VASSAL.tools.ReadErrorDialog;
 import VASSAL.tools.io.FileArchive;
@@ -53,6 +55,11 @@ public class Prefs implements Closeable {
   /** Preferences key for the directory containing modules */
   public static final String MODULES_DIR_KEY = "modulesDir"; // $NON_NLS-1$
   public static final String DISABLE_D3D = "disableD3d";
+  public static final String COMPILE_EXPRESSIONS = "compileExpressions";
+  public static final String FLAT_STATES = "flatPieceStates";
+  public static final String FLAT_SAVED_STATES = "flatSavedPieceStates";
+  public static final String LAZY_TILING = "lazyTiling";
+  public static final String WARM_PLAYERS = "warmPlayers";
   public static final String DISABLE_QUARTZ = "disableD3d";
   private static Prefs globalPrefs;
   private Map<String, Configurer> options = new HashMap<String, Configurer>();
@@ -132,6 +139,19 @@ public class Prefs implements Closeable {
     return c == null ? null : c.getValue();
   }
 
+  /**
+   * @return the values of all options, as they would be stored in the
+   * preferences file
+   * @since 3.2.3
+   */
+  public Map<String,String> getValueStrings() {
+    final Map<String,String> values = new HashMap<String,String>();
+    for (Configurer c : options.values()) {
+      values.put(c.getKey(), c.getValueString());
+    }
+    return values;
+  }
+
   /**
    * Return the value of a given preference.
    *
@@ -288,5 +308,50 @@ public class Prefs implements Closeable {
     );
 
     globalPrefs.addOption(wizardConf);
+
+    // Option to compile expressions to bytecode
+    final BooleanConfigurer compileConf = new BooleanConfigurer(
+      COMPILE_EXPRESSIONS,
+      Resources.getString("Prefs.compile_expressions"),
+      Boolean.FALSE
+    );
+    globalPrefs.addOption(compileConf);
+
+    // Options to use flat piece states in moves and in saved games
+    final BooleanConfigurer flatConf = new BooleanConfigurer(
+      FLAT_STATES,
+      Resources.getString("Prefs.flat_piece_states"),
+      Boolean.FALSE
+    );
+    globalPrefs.addOption(flatConf);
+    FlatState.setUsedForMoves(Boolean.TRUE.equals(flatConf.getValue()));
+    flatConf.addPropertyChangeListener(new PropertyChangeListener() {
+      public void propertyChange(PropertyChangeEvent evt) {
+        FlatState.setUsedForMoves(Boolean.TRUE.equals(evt.getNewValue()));
+      }
+    });
+
+    final BooleanConfigurer flatSavedConf = new BooleanConfigurer(
+      FLAT_SAVED_STATES,
+      Resources.getString("Prefs.flat_saved_piece_states"),
+      Boolean.FALSE
+    );
+    globalPrefs.addOption(flatSavedConf);
+
+    // Option to slice map tiles as they are needed
+    final BooleanConfigurer lazyConf = new BooleanConfigurer(
+      LAZY_TILING,
+      Resources.getString("Prefs.lazy_tiling"),
+      Boolean.FALSE
+    );
+    globalPrefs.addOption(lazyConf);
+
+    // Option to keep players started, ready to open modules
+    final IntConfigurer warmConf = new IntConfigurer(
+      WARM_PLAYERS,
+      Resources.getString("Prefs.warm_players"),
+      0
+    );
+    globalPrefs.addOption(warmConf);
   }
 }
@@ -0,0 +1,172 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+package VASSAL.script;
+
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.janino.ClassBodyEvaluator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bsh.BeanShellExpressionCompiler;
+import bsh.Primitive;
+import bsh.UtilEvalError;
+
+/**
+ * An expression compiled to Java bytecode with Janino. Expressions using
+ * anything beyond the subset handled by {@link BeanShellExpressionCompiler}
+ * are not compiled.
+ *
+ * A compiled expression gives the same result as the BeanShell
+ * {@link ExpressionInterpreter}, or throws a {@link UtilEvalError}
+ * if it cannot, in which case the expression should be evaluated by
+ * BeanShell instead.
+ *
+ * The methods taking and returning Objects are the functions available
+ * to compiled expressions and must behave like the functions of the same
+ * name in init_expression.bsh.
+ *
+ * @since 3.2.3
+ */
+public abstract class CompiledExpression {
+  private static final Logger logger =
+    LoggerFactory.getLogger(CompiledExpression.class);
+
+  private String[] variables;
+  private Object[] constants;
+
+  private ExpressionInterpreter interpreter;
+
+  /**
+   * Compile an expression.
+   *
+   * @param expression Expression
+   * @return the compiled expression, or null if it cannot be compiled
+   */
+  public static CompiledExpression compile(String expression) {
+    final BeanShellExpressionCompiler c =
+      new BeanShellExpressionCompiler(expression, CompiledExpression.class);
+    final String body = c.getSource();
+    if (body == null) {
+      return null;
+    }
+
+    try {
+      final ClassBodyEvaluator cbe = new ClassBodyEvaluator();
+      cbe.setExtendedClass(CompiledExpression.class);
+      cbe.setParentClassLoader(CompiledExpression.class.getClassLoader());
+      cbe.cook(
+        "public String evaluate(Object[] v, Object[] k) throws bsh.UtilEvalError {\n" +
+        body +
+        "}\n"
+      );
+
+      final CompiledExpression ce =
+        (CompiledExpression) cbe.getClazz().newInstance();
+      ce.variables =
+        c.getVariables().toArray(new String[c.getVariables().size()]);
+      ce.constants = c.getConstants().toArray();
+      return ce;
+    }
+    catch (CompileException e) {
+      logger.warn("Unable to compile expression " + expression, e);
+    }
+    catch (InstantiationException e) {
+      logger.warn("Unable to compile expression " + expression, e);
+    }
+    catch (IllegalAccessException e) {
+      logger.warn("Unable to compile expression " + expression, e);
+    }
+    return null;
+  }
+
+  /**
+   * Evaluate the expression for the current source of an interpreter.
+   *
+   * @param interp the interpreter supplying property values
+   * @param localized whether to use localized property values
+   * @return result
+   * @throws UtilEvalError if BeanShell must evaluate the expression
+   */
+  public String evaluate(ExpressionInterpreter interp, boolean localized)
+                                                       throws UtilEvalError {
+    final Object[] values = new Object[variables.length];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = interp.getVariableValue(variables[i], localized);
+    }
+
+    interpreter = interp;
+    try {
+      return evaluate(values, constants);
+    }
+    finally {
+      interpreter = null;
+    }
+  }
+
+  /**
+   * Implemented by the compiled code.
+   *
+   * @param v the values of the variables
+   * @param k the values of the literals
+   * @return result
+   */
+  protected abstract String evaluate(Object[] v, Object[] k)
+                                                    throws UtilEvalError;
+
+  /*****************************************************************
+   * Functions available to compiled expressions
+   **/
+
+  protected Object GetProperty(Object name) throws UtilEvalError {
+    return interpreter.getProperty(toName(name));
+  }
+
+  protected Object GetLocalizedProperty(Object name) throws UtilEvalError {
+    return interpreter.getLocalizedProperty(toName(name));
+  }
+
+  protected Object SumStack(Object name) throws UtilEvalError {
+    return unwrap(interpreter.sumStack(toName(name), interpreter.source));
+  }
+
+  protected Object SumLocation(Object name) throws UtilEvalError {
+    return unwrap(interpreter.sumLocation(toName(name), interpreter.source));
+  }
+
+  private static String toName(Object name) throws UtilEvalError {
+    // BeanShell will not call a function taking a String with anything else
+    if (name instanceof String) {
+      return (String) name;
+    }
+    throw new UtilEvalError("Argument is not a String");
+  }
+
+  private static Object unwrap(Object value) {
+    if (value instanceof Integer) {
+      return new Primitive(((Integer) value).intValue());
+    }
+    else if (value instanceof Float) {
+      return new Primitive(((Float) value).floatValue());
+    }
+    else if (value instanceof Boolean) {
+      return new Primitive(((Boolean) value).booleanValue());
+    }
+    return value;
+  }
+}
@@ -32,14 +32,18 @@ import org.slf4j.LoggerFactory;
 import VASSAL.build.GameModule;
 import VASSAL.build.module.Map;
 import VASSAL.build.module.properties.PropertySource;
+import VASSAL.build.module.properties.PropertyValue;
 import VASSAL.counters.GamePiece;
 import VASSAL.counters.Stack;
+import VASSAL.preferences.Prefs;
 import VASSAL.script.expression.ExpressionException;
 import VASSAL.tools.WarningDialog;
 import VASSAL.tools.io.IOUtils;
 import bsh.BeanShellExpressionValidator;
 import bsh.EvalError;
 import bsh.NameSpace;
+import bsh.Primitive;
+import bsh.UtilEvalError;
 
 /**
  *
@@ -81,6 +85,10 @@ public class ExpressionInterpreter extends AbstractInterpreter {
   protected PropertySource source;
   protected List<String> variables = new ArrayList<String>();
 
+  // The expression compiled to bytecode, if enabled and possible
+  protected CompiledExpression compiled;
+  protected boolean compileTried = false;
+
   // Maintain a cache of all generated Interpreters. All Expressions
   // with the same Expression use the same Interpreter.
   protected static HashMap<String, ExpressionInterpreter> cache = new HashMap<String, ExpressionInterpreter>();
@@ -149,7 +157,32 @@ public class ExpressionInterpreter extends AbstractInterpreter {
     // Add a link to this Interpreter into the new NameSpace for callbacks from
     // BeanShell back to us
     setVar(THIS, this);
+  }
 
+  /**
+   * Return whether the user has opted in to compiling expressions. This
+   * is checked on each evaluation, so that changing the preference affects
+   * existing interpreters.
+   *
+   * @return true if expressions are to be compiled
+   */
+  protected static boolean isCompiling() {
+    return Boolean.TRUE.equals(
+      Prefs.getGlobalPrefs().getValue(Prefs.COMPILE_EXPRESSIONS));
+  }
+
+  /**
+   * Return the expression compiled to bytecode, compiling it the first
+   * time. Expressions which cannot be compiled are left to BeanShell.
+   *
+   * @return the compiled expression, or null if it cannot be compiled
+   */
+  protected CompiledExpression getCompiled() {
+    if (!compileTried) {
+      compiled = CompiledExpression.compile(expression);
+      compileTried = true;
+    }
+    return compiled;
   }
 
   /**
@@ -219,39 +252,27 @@ public class ExpressionInterpreter extends AbstractInterpreter {
     // GamePiece supplied.
     source = ps == null ? GameModule.getGameModule() : ps;
 
+    // A compiled expression gives the same result as BeanShell would, but
+    // leaves anything unusual, including errors, to BeanShell
+    final CompiledExpression ce = isCompiling() ? getCompiled() : null;
+    if (ce != null) {
+      try {
+        return ce.evaluate(this, localized);
+      }
+      catch (UtilEvalError e) {
+        // Not an error
+      }
+      catch (RuntimeException e) {
+        // Not an error
+      }
+    }
+
     setNameSpace(expressionNameSpace);
 
     // Bind each undeclared variable with the value of the
-    // corresponding Vassal property. Allow for old-style $variable$ references
+    // corresponding Vassal property.
     for (String var : variables) {
-      String name = var;
-      if (name.length() > 2 && name.startsWith("$") && name.endsWith("$")) {
-        name = name.substring(1, name.length()-1);
-      }
-      Object prop = localized ? source.getLocalizedProperty(name) : source.getProperty(name);
-      String value = prop == null ? "" : prop.toString();
-      if (value == null) {
-        setVar(var, "");
-      }
-      else if ("true".equals(value)) {
-        setVar(var, true);
-      }
-      else if ("false".equals(value)) {
-        setVar(var, false);
-      }
-      else {
-        try {
-          setVar(var, Integer.valueOf(value).intValue());
-        }
-        catch (NumberFormatException e) {
-          try {
-            setVar(var, Float.valueOf(value).floatValue());
-          }
-          catch (NumberFormatException e1) {
-            setVar(var, value);
-          }
-        }
-      }
+      setVar(var, getVariableValue(var, localized));
     }
 
     // Re-evaluate the pre-parsed expression now that the undefined variables have
@@ -275,6 +296,38 @@ public class ExpressionInterpreter extends AbstractInterpreter {
     return result;
   }
 
+  /**
+   * Return the value to which a variable is bound for evaluation: the
+   * value of the matching Vassal property of the current source, wrapped
+   * as a primitive if possible. Allow for old-style $variable$ references.
+   *
+   * @param var variable name
+   * @param localized whether to use the localized property value
+   * @return value
+   */
+  protected Object getVariableValue(String var, boolean localized) {
+    String name = var;
+    if (name.length() > 2 && name.startsWith("$") && name.endsWith("$")) {
+      name = name.substring(1, name.length()-1);
+    }
+    final PropertyValue value = PropertyValue.get(source, name, localized);
+    if (value.isNull()) {
+      return "";
+    }
+    else if (value.isBoolean()) {
+      return new Primitive(value.booleanValue());
+    }
+    else if (value.isInt()) {
+      return new Primitive(value.intValue());
+    }
+    else if (value.isFloat()) {
+      return new Primitive(value.floatValue());
+    }
+    else {
+      return value.toString();
+    }
+  }
+
   public String evaluate() throws ExpressionException {
     return getExpression().length() == 0 ? "" : evaluate(GameModule.getGameModule());
   }
@@ -335,15 +388,7 @@ public class ExpressionInterpreter extends AbstractInterpreter {
     if (ps instanceof GamePiece) {
       Stack s = ((GamePiece) ps).getParent();
       if (s != null) {
-        for (int i = 0; i < s.getPieceCount(); i++) {
-          try {
-            result +=
-              Integer.valueOf(s.getPieceAt(i).getProperty(property).toString());
-          }
-          catch (NumberFormatException e) {
-            //
-          }
-        }
+        result = sum(property, s);
       }
     }
     return result;
@@ -354,8 +399,8 @@ public class ExpressionInterpreter extends AbstractInterpreter {
    * Total the value of the named property in all counters in the
    * same location as the specified piece.
    *
-   * * WARNING * This WILL be inneficient as the number of counters on the
-   * map increases.
+   * The totals at each location are kept by the {@link Map} until the
+   * pieces there change, so this usually costs one lookup.
    *
    * @param property Property Name
    * @param ps GamePiece
@@ -368,32 +413,24 @@ public class ExpressionInterpreter extends AbstractInterpreter {
       Map m = p.getMap();
       if (m != null) {
         String here = m.locationName(p.getPosition());
-        GamePiece[] pieces = m.getPieces();
-        for (int i = 0; i < pieces.length; i++) {
-          if (here.equals(m.locationName(pieces[i].getPosition()))) {
-            if (pieces[i] instanceof Stack) {
-              Stack s = (Stack) pieces[i];
-              for (int j = 0; j < s.getPieceCount(); j++) {
-                try {
-                  result += Integer.valueOf(s.getPieceAt(j).getProperty(property).toString());
-                }
-                catch (NumberFormatException e) {
-                  //
-                }
-              }
-            }
-            else {
-              try {
-                result += Integer.valueOf(pieces[i].getProperty(property).toString());
-              }
-              catch (NumberFormatException e) {
-                //
-              }
-            }
-          }
-        }
+        result = m.getTotalInLocation(here, property);
       }
     }
     return result;
   }
+
+  /** Total the integer values of a property of the pieces in a Stack */
+  private static int sum(String property, Stack s) {
+    int result = 0;
+    for (int i = 0; i < s.getPieceCount(); i++) {
+      result += intValue(property, s.getPieceAt(i));
+    }
+    return result;
+  }
+
+  /** @return the value of a property if it is an integer, or 0 */
+  private static int intValue(String property, GamePiece p) {
+    final PropertyValue v = PropertyValue.get(p, property, false);
+    return v.isInt() ? v.intValue() : 0;
+  }
 }
\ No newline at end of file
@@ -260,6 +260,38 @@ public class DataArchive extends SecureClassLoader implements Closeable {
     return null;
   }
 
+  /**
+   * Get the archive, either this one or that of one of its extensions,
+   * which contains the given file.
+   *
+   * @param fileName the name of the file
+   * @return the archive containing the file
+   * @throws IOException if there is a problem reading the archive
+   * @throws FileNotFoundException if the file doesn't exist
+   * @since 3.2.3
+   */
+  public FileArchive getArchiveContaining(String fileName)
+                                    throws IOException, FileNotFoundException {
+    // requested file is in this archive
+    if (archive != null && archive.contains(fileName)) {
+      return archive;
+    }
+
+    // we don't have it, try our extensions
+    for (DataArchive ext : extensions) {
+      try {
+        return ext.getArchiveContaining(fileName);
+      }
+      catch (FileNotFoundException e) {
+        // not found in this extension, try the next
+      }
+    }
+
+    throw new FileNotFoundException(
+      "\'" + fileName + "\' not found in " + getName()
+    );
+  }
+
   /**
    * Returns a URL pointing to the archive.
    *
@@ -149,56 +149,77 @@ public class SequenceEncoder {
     buffer.append(s.substring(begin));
   }
 
+  /**
+   * Splits a String encoded by a {@link SequenceEncoder} back into tokens.
+   *
+   * The decoder keeps its position in the original String, so that only
+   * the tokens returned are copied, and numeric and boolean tokens are
+   * parsed without creating Strings at all where possible.
+   */
   public static class Decoder implements Iterator<String> {
-    private String val;
+    private final String val;
     private final char delimit;
+    private int pos;
+    private boolean more;
 
     public Decoder(String value, char delimiter) {
+      this(value, delimiter, 0);
+    }
+
+    private Decoder(String value, char delimiter, int pos) {
       val = value;
       delimit = delimiter;
+      this.pos = pos;
+      more = value != null;
     }
 
     public boolean hasMoreTokens() {
-      return val != null;
+      return more;
     }
 
     public String nextToken() {
       if (!hasMoreTokens()) throw new NoSuchElementException();
 
-      String value;
+      int end = val.indexOf(delimit, pos);
+      if (end < 0 || end == pos || val.charAt(end - 1) != '\\') {
+        // no escaped delimiters, so the token is a substring
+        if (end < 0) {
+          end = val.length();
+        }
 
-      final int i = val.indexOf(delimit);
-      if (i < 0) {
-        value = val;
-        val = null;
-      }
-      else {
-        final StringBuilder buffer = new StringBuilder();
-        int begin = 0;
-        int end = i;
-        while (begin < end) {
-          if (val.charAt(end - 1) == '\\') {
-            buffer.append(val.substring(begin, end - 1));
-            begin = end;
-            end = val.indexOf(delimit, end + 1);
-          }
-          else {
-            break;
-          }
+        final int begin = pos;
+        advance(end);
+
+        if (end - begin > 1 &&
+            val.charAt(begin) == '\'' && val.charAt(end - 1) == '\'') {
+          return val.substring(begin + 1, end - 1);
         }
+        return val.substring(begin, end);
+      }
 
-        if (end < 0) {
-          buffer.append(val.substring(begin));
-          val = null;
+      final StringBuilder buffer = new StringBuilder();
+      int begin = pos;
+      while (begin < end) {
+        if (val.charAt(end - 1) == '\\') {
+          buffer.append(val, begin, end - 1);
+          begin = end;
+          end = val.indexOf(delimit, end + 1);
         }
         else {
-          buffer.append(val.substring(begin, end));
-          val = end >= val.length() - 1 ? "" : val.substring(end + 1);
+          break;
         }
+      }
 
-        value = buffer.toString();
+      if (end < 0) {
+        buffer.append(val, begin, val.length());
+        more = false;
+      }
+      else {
+        buffer.append(val, begin, end);
+        pos = end + 1;
       }
 
+      String value = buffer.toString();
       if (value.startsWith("'") && value.endsWith("'") && value.length() > 1) {
         value = value.substring(1, value.length() - 1);
       }
@@ -206,6 +227,64 @@ public class SequenceEncoder {
       return value;
     }
 
+    /**
+     * @return the end of the next token, if it is a plain substring,
+     * neither escaped nor quoted, or -1
+     */
+    private int plainTokenEnd() {
+      int end = val.indexOf(delimit, pos);
+      if (end < 0) {
+        end = val.length();
+      }
+      else if (end > pos && val.charAt(end - 1) == '\\') {
+        return -1;
+      }
+
+      if (end > pos && val.charAt(pos) == '\'') {
+        return -1;
+      }
+      return end;
+    }
+
+    /** Move past the token ending at <code>end</code> */
+    private void advance(int end) {
+      if (end >= val.length()) {
+        more = false;
+      }
+      else {
+        pos = end + 1;
+      }
+    }
+
+    private static final long NOT_SIMPLE = Long.MIN_VALUE;
+
+    /**
+     * Parse an optionally negative decimal number of up to
+     * <code>maxDigits</code> digits, which cannot overflow.
+     *
+     * @return the number, or <code>NOT_SIMPLE</code> for anything else
+     */
+    private long parseSimple(int begin, int end, int maxDigits) {
+      final boolean negative = begin < end && val.charAt(begin) == '-';
+      if (negative) {
+        ++begin;
+      }
+
+      if (begin == end || end - begin > maxDigits) {
+        return NOT_SIMPLE;
+      }
+
+      long n = 0;
+      for (int i = begin; i < end; ++i) {
+        final char c = val.charAt(i);
+        if (c < '0' || c > '9') {
+          return NOT_SIMPLE;
+        }
+        n = 10 * n + (c - '0');
+      }
+      return negative ? -n : n;
+    }
+
     public boolean hasNext() {
       return hasMoreTokens();
     }
@@ -219,7 +298,9 @@ public class SequenceEncoder {
     }
 
     public Decoder copy() {
-      return new Decoder(val, delimit);
+      final Decoder d = new Decoder(val, delimit, pos);
+      d.more = more;
+      return d;
     }
 
     /**
@@ -228,7 +309,16 @@ public class SequenceEncoder {
      * @return
      */
     public int nextInt(int defaultValue) {
-      if (val != null) {
+      if (more) {
+        final int end = plainTokenEnd();
+        if (end >= 0) {
+          final long n = parseSimple(pos, end, 9);
+          if (n != NOT_SIMPLE) {
+            advance(end);
+            return (int) n;
+          }
+        }
+
         try {
           defaultValue = Integer.parseInt(nextToken());
         }
@@ -239,7 +329,16 @@ public class SequenceEncoder {
     }
 
     public long nextLong(long defaultValue) {
-      if (val != null) {
+      if (more) {
+        final int end = plainTokenEnd();
+        if (end >= 0) {
+          final long n = parseSimple(pos, end, 18);
+          if (n != NOT_SIMPLE) {
+            advance(end);
+            return n;
+          }
+        }
+
         try {
           defaultValue = Long.parseLong(nextToken());
         }
@@ -250,7 +349,7 @@ public class SequenceEncoder {
     }
 
     public double nextDouble(double defaultValue) {
-      if (val != null) {
+      if (more) {
         try {
           defaultValue = Double.parseDouble(nextToken());
         }
@@ -261,7 +360,18 @@ public class SequenceEncoder {
     }
 
     public boolean nextBoolean(boolean defaultValue) {
-      return val != null ? "true".equals(nextToken()) : defaultValue;
+      if (!more) {
+        return defaultValue;
+      }
+
+      final int end = plainTokenEnd();
+      if (end < 0) {
+        return "true".equals(nextToken());
+      }
+
+      final boolean b = end - pos == 4 && val.startsWith("true", pos);
+      advance(end);
+      return b;
     }
 
     /**
@@ -270,7 +380,7 @@ public class SequenceEncoder {
      * @return
      */
     public char nextChar(char defaultValue) {
-      if (val != null) {
+      if (more) {
         final String s = nextToken();
         defaultValue = s.length() > 0 ? s.charAt(0) : defaultValue;
       }
@@ -283,7 +393,7 @@ public class SequenceEncoder {
     }
 
     public Color nextColor(Color defaultValue) {
-      if (val != null) {
+      if (more) {
         final String s = nextToken();
         if (s.length() > 0) {
           defaultValue = ColorConfigurer.stringToColor(s);
@@ -296,7 +406,7 @@ public class SequenceEncoder {
     }
 
     public KeyStroke nextKeyStroke(KeyStroke defaultValue) {
-      if (val != null) {
+      if (more) {
         final String s = nextToken();
         if (s.length() == 0) {
           defaultValue = null;
@@ -321,7 +431,7 @@ public class SequenceEncoder {
     }
 
     public NamedKeyStroke nextNamedKeyStroke(NamedKeyStroke defaultValue) {
-      if (val != null) {
+      if (more) {
         String s = nextToken();
         if (s.length() == 0) {
           defaultValue = null;
@@ -342,12 +452,12 @@ public class SequenceEncoder {
      * @return
      */
     public String nextToken(String defaultValue) {
-      return val != null ? nextToken() : defaultValue;
+      return more ? nextToken() : defaultValue;
     }
 
     public String[] nextStringArray(int minLength) {
       String[] retVal;
-      if (val != null) {
+      if (more) {
         retVal = StringArrayConfigurer.stringToArray(nextToken());
       }
       else {
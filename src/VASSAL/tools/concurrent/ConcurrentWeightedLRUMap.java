@@ -0,0 +1,321 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.concurrent;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link ConcurrentMap} which holds values up to a budget, evicting the
+ * least recently used values when the budget is exceeded. Each value is
+ * given a weight by a {@link Weigher}, and the budget is a limit on the
+ * total weight of the values held.
+ *
+ * <p>Values with weight zero are never evicted. A value whose weight is
+ * not known when it is added, such as the result of a computation which
+ * is still running, may be given weight zero and weighed again once its
+ * weight is known, using {@link #reweigh}.</p>
+ *
+ * <p>All operations lock the whole map, so this implementation is suited
+ * to maps whose values are expensive to compute, where the time spent
+ * waiting for the lock is small by comparison.</p>
+ *
+ * <p>The {@link #entrySet} is a snapshot, and cannot be modified.</p>
+ *
+ * <p>This implementation does not permit <code>null</code> keys or
+ * values.</p>
+ *
+ * @since 3.2.3
+ */
+public class ConcurrentWeightedLRUMap<K,V> extends AbstractMap<K,V>
+                                           implements ConcurrentMap<K,V> {
+
+  /**
+   * Finds the weight of a value.
+   */
+  public static interface Weigher<V> {
+    /**
+     * @param value the value
+     * @return the weight of the value, which must not be negative
+     */
+    public long weigh(V value);
+  }
+
+  private static final class Node<V> {
+    private final V value;
+    private long weight;
+
+    private Node(V value, long weight) {
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+  // access order, so iteration starts from the least recently used
+  private final LinkedHashMap<K,Node<V>> map =
+    new LinkedHashMap<K,Node<V>>(16, 0.75f, true);
+
+  private final Weigher<? super V> weigher;
+
+  private long budget;
+  private long weight;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * @param budget the greatest total weight of the values to hold
+   * @param weigher the <code>Weigher</code> for values
+   */
+  public ConcurrentWeightedLRUMap(long budget, Weigher<? super V> weigher) {
+    if (budget < 0) throw new IllegalArgumentException();
+    if (weigher == null) throw new IllegalArgumentException();
+
+    this.budget = budget;
+    this.weigher = weigher;
+  }
+
+  private long weigh(V value) {
+    final long w = weigher.weigh(value);
+    if (w < 0) throw new IllegalArgumentException();
+    return w;
+  }
+
+  /**
+   * Evicts the least recently used values until the total weight is within
+   * the budget. The most recently used value is never evicted, so that a
+   * value which alone exceeds the budget is held until another is used.
+   */
+  private void evict() {
+    if (weight <= budget) return;
+
+    final Iterator<Node<V>> i = map.values().iterator();
+    for (int n = map.size(); n > 1 && weight > budget; --n) {
+      final Node<V> node = i.next();
+      if (node.weight > 0) {
+        i.remove();
+        weight -= node.weight;
+        ++evictions;
+      }
+    }
+  }
+
+  private V add(K key, V value) {
+    final Node<V> node = new Node<V>(value, weigh(value));
+    final Node<V> old = map.put(key, node);
+    if (old != null) {
+      weight -= old.weight;
+    }
+    weight += node.weight;
+    evict();
+    return old == null ? null : old.value;
+  }
+
+  /**
+   * Weighs the value for a key again, evicting other values if it has
+   * become heavier.
+   *
+   * @param key the key
+   */
+  public synchronized void reweigh(K key) {
+    if (key == null) throw new NullPointerException();
+
+    final Node<V> node = map.get(key);
+    if (node != null) {
+      final long w = weigh(node.value);
+      weight += w - node.weight;
+      node.weight = w;
+      evict();
+    }
+  }
+
+  /**
+   * Sets the greatest total weight of the values to hold.
+   *
+   * @param budget the budget
+   */
+  public synchronized void setBudget(long budget) {
+    if (budget < 0) throw new IllegalArgumentException();
+
+    this.budget = budget;
+    evict();
+  }
+
+  /**
+   * @return the greatest total weight of the values to hold
+   */
+  public synchronized long getBudget() {
+    return budget;
+  }
+
+  /**
+   * @return the total weight of the values held
+   */
+  public synchronized long getWeight() {
+    return weight;
+  }
+
+  /**
+   * @return the number of calls to {@link #get} which found a value
+   */
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  /**
+   * @return the number of calls to {@link #get} which found no value
+   */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  /**
+   * @return the number of values evicted to stay within the budget
+   */
+  public synchronized long getEvictionCount() {
+    return evictions;
+  }
+
+  // Query Operations
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized int size() {
+    return map.size();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized boolean containsKey(Object key) {
+    if (key == null) throw new NullPointerException();
+
+    return map.containsKey(key);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized V get(Object key) {
+    if (key == null) throw new NullPointerException();
+
+    final Node<V> node = map.get(key);
+    if (node == null) {
+      ++misses;
+      return null;
+    }
+
+    ++hits;
+    return node.value;
+  }
+
+  // Modification Operations
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized V put(K key, V value) {
+    if (key == null) throw new NullPointerException();
+    if (value == null) throw new NullPointerException();
+
+    return add(key, value);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized V remove(Object key) {
+    if (key == null) throw new NullPointerException();
+
+    final Node<V> old = map.remove(key);
+    if (old == null) return null;
+
+    weight -= old.weight;
+    return old.value;
+  }
+
+  // Bulk Operations
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void clear() {
+    map.clear();
+    weight = 0;
+  }
+
+  // Views
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized Set<Map.Entry<K,V>> entrySet() {
+    final Map<K,V> copy = new LinkedHashMap<K,V>(map.size());
+    for (Map.Entry<K,Node<V>> e : map.entrySet()) {
+      copy.put(e.getKey(), e.getValue().value);
+    }
+    return Collections.unmodifiableMap(copy).entrySet();
+  }
+
+  // Concurrent Operations
+
+  /** {@inheritDoc} */
+  public synchronized V putIfAbsent(K key, V value) {
+    if (key == null) throw new NullPointerException();
+    if (value == null) throw new NullPointerException();
+
+    final Node<V> old = map.get(key);
+    return old == null ? add(key, value) : old.value;
+  }
+
+  /** {@inheritDoc} */
+  public synchronized boolean remove(Object key, Object value) {
+    if (key == null) throw new NullPointerException();
+    if (value == null) throw new NullPointerException();
+
+    final Node<V> old = map.get(key);
+    if (old == null || !old.value.equals(value)) return false;
+
+    map.remove(key);
+    weight -= old.weight;
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  public synchronized boolean replace(K key, V oldValue, V newValue) {
+    if (key == null) throw new NullPointerException();
+    if (oldValue == null) throw new NullPointerException();
+    if (newValue == null) throw new NullPointerException();
+
+    final Node<V> old = map.get(key);
+    if (old == null || !old.value.equals(oldValue)) return false;
+
+    add(key, newValue);
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  public synchronized V replace(K key, V value) {
+    if (key == null) throw new NullPointerException();
+    if (value == null) throw new NullPointerException();
+
+    return map.containsKey(key) ? add(key, value) : null;
+  }
+}
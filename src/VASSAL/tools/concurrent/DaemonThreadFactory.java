@@ -32,6 +32,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class DaemonThreadFactory implements ThreadFactory {
   protected final AtomicInteger id = new AtomicInteger(0);
   protected final String basename;
+  protected final int priority;
 
   /**
    * Creates a thread factory.
@@ -39,7 +40,19 @@ public class DaemonThreadFactory implements ThreadFactory {
    * @param basename the base name to use for threads created by this factory
    */
   public DaemonThreadFactory(String basename) {
+    this(basename, Thread.NORM_PRIORITY);
+  }
+
+  /**
+   * Creates a thread factory.
+   *
+   * @param basename the base name to use for threads created by this factory
+   * @param priority the priority of threads created by this factory
+   * @since 3.2.3
+   */
+  public DaemonThreadFactory(String basename, int priority) {
     this.basename = basename;
+    this.priority = priority;
   }
 
   /** {@inheritDoc} */
@@ -47,6 +60,7 @@ public class DaemonThreadFactory implements ThreadFactory {
     final String name = basename + "-" + id.getAndIncrement();
     final Thread t = new Thread(r, name);
     t.setDaemon(true);
+    t.setPriority(priority);
     return t;
   }
 }
@@ -19,37 +19,43 @@
 
 package VASSAL.tools.image.svg;
 
-import java.awt.AlphaComposite;
 import java.awt.Graphics2D;
-import java.awt.Paint;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Dimension2D;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.io.BufferedInputStream;
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.batik.bridge.BridgeContext;
 import org.apache.batik.bridge.BridgeException;
-import org.apache.batik.bridge.DocumentLoader;
-import org.apache.batik.bridge.UserAgent;
+import org.apache.batik.bridge.GVTBuilder;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.bridge.ViewBox;
+import org.apache.batik.bridge.svg12.SVG12BridgeContext;
 import org.apache.batik.dom.svg.SAXSVGDocumentFactory;
+import org.apache.batik.dom.svg.SVGOMDocument;
 import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.gvt.CanvasGraphicsNode;
+import org.apache.batik.gvt.CompositeGraphicsNode;
+import org.apache.batik.gvt.GraphicsNode;
 import org.apache.batik.gvt.renderer.ConcreteImageRendererFactory;
 import org.apache.batik.gvt.renderer.ImageRenderer;
 import org.apache.batik.gvt.renderer.ImageRendererFactory;
 import org.apache.batik.transcoder.SVGAbstractTranscoder;
-import org.apache.batik.transcoder.TranscoderException;
-import org.apache.batik.transcoder.TranscoderInput;
-import org.apache.batik.transcoder.TranscoderOutput;
 import org.apache.batik.transcoder.TranscodingHints;
 import org.apache.batik.transcoder.keys.BooleanKey;
 import org.apache.batik.transcoder.keys.PaintKey;
+import org.apache.batik.util.SVGConstants;
 import org.apache.batik.util.XMLResourceDescriptor;
 
 import org.slf4j.Logger;
@@ -59,13 +65,22 @@ import org.w3c.dom.Document;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Element;
 
-import VASSAL.build.GameModule;
 import VASSAL.tools.image.ImageUtils;
 import VASSAL.tools.io.IOUtils;
+import VASSAL.tools.opcache.OpCache;
 
 /**
  * Render an SVG image to a {@link BufferedImage}.
  *
+ * <p>Batik keeps rendering state in the nodes of a GVT tree, such as the
+ * filter chains of filtered nodes, without synchronization, so a tree may
+ * be painted by only one thread at a time. Each rendering borrows a GVT
+ * tree from a small pool held by the renderer, building another from its
+ * own copy of the document only when every tree is in use, and returns it
+ * afterwards. Different threads may render the image concurrently, up to
+ * one for each {@link OpCache} thread. The trees are freed along with
+ * the renderer.</p>
+ *
  * @author Joel Uckelman
  * @since 3.1.0
  */
@@ -78,32 +93,39 @@ public class SVGRenderer {
   private static final ImageRendererFactory rendFactory =
     new ConcreteImageRendererFactory();
 
-  private final Document doc;
+  private final String file;
+  private final byte[] data;
   private final float defaultW, defaultH;
-  private final Rasterizer r = new Rasterizer();
+
+  // the document parsed by the constructor, until a tree is built from it
+  private Document doc;
+
+  // no more trees are built than there are threads to render tiles
+  private static final int MAX_TREES = OpCache.THREADS;
+
+  // the GVT trees not in use, and the number built
+  private final BlockingQueue<Tree> trees =
+    new ArrayBlockingQueue<Tree>(MAX_TREES);
+  private final AtomicInteger treeCount = new AtomicInteger();
 
   public SVGRenderer(URL file, InputStream in) throws IOException {
     this(file.toString(), in);
   }
 
   public SVGRenderer(String file, InputStream in) throws IOException {
-    // load the SVG
+    this.file = file;
+
+    // keep the SVG, so that each thread can have a document of its own
     try {
-      // We synchronize on docFactory becuase it does internal caching
-      // of the Documents it produces. This ensures that a Document is
-      // being modified on one thread only.
-      synchronized (docFactory) {
-        doc = docFactory.createDocument(file, in);
-      }
+      data = IOUtils.toByteArray(in);
       in.close();
     }
-    catch (DOMException e) {
-      throw (IOException) new IOException().initCause(e);
-    }
     finally {
       IOUtils.closeQuietly(in);
     }
 
+    doc = parse();
+
     // get the default image size
     final Element root = doc.getDocumentElement();
 
@@ -113,6 +135,20 @@ public class SVGRenderer {
       root.getAttributeNS(null, "height").replaceFirst("px", ""));
   }
 
+  private Document parse() throws IOException {
+    try {
+      // We synchronize on docFactory becuase it does internal caching
+      // of the Documents it produces. This ensures that a Document is
+      // being modified on one thread only.
+      synchronized (docFactory) {
+        return docFactory.createDocument(file, new ByteArrayInputStream(data));
+      }
+    }
+    catch (DOMException e) {
+      throw (IOException) new IOException().initCause(e);
+    }
+  }
+
   private static final double DEGTORAD = Math.PI/180.0;
 
   public BufferedImage render() {
@@ -121,178 +157,248 @@ public class SVGRenderer {
 
   public BufferedImage render(double angle, double scale) {
     // The renderer needs the bounds unscaled---scaling comes from the
-    // width and height hints.
-    AffineTransform px = AffineTransform.getRotateInstance(
+    // width and height.
+    final AffineTransform px = AffineTransform.getRotateInstance(
       angle*DEGTORAD, defaultW/2.0, defaultH/2.0);
-    r.setTransform(px);
 
-    px = new AffineTransform(px);
-    px.scale(scale, scale);
+    final AffineTransform spx = new AffineTransform(px);
+    spx.scale(scale, scale);
 
     final Rectangle2D rect = new Rectangle2D.Float(0, 0, defaultW, defaultH);
-    final Rectangle2D b = px.createTransformedShape(rect).getBounds2D();
-
-    r.addTranscodingHint(Rasterizer.KEY_WIDTH, (float) b.getWidth());
-    r.addTranscodingHint(Rasterizer.KEY_HEIGHT, (float) b.getHeight());
+    final Rectangle2D b = spx.createTransformedShape(rect).getBounds2D();
 
-    try {
-      r.transcode(new TranscoderInput(doc), null);
-      return r.getBufferedImage();
-    }
-    // FIXME: review error message
-    catch (BridgeException e) {
-      logger.error("", e);
-    }
-    catch (TranscoderException e) {
-      logger.error("", e);
-    }
-
-    return null;
+    return render(px, (float) b.getWidth(), (float) b.getHeight(), null);
   }
 
   public BufferedImage render(double angle, double scale, Rectangle2D aoi) {
     // The renderer needs the bounds unscaled---scaling comes from the
-    // width and height hints.
-    AffineTransform px = AffineTransform.getRotateInstance(
+    // width and height.
+    final AffineTransform px = AffineTransform.getRotateInstance(
       angle*DEGTORAD, defaultW/2.0, defaultH/2.0);
-    r.setTransform(px);
-
-    px = new AffineTransform(px);
-    px.scale(scale, scale);
 
-    final Rectangle2D rect = new Rectangle2D.Float(0, 0, defaultW, defaultH);
-
-    r.addTranscodingHint(Rasterizer.KEY_WIDTH, (float) aoi.getWidth());
-    r.addTranscodingHint(Rasterizer.KEY_HEIGHT, (float) aoi.getHeight());
-    r.addTranscodingHint(Rasterizer.KEY_AOI, aoi);
+    return render(px, (float) aoi.getWidth(), (float) aoi.getHeight(), aoi);
+  }
 
+  private BufferedImage render(AffineTransform xform,
+                               float width, float height, Rectangle2D aoi) {
     try {
-      r.transcode(new TranscoderInput(doc), null);
-      return r.getBufferedImage();
+      final Tree tree = takeTree();
+      try {
+        return tree.paint(tree.getTransform(xform, width, height, aoi),
+                          width, height);
+      }
+      finally {
+        trees.add(tree);
+      }
     }
     // FIXME: review error message
     catch (BridgeException e) {
       logger.error("", e);
     }
-    catch (TranscoderException e) {
+    catch (NoninvertibleTransformException e) {
       logger.error("", e);
     }
+    catch (IOException e) {
+      logger.error("", e);
+    }
+    catch (InterruptedException e) {
+      // interrupted while waiting for a tree; give up on the rendering
+      Thread.currentThread().interrupt();
+    }
 
     return null;
   }
 
-  private static class DataArchiveDocumentLoader extends DocumentLoader {
-    public DataArchiveDocumentLoader(UserAgent userAgent) {
-      super(userAgent);
-    }
-
-    @Override
-    public Document loadDocument(String uri)
-        throws MalformedURLException, IOException {
-      final String file = new File((new URL(uri)).getPath()).getName();
-
-      BufferedInputStream in = null;
-      try {
-        in = new BufferedInputStream(
-          GameModule.getGameModule()
-                    .getDataArchive()
-                    .getInputStream(file));
-        final Document doc = loadDocument(uri, in);
-        in.close();
-        return doc;
+  /**
+   * Takes a GVT tree not in use by any other thread, building one if
+   * none is free and fewer than the maximum have been built, and waiting
+   * for one to be returned otherwise. The tree must be put back in
+   * {@link #trees} when the caller is done with it.
+   *
+   * @return a GVT tree for the sole use of the caller
+   * @throws IOException if the document cannot be parsed
+   * @throws InterruptedException if interrupted while waiting for a tree
+   */
+  private Tree takeTree() throws IOException, InterruptedException {
+    for (;;) {
+      Tree tree = trees.poll();
+      if (tree != null) return tree;
+
+      final int n = treeCount.get();
+      if (n < MAX_TREES) {
+        if (treeCount.compareAndSet(n, n+1)) {
+          try {
+            tree = new Tree(takeDocument());
+          }
+          finally {
+            if (tree == null) treeCount.decrementAndGet();
+          }
+          return tree;
+        }
       }
-      catch (DOMException e) {
-        throw (IOException) new IOException().initCause(e);
-      }
-      finally {
-        IOUtils.closeQuietly(in);
+      else {
+        // Wait for a tree to be returned, but look again now and then,
+        // as one being built might fail instead.
+        tree = trees.poll(100, TimeUnit.MILLISECONDS);
+        if (tree != null) return tree;
       }
     }
   }
 
-  private static class Rasterizer extends SVGAbstractTranscoder {
-    private DocumentLoader docLoader;
-    private BufferedImage image;
-    private AffineTransform xform;
+  /**
+   * @return the root of a GVT tree of this renderer
+   * @throws IOException if the document cannot be parsed
+   * @throws InterruptedException if interrupted while waiting for a tree
+   */
+  GraphicsNode getRoot() throws IOException, InterruptedException {
+    final Tree tree = takeTree();
+    trees.add(tree);
+    return tree.root;
+  }
+
+  /**
+   * @return the number of GVT trees built for this renderer
+   */
+  int getTreeCount() {
+    return treeCount.get();
+  }
 
-    public Rasterizer() {
-      docLoader = new DataArchiveDocumentLoader(userAgent);
+  /**
+   * @return a document used by no other thread
+   * @throws IOException if the document cannot be parsed
+   */
+  private Document takeDocument() throws IOException {
+    synchronized (this) {
+      if (doc != null) {
+        final Document d = doc;
+        doc = null;
+        return d;
+      }
     }
 
-    @Override
-    protected BridgeContext createBridgeContext() {
-      return new BridgeContext(userAgent, docLoader);
+    return parse();
+  }
+
+  /** A GVT tree, for the use of one thread at a time. */
+  private static class Tree {
+    private final Document doc;
+    private final BridgeContext ctx;
+    private final GraphicsNode root;
+    private final CanvasGraphicsNode canvas;
+    private final float docW, docH;
+
+    /**
+     * Builds the GVT tree for the document. The document is not used by
+     * anything else after this.
+     */
+    public Tree(Document doc) {
+      this.doc = doc;
+
+      final UserAgentAdapter userAgent = new UserAgentAdapter();
+      ctx = doc instanceof SVGOMDocument && ((SVGOMDocument) doc).isSVG12() ?
+        new SVG12BridgeContext(userAgent) : new BridgeContext(userAgent);
+      userAgent.setBridgeContext(ctx);
+
+      root = new GVTBuilder().build(ctx, doc);
+
+      final Dimension2D d = ctx.getDocumentSize();
+      docW = (float) d.getWidth();
+      docH = (float) d.getHeight();
+
+      // The viewing transform differs for each rendering, so we keep it
+      // out of the tree and apply it when painting instead.
+      canvas = getCanvasGraphicsNode(root);
+      if (canvas != null) canvas.setViewingTransform(new AffineTransform());
     }
 
-    @Override
-    protected void transcode(Document document,
-                             String uri,
-                             TranscoderOutput output)
-                             throws TranscoderException {
-      // Sets up root, curTxf & curAoi
-      super.transcode(document, uri, output);
+    /**
+     * Finds the transform from the user space of the tree to the image,
+     * as {@link SVGAbstractTranscoder} would for a rendering of the given
+     * size.
+     */
+    public AffineTransform getTransform(
+      AffineTransform xform, float width, float height, Rectangle2D aoi)
+    {
+      final AffineTransform vt;
+      if (aoi != null) {
+        final double s =
+          Math.min(width/aoi.getWidth(), height/aoi.getHeight());
+        vt = AffineTransform.getScaleInstance(s, s);
+        vt.translate(-aoi.getX() + (width/s - aoi.getWidth())/2,
+                     -aoi.getY() + (height/s - aoi.getHeight())/2);
+      }
+      else {
+        final Element e = doc.getDocumentElement();
+        final String viewBox =
+          e.getAttributeNS(null, SVGConstants.SVG_VIEW_BOX_ATTRIBUTE);
+
+        if (viewBox.length() > 0) {
+          vt = ViewBox.getPreserveAspectRatioTransform(
+            e, viewBox,
+            e.getAttributeNS(null,
+                             SVGConstants.SVG_PRESERVE_ASPECT_RATIO_ATTRIBUTE),
+            width, height, ctx
+          );
+        }
+        else {
+          final float s = Math.min(width/docW, height/docH);
+          vt = AffineTransform.getScaleInstance(s, s);
+        }
+      }
+
+      // The viewing transform belongs to the canvas, inside of xform.
+      if (canvas != null) {
+        final AffineTransform txf = new AffineTransform(xform);
+        txf.concatenate(vt);
+        return txf;
+      }
+      else {
+        vt.concatenate(xform);
+        return vt;
+      }
+    }
 
-       // prepare the image to be painted
-      int w = (int)(width+0.5);
-      int h = (int)(height+0.5);
+    public BufferedImage paint(AffineTransform txf, float width, float height)
+                                       throws NoninvertibleTransformException {
+      // prepare the image to be painted
+      final int w = (int)(width+0.5);
+      final int h = (int)(height+0.5);
 
       // paint the SVG document using the bridge package
       // create the appropriate renderer
-      ImageRenderer renderer = rendFactory.createStaticImageRenderer();
+      final ImageRenderer renderer = rendFactory.createStaticImageRenderer();
       renderer.updateOffScreen(w, h);
-      if (xform != null) curTxf.concatenate(xform);
-      renderer.setTransform(curTxf);
-      renderer.setTree(this.root);
-      this.root = null; // We're done with it...
+      renderer.setTransform(txf);
+      renderer.setTree(root);
 
       // now we are sure that the aoi is the image size
       final Shape raoi = new Rectangle2D.Float(0, 0, width, height);
       // Warning: the renderer's AOI must be in user space
-      try {
-        renderer.repaint(curTxf.createInverse().
-                         createTransformedShape(raoi));
-      }
-      catch (NoninvertibleTransformException e) {
-        throw new TranscoderException(e);
-      }
+      renderer.repaint(txf.createInverse().createTransformedShape(raoi));
 
-// FIXME: is this the image we want to use?
-      BufferedImage rend = renderer.getOffScreen();
-      renderer = null; // We're done with it...
+      final BufferedImage rend = renderer.getOffScreen();
 
-      // produce an opaque image if our background color is set
-      final BufferedImage dest = ImageUtils.createCompatibleImage(
-        w, h, !hints.containsKey(KEY_BACKGROUND_COLOR)
-      );
+      final BufferedImage dest = ImageUtils.createCompatibleImage(w, h, true);
 
       final Graphics2D g2d = GraphicsUtil.createGraphics(dest);
-      if (hints.containsKey(KEY_BACKGROUND_COLOR)) {
-        final Paint bgcolor = (Paint) hints.get(KEY_BACKGROUND_COLOR);
-        g2d.setComposite(AlphaComposite.SrcOver);
-        g2d.setPaint(bgcolor);
-        g2d.fillRect(0, 0, w, h);
-      }
-
       if (rend != null) { // might be null if the svg document is empty
         g2d.drawRenderedImage(rend, new AffineTransform());
       }
       g2d.dispose();
-      rend = null; // We're done with it...
 
-      writeImage(dest, output);
+      return dest;
     }
+  }
 
-    private void writeImage(BufferedImage image, TranscoderOutput output) {
-      this.image = image;
-    }
+  private static CanvasGraphicsNode getCanvasGraphicsNode(GraphicsNode gn) {
+    if (!(gn instanceof CompositeGraphicsNode)) return null;
 
-    public BufferedImage getBufferedImage() {
-      return image;
-    }
+    final List<?> children = ((CompositeGraphicsNode) gn).getChildren();
+    if (children.isEmpty()) return null;
 
-    public void setTransform(AffineTransform px) {
-      xform = px;
-    }
+    final Object child = children.get(0);
+    return child instanceof CanvasGraphicsNode ?
+      (CanvasGraphicsNode) child : null;
   }
 
   public static final TranscodingHints.Key KEY_BACKGROUND_COLOR =
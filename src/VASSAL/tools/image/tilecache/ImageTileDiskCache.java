@@ -26,15 +26,27 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.io.FileUtils;
 
 import VASSAL.tools.image.ImageIOException;
 import VASSAL.tools.image.ImageTileSource;
+import VASSAL.tools.io.FileArchive;
 import VASSAL.tools.io.FileStore;
+import VASSAL.tools.lang.Pair;
 
 /**
  * An on-disk {@link ImageTileSource} and {@link FileStore} for image tiles.
  *
+ * <p>The tiles of each image are kept in a {@link TilePack}.
+ * Tiles written before 3.2.3 as one file per tile are still read, until
+ * they are moved into a pack by {@link #migrate}.</p>
+ *
  * @since 3.2.0
  * @author Joel Uckelman
  */
@@ -42,6 +54,26 @@ public class ImageTileDiskCache implements ImageTileSource, FileStore {
 
   protected final String cpath;
 
+  protected final ConcurrentMap<String,Pair<TilePack,Long>> packs =
+    new ConcurrentHashMap<String,Pair<TilePack,Long>>();
+
+  /** The locks under which the pack for each image is opened. */
+  private final ConcurrentMap<String,Object> packLocks =
+    new ConcurrentHashMap<String,Object>();
+
+  private TileCacheManifest manifest;
+
+  /** The manifests of other tile caches, for finding shared tiles. */
+  private final Map<File,TileCacheManifest> shared =
+    new HashMap<File,TileCacheManifest>();
+
+  /**
+   * The tile pack in another tile cache found for each content key, or
+   * <code>null</code> if there is none, so that other caches are searched
+   * only once for each image.
+   */
+  private final Map<String,File> sharedPacks = new HashMap<String,File>();
+
   /**
    * Creates an {@code ImageTileDiskCache}.
    *
@@ -51,6 +83,84 @@ public class ImageTileDiskCache implements ImageTileSource, FileStore {
     this.cpath = cpath;
   }
 
+  /**
+   * Gets the tile pack for an image, opening it if necessary. The pack is
+   * {@link TilePack#acquire acquired} for the caller, who must
+   * {@link TilePack#release release} it when done reading.
+   *
+   * @param name the image name
+   * @return the tile pack, or <code>null</code> if there is none
+   */
+  protected TilePack getPack(String name) throws ImageIOException {
+    final File f = new File(cpath, TileUtils.packName(name));
+    if (!f.isFile()) {
+      closePack(name);
+      return null;
+    }
+
+    final long mtime = f.lastModified();
+    final Pair<TilePack,Long> p = packs.get(name);
+    if (p != null && p.second == mtime && p.first.acquire()) {
+      return p.first;
+    }
+
+    // The pack is new, has been rewritten since we opened it, or was closed
+    // as we got it. Only one thread opens it, and the pack it replaces is
+    // closed once its readers are done.
+    synchronized (getPackLock(name)) {
+      final Pair<TilePack,Long> q = packs.get(name);
+      if (q != null && q.second == mtime && q.first.acquire()) {
+        return q.first;
+      }
+
+      try {
+        final TilePack pack = new TilePack(f);
+        pack.acquire();
+        final Pair<TilePack,Long> old = packs.put(name, Pair.of(pack, mtime));
+        if (old != null) {
+          closeQuietly(old.first);
+        }
+        return pack;
+      }
+      catch (IOException e) {
+        throw new ImageIOException(f, e);
+      }
+    }
+  }
+
+  private Object getPackLock(String name) {
+    final Object lock = new Object();
+    final Object old = packLocks.putIfAbsent(name, lock);
+    return old == null ? lock : old;
+  }
+
+  /**
+   * Closes the tile pack for an image, if it is open. This must be done
+   * before the pack is replaced, as an open file cannot be replaced on
+   * some platforms. A pack being read is closed when its readers are done.
+   *
+   * @param name the image name
+   */
+  protected void closePack(String name) {
+    final Pair<TilePack,Long> p = packs.remove(name);
+    if (p != null) {
+      closeQuietly(p.first);
+    }
+  }
+
+  private static void closeQuietly(TilePack pack) {
+    try {
+      pack.close();
+    }
+    catch (IOException e) {
+      // ignore, the pack is not read again
+    }
+  }
+
+  private String legacyTilePath(String name, int tileX, int tileY, int div) {
+    return cpath + '/' + TileUtils.tileName(name, tileX, tileY, div);
+  }
+
   /** {@inheritDoc} */
   public BufferedImage getTile(
     String name,
@@ -58,8 +168,21 @@ public class ImageTileDiskCache implements ImageTileSource, FileStore {
     int tileY,
     double scale) throws ImageIOException
   {
-    return TileUtils.read(cpath + '/' +
-      TileUtils.tileName(name, tileX, tileY, (int)(1.0/scale)));
+    final int div = (int)(1.0/scale);
+    final TilePack pack = getPack(name);
+    if (pack == null) {
+      return TileUtils.read(legacyTilePath(name, tileX, tileY, div));
+    }
+
+    try {
+      return pack.getTile(tileX, tileY, div);
+    }
+    catch (IOException e) {
+      throw new ImageIOException(pack.getFile(), e);
+    }
+    finally {
+      pack.release();
+    }
   }
 
   /** {@inheritDoc} */
@@ -69,8 +192,21 @@ public class ImageTileDiskCache implements ImageTileSource, FileStore {
     int tileY,
     double scale) throws ImageIOException
   {
-    return TileUtils.size(cpath + '/' +
-      TileUtils.tileName(name, tileX, tileY, (int)(1.0/scale)));
+    final int div = (int)(1.0/scale);
+    final TilePack pack = getPack(name);
+    if (pack == null) {
+      return TileUtils.size(legacyTilePath(name, tileX, tileY, div));
+    }
+
+    try {
+      return pack.getTileSize(tileX, tileY, div);
+    }
+    catch (IOException e) {
+      throw new ImageIOException(pack.getFile(), e);
+    }
+    finally {
+      pack.release();
+    }
   }
 
   /** {@inheritDoc} */
@@ -80,9 +216,222 @@ public class ImageTileDiskCache implements ImageTileSource, FileStore {
     int tileY,
     double scale) throws ImageIOException
   {
-    final File f = new File(cpath + '/' +
-      TileUtils.tileName(name, tileX, tileY, (int)(1.0/scale)));
-    return f.exists() && f.isFile();
+    final int div = (int)(1.0/scale);
+    final TilePack pack = getPack(name);
+    if (pack == null) {
+      final File f = new File(legacyTilePath(name, tileX, tileY, div));
+      return f.exists() && f.isFile();
+    }
+
+    try {
+      return pack.hasTile(tileX, tileY, div);
+    }
+    finally {
+      pack.release();
+    }
+  }
+
+  /**
+   * Gets the manifest of this tile cache, reading it if necessary.
+   *
+   * @return the manifest
+   */
+  public synchronized TileCacheManifest getManifest() {
+    if (manifest == null) {
+      manifest = new TileCacheManifest(new File(cpath));
+    }
+    return manifest;
+  }
+
+  /**
+   * Checks whether the tiles of an image are up to date.
+   *
+   * <p>If the {@link TileCacheManifest} has a content key for the image,
+   * the tiles are fresh exactly when it matches the image. Otherwise, as
+   * before 3.2.3, they are fresh when they are no older than the image.
+   * Tiles from before 3.2.3 which are fresh are moved into a tile pack.
+   * If the tiles are not fresh, a tile pack for the same content is
+   * copied from the tile cache of another module or module version, if
+   * there is one. The manifest is updated, but not saved.</p>
+   *
+   * @param fa the archive containing the image
+   * @param name the image name
+   * @param tw the tile width
+   * @param th the tile height
+   * @return whether the tiles of the image are fresh
+   * @throws IOException if the archive or the cache cannot be read
+   */
+  public boolean isFresh(FileArchive fa, String name, int tw, int th)
+                                                          throws IOException {
+    final TileCacheManifest m = getManifest();
+    final String key = TileCacheManifest.contentKey(fa, name, tw, th);
+    final String known = m.get(name);
+
+    if (key != null && known != null) {
+      if (key.equals(known) &&
+          new File(cpath, TileUtils.packName(name)).isFile()) {
+        return true;
+      }
+    }
+    else {
+      final long imtime = fa.getMTime(name);
+
+      // time in archive might be goofy
+      if (imtime > 0 &&
+          (imtime <= getMTime(TileUtils.packName(name)) ||
+           (imtime <= getMTime(TileUtils.tileName(name, 0, 0, 1)) &&
+            migrate(name)))) {
+        if (key != null) {
+          m.put(name, key);
+        }
+        return true;
+      }
+    }
+
+    if (key != null && copyShared(name, key)) {
+      m.put(name, key);
+      return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Records that the tiles of an image are up to date, after the image is
+   * sliced. The manifest is updated, but not saved.
+   *
+   * @param fa the archive containing the image
+   * @param name the image name
+   * @param tw the tile width
+   * @param th the tile height
+   * @throws IOException if the archive cannot be read
+   */
+  public void setFresh(FileArchive fa, String name, int tw, int th)
+                                                          throws IOException {
+    final String key = TileCacheManifest.contentKey(fa, name, tw, th);
+    if (key != null) {
+      getManifest().put(name, key);
+    }
+  }
+
+  /**
+   * Copies the tile pack for an image with the given content key from
+   * another tile cache beside this one.
+   *
+   * @return whether a tile pack was copied
+   */
+  protected boolean copyShared(String name, String key) throws IOException {
+    final File src = findShared(key);
+    if (src == null || !src.isFile()) {
+      return false;
+    }
+
+    closePack(name);
+    FileUtils.copyFile(src, new File(cpath, TileUtils.packName(name)));
+    return true;
+  }
+
+  /**
+   * Finds the tile pack for the given content key in another tile cache
+   * beside this one. The result is remembered.
+   *
+   * @return the tile pack, or <code>null</code> if there is none
+   */
+  private synchronized File findShared(String key) {
+    if (sharedPacks.containsKey(key)) {
+      return sharedPacks.get(key);
+    }
+
+    File found = null;
+
+    final File dir = new File(cpath).getAbsoluteFile();
+    final File[] others = dir.getParentFile().listFiles();
+    if (others != null) {
+      for (File other : others) {
+        if (!other.isDirectory() || other.equals(dir)) continue;
+
+        final String oname = getSharedManifest(other).find(key);
+        if (oname == null) continue;
+
+        final File src = new File(other, TileUtils.packName(oname));
+        if (src.isFile()) {
+          found = src;
+          break;
+        }
+      }
+    }
+
+    sharedPacks.put(key, found);
+    return found;
+  }
+
+  private synchronized TileCacheManifest getSharedManifest(File dir) {
+    TileCacheManifest m = shared.get(dir);
+    if (m == null) {
+      m = new TileCacheManifest(dir);
+      shared.put(dir, m);
+    }
+    return m;
+  }
+
+  /**
+   * Moves the tiles of an image from the individual tile files written
+   * before 3.2.3 into a tile pack. The tile pack is given the modification
+   * time of the first 1:1 tile, so it is exactly as fresh as the tiles.
+   *
+   * @param name the image name
+   * @return <code>true</code> if there were tiles to move
+   * @throws IOException if the tiles cannot be moved, in which case the
+   * tile files are left as they were
+   */
+  public boolean migrate(String name) throws IOException {
+    final File first = new File(legacyTilePath(name, 0, 0, 1));
+    if (!first.isFile()) {
+      return false;
+    }
+
+    final long mtime = first.lastModified();
+    final File dst = new File(cpath, TileUtils.packName(name));
+    final TilePackWriter pack =
+      new TilePackWriter(dst, TilePack.getDefaultCodec());
+
+    // find the tiles at each scale, down to the vanishing point
+    final List<File> moved = new ArrayList<File>();
+    boolean done = false;
+    try {
+      for (int div = 1; ; div <<= 1) {
+        int tx = 0;
+        for (; ; ++tx) {
+          int ty = 0;
+          for (; ; ++ty) {
+            final File f = new File(legacyTilePath(name, tx, ty, div));
+            if (!f.isFile()) break;
+
+            pack.add(tx, ty, div, TileUtils.read(f));
+            moved.add(f);
+          }
+          if (ty == 0) break;
+        }
+        if (tx == 0) break;
+      }
+
+      closePack(name);
+      pack.finish();
+      done = true;
+    }
+    finally {
+      if (!done) {
+        pack.abort();
+      }
+    }
+
+    dst.setLastModified(mtime);
+
+    for (File f : moved) {
+      f.delete();
+    }
+
+    return true;
   }
 
   /** {@inheritDoc} */
@@ -136,5 +485,9 @@ public class ImageTileDiskCache implements ImageTileSource, FileStore {
   }
 
   /** {@inheritDoc} */
-  public void close() {}
+  public void close() {
+    for (String name : packs.keySet()) {
+      closePack(name);
+    }
+  }
 }
@@ -0,0 +1,569 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.image.tilecache;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import VASSAL.Info;
+import VASSAL.launch.TilingHandler;
+import VASSAL.tools.DataArchive;
+import VASSAL.tools.concurrent.DaemonThreadFactory;
+import VASSAL.tools.image.FallbackImageTypeConverter;
+import VASSAL.tools.image.GeneralFilter;
+import VASSAL.tools.image.ImageIOException;
+import VASSAL.tools.image.ImageIOImageLoader;
+import VASSAL.tools.image.ImageLoader;
+import VASSAL.tools.io.FileArchive;
+import VASSAL.tools.io.IOUtils;
+import VASSAL.tools.io.ProcessWrapper;
+import VASSAL.tools.io.TemporaryFileFactory;
+import VASSAL.tools.lang.Callback;
+
+/**
+ * An {@link ImageTileDiskCache} which slices tiles when they are first
+ * requested, instead of relying on every image having been sliced before
+ * the module is loaded.
+ *
+ * <p>A tile requested from an image without a fresh tile pack is sliced
+ * directly from the image. Each such image is also queued to be sliced
+ * completely on a low-priority background thread, after which its tiles
+ * are read from its tile pack. Images which are requested are moved to
+ * the front of the queue.</p>
+ *
+ * <p>As with {@link TilingHandler}, only images which cover
+ * more than one tile at full size are tiled.</p>
+ *
+ * <p>Images too large to be loaded into this JVM without risk of running
+ * it out of memory are instead sliced by a {@link ZipFileImageTiler}
+ * process, and requests for their tiles wait until it is done.</p>
+ *
+ * <p>Checking whether a tile exists reads only the image header; whether
+ * a tile pack is fresh, which may copy or migrate tiles, is checked on the
+ * background thread.</p>
+ *
+ * @since 3.2.3
+ */
+public class LazyImageTileDiskCache extends ImageTileDiskCache {
+  private static final Logger logger =
+    LoggerFactory.getLogger(LazyImageTileDiskCache.class);
+
+  protected final DataArchive archive;
+  protected final int tw;
+  protected final int th;
+
+  /** Images whose tile packs are known to be fresh. */
+  protected final Set<String> fresh =
+    Collections.synchronizedSet(new HashSet<String>());
+
+  /** Images whose tile packs have been checked and found not fresh. */
+  private final Set<String> stale = new HashSet<String>();
+
+  /** The sizes of images, at full size. */
+  protected final ConcurrentMap<String,Dimension> sizes =
+    new ConcurrentHashMap<String,Dimension>();
+
+  /** Images loaded for slicing, held until their tile packs are written. */
+  protected final ConcurrentMap<String,SoftReference<BufferedImage>> sources =
+    new ConcurrentHashMap<String,SoftReference<BufferedImage>>();
+
+  /** Images waiting to be sliced in the background. */
+  private final LinkedList<String> queue = new LinkedList<String>();
+
+  /** Images which have ever been queued. */
+  private final Set<String> queued = new HashSet<String>();
+
+  /** Images which failed to be sliced in the background. */
+  private final Set<String> failed = new HashSet<String>();
+
+  private boolean working = false;
+
+  /** Held while loading an image, so that only one is loaded at a time. */
+  private final Object loading = new Object();
+
+  private final ThreadFactory threadFactory = new DaemonThreadFactory(
+    LazyImageTileDiskCache.class.getSimpleName(), Thread.MIN_PRIORITY
+  );
+
+  private ExecutorService tileExec;
+
+  private final GeneralFilter.Filter filter =
+    new GeneralFilter.Lanczos3Filter();
+
+  private final ImageLoader loader = new ImageIOImageLoader(
+    new FallbackImageTypeConverter(new TemporaryFileFactory() {
+      public File create() throws IOException {
+        return File.createTempFile("img", null, Info.getTempDir());
+      }
+    })
+  );
+
+  /**
+   * Creates a {@code LazyImageTileDiskCache}.
+   *
+   * @param cpath path to the root directory of the cache
+   * @param archive the archive containing the images
+   * @param tw the tile width
+   * @param th the tile height
+   */
+  public LazyImageTileDiskCache(String cpath, DataArchive archive,
+                                int tw, int th) {
+    super(cpath);
+    this.archive = archive;
+    this.tw = tw;
+    this.th = th;
+  }
+
+  /**
+   * Checks whether the tile pack of an image is fresh, by the rules of
+   * {@link ImageTileDiskCache#isFresh(FileArchive,String,int,int)}.
+   *
+   * @param name the image name
+   * @return whether the tiles of the image may be read from its tile pack
+   */
+  protected boolean isFresh(String name) {
+    return fresh.contains(name) || checkFresh(name);
+  }
+
+  private synchronized boolean checkFresh(String name) {
+    if (fresh.contains(name)) {
+      return true;
+    }
+
+    // a stale pack stays so until the image is sliced
+    if (stale.contains(name)) {
+      return false;
+    }
+
+    try {
+      if (!isFresh(archive.getArchiveContaining(name), name, tw, th)) {
+        stale.add(name);
+        return false;
+      }
+    }
+    catch (IOException e) {
+      // slice the image again
+      logger.warn("Failed to check tiles for " + name, e);
+      stale.add(name);
+      return false;
+    }
+
+    fresh.add(name);
+    saveManifest();
+    return true;
+  }
+
+  private void saveManifest() {
+    try {
+      getManifest().save();
+    }
+    catch (IOException e) {
+      // the images will be sliced again next time
+      logger.warn("Failed to save the tile cache manifest", e);
+    }
+  }
+
+  /**
+   * @return the full size of an image
+   * @throws ImageIOException if the image cannot be read
+   */
+  protected Dimension getImageSize(String name) throws ImageIOException {
+    Dimension d = sizes.get(name);
+    if (d == null) {
+      InputStream in = null;
+      try {
+        in = archive.getInputStream(name);
+        d = loader.size(name, in);
+        in.close();
+      }
+      catch (ImageIOException e) {
+        throw e;
+      }
+      catch (IOException e) {
+        throw new ImageIOException(name, e);
+      }
+      finally {
+        IOUtils.closeQuietly(in);
+      }
+
+      sizes.put(name, d);
+    }
+    return d;
+  }
+
+  /**
+   * @return the most memory, in bytes, which an image loaded into this JVM
+   * for slicing may take; larger images are sliced in another process
+   */
+  protected long getMaxSourceBytes() {
+    return Runtime.getRuntime().maxMemory() / 4;
+  }
+
+  /**
+   * @return whether an image is too large to be loaded into this JVM
+   * @throws ImageIOException if the image cannot be read
+   */
+  protected boolean isLarge(String name) throws ImageIOException {
+    final Dimension d = getImageSize(name);
+    return 4L*d.width*d.height > getMaxSourceBytes();
+  }
+
+  /**
+   * @return the image, loaded the same way as by {@link ZipFileImageTiler}
+   * @throws ImageIOException if the image cannot be read
+   */
+  protected BufferedImage getSource(String name) throws ImageIOException {
+    synchronized (loading) {
+      return loadSource(name);
+    }
+  }
+
+  private BufferedImage loadSource(String name) throws ImageIOException {
+    final SoftReference<BufferedImage> ref = sources.get(name);
+    BufferedImage src = ref == null ? null : ref.get();
+    if (src == null) {
+      InputStream in = null;
+      try {
+        in = archive.getInputStream(name);
+        src = loader.load(
+          name, in, BufferedImage.TYPE_INT_RGB,
+          BufferedImage.TYPE_INT_ARGB_PRE, false
+        );
+        in.close();
+      }
+      catch (ImageIOException e) {
+        throw e;
+      }
+      catch (IOException e) {
+        throw new ImageIOException(name, e);
+      }
+      finally {
+        IOUtils.closeQuietly(in);
+      }
+
+      sources.put(name, new SoftReference<BufferedImage>(src));
+    }
+    return src;
+  }
+
+  /** @return the size of the image at the given scale divisor */
+  private static Dimension scaledSize(Dimension d, int div) {
+    return new Dimension(d.width/div, d.height/div);
+  }
+
+  /** @return whether the image is tiled at all */
+  private boolean isTiled(Dimension d) {
+    return d.width > 0 && d.height > 0 &&
+           TileUtils.tileCountAtScale(d.width, d.height, tw, th, 1) > 1;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public BufferedImage getTile(
+    String name,
+    int tileX,
+    int tileY,
+    double scale) throws ImageIOException
+  {
+    if (isFresh(name)) {
+      return super.getTile(name, tileX, tileY, scale);
+    }
+
+    if (isLarge(name)) {
+      // too large to load here, so wait for the whole image to be sliced
+      awaitSliced(name);
+      return super.getTile(name, tileX, tileY, scale);
+    }
+
+    // slice the requested tile now, and the rest of the image soon
+    schedule(name, true);
+
+    final int div = (int)(1.0/scale);
+    final BufferedImage src = getSource(name);
+    final Dimension dd =
+      scaledSize(new Dimension(src.getWidth(), src.getHeight()), div);
+
+    final TileTask task = div == 1 ?
+      new TileTask(src, null, div, tileX, tileY, tw, th, dd.width, dd.height) :
+      new ScaledTileTask(src, null, div, filter,
+                         tileX, tileY, tw, th, dd.width, dd.height);
+    return task.sliceTile();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Dimension getTileSize(
+    String name,
+    int tileX,
+    int tileY,
+    double scale) throws ImageIOException
+  {
+    if (fresh.contains(name)) {
+      return super.getTileSize(name, tileX, tileY, scale);
+    }
+
+    final Dimension dd =
+      scaledSize(getImageSize(name), (int)(1.0/scale));
+
+    // edge tiles can be less than full size
+    return new Dimension(Math.min(tw, dd.width - tileX*tw),
+                         Math.min(th, dd.height - tileY*th));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean tileExists(
+    String name,
+    int tileX,
+    int tileY,
+    double scale) throws ImageIOException
+  {
+    // this is asked on the EDT, so leave checking the tile pack to the
+    // background thread; a fresh pack has exactly the tiles computed here
+    final Dimension d = getImageSize(name);
+    if (!isTiled(d)) {
+      return false;
+    }
+
+    // the image will be needed, so check its tiles or start slicing it
+    schedule(name, false);
+
+    final Dimension dd = scaledSize(d, (int)(1.0/scale));
+    return tileX >= 0 && tileY >= 0 &&
+           tileX*tw < dd.width && tileY*th < dd.height;
+  }
+
+  /**
+   * Queues an image to be sliced in the background.
+   *
+   * @param name the image name
+   * @param urgent whether to slice the image before other queued images
+   */
+  protected void schedule(String name, boolean urgent) {
+    synchronized (queue) {
+      if (queued.add(name)) {
+        if (urgent) {
+          queue.addFirst(name);
+        }
+        else {
+          queue.addLast(name);
+        }
+      }
+      else if (urgent && queue.remove(name)) {
+        queue.addFirst(name);
+      }
+
+      if (working || queue.isEmpty()) {
+        return;
+      }
+      working = true;
+    }
+
+    startWorker();
+  }
+
+  private void startWorker() {
+    threadFactory.newThread(new Runnable() {
+      public void run() {
+        work();
+      }
+    }).start();
+  }
+
+  /**
+   * Waits for an image to be sliced in the background.
+   *
+   * @param name the image name
+   * @throws ImageIOException if the image could not be sliced
+   */
+  protected void awaitSliced(String name) throws ImageIOException {
+    schedule(name, true);
+
+    synchronized (queue) {
+      while (!fresh.contains(name)) {
+        if (failed.contains(name)) {
+          throw new ImageIOException(name, "failed to tile");
+        }
+
+        try {
+          queue.wait();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new ImageIOException(name, e);
+        }
+      }
+    }
+  }
+
+  private void work() {
+    String name = null;
+    try {
+      for (;;) {
+        synchronized (queue) {
+          if (queue.isEmpty()) {
+            working = false;
+            return;
+          }
+          name = queue.removeFirst();
+        }
+
+        try {
+          if (!isFresh(name)) {
+            slice(name);
+          }
+        }
+        catch (IOException e) {
+          // tiles for this image will continue to be sliced on demand
+          logger.error("Failed to tile " + name, e);
+          fail(name);
+        }
+        catch (RuntimeException e) {
+          logger.error("Failed to tile " + name, e);
+          fail(name);
+        }
+
+        synchronized (queue) {
+          queue.notifyAll();
+        }
+      }
+    }
+    finally {
+      // on an Error, such as running out of memory, give up on the image
+      // being sliced and carry on with the rest in a new worker
+      boolean restart = false;
+      synchronized (queue) {
+        if (working) {
+          failed.add(name);
+          queue.notifyAll();
+          restart = !queue.isEmpty();
+          working = restart;
+        }
+      }
+
+      if (restart) {
+        startWorker();
+      }
+    }
+  }
+
+  private void fail(String name) {
+    synchronized (queue) {
+      failed.add(name);
+    }
+  }
+
+  /**
+   * Slices all the tiles of an image into its tile pack.
+   *
+   * @param name the image name
+   * @throws IOException if the image cannot be read or the pack written
+   */
+  protected void slice(String name) throws IOException {
+    logger.info("Tiling {}", name);
+
+    // a stale pack may be open, from before its image changed
+    closePack(name);
+
+    if (isLarge(name)) {
+      sliceInTiler(name);
+    }
+    else {
+      sliceHere(name);
+    }
+
+    setFresh(archive.getArchiveContaining(name), name, tw, th);
+    saveManifest();
+
+    fresh.add(name);
+  }
+
+  private void sliceHere(String name) throws IOException {
+    final BufferedImage src = getSource(name);
+    new TileSlicerImpl().slice(
+      src, name, cpath, tw, th, getTileExecutor(), new Callback<Void>() {
+        public void receive(Void obj) {}
+      }
+    );
+
+    sources.remove(name);
+  }
+
+  /**
+   * Slices an image with a {@link ZipFileImageTiler} process, as
+   * {@link TilingHandler} does.
+   */
+  private void sliceInTiler(String name) throws IOException {
+    final File pack = new File(cpath, TileUtils.packName(name));
+
+    // remove a stale tile pack, so that one present after slicing is new
+    pack.delete();
+    new File(cpath).mkdirs();
+
+    final Dimension d = getImageSize(name);
+    final int maxheap = (int) (2.85*((4L*d.width*d.height) >> 20) + 50);
+
+    // the tiler reports its progress; we need only to see it finish
+    TilingHandler.runTiler(
+      archive.getArchiveContaining(name).getName(), new File(cpath),
+      new Dimension(tw, th), maxheap, System.getProperty("VASSAL.id", "0"),
+      Collections.singletonList(name), new TilingHandler.TilerListener() {
+        public void started(ProcessWrapper proc) {}
+        public void startingImage(String ipath) {}
+        public void tileWritten() {}
+      }
+    );
+
+    // the tiler logs images it fails to load and carries on
+    if (!pack.isFile()) {
+      throw new ImageIOException(name, "not tiled");
+    }
+  }
+
+  private synchronized ExecutorService getTileExecutor() {
+    if (tileExec == null) {
+      tileExec = new ThreadPoolExecutor(
+        1, 1, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        threadFactory
+      );
+    }
+    return tileExec;
+  }
+}
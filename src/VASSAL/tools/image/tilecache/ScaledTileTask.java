@@ -22,12 +22,11 @@ package VASSAL.tools.image.tilecache;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.WritableRaster;
-import java.io.File;
 
 import VASSAL.tools.image.GeneralFilter;
 
 /**
- * Slices one scaled tile from an image and writes it to disk.
+ * Slices one scaled tile from an image and adds it to a tile pack.
  */
 class ScaledTileTask extends TileTask {
   protected final GeneralFilter.Filter filter;
@@ -37,7 +36,8 @@ class ScaledTileTask extends TileTask {
    *
    * @param src the source image
    * @param filter the resampling filter
-   * @param dst the destination file
+   * @param dst the destination tile pack
+   * @param div the scale divisor
    * @param tx the tile column
    * @param ty the tile row
    * @param tw the standard tile width
@@ -45,10 +45,10 @@ class ScaledTileTask extends TileTask {
    * @param dw the width of the whole scaled image
    * @param dh the height of the whole scaled image
    */
-  public ScaledTileTask(BufferedImage src, File dst,
+  public ScaledTileTask(BufferedImage src, TilePackWriter dst, int div,
                         GeneralFilter.Filter filter,
                         int tx, int ty, int tw, int th, int dw, int dh) {
-    super(src, dst, tx, ty, tw, th, dw, dh);
+    super(src, dst, div, tx, ty, tw, th, dw, dh);
     this.filter = filter;
   }
 
@@ -0,0 +1,180 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.image.tilecache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import VASSAL.tools.io.FileArchive;
+import VASSAL.tools.io.IOUtils;
+
+/**
+ * Records, for each image in a tile cache, the content key of the image
+ * from which its tile pack was sliced. The content key combines the CRC
+ * and size of the image with the tile size, so the tiles of an image are
+ * fresh exactly when its content key is unchanged, whatever the
+ * modification times of the image or its tiles.
+ *
+ * <p>The manifest is the file <code>manifest</code> in the tile cache, in
+ * {@link Properties} format.</p>
+ *
+ * @since 3.2.3
+ */
+public class TileCacheManifest {
+  public static final String FILE_NAME = "manifest";
+
+  protected final File file;
+  protected final Properties keys = new Properties();
+  protected final Map<String,String> changes = new HashMap<String,String>();
+
+  /**
+   * Reads the manifest of a tile cache. A missing or unreadable manifest
+   * is treated as empty.
+   *
+   * @param cdir the tile cache directory
+   */
+  public TileCacheManifest(File cdir) {
+    file = new File(cdir, FILE_NAME);
+    load(keys);
+  }
+
+  private void load(Properties p) {
+    if (!file.isFile()) {
+      return;
+    }
+
+    InputStream in = null;
+    try {
+      in = new BufferedInputStream(new FileInputStream(file));
+      p.load(in);
+      in.close();
+    }
+    catch (IOException e) {
+      // the cache will be rebuilt, so don't bother the user
+    }
+    finally {
+      IOUtils.closeQuietly(in);
+    }
+  }
+
+  /**
+   * Gets the content key of a file in an archive.
+   *
+   * @param fa the archive
+   * @param path the path to the file in the archive
+   * @param tw the tile width
+   * @param th the tile height
+   * @return the content key, or <code>null</code> if the CRC of the file
+   * is not known
+   * @throws IOException if the archive cannot be read
+   */
+  public static String contentKey(FileArchive fa, String path, int tw, int th)
+                                                          throws IOException {
+    final long crc = fa.getCrc(path);
+    if (crc == -1) {
+      return null;
+    }
+
+    return Long.toHexString(crc) + ':' + fa.getSize(path) + ':' +
+           tw + 'x' + th;
+  }
+
+  /**
+   * @param iname the image name
+   * @return the content key of the image from which the tiles of the
+   * image were sliced, or <code>null</code> if there is none
+   */
+  public synchronized String get(String iname) {
+    return keys.getProperty(iname);
+  }
+
+  /**
+   * Records the content key of the image from which the tiles of the
+   * image were sliced. The change is kept until {@link #save}.
+   *
+   * @param iname the image name
+   * @param key the content key
+   */
+  public synchronized void put(String iname, String key) {
+    keys.setProperty(iname, key);
+    changes.put(iname, key);
+  }
+
+  /**
+   * @param key a content key
+   * @return the name of an image with the given content key, or
+   * <code>null</code> if there is none
+   */
+  public synchronized String find(String key) {
+    for (Map.Entry<Object,Object> e : keys.entrySet()) {
+      if (key.equals(e.getValue())) {
+        return (String) e.getKey();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Writes the changes to the manifest. Changes written meanwhile by any
+   * other process using the same tile cache are kept.
+   *
+   * @throws IOException if the manifest cannot be written
+   */
+  public synchronized void save() throws IOException {
+    if (changes.isEmpty()) {
+      return;
+    }
+
+    final Properties p = new Properties();
+    load(p);
+    p.putAll(changes);
+
+    final File tmp = new File(file.getPath() + ".tmp");
+    OutputStream out = null;
+    try {
+      out = new BufferedOutputStream(new FileOutputStream(tmp));
+      p.store(out, null);
+      out.close();
+    }
+    finally {
+      IOUtils.closeQuietly(out);
+    }
+
+    if (!tmp.renameTo(file)) {
+      // renaming over an existing file fails on some platforms
+      file.delete();
+      if (!tmp.renameTo(file)) {
+        tmp.delete();
+        throw new IOException("unable to replace " + file);
+      }
+    }
+
+    changes.clear();
+  }
+}
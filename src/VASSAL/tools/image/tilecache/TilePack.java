@@ -0,0 +1,393 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.image.tilecache;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A read-only file holding all the tiles of one image at every scale.
+ *
+ * <p>A tile pack is the 16-byte header, the tile data, the index and the
+ * 16-byte trailer. The header is the signature 'VASSALTP' (8 bytes), the
+ * version (4 bytes) and the codec (4 bytes). Each entry of the index is
+ * the scale divisor, column, row, width, height and image type of a tile
+ * (4 bytes each), and the offset (8 bytes) and length (4 bytes) of its
+ * data. The trailer is the offset of the index (8 bytes), the number of
+ * entries (4 bytes) and the signature 'TPND' (4 bytes). Integers are
+ * big-endian.</p>
+ *
+ * <p>The data of a tile is its 4-bpp pixels, either as they are for
+ * {@link #CODEC_NONE}, or compressed by raw deflate at the fastest level
+ * for {@link #CODEC_DEFLATE}.</p>
+ *
+ * <p>The index is read when the pack is opened. The file is then held
+ * open, and each tile read from it at its offset, so packs of any size
+ * may be read. Tiles are read by positional reads, which do not share a
+ * file position, so any number of threads may read tiles at once. A pack must be {@link #close closed} to release the file,
+ * and before the file is replaced or deleted. Readers which share a pack
+ * {@link #acquire} it before reading and {@link #release} it after, so
+ * that the file is not closed under them.</p>
+ *
+ * @since 3.2.3
+ */
+public class TilePack {
+  /** Tile data is stored uncompressed. */
+  public static final int CODEC_NONE = 0;
+
+  /** Tile data is compressed by raw deflate. */
+  public static final int CODEC_DEFLATE = 1;
+
+  static final byte[] SIGNATURE = { 'V', 'A', 'S', 'S', 'A', 'L', 'T', 'P' };
+  static final int END_SIGNATURE = 0x54504e44; // "TPND"
+  static final int VERSION = 1;
+
+  static final int HEADER_SIZE = 16;
+  static final int ENTRY_SIZE = 36;
+  static final int TRAILER_SIZE = 16;
+
+  /**
+   * @return the codec for new tile packs, which is {@link #CODEC_DEFLATE}
+   * unless the system property <code>VASSAL.tileCodec</code> is
+   * <code>none</code>
+   */
+  public static int getDefaultCodec() {
+    return "none".equals(System.getProperty("VASSAL.tileCodec")) ?
+      CODEC_NONE : CODEC_DEFLATE;
+  }
+
+  private final File file;
+  private volatile FileChannel channel;
+  private final int codec;
+
+  private int[] index;
+  private final Map<Long,Integer> entries = new HashMap<Long,Integer>();
+
+  // guarded by this
+  private int readers = 0;
+  private boolean closing = false;
+
+  /**
+   * Opens a tile pack.
+   *
+   * @param file the tile pack
+   * @throws IOException if the file cannot be read or is not a tile pack
+   */
+  public TilePack(File file) throws IOException {
+    this.file = file;
+
+    channel = new RandomAccessFile(file, "r").getChannel();
+    boolean ok = false;
+    try {
+      codec = readIndex();
+      ok = true;
+    }
+    finally {
+      if (!ok) {
+        channel.close();
+      }
+    }
+  }
+
+  /**
+   * Checks the header and the trailer, and reads the index.
+   *
+   * @return the codec
+   */
+  private int readIndex() throws IOException {
+    final long size = channel.size();
+    if (size < HEADER_SIZE + TRAILER_SIZE) {
+      throw new IOException(file + " is too short for a tile pack");
+    }
+
+    final ByteBuffer hb = ByteBuffer.wrap(read(0, HEADER_SIZE));
+    final ByteBuffer tb =
+      ByteBuffer.wrap(read(size - TRAILER_SIZE, TRAILER_SIZE));
+
+    final byte[] sig = new byte[SIGNATURE.length];
+    hb.get(sig);
+    if (!Arrays.equals(sig, SIGNATURE) || tb.getInt(12) != END_SIGNATURE) {
+      throw new IOException(file + " is not a tile pack");
+    }
+
+    final int version = hb.getInt(8);
+    if (version != VERSION) {
+      throw new IOException(file + " has unknown version " + version);
+    }
+
+    final int c = hb.getInt(12);
+    if (c != CODEC_NONE && c != CODEC_DEFLATE) {
+      throw new IOException(file + " has unknown codec " + c);
+    }
+
+    final long ioff = tb.getLong(0);
+    final int count = tb.getInt(8);
+    if (ioff < HEADER_SIZE || count < 0 ||
+        ioff + (long) count * ENTRY_SIZE != size - TRAILER_SIZE) {
+      throw new IOException(file + " has a bad index");
+    }
+
+    index = new int[count * (ENTRY_SIZE / 4)];
+    ByteBuffer.wrap(read(ioff, count * ENTRY_SIZE)).asIntBuffer().get(index);
+
+    for (int i = 0; i < count; ++i) {
+      final int e = i * (ENTRY_SIZE / 4);
+      entries.put(key(index[e], index[e+1], index[e+2]), e);
+    }
+
+    return c;
+  }
+
+  /**
+   * Fills a buffer from the file.
+   *
+   * @param bb the buffer
+   * @param off the offset in the file of the first byte to read
+   */
+  private void read(ByteBuffer bb, long off) throws IOException {
+    final int start = bb.position();
+    for (;;) {
+      final FileChannel ch = channel;
+      try {
+        while (bb.hasRemaining()) {
+          if (ch.read(bb, off + bb.position() - start) < 0) {
+            throw new IOException("unexpected end of " + file);
+          }
+        }
+        return;
+      }
+      catch (ClosedChannelException e) {
+        // A channel is closed for every reader when any reader using it is
+        // interrupted. Unless the pack was closed, reopen it and read again.
+        reopen(ch);
+        if (e instanceof ClosedByInterruptException) {
+          throw e;
+        }
+        bb.position(start);
+      }
+    }
+  }
+
+  private synchronized void reopen(FileChannel closed) throws IOException {
+    if (closing && readers == 0) {
+      throw new IOException(file + " is closed");
+    }
+
+    if (channel == closed) {
+      channel = new RandomAccessFile(file, "r").getChannel();
+    }
+  }
+
+  private byte[] read(long off, int len) throws IOException {
+    final byte[] b = new byte[len];
+    read(ByteBuffer.wrap(b), off);
+    return b;
+  }
+
+  /**
+   * Registers a reader of this pack. The pack is not closed until every
+   * reader has {@link #release released} it.
+   *
+   * @return <code>false</code> if the pack is closed, in which case it
+   * must not be read
+   */
+  public synchronized boolean acquire() {
+    if (closing) {
+      return false;
+    }
+
+    ++readers;
+    return true;
+  }
+
+  /**
+   * Unregisters a reader of this pack, closing the file if the pack was
+   * closed while it was being read.
+   */
+  public synchronized void release() {
+    if (--readers == 0 && closing) {
+      try {
+        channel.close();
+      }
+      catch (IOException e) {
+        // ignore, the pack is not read again
+      }
+    }
+  }
+
+  /**
+   * Closes the file, once no reader has the pack {@link #acquire acquired}.
+   * Tiles may not be read afterwards.
+   *
+   * @throws IOException if the file cannot be closed
+   */
+  public synchronized void close() throws IOException {
+    if (closing) {
+      return;
+    }
+
+    closing = true;
+    if (readers == 0) {
+      channel.close();
+    }
+  }
+
+  static Long key(int div, int tx, int ty) {
+    return ((long) div << 42) | ((long) tx << 21) | ty;
+  }
+
+  /**
+   * @return the file holding this tile pack
+   */
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * @return whether the pack holds the given tile
+   */
+  public boolean hasTile(int tx, int ty, int div) {
+    return entries.containsKey(key(div, tx, ty));
+  }
+
+  private int entry(int tx, int ty, int div) throws IOException {
+    final Integer e = entries.get(key(div, tx, ty));
+    if (e == null) {
+      throw new IOException("tile (" + tx + "," + ty + ")@1:" + div +
+                            " not in " + file);
+    }
+    return e;
+  }
+
+  /**
+   * Gets the size of a tile.
+   *
+   * @throws IOException if the pack does not hold the tile
+   */
+  public Dimension getTileSize(int tx, int ty, int div) throws IOException {
+    final int e = entry(tx, ty, div);
+    return new Dimension(index[e+3], index[e+4]);
+  }
+
+  /**
+   * Reads a tile. This may be called on any thread.
+   *
+   * @throws IOException if the pack does not hold the tile or the tile
+   * cannot be decoded
+   */
+  public BufferedImage getTile(int tx, int ty, int div) throws IOException {
+    final int e = entry(tx, ty, div);
+    final int w = index[e+3];
+    final int h = index[e+4];
+    final int type = index[e+5];
+    final long off = ((long) index[e+6] << 32) | (index[e+7] & 0xFFFFFFFFL);
+    final int len = index[e+8];
+
+    final BufferedImage img = new BufferedImage(w, h, type);
+    final int[] data =
+      ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+
+    switch (codec) {
+    case CODEC_NONE:
+      {
+        if (len != 4 * data.length) {
+          throw new IOException("bad length for tile in " + file);
+        }
+
+        final ByteBuffer bb = ByteBuffer.allocate(len);
+        read(bb, off);
+        bb.flip();
+        bb.asIntBuffer().get(data);
+      }
+      break;
+
+    case CODEC_DEFLATE:
+      {
+        // the extra byte is needed for nowrap
+        final byte[] cdata = new byte[len + 1];
+        read(ByteBuffer.wrap(cdata, 0, len), off);
+        inflate(cdata, data);
+      }
+      break;
+    }
+
+    return img;
+  }
+
+  /** The number of pixels inflated at a time. */
+  private static final int INFLATE_CHUNK = 4096;
+
+  /**
+   * Inflates tile data into the pixels of a tile, a chunk at a time, so
+   * that the whole tile is not inflated into bytes first.
+   */
+  private void inflate(byte[] cdata, int[] data) throws IOException {
+    final byte[] chunk = new byte[4 * Math.min(INFLATE_CHUNK, data.length)];
+    final ByteBuffer cb = ByteBuffer.wrap(chunk);
+    final IntBuffer dst = IntBuffer.wrap(data);
+
+    final Inflater inf = new Inflater(true);
+    try {
+      inf.setInput(cdata);
+
+      // n counts the bytes in the chunk, of which whole pixels are taken
+      int n = 0;
+      while (dst.hasRemaining()) {
+        final int want = Math.min(chunk.length, 4 * dst.remaining());
+        final int r = inf.inflate(chunk, n, want - n);
+        if (r == 0 && (inf.finished() || inf.needsInput())) {
+          throw new IOException("truncated tile in " + file);
+        }
+        n += r;
+
+        final int px = n / 4;
+        cb.clear();
+        cb.limit(4 * px);
+        dst.put(cb.asIntBuffer());
+
+        // keep any part of a pixel for the next chunk
+        final int rest = n - 4 * px;
+        System.arraycopy(chunk, 4 * px, chunk, 0, rest);
+        n = rest;
+      }
+    }
+    catch (DataFormatException e) {
+      throw (IOException) new IOException("bad tile in " + file)
+                                                           .initCause(e);
+    }
+    finally {
+      inf.end();
+    }
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.image.tilecache;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+import org.apache.commons.io.FileUtils;
+
+import VASSAL.tools.ArrayUtils;
+import VASSAL.tools.io.IOUtils;
+
+/**
+ * Writes a {@link TilePack}. Tiles may be added concurrently from any
+ * number of threads. The pack is written to a temporary file, which
+ * replaces the destination only when {@link #finish} is called.
+ *
+ * @since 3.2.3
+ */
+public class TilePackWriter {
+  private final File dst;
+  private final File tmp;
+  private final int codec;
+
+  private RandomAccessFile out;
+  private long pos;
+  private int[] index = new int[0];
+  private int count = 0;
+
+  /**
+   * Starts writing a tile pack.
+   *
+   * @param dst the tile pack to write
+   * @param codec the codec for the tile data, {@link TilePack#CODEC_NONE}
+   * or {@link TilePack#CODEC_DEFLATE}
+   * @throws IOException if the temporary file cannot be created
+   */
+  public TilePackWriter(File dst, int codec) throws IOException {
+    if (codec != TilePack.CODEC_NONE && codec != TilePack.CODEC_DEFLATE) {
+      throw new IllegalArgumentException("codec = " + codec);
+    }
+
+    this.dst = dst;
+    this.codec = codec;
+
+    FileUtils.forceMkdir(dst.getParentFile());
+    tmp = new File(dst.getPath() + ".tmp");
+    out = new RandomAccessFile(tmp, "rw");
+    out.setLength(0);
+
+    final ByteBuffer bb = ByteBuffer.allocate(TilePack.HEADER_SIZE);
+    bb.put(TilePack.SIGNATURE).putInt(TilePack.VERSION).putInt(codec);
+    out.write(bb.array());
+    pos = TilePack.HEADER_SIZE;
+  }
+
+  /**
+   * Adds a tile. The tile must have a {@link DataBufferInt}.
+   *
+   * @param tx the tile column
+   * @param ty the tile row
+   * @param div the scale divisor
+   * @param tile the tile
+   * @throws IOException if the write fails
+   */
+  public void add(int tx, int ty, int div, BufferedImage tile)
+                                                           throws IOException {
+    // encode the tile outside the lock, so tiles are encoded concurrently
+    final int[] data =
+      ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+
+    final byte[] raw = new byte[4 * data.length];
+    ByteBuffer.wrap(raw).asIntBuffer().put(data);
+
+    byte[] enc = raw;
+    int len = raw.length;
+    if (codec == TilePack.CODEC_DEFLATE) {
+      final Deflater def = new Deflater(Deflater.BEST_SPEED, true);
+      try {
+        def.setInput(raw);
+        def.finish();
+        enc = new byte[raw.length / 4 + 64];
+        len = 0;
+        while (!def.finished()) {
+          if (len == enc.length) {
+            enc = ArrayUtils.copyOf(enc, 2 * enc.length);
+          }
+          len += def.deflate(enc, len, enc.length - len);
+        }
+      }
+      finally {
+        def.end();
+      }
+    }
+
+    write(tx, ty, div, tile.getWidth(), tile.getHeight(), tile.getType(),
+          enc, len);
+  }
+
+  private synchronized void write(int tx, int ty, int div, int w, int h,
+                                  int type, byte[] data, int len)
+                                                           throws IOException {
+    if (out == null) {
+      throw new IOException(dst + " is already finished");
+    }
+
+    out.seek(pos);
+    out.write(data, 0, len);
+
+    final int e = count * (TilePack.ENTRY_SIZE / 4);
+    if (e == index.length) {
+      index = ArrayUtils.copyOf(index, Math.max(2 * index.length, 64 * 9));
+    }
+
+    index[e]   = div;
+    index[e+1] = tx;
+    index[e+2] = ty;
+    index[e+3] = w;
+    index[e+4] = h;
+    index[e+5] = type;
+    index[e+6] = (int) (pos >>> 32);
+    index[e+7] = (int) pos;
+    index[e+8] = len;
+
+    pos += len;
+    ++count;
+  }
+
+  /**
+   * Writes the index and replaces the destination with the tile pack.
+   *
+   * @throws IOException if the write fails
+   */
+  public synchronized void finish() throws IOException {
+    if (out == null) {
+      throw new IOException(dst + " is already finished");
+    }
+
+    try {
+      final int n = count * (TilePack.ENTRY_SIZE / 4);
+      final ByteBuffer bb =
+        ByteBuffer.allocate(4 * n + TilePack.TRAILER_SIZE);
+      bb.asIntBuffer().put(index, 0, n);
+      bb.position(4 * n);
+      bb.putLong(pos).putInt(count).putInt(TilePack.END_SIGNATURE);
+
+      out.seek(pos);
+      out.write(bb.array());
+      out.close();
+      out = null;
+    }
+    finally {
+      if (out != null) {
+        abort();
+      }
+    }
+
+    if (!tmp.renameTo(dst)) {
+      // renaming over an existing file fails on some platforms
+      dst.delete();
+      if (!tmp.renameTo(dst)) {
+        tmp.delete();
+        throw new IOException("unable to replace " + dst);
+      }
+    }
+  }
+
+  /**
+   * Abandons the tile pack, leaving the destination unchanged.
+   */
+  public synchronized void abort() {
+    if (out != null) {
+      IOUtils.closeQuietly(out);
+      out = null;
+    }
+    tmp.delete();
+  }
+}
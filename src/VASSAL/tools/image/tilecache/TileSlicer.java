@@ -36,8 +36,8 @@ public interface TileSlicer {
    * Slices an image into tiles.
    *
    * @param src the source image
-   * @param iname the basename for the tiles
-   * @param tpath the path for the tiles
+   * @param iname the image name, from which the tile pack is named
+   * @param tpath the path of the tile cache, in which the tile pack is written
    * @param tw the tile width
    * @param th the tile height
    * @param exec the executor in which to run tasks
@@ -43,8 +43,8 @@ public class TileSlicerImpl implements TileSlicer {
    * Slices an image into tiles.
    *
    * @param src the source image
-   * @param iname the basename for the tiles
-   * @param tpath the path for the tiles
+   * @param iname the image name, from which the tile pack is named
+   * @param tpath the path of the tile cache, in which the tile pack is written
    * @param tw the tile width
    * @param th the tile height
    * @param exec the executor in which to run tasks
@@ -65,16 +65,21 @@ public class TileSlicerImpl implements TileSlicer {
 
     final List<Future<Void>> futures = new ArrayList<Future<Void>>();
 
+    // all tiles of the image go into one tile pack
+    final TilePackWriter pack = new TilePackWriter(
+      new File(tpath, TileUtils.packName(iname)), TilePack.getDefaultCodec()
+    );
+
     // slice unscaled 1:1 tiles
     final TaskMaker unscaled = new TaskMaker() {
-      public TileTask make(BufferedImage src, File f,
+      public TileTask make(BufferedImage src, TilePackWriter pack, int div,
                            int tx, int ty, int tw, int th, int sw, int sh) {
-        return new TileTask(src, f, tx, ty, tw, th, sw, sh);
+        return new TileTask(src, pack, div, tx, ty, tw, th, sw, sh);
       }
     };
 
     queueTileTasks(
-      src, iname, tpath, 1, tw, th, sw, sh, unscaled, exec, futures
+      src, pack, 1, tw, th, sw, sh, unscaled, exec, futures
     );
 
     // slice scaled tiles, starting at 1:2
@@ -82,9 +87,11 @@ public class TileSlicerImpl implements TileSlicer {
       private final GeneralFilter.Filter filter =
         new GeneralFilter.Lanczos3Filter();
 
-      public TileTask make(BufferedImage src, File f,
+      public TileTask make(BufferedImage src, TilePackWriter pack, int div,
                            int tx, int ty, int tw, int th, int dw, int dh) {
-        return new ScaledTileTask(src, f, filter, tx, ty, tw, th, dw, dh);
+        return new ScaledTileTask(
+          src, pack, div, filter, tx, ty, tw, th, dw, dh
+        );
       }
     };
 
@@ -93,16 +100,20 @@ public class TileSlicerImpl implements TileSlicer {
       final int dh = sh/div;
 
       queueTileTasks(
-        src, iname, tpath, div, tw, th, dw, dh, scaled, exec, futures
+        src, pack, div, tw, th, dw, dh, scaled, exec, futures
       );
     }
 
     // wait for all tiles to complete
+    boolean done = false;
     try {
       for (Future<Void> f : futures) {
         f.get();
         progress.receive(null);
       }
+
+      pack.finish();
+      done = true;
     }
     catch (CancellationException e) {
       // should never happen
@@ -120,18 +131,21 @@ public class TileSlicerImpl implements TileSlicer {
       for (Future<Void> f : futures) {
         if (!f.isDone()) f.cancel(true);
       }
+
+      if (!done) {
+        pack.abort();
+      }
     }
   }
 
   protected static interface TaskMaker {
-    public TileTask make(BufferedImage src, File f,
+    public TileTask make(BufferedImage src, TilePackWriter pack, int div,
                          int tx, int ty, int tw, int th, int dw, int dh);
   }
 
   protected static void queueTileTasks(
     BufferedImage src,
-    String iname,
-    String tpath,
+    TilePackWriter pack,
     int div,
     int tw,
     int th,
@@ -147,10 +161,7 @@ public class TileSlicerImpl implements TileSlicer {
 
     for (int tx = 0; tx < tcols; ++tx) {
       for (int ty = 0; ty < trows; ++ty) {
-        final String tn = TileUtils.tileName(iname, tx, ty, div);
-        final File f = new File(tpath, tn);
-
-        final TileTask tt = tm.make(src, f, tx, ty, tw, th, dw, dh);
+        final TileTask tt = tm.make(src, pack, div, tx, ty, tw, th, dw, dh);
         futures.add(exec.submit(tt));
       }
     }
@@ -406,6 +406,19 @@ public class TileUtils {
     return cols*rows;
   }
 
+  /**
+   * Gets the name of the {@link TilePack} holding the tiles of an image.
+   *
+   * @param iname the image name
+   * @return the name of the tile pack
+   * @since 3.2.3
+   */
+  public static String packName(String iname) {
+    final String sha = DigestUtils.shaHex(iname);
+    return sha.substring(0, 1) + '/' + sha.substring(0, 2) + '/' + sha +
+           ".pack";
+  }
+
   /**
    * Gets the name of a tile file.
    *
@@ -65,6 +65,35 @@ public abstract class AbstractOpImpl
     cache.clear();
   }
 
+  /**
+   * Cancels a request for an image, if it has not started.
+   *
+   * @param fut the <code>Future</code> for the request
+   * @return <code>true</code> if the request was cancelled
+   * @see OpCache#cancel
+   */
+  public static boolean cancel(Future<BufferedImage> fut) {
+    return cache.cancel(fut);
+  }
+
+  /**
+   * Requests an image which is not wanted yet, but probably soon will be.
+   *
+   * @param op the operation producing the image
+   * @return the <code>Future</code> for the request
+   * @see OpCache#prefetch
+   */
+  public static Future<BufferedImage> prefetch(ImageOp op) {
+    return cache.prefetch(op.newKey());
+  }
+
+  /**
+   * @return the cache, from which statistics may be read
+   */
+  public static OpCache getCache() {
+    return cache;
+  }
+
   public AbstractOpImpl() {
     super(cache);
   }
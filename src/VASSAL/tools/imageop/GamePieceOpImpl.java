@@ -27,9 +27,11 @@ import java.util.List;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import VASSAL.counters.GamePiece;
 import VASSAL.counters.Properties;
+import VASSAL.counters.VisualVersion;
 import VASSAL.tools.image.ImageUtils;
 import VASSAL.tools.opcache.Op;
 import VASSAL.tools.opcache.OpObserver;
@@ -37,15 +39,36 @@ import VASSAL.tools.opcache.OpObserver;
 /**
  * An {@link ImageOp} which uses a {@link GamePiece} as its source.
  *
+ * <p>Two <code>GamePieceOpImpl</code>s are equal when their pieces have
+ * the same type and visible state, whether or not they are the same piece,
+ * so identical pieces share one rendered image in the cache, as do the
+ * operations applied to it, such as rotation and scaling.</p>
+ *
  * @since 3.1.0
  * @author Joel Uckelman
  */
 public class GamePieceOpImpl extends AbstractTileOpImpl implements GamePieceOp {
   /** The image source for this <code>ImageOp</code>. */
   private final GamePiece piece;
+  private final String type;
   private final String state;
   private final int hash;
 
+  /** The visual version of the piece when its state was last checked. */
+  private long version;
+
+  private static final AtomicLong rendered = new AtomicLong();
+
+  /**
+   * @return the number of times any piece has been drawn to an image,
+   * which is the number of distinct piece appearances drawn unless some
+   * have been evicted from the cache
+   * @since 3.2.3
+   */
+  public static long getRenderCount() {
+    return rendered.get();
+  }
+
   /**
    * Constructs an <code>ImageOp</code> which will produce an image
    * from the given <code>GamePiece</code>.
@@ -56,8 +79,10 @@ public class GamePieceOpImpl extends AbstractTileOpImpl implements GamePieceOp {
   public GamePieceOpImpl(GamePiece gp) {
     if (gp == null) throw new IllegalArgumentException();
     piece = gp;
+    type = piece.getType();
+    version = VisualVersion.of(piece);
     state = String.valueOf(piece.getProperty(Properties.VISIBLE_STATE));
-    hash = piece.hashCode();
+    hash = type.hashCode() * 31 + state.hashCode();
   }
 
   @Override
@@ -85,6 +110,8 @@ public class GamePieceOpImpl extends AbstractTileOpImpl implements GamePieceOp {
 
   /** {@inheritDoc} */
   public BufferedImage eval() {
+    rendered.incrementAndGet();
+
     final Rectangle b = piece.boundingBox();
     final BufferedImage im = ImageUtils.createCompatibleTranslucentImage(
       Math.max(b.width, 1),
@@ -120,10 +147,25 @@ public class GamePieceOpImpl extends AbstractTileOpImpl implements GamePieceOp {
    * Returns <code>true</code> iff the source <code>GamePiece</code>
    * has changed state.
    *
+   * <p>The visible state of the piece is compared only if its
+   * {@link VisualVersion} has changed, so this is cheap enough to call on
+   * every paint. Pieces which have no visual version, such as those with
+   * labels showing calculated properties, are compared every time.</p>
+   *
    * @return <code>true</code> iff the source has changed.
    */
   public boolean isChanged() {
-    return !state.equals(piece.getProperty(Properties.VISIBLE_STATE));
+    final long v = VisualVersion.of(piece);
+    if (v != -1 && v == version) {
+      return false;
+    }
+
+    if (!state.equals(piece.getProperty(Properties.VISIBLE_STATE))) {
+      return true;
+    }
+
+    version = v;
+    return false;
   }
 
   /** {@inheritDoc} */
@@ -132,9 +174,9 @@ public class GamePieceOpImpl extends AbstractTileOpImpl implements GamePieceOp {
     if (this == o) return true;
     if (o == null || o.getClass() != this.getClass()) return false;
 
-    GamePieceOp op = (GamePieceOp) o;
-    return piece.equals(op.getPiece()) &&
-           state.equals(op.getState());
+    final GamePieceOpImpl op = (GamePieceOpImpl) o;
+    return type.equals(op.type) &&
+           state.equals(op.state);
   }
 
   /** {@inheritDoc} */
@@ -20,6 +20,7 @@
 package VASSAL.tools.imageop;
 
 import java.awt.image.BufferedImage;
+import java.util.concurrent.Future;
 
 import VASSAL.build.BadDataReport;
 import VASSAL.counters.GamePiece;
@@ -107,6 +108,19 @@ public class Op {
 
   public static void clearCache() {
     AbstractOpImpl.clearCache();
+    SourceOpSVGImpl.clearRenderers();
+  }
+
+  public static void setCacheBudget(long bytes) {
+    AbstractOpImpl.getCache().setBudget(bytes);
+  }
+
+  public static boolean cancel(Future<BufferedImage> fut) {
+    return AbstractOpImpl.cancel(fut);
+  }
+
+  public static Future<BufferedImage> prefetch(ImageOp op) {
+    return AbstractOpImpl.prefetch(op);
   }
 
   public static boolean handleException(Exception e) {
@@ -108,7 +108,8 @@ public class Repainter implements ImageOpObserver {
   }
 
   public void cancelled(Op<BufferedImage> op, CancellationException e) {
-    ErrorDialog.bug(e);
+    // The request is no longer wanted. If it is wanted again, it will be
+    // requested again when the component repaints.
   }
 
   public void interrupted(Op<BufferedImage> op, InterruptedException e) {
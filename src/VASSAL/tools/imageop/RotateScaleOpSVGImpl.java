@@ -22,7 +22,6 @@ package VASSAL.tools.imageop;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
-import java.io.BufferedInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Collections;
@@ -30,8 +29,6 @@ import java.util.List;
 
 import org.apache.commons.lang.builder.HashCodeBuilder;
 
-import VASSAL.build.GameModule;
-import VASSAL.tools.DataArchive;
 import VASSAL.tools.image.ImageIOException;
 import VASSAL.tools.image.ImageNotFoundException;
 import VASSAL.tools.image.ImageUtils;
@@ -105,14 +102,10 @@ public class RotateScaleOpSVGImpl extends AbstractTileOpImpl
    * @throws Exception passed up from the source <code>ImageOp</code>.
    */
   public BufferedImage eval() throws Exception {
-    final DataArchive archive = GameModule.getGameModule().getDataArchive();
     final String name = getName();
 
     try {
-      final SVGRenderer renderer = new SVGRenderer(
-        archive.getURL(name),
-        new BufferedInputStream(archive.getInputStream(name))
-      );
+      final SVGRenderer renderer = getRenderer();
 
       if (size == null) fixSize();
 
@@ -126,6 +119,10 @@ public class RotateScaleOpSVGImpl extends AbstractTileOpImpl
     }
   }
 
+  public SVGRenderer getRenderer() throws IOException {
+    return sop.getRenderer();
+  }
+
   /** {@inheritDoc} */
   protected void fixSize() {
     if ((size = getSizeFromCache()) == null) {
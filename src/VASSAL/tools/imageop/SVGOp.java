@@ -19,6 +19,10 @@
 
 package VASSAL.tools.imageop;
 
+import java.io.IOException;
+
+import VASSAL.tools.image.svg.SVGRenderer;
+
 /**
  * An {@link ImageOp} which produces images from SVG.
  *
@@ -27,4 +31,15 @@ package VASSAL.tools.imageop;
  */
 public interface SVGOp extends SourceOp {
   public String getName();
+
+  /**
+   * Returns the renderer for the SVG document from which this
+   * <code>SVGOp</code> produces images. All <code>SVGOp</code>s for the
+   * same document share one renderer.
+   *
+   * @return the renderer
+   * @throws IOException if the document cannot be loaded
+   * @since 3.2.3
+   */
+  public SVGRenderer getRenderer() throws IOException;
 }
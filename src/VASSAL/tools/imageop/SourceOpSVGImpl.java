@@ -25,12 +25,19 @@ import java.io.BufferedInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import VASSAL.build.GameModule;
 import VASSAL.tools.DataArchive;
 import VASSAL.tools.ErrorDialog;
+import VASSAL.tools.concurrent.ConcurrentSoftHashMap;
 import VASSAL.tools.image.ImageIOException;
 import VASSAL.tools.image.ImageNotFoundException;
 import VASSAL.tools.image.svg.SVGImageUtils;
@@ -85,12 +92,7 @@ public class SourceOpSVGImpl extends AbstractTiledOpImpl
    */
   public BufferedImage eval() throws ImageIOException {
     try {
-      final SVGRenderer renderer = new SVGRenderer(
-        archive.getURL(name),
-        new BufferedInputStream(archive.getInputStream(name))
-      );
-
-      return renderer.render();
+      return getRenderer().render();
     }
     catch (FileNotFoundException e) {
       throw new ImageNotFoundException(name, e);
@@ -141,6 +143,61 @@ public class SourceOpSVGImpl extends AbstractTiledOpImpl
     return new Dimension();
   }
 
+  /**
+   * The renderers for SVG documents. A renderer holds the GVT trees for
+   * its document, one for each thread which renders it, which are
+   * expensive to build, so it is shared by all ops on the same document,
+   * including all tiles and renderings at other scales and angles. The
+   * renderers are held softly, as the trees for large documents may be
+   * large.
+   */
+  private static final ConcurrentMap<SourceOpSVGImpl,Future<SVGRenderer>>
+    renderers = new ConcurrentSoftHashMap<SourceOpSVGImpl,Future<SVGRenderer>>();
+
+  static void clearRenderers() {
+    renderers.clear();
+  }
+
+  public SVGRenderer getRenderer() throws IOException {
+    Future<SVGRenderer> f = renderers.get(this);
+    if (f == null) {
+      final FutureTask<SVGRenderer> ft = new FutureTask<SVGRenderer>(
+        new Callable<SVGRenderer>() {
+          public SVGRenderer call() throws IOException {
+            return new SVGRenderer(
+              archive.getURL(name),
+              new BufferedInputStream(archive.getInputStream(name))
+            );
+          }
+        }
+      );
+
+      // only the first requester loads the document
+      f = renderers.putIfAbsent(this, ft);
+      if (f == null) {
+        f = ft;
+        ft.run();
+      }
+    }
+
+    try {
+      return f.get();
+    }
+    catch (InterruptedException e) {
+      throw (IOException) new InterruptedIOException().initCause(e);
+    }
+    catch (ExecutionException e) {
+      // don't hold on to failures, so that loading can be retried
+      renderers.remove(this, f);
+
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new IllegalStateException(cause);
+    }
+  }
+
   protected ImageOp createTileOp(int tileX, int tileY) {
     return new SourceTileOpSVGImpl(this, tileX, tileY);
   }
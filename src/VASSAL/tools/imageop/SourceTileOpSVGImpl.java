@@ -22,7 +22,6 @@ package VASSAL.tools.imageop;
 import java.awt.Dimension;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.io.BufferedInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Collections;
@@ -30,8 +29,6 @@ import java.util.List;
 
 import org.apache.commons.lang.builder.HashCodeBuilder;
 
-import VASSAL.build.GameModule;
-import VASSAL.tools.DataArchive;
 import VASSAL.tools.image.ImageIOException;
 import VASSAL.tools.image.ImageNotFoundException;
 import VASSAL.tools.image.svg.SVGRenderer;
@@ -84,15 +81,10 @@ public class SourceTileOpSVGImpl extends AbstractTileOpImpl
   }
 
   public BufferedImage eval() throws ImageIOException {
-// FIXME: getting archive this way is a kludge, we should get it from sop
-    final DataArchive archive = GameModule.getGameModule().getDataArchive();
     final String name = getName();
 
     try {
-      final SVGRenderer renderer = new SVGRenderer(
-        archive.getURL(name),
-        new BufferedInputStream(archive.getInputStream(name))
-      );
+      final SVGRenderer renderer = getRenderer();
 
       final Rectangle2D aoi = new Rectangle2D.Float(x0, y0, x1-x0, y1-y0);
       return renderer.render(0.0, 1.0, aoi);
@@ -111,6 +103,10 @@ public class SourceTileOpSVGImpl extends AbstractTileOpImpl
     return sop.getName();
   }
 
+  public SVGRenderer getRenderer() throws IOException {
+    return sop.getRenderer();
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -174,6 +174,17 @@ public interface FileArchive extends Closeable {
    */
   public long getMTime(String path) throws IOException;
 
+  /**
+   * Gets the CRC-32 checksum of a file in the archive.
+   *
+   * @param path the path to the file in the archive
+   * @return the checksum of the file, or -1 if it is not known
+   * @throws FileNotFoundException if <code>path</code> is not in the archive
+   * @throws IOException
+   * @since 3.2.3
+   */
+  public long getCrc(String path) throws IOException;
+
   /**
    * Gets the list of files in the archive.
    *
@@ -39,6 +39,7 @@ public class ObfuscatingOutputStream extends FilterOutputStream {
 
   private final byte key;
   private final byte[] pair = new byte[2];
+  private final byte[] buf = new byte[8192];
 
   /**
    * @param out the stream to wrap
@@ -68,7 +69,18 @@ public class ObfuscatingOutputStream extends FilterOutputStream {
   /** {@inheritDoc} */
   @Override
   public void write(byte[] bytes, int off, int len) throws IOException {
-    for (int i = 0; i < len; ++i) write(bytes[off+i]);
+    // encode in chunks, to avoid a write to the underlying stream per byte
+    while (len > 0) {
+      final int n = Math.min(len, buf.length / 2);
+      for (int i = 0, j = 0; i < n; ++i) {
+        final int b = bytes[off+i] ^ key;
+        buf[j++] = hex[(b & 0xF0) >>> 4];
+        buf[j++] = hex[b & 0x0F];
+      }
+      out.write(buf, 0, 2*n);
+      off += n;
+      len -= n;
+    }
   }
 
   private final static byte[] hex = {
@@ -34,14 +34,27 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.zip.CRC32;
 import java.util.zip.CheckedOutputStream;
 import java.util.zip.Checksum;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -49,6 +62,7 @@ import java.util.zip.ZipOutputStream;
 import org.apache.commons.io.FileUtils;
 
 import VASSAL.tools.concurrent.CountingReadWriteLock;
+import VASSAL.tools.concurrent.DaemonThreadFactory;
 
 /**
  * @author Joel Uckelman
@@ -73,6 +87,20 @@ public class ZipArchive implements FileArchive {
 
   private final Map<String,Entry> entries = new HashMap<String,Entry>();
 
+  /**
+   * Compression levels by default for files with these extensions, which
+   * are compressed already and gain nothing from a higher level.
+   */
+  private static final String[] COMPRESSED_EXTENSIONS = {
+    "png", "jpg", "jpeg", "gif", "mp3", "ogg", "zip", "vmod", "vext"
+  };
+
+  private final Map<String,Integer> levels = new HashMap<String,Integer>();
+  private int defaultLevel = Deflater.BEST_COMPRESSION;
+  private boolean parallel = true;
+
+  private static ExecutorService deflaters;
+
   private final ReadWriteLock rwl = new CountingReadWriteLock();
   private final Lock r = rwl.readLock();
   private final Lock w = rwl.writeLock();
@@ -122,6 +150,10 @@ public class ZipArchive implements FileArchive {
     if (truncate) {
       archiveFile.delete();
     }
+
+    for (String ext : COMPRESSED_EXTENSIONS) {
+      levels.put(ext, Deflater.BEST_SPEED);
+    }
   }
 
   /**
@@ -173,6 +205,92 @@ public class ZipArchive implements FileArchive {
     flush();
   }
 
+  /**
+   * Sets the level at which new or modified files with the given extension
+   * are compressed.
+   *
+   * @param extension the extension, without the dot, in lower case
+   * @param level the compression level, from 0 to 9
+   * @since 3.2.3
+   */
+  public void setCompressionLevel(String extension, int level) {
+    w.lock();
+    try {
+      levels.put(extension, level);
+    }
+    finally {
+      w.unlock();
+    }
+  }
+
+  /**
+   * Sets the level at which new or modified files are compressed, unless
+   * set for their extension by {@link #setCompressionLevel(String,int)}.
+   *
+   * @param level the compression level, from 0 to 9
+   * @since 3.2.3
+   */
+  public void setCompressionLevel(int level) {
+    w.lock();
+    try {
+      defaultLevel = level;
+    }
+    finally {
+      w.unlock();
+    }
+  }
+
+  /**
+   * Sets whether new or modified files are compressed concurrently, on
+   * as many threads as there are processors. The default is
+   * <code>true</code>.
+   *
+   * @param parallel whether to compress files concurrently
+   * @since 3.2.3
+   */
+  public void setParallelCompression(boolean parallel) {
+    w.lock();
+    try {
+      this.parallel = parallel;
+    }
+    finally {
+      w.unlock();
+    }
+  }
+
+  /** @return the compression level for a file */
+  private int getCompressionLevel(String path) {
+    final int dot = path.lastIndexOf('.');
+    if (dot >= 0 && dot > path.lastIndexOf('/')) {
+      final Integer level =
+        levels.get(path.substring(dot + 1).toLowerCase());
+      if (level != null) {
+        return level;
+      }
+    }
+    return defaultLevel;
+  }
+
+  /**
+   * @return the number of entries to compress at once, which is also the
+   * most compressed entries waiting to be written at any time
+   */
+  private static int getDeflaterCount() {
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  private static synchronized ExecutorService getDeflaters() {
+    if (deflaters == null) {
+      final int n = getDeflaterCount();
+      deflaters = new ThreadPoolExecutor(
+        n, n, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        new DaemonThreadFactory(ZipArchive.class.getSimpleName())
+      );
+    }
+    return deflaters;
+  }
+
   /** {@inheritDoc} */
   public String getName() {
     return archiveFile.getPath();
@@ -410,6 +528,226 @@ public class ZipArchive implements FileArchive {
     final File tmpFile =
       File.createTempFile("tmp", ".zip", archiveFile.getParentFile());
 
+    final boolean copyOld = zipFile != null;
+    if (copyOld) {
+      zipFile.close();
+      zipFile = null;
+    }
+
+    try {
+      writeCopying(tmpFile, copyOld);
+    }
+    catch (ZipException e) {
+      // The old archive or the new one needs features ZipWriter lacks,
+      // so recompress everything instead.
+      writeRecompressing(tmpFile, copyOld);
+    }
+
+    // Replace old archive with temp archive.
+    if (!tmpFile.renameTo(archiveFile)) {
+      try {
+        FileUtils.forceDelete(archiveFile);
+        FileUtils.moveFile(tmpFile, archiveFile);
+      }
+      catch (IOException e) {
+        String err =
+          "Unable to overwrite " + archiveFile.getAbsolutePath() + ": ";
+
+        if (!archiveFile.exists()) {
+          err += " file does not exist.";
+        }
+        else if (!archiveFile.canWrite()) {
+          err += " file is not writable.";
+        }
+        else if (!archiveFile.isFile()) {
+          err += " not a normal file.";
+        }
+
+        err += " Data written to " + tmpFile.getAbsolutePath() + " instead.";
+        throw (IOException) new IOException(err).initCause(e);
+      }
+    }
+
+    closed = true;
+    modified = false;
+    entries.clear();
+  }
+
+  /**
+   * Writes the archive, copying unmodified entries from the old archive
+   * as they are stored, without recompressing them.
+   *
+   * @throws ZipException if the old archive cannot be read this way, or
+   * the new archive cannot be written this way
+   */
+  private void writeCopying(File tmpFile, boolean copyOld)
+                                                          throws IOException {
+    final Set<String> copied = new HashSet<String>();
+    final Map<String,Future<ZipWriter.Deflated>> deflated =
+      new HashMap<String,Future<ZipWriter.Deflated>>();
+
+    // new or modified files to compress, in the order they are written
+    final LinkedList<String> pending = new LinkedList<String>();
+    for (String name : entries.keySet()) {
+      final Entry e = entries.get(name);
+      if (e.file != null && e.ze.getMethod() != ZipEntry.STORED) {
+        pending.add(name);
+      }
+    }
+
+    ZipCentralDirectory old = null;
+    ZipWriter out = null;
+    try {
+      // start compressing new or modified files, so that they are
+      // compressed while the unmodified files are copied
+      startDeflating(pending, deflated);
+
+      out = new ZipWriter(
+              new BufferedOutputStream(
+                new FileOutputStream(tmpFile)));
+
+      if (copyOld) {
+        // copy unmodified files into the temp archive
+        old = new ZipCentralDirectory(archiveFile);
+        for (ZipCentralDirectory.Entry ce : old.getEntries()) {
+          // skip modified or removed entries
+          final Entry e = entries.get(ce.name);
+          if (e == null || e.file != null || !copied.add(ce.name)) continue;
+
+          out.copy(old, ce);
+        }
+
+        old.close();
+      }
+
+      for (String name : entries.keySet()) {
+        if (copied.contains(name)) continue;
+
+        final Entry e = entries.get(name);
+        if (e.file == null) {
+          throw new ZipException(name + " not found in " + archiveFile);
+        }
+
+        // write new or modified file into the temp archive
+        final Future<ZipWriter.Deflated> f = deflated.remove(name);
+        if (f != null) {
+          // keep the deflaters busy with the files written next
+          startDeflating(pending, deflated);
+
+          final ZipWriter.Deflated d = getDeflated(f);
+          try {
+            out.write(e.ze, d);
+          }
+          finally {
+            d.dispose();
+          }
+        }
+        else {
+          FileInputStream in = null;
+          try {
+            in = new FileInputStream(e.file);
+            out.write(e.ze, in);
+            in.close();
+          }
+          finally {
+            IOUtils.closeQuietly(in);
+          }
+        }
+      }
+
+      out.close();
+    }
+    finally {
+      IOUtils.closeQuietly(old);
+      IOUtils.closeQuietly(out);
+
+      // discard the results of any compression not written
+      for (Future<ZipWriter.Deflated> f : deflated.values()) {
+        f.cancel(false);
+        try {
+          getDeflated(f).dispose();
+        }
+        catch (Exception ex) {
+          // cancelled or failed, so nothing to discard
+        }
+      }
+    }
+  }
+
+  /**
+   * Starts compressing pending files, until as many are compressing or
+   * compressed but not yet written as there are deflaters. This bounds
+   * the compressed data held in memory or temporary files.
+   *
+   * @param pending the files still to be compressed, in order
+   * @param deflated the files being compressed or compressed
+   */
+  private void startDeflating(LinkedList<String> pending,
+                              Map<String,Future<ZipWriter.Deflated>> deflated)
+  {
+    final int window = parallel ? getDeflaterCount() : 1;
+    while (deflated.size() < window && !pending.isEmpty()) {
+      final String name = pending.removeFirst();
+      final File file = entries.get(name).file;
+      final int level = getCompressionLevel(name);
+      final FutureTask<ZipWriter.Deflated> task =
+        new FutureTask<ZipWriter.Deflated>(
+          new Callable<ZipWriter.Deflated>() {
+            public ZipWriter.Deflated call() throws IOException {
+              return ZipWriter.deflate(file, level);
+            }
+          }
+        );
+
+      if (parallel) {
+        getDeflaters().execute(task);
+      }
+      else {
+        task.run();
+      }
+      deflated.put(name, task);
+    }
+  }
+
+  private static ZipWriter.Deflated getDeflated(Future<ZipWriter.Deflated> f)
+                                                          throws IOException {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return f.get();
+        }
+        catch (InterruptedException e) {
+          interrupted = true;
+        }
+        catch (ExecutionException e) {
+          final Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          }
+          else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          }
+          else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw (IOException) new IOException().initCause(cause);
+        }
+      }
+    }
+    finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Writes the archive, decompressing and recompressing the unmodified
+   * entries of the old archive.
+   */
+  private void writeRecompressing(File tmpFile, boolean copyOld)
+                                                          throws IOException {
     ZipOutputStream out = null;
     try {
       out = new ZipOutputStream(
@@ -419,10 +757,7 @@ public class ZipArchive implements FileArchive {
 
       final byte[] buf = new byte[8192];
 
-      if (zipFile != null) {
-        zipFile.close();
-        zipFile = null;
-
+      if (copyOld) {
         // copy unmodified file into the temp archive
         ZipInputStream in = null;
         try {
@@ -463,6 +798,7 @@ public class ZipArchive implements FileArchive {
         FileInputStream in = null;
         try {
           in = new FileInputStream(e.file);
+          out.setLevel(getCompressionLevel(name));
           out.putNextEntry(e.ze);
           IOUtils.copy(in, out, buf);
           in.close();
@@ -477,35 +813,6 @@ public class ZipArchive implements FileArchive {
     finally {
       IOUtils.closeQuietly(out);
     }
-
-    // Replace old archive with temp archive.
-    if (!tmpFile.renameTo(archiveFile)) {
-      try {
-        FileUtils.forceDelete(archiveFile);
-        FileUtils.moveFile(tmpFile, archiveFile);
-      }
-      catch (IOException e) {
-        String err =
-          "Unable to overwrite " + archiveFile.getAbsolutePath() + ": ";
-
-        if (!archiveFile.exists()) {
-          err += " file does not exist.";
-        }
-        else if (!archiveFile.canWrite()) {
-          err += " file is not writable.";
-        }
-        else if (!archiveFile.isFile()) {
-          err += " not a normal file.";
-        }
-
-        err += " Data written to " + tmpFile.getAbsolutePath() + " instead.";
-        throw (IOException) new IOException(err).initCause(e);
-      }
-    }
-
-    closed = true;
-    modified = false;
-    entries.clear();
   }
 
   /** {@inheritDoc} */
@@ -556,6 +863,29 @@ public class ZipArchive implements FileArchive {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * The checksum is known for files which have not been modified since
+   * the archive was last written.
+   */
+  public long getCrc(String path) throws IOException {
+    r.lock();
+    try {
+      openIfClosed();
+
+      final Entry e = entries.get(path);
+      if (e == null) {
+        throw new FileNotFoundException(path + " not in archive");
+      }
+
+      return e.file == null ? e.ze.getCrc() : -1;
+    }
+    finally {
+      r.unlock();
+    }
+  }
+
   /** {@inheritDoc} */
   public List<String> getFiles() throws IOException {
     r.lock();
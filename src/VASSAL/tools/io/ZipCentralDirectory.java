@@ -0,0 +1,247 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipException;
+
+/**
+ * The entries of a ZIP archive as they are stored, so that they can be
+ * copied into another archive without being decompressed.
+ *
+ * <p>Only archives which {@link java.util.zip.ZipFile} also reads are
+ * accepted: single-disk archives without ZIP64 records, with the central
+ * directory at the end. A {@link ZipException} is thrown for any
+ * other.</p>
+ *
+ * @since 3.2.3
+ */
+public class ZipCentralDirectory implements Closeable {
+  static final int LOCAL_SIG = 0x04034b50;
+  static final int CENTRAL_SIG = 0x02014b50;
+  static final int END_SIG = 0x06054b50;
+
+  static final int LOCAL_HEADER_SIZE = 30;
+  static final int CENTRAL_HEADER_SIZE = 46;
+  static final int END_SIZE = 22;
+
+  static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /** An entry of the archive. */
+  public static class Entry {
+    /** the name of the entry */
+    public final String name;
+
+    /** the central directory record, with its name, extra and comment */
+    final byte[] central;
+
+    Entry(String name, byte[] central) {
+      this.name = name;
+      this.central = central;
+    }
+
+    int getFlags() {
+      return getShort(central, 8);
+    }
+
+    int getMethod() {
+      return getShort(central, 10);
+    }
+
+    long getCompressedSize() {
+      return getInt(central, 20);
+    }
+
+    long getLocalHeaderOffset() {
+      return getInt(central, 42);
+    }
+
+    int getNameLength() {
+      return getShort(central, 28);
+    }
+  }
+
+  private final RandomAccessFile file;
+  private final List<Entry> entries = new ArrayList<Entry>();
+
+  /**
+   * Reads the central directory of an archive.
+   *
+   * @param f the archive
+   * @throws ZipException if the archive is not of a kind accepted
+   * @throws IOException if the archive cannot be read
+   */
+  public ZipCentralDirectory(File f) throws IOException {
+    file = new RandomAccessFile(f, "r");
+    try {
+      read();
+    }
+    catch (IOException e) {
+      IOUtils.closeQuietly(file);
+      throw e;
+    }
+  }
+
+  private void read() throws IOException {
+    // find the end of central directory record, which precedes a comment
+    // of up to 64k
+    final long len = file.length();
+    final int tail = (int) Math.min(len, END_SIZE + 0xFFFF);
+    final byte[] buf = new byte[tail];
+    file.seek(len - tail);
+    file.readFully(buf);
+
+    int end = -1;
+    for (int i = tail - END_SIZE; i >= 0; --i) {
+      if (getInt(buf, i) == END_SIG &&
+          i + END_SIZE + getShort(buf, i + 20) == tail) {
+        end = i;
+        break;
+      }
+    }
+    if (end < 0) {
+      throw new ZipException("No end of central directory");
+    }
+
+    final int disk = getShort(buf, end + 4);
+    final int cdDisk = getShort(buf, end + 6);
+    final int count = getShort(buf, end + 10);
+    final long cdSize = getInt(buf, end + 12);
+    final long cdOffset = getInt(buf, end + 16);
+
+    if (disk != 0 || cdDisk != 0 || count != getShort(buf, end + 8)) {
+      throw new ZipException("Multi-disk archive");
+    }
+    if (count == 0xFFFF || cdSize == 0xFFFFFFFFL || cdOffset == 0xFFFFFFFFL) {
+      throw new ZipException("ZIP64 archive");
+    }
+    if (cdOffset + cdSize != len - tail + end) {
+      throw new ZipException("Central directory not at end of archive");
+    }
+
+    final byte[] cd = new byte[(int) cdSize];
+    file.seek(cdOffset);
+    file.readFully(cd);
+
+    int pos = 0;
+    for (int i = 0; i < count; ++i) {
+      if (pos + CENTRAL_HEADER_SIZE > cd.length ||
+          getInt(cd, pos) != CENTRAL_SIG) {
+        throw new ZipException("Bad central directory record");
+      }
+
+      final int nlen = getShort(cd, pos + 28);
+      final int size = CENTRAL_HEADER_SIZE + nlen +
+                       getShort(cd, pos + 30) + getShort(cd, pos + 32);
+      if (pos + size > cd.length) {
+        throw new ZipException("Bad central directory record");
+      }
+
+      final byte[] central = new byte[size];
+      System.arraycopy(cd, pos, central, 0, size);
+
+      final String name = UTF8.decode(
+        ByteBuffer.wrap(cd, pos + CENTRAL_HEADER_SIZE, nlen)).toString();
+
+      final Entry e = new Entry(name, central);
+      if (e.getCompressedSize() == 0xFFFFFFFFL ||
+          e.getLocalHeaderOffset() == 0xFFFFFFFFL) {
+        throw new ZipException("ZIP64 entry");
+      }
+
+      entries.add(e);
+      pos += size;
+    }
+  }
+
+  /**
+   * @return the entries, in the order in which they are stored
+   */
+  public List<Entry> getEntries() {
+    return entries;
+  }
+
+  /**
+   * Reads the local header of an entry.
+   *
+   * @return the extra field of the local header
+   */
+  byte[] readLocalExtra(Entry e) throws IOException {
+    final byte[] h = new byte[LOCAL_HEADER_SIZE];
+    file.seek(e.getLocalHeaderOffset());
+    file.readFully(h);
+    if (getInt(h, 0) != LOCAL_SIG) {
+      throw new ZipException("Bad local header for " + e.name);
+    }
+
+    final byte[] extra = new byte[getShort(h, 28)];
+    file.seek(e.getLocalHeaderOffset() + LOCAL_HEADER_SIZE + getShort(h, 26));
+    file.readFully(extra);
+    return extra;
+  }
+
+  /**
+   * Copies the stored data of an entry, which must follow a call to
+   * {@link #readLocalExtra} for that entry.
+   */
+  void copyData(Entry e, OutputStream out, byte[] buf) throws IOException {
+    long remaining = e.getCompressedSize();
+    while (remaining > 0) {
+      final int n = file.read(buf, 0, (int) Math.min(buf.length, remaining));
+      if (n < 0) {
+        throw new EOFException("Truncated data for " + e.name);
+      }
+      out.write(buf, 0, n);
+      remaining -= n;
+    }
+  }
+
+  /** {@inheritDoc} */
+  public void close() throws IOException {
+    file.close();
+  }
+
+  static int getShort(byte[] b, int off) {
+    return (b[off] & 0xFF) | (b[off+1] & 0xFF) << 8;
+  }
+
+  static long getInt(byte[] b, int off) {
+    return (getShort(b, off) | (long) getShort(b, off+2) << 16) & 0xFFFFFFFFL;
+  }
+
+  static void putShort(byte[] b, int off, int v) {
+    b[off]   = (byte) v;
+    b[off+1] = (byte) (v >>> 8);
+  }
+
+  static void putInt(byte[] b, int off, long v) {
+    putShort(b, off, (int) v);
+    putShort(b, off+2, (int) (v >>> 16));
+  }
+}
@@ -0,0 +1,400 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.io;
+
+import static VASSAL.tools.io.ZipCentralDirectory.*;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Calendar;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import org.apache.commons.io.output.CountingOutputStream;
+
+/**
+ * Writes a ZIP archive which may include entries copied from another
+ * archive as they are stored, without decompressing and recompressing
+ * them.
+ *
+ * <p>Like {@link java.util.zip.ZipOutputStream} without ZIP64 support,
+ * this writes at most 65535 entries and 4GB. A {@link ZipException} is
+ * thrown by {@link #close} for a larger archive.</p>
+ *
+ * @since 3.2.3
+ */
+public class ZipWriter implements Closeable {
+  private static final int FLAG_DESCRIPTOR = 0x0008;
+  private static final int FLAG_UTF8 = 0x0800;
+  private static final int DESCRIPTOR_SIG = 0x08074b50;
+
+  private final CountingOutputStream out;
+  private final ByteArrayOutputStream central = new ByteArrayOutputStream();
+  private final byte[] buf = new byte[8192];
+  private int count = 0;
+  private int level = Deflater.DEFAULT_COMPRESSION;
+  private boolean closed = false;
+
+  /**
+   * @param out the stream to which to write the archive
+   */
+  public ZipWriter(OutputStream out) {
+    this.out = new CountingOutputStream(out);
+  }
+
+  /**
+   * Sets the compression level for entries written after this call.
+   *
+   * @param level the compression level, from 0 to 9
+   */
+  public void setLevel(int level) {
+    this.level = level;
+  }
+
+  /**
+   * Copies an entry from another archive as it is stored.
+   *
+   * @param src the other archive
+   * @param e the entry to copy
+   * @throws IOException
+   */
+  public void copy(ZipCentralDirectory src, ZipCentralDirectory.Entry e)
+                                                          throws IOException {
+    final long offset = out.getByteCount();
+    final byte[] extra = src.readLocalExtra(e);
+    final byte[] c = e.central.clone();
+
+    // the sizes are known, so the copy needs no data descriptor
+    putShort(c, 8, e.getFlags() & ~FLAG_DESCRIPTOR);
+    putInt(c, 42, offset);
+
+    final int nlen = e.getNameLength();
+    final byte[] h = new byte[LOCAL_HEADER_SIZE];
+    putInt(h, 0, LOCAL_SIG);
+    System.arraycopy(c, 6, h, 4, 22);
+    putShort(h, 26, nlen);
+    putShort(h, 28, extra.length);
+
+    out.write(h);
+    out.write(c, CENTRAL_HEADER_SIZE, nlen);
+    out.write(extra);
+    src.copyData(e, out, buf);
+
+    central.write(c);
+    ++count;
+  }
+
+  /**
+   * The compressed contents of an entry, which may be prepared on any
+   * thread by {@link #deflate} and then written by {@link #write(ZipEntry,
+   * Deflated)}.
+   */
+  public static class Deflated {
+    final long crc;
+    final long size;
+    final long csize;
+    final byte[] data;
+    final File file;
+
+    Deflated(long crc, long size, long csize, byte[] data, File file) {
+      this.crc = crc;
+      this.size = size;
+      this.csize = csize;
+      this.data = data;
+      this.file = file;
+    }
+
+    /**
+     * Releases the temporary file, if any, holding the compressed data.
+     */
+    public void dispose() {
+      if (file != null) {
+        file.delete();
+      }
+    }
+  }
+
+  /** Larger contents are compressed into a temporary file. */
+  private static final long MAX_IN_MEMORY = 1024 * 1024;
+
+  /**
+   * Compresses the contents of an entry.
+   *
+   * @param src the contents
+   * @param level the compression level, from 0 to 9
+   * @return the compressed contents
+   * @throws IOException
+   */
+  public static Deflated deflate(File src, int level) throws IOException {
+    final byte[] buf = new byte[8192];
+    final CRC32 crc = new CRC32();
+    long size = 0;
+
+    final boolean inMemory = src.length() <= MAX_IN_MEMORY;
+    final File dst = inMemory ? null :
+      TempFileManager.getInstance().createTempFile("zip", ".tmp");
+
+    final OutputStream sink = inMemory ?
+      new FastByteArrayOutputStream((int) src.length() / 2 + 64) :
+      new BufferedOutputStream(new FileOutputStream(dst));
+    final CountingOutputStream cout = new CountingOutputStream(sink);
+
+    final Deflater def = new Deflater(level, true);
+    FileInputStream in = null;
+    try {
+      in = new FileInputStream(src);
+      final DeflaterOutputStream dout =
+        new DeflaterOutputStream(cout, def, buf.length);
+
+      int n;
+      while ((n = in.read(buf)) != -1) {
+        crc.update(buf, 0, n);
+        dout.write(buf, 0, n);
+        size += n;
+      }
+      dout.finish();
+      in.close();
+      cout.close();
+    }
+    catch (IOException e) {
+      if (dst != null) {
+        dst.delete();
+      }
+      throw e;
+    }
+    finally {
+      def.end();
+      IOUtils.closeQuietly(in);
+      IOUtils.closeQuietly(cout);
+    }
+
+    return new Deflated(crc.getValue(), size, cout.getByteCount(),
+      inMemory ? ((FastByteArrayOutputStream) sink).toByteArray() : null, dst);
+  }
+
+  /**
+   * Writes a new entry compressed beforehand by {@link #deflate}.
+   *
+   * @param ze the entry, giving its name and time
+   * @param d the compressed contents
+   * @throws IOException
+   */
+  public void write(ZipEntry ze, Deflated d) throws IOException {
+    final long offset = out.getByteCount();
+    final byte[] name = toBytes(ze.getName());
+
+    final byte[] h = localHeader(ze, ZipEntry.DEFLATED, FLAG_UTF8, name);
+    putInt(h, 14, d.crc);
+    putInt(h, 18, d.csize);
+    putInt(h, 22, d.size);
+    out.write(h);
+    out.write(name);
+
+    if (d.data != null) {
+      out.write(d.data, 0, (int) d.csize);
+    }
+    else {
+      FileInputStream in = null;
+      try {
+        in = new FileInputStream(d.file);
+        IOUtils.copy(in, out, buf);
+        in.close();
+      }
+      finally {
+        IOUtils.closeQuietly(in);
+      }
+    }
+
+    addCentral(h, name, d.crc, d.csize, d.size, offset);
+  }
+
+  /**
+   * Writes a new entry.
+   *
+   * @param ze the entry, giving its name, method and time; a
+   * {@link ZipEntry#STORED} entry must also give its size and CRC
+   * @param in the contents of the entry
+   * @throws IOException
+   */
+  public void write(ZipEntry ze, InputStream in) throws IOException {
+    final long offset = out.getByteCount();
+    final boolean deflate = ze.getMethod() != ZipEntry.STORED;
+    final byte[] name = toBytes(ze.getName());
+
+    final byte[] h = deflate ?
+      localHeader(ze, ZipEntry.DEFLATED, FLAG_UTF8 | FLAG_DESCRIPTOR, name) :
+      localHeader(ze, ZipEntry.STORED, FLAG_UTF8, name);
+    if (!deflate) {
+      putInt(h, 14, ze.getCrc());
+      putInt(h, 18, ze.getSize());
+      putInt(h, 22, ze.getSize());
+    }
+
+    out.write(h);
+    out.write(name);
+
+    // copy the data, computing its CRC and size
+    final long start = out.getByteCount();
+    final CRC32 crc = new CRC32();
+    long size = 0;
+
+    Deflater def = null;
+    DeflaterOutputStream dout = null;
+    OutputStream dst = out;
+    if (deflate) {
+      def = new Deflater(level, true);
+      dout = new DeflaterOutputStream(out, def, buf.length);
+      dst = dout;
+    }
+
+    try {
+      int n;
+      while ((n = in.read(buf)) != -1) {
+        crc.update(buf, 0, n);
+        dst.write(buf, 0, n);
+        size += n;
+      }
+      if (dout != null) {
+        dout.finish();
+      }
+    }
+    finally {
+      if (def != null) {
+        def.end();
+      }
+    }
+
+    final long csize = out.getByteCount() - start;
+
+    if (deflate) {
+      final byte[] d = new byte[16];
+      putInt(d, 0, DESCRIPTOR_SIG);
+      putInt(d, 4, crc.getValue());
+      putInt(d, 8, csize);
+      putInt(d, 12, size);
+      out.write(d);
+    }
+    else if (size != ze.getSize() || crc.getValue() != ze.getCrc()) {
+      throw new ZipException("Bad size or CRC for " + ze.getName());
+    }
+
+    addCentral(h, name, crc.getValue(), csize, size, offset);
+  }
+
+  private static byte[] localHeader(ZipEntry ze, int method, int flags,
+                                    byte[] name) {
+    final byte[] h = new byte[LOCAL_HEADER_SIZE];
+    putInt(h, 0, LOCAL_SIG);
+    putShort(h, 4, method == ZipEntry.DEFLATED ? 20 : 10);
+    putShort(h, 6, flags);
+    putShort(h, 8, method);
+    putInt(h, 10, dosTime(ze.getTime() == -1 ?
+      System.currentTimeMillis() : ze.getTime()));
+    putShort(h, 26, name.length);
+    return h;
+  }
+
+  private void addCentral(byte[] h, byte[] name, long crc, long csize,
+                          long size, long offset) throws IOException {
+    final byte[] c = new byte[CENTRAL_HEADER_SIZE];
+    putInt(c, 0, CENTRAL_SIG);
+    putShort(c, 4, 20);
+    System.arraycopy(h, 4, c, 6, 10);
+    putInt(c, 16, crc);
+    putInt(c, 20, csize);
+    putInt(c, 24, size);
+    putShort(c, 28, name.length);
+    putInt(c, 42, offset);
+
+    central.write(c);
+    central.write(name);
+    ++count;
+  }
+
+  /**
+   * Writes the central directory and closes the underlying stream.
+   *
+   * @throws ZipException if the archive is too large
+   * @throws IOException
+   */
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+
+    try {
+      final long offset = out.getByteCount();
+      final long size = central.size();
+      if (count > 0xFFFF || offset + size > 0xFFFFFFFFL) {
+        throw new ZipException("Archive too large");
+      }
+
+      central.writeTo(out);
+
+      final byte[] end = new byte[END_SIZE];
+      putInt(end, 0, END_SIG);
+      putShort(end, 8, count);
+      putShort(end, 10, count);
+      putInt(end, 12, size);
+      putInt(end, 16, offset);
+      out.write(end);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  private static byte[] toBytes(String s) {
+    final ByteBuffer bb = UTF8.encode(s);
+    final byte[] b = new byte[bb.remaining()];
+    bb.get(b);
+    return b;
+  }
+
+  /** Converts a Java time to an MS-DOS date and time. */
+  private static long dosTime(long time) {
+    final Calendar c = Calendar.getInstance();
+    c.setTimeInMillis(time);
+
+    final int year = c.get(Calendar.YEAR);
+    if (year < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+
+    return (long) (year - 1980) << 25 |
+           (c.get(Calendar.MONTH) + 1) << 21 |
+           c.get(Calendar.DAY_OF_MONTH) << 16 |
+           c.get(Calendar.HOUR_OF_DAY) << 11 |
+           c.get(Calendar.MINUTE) << 5 |
+           c.get(Calendar.SECOND) >> 1;
+  }
+}
@@ -37,6 +37,8 @@ public class IPCMessenger {
 
   protected final MultiEventListenerSupport lsup;
 
+  protected volatile Thread receiver = null;
+
   public IPCMessenger(InputStream in, OutputStream out,
                       MultiEventListenerSupport lsup) throws IOException {
     if (in == null) throw new IllegalArgumentException("in == null");
@@ -84,7 +86,8 @@ public class IPCMessenger {
 
   public void start() throws IOException {
     final IPCMessageReceiver mr = new IPCMessageReceiver(in, lsup);
-    new Thread(mr, "IPC receiver for " + hashCode()).start();
+    receiver = new Thread(mr, "IPC receiver for " + hashCode());
+    receiver.start();
 
     final IPCMessageDispatcher md = new IPCMessageDispatcher(outqueue, out);
     new Thread(md, "IPC dispatcher for " + hashCode()).start();
@@ -107,6 +110,18 @@ public class IPCMessenger {
     }
   }
 
+  /**
+   * Checks whether messages are still being received. Reception ends when
+   * the other side finishes or the connection is lost.
+   *
+   * @return <code>true</code> if this messenger has been started and is
+   * still receiving messages
+   * @since 3.2.3
+   */
+  public boolean isReceiving() {
+    return receiver != null && receiver.isAlive();
+  }
+
   public Future<IPCMessage> send(IPCMessage msg) throws IOException {
     if (msg == null) throw new IllegalArgumentException("msg == null");
 
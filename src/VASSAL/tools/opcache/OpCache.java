@@ -19,7 +19,10 @@
 
 package VASSAL.tools.opcache;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CancellationException;
@@ -27,18 +30,23 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jdesktop.swingworker.SwingWorker;
 
 import VASSAL.tools.ErrorDialog;
-import VASSAL.tools.concurrent.ConcurrentSoftHashMap;
+import VASSAL.tools.concurrent.ConcurrentWeightedLRUMap;
+import VASSAL.tools.concurrent.DaemonThreadFactory;
 
 /**
- * A memory-sensitive cache for {@link Op}s and their results.
+ * A memory-limited cache for {@link Op}s and their results. Results are
+ * held up to a budget, weighed by the memory taken by their pixels, and
+ * the least recently used are evicted when the budget is exceeded.
  *
  * @since 3.1.0
  * @author Joel Uckelman
@@ -96,8 +104,77 @@ public class OpCache {
     }
   }
 
-  protected final ConcurrentMap<Key<?>,Future<?>> cache =
-    new ConcurrentSoftHashMap<Key<?>,Future<?>>();
+  /**
+   * The weight given to a result which is not an image, or which failed,
+   * as an estimate of the memory taken by its key and <code>Future</code>.
+   */
+  private static final long OVERHEAD = 256;
+
+  /**
+   * Weighs results by the memory taken by their pixels. Results which are
+   * not done yet weigh nothing, and are weighed again when done.
+   */
+  private static final ConcurrentWeightedLRUMap.Weigher<Future<?>> weigher =
+    new ConcurrentWeightedLRUMap.Weigher<Future<?>>() {
+      public long weigh(Future<?> fut) {
+        if (!fut.isDone() || fut.isCancelled()) return 0;
+
+        try {
+          final Object val = fut.get();
+          if (val instanceof BufferedImage) {
+            final DataBuffer db =
+              ((BufferedImage) val).getRaster().getDataBuffer();
+            return OVERHEAD + (long) db.getSize() * db.getNumBanks() *
+                   DataBuffer.getDataTypeSize(db.getDataType()) / 8;
+          }
+        }
+        catch (InterruptedException e) {
+          // can't happen, since the request is done
+        }
+        catch (ExecutionException e) {
+          // the request failed
+        }
+
+        return OVERHEAD;
+      }
+    };
+
+  private final ConcurrentWeightedLRUMap<Key<?>,Future<?>> lru;
+
+  protected final ConcurrentMap<Key<?>,Future<?>> cache;
+
+  /**
+   * Creates a cache holding results up to the default budget, which is a
+   * quarter of the maximum heap.
+   */
+  public OpCache() {
+    this(Runtime.getRuntime().maxMemory()/4);
+  }
+
+  /**
+   * Creates a cache holding results up to the given budget. When the
+   * budget is exceeded, the least recently used results are evicted.
+   *
+   * @param budget the memory, in bytes, which cached results may take
+   * @since 3.2.3
+   */
+  public OpCache(long budget) {
+    this(budget, THREADS);
+  }
+
+  /**
+   * Creates a cache holding results up to the given budget, which runs
+   * requests on the given number of threads.
+   *
+   * @param budget the memory, in bytes, which cached results may take
+   * @param threads the number of threads on which to run requests
+   */
+  OpCache(long budget, int threads) {
+    cache = lru =
+      new ConcurrentWeightedLRUMap<Key<?>,Future<?>>(budget, weigher);
+    threadPool =
+      new Ex(threads, threads, 60, TimeUnit.SECONDS, requestQueue);
+  }
 
   /**
    * A request for execution of an {@link Op} which will be completed
@@ -175,42 +252,72 @@ public class OpCache {
   };
 
   /**
-   * A request for execution of an {@link Op}, to be queued.
+   * A request for execution of an {@link Op}, to be queued. Everyone who
+   * makes the request with an observer before it is done is notified.
    */
   private class Request<V> extends SwingWorker<V,Void> {
     private final Key<V> key;
-    private final OpObserver<V> obs;
+    // guarded by this
+    private final List<OpObserver<V>> observers =
+      new ArrayList<OpObserver<V>>(1);
+    private boolean notified = false;
+
+    /** When this request was last made, for ordering the queue. */
+    private volatile long wanted = sequence.getAndIncrement();
+
+    /** Whether this request is only a guess that the result will be wanted. */
+    private volatile boolean prefetch;
 
     public Request(Key<V> key, OpObserver<V> obs) {
       if (key == null) throw new IllegalArgumentException();
-      if (obs == null) throw new IllegalArgumentException();
 
       this.key = key;
-      this.obs = obs;
+      if (obs != null) observers.add(obs);
+    }
+
+    /**
+     * Adds an observer to be notified when the request is done.
+     *
+     * @param obs the observer
+     * @return <code>false</code> if the observers have been notified
+     * already, in which case the request is done
+     */
+    public synchronized boolean addObserver(OpObserver<V> obs) {
+      if (notified) return false;
+      if (!observers.contains(obs)) observers.add(obs);
+      return true;
+    }
+
+    private synchronized List<OpObserver<V>> takeObservers() {
+      notified = true;
+      return observers;
     }
 
     @Override
     protected V doInBackground() throws Exception {
+      started.incrementAndGet();
       return key.op.eval();
     }
 
     @Override
     protected void done() {
+      final List<OpObserver<V>> obs = takeObservers();
       try {
         final V val = get();
-        if (obs != null) obs.succeeded(key.op, val);
+        lru.reweigh(key);
+        for (OpObserver<V> o : obs) o.succeeded(key.op, val);
       }
       catch (CancellationException e) {
         cache.remove(key, this);
-        if (obs != null) obs.cancelled(key.op, e);
+        for (OpObserver<V> o : obs) o.cancelled(key.op, e);
       }
       catch (InterruptedException e) {
         cache.remove(key, this);
-        if (obs != null) obs.interrupted(key.op, e);
+        for (OpObserver<V> o : obs) o.interrupted(key.op, e);
       }
       catch (ExecutionException e) {
         cache.replace(key, this, failure);
-        if (obs != null) obs.failed(key.op, e);
+        for (OpObserver<V> o : obs) o.failed(key.op, e);
       }
     }
   }
@@ -323,6 +430,8 @@ public class OpCache {
             res.set(val);
           }
 
+          lru.reweigh(key);
+
           fut = res;
         }
       }
@@ -330,33 +439,128 @@ public class OpCache {
         final Request<V> req = new Request<V>(key, obs);
         fut = (Future<V>) cache.putIfAbsent(key, req);
         if (fut == null) {
-          threadPool.submit(req);
+          submit(req);
           fut = req;
         }
       }
     }
-    else {
-      // Are we a synchronous request in the queue being re-requested?
-      if (obs == null && fut instanceof Runnable) {
-        if (requestQueue.remove(fut)) {
+    else if (fut instanceof Request) {
+      // A request made by someone else, perhaps a prefetch, notifies us
+      // too. If it has notified already, it is done.
+      if (obs != null) ((Request<V>) fut).addObserver(obs);
+
+      // Are we a request in the queue being re-requested?
+      if (requestQueue.remove(fut)) {
+        if (obs == null) {
           // Then run on this thread to prevent deadlock.
           ((Runnable) fut).run();
         }
+        else {
+          // Then move it to the front of the queue.
+          final Request<?> req = (Request<?>) fut;
+          req.wanted = sequence.getAndIncrement();
+          req.prefetch = false;
+          requestQueue.offer(req);
+        }
+      }
+    }
+
+    return fut;
+  }
+
+  /**
+   * Requests a value which is not wanted yet, but probably soon will be.
+   * The request is run after all requests made by {@link #getFuture},
+   * unless it is made again by {@link #getFuture}, in which case it is
+   * queued as though it had been made that way, and the observer given
+   * then is notified when it is done.
+   *
+   * @param key the <code>Key</code> for which to retrieve a
+   *    <code>Future</code>
+   * @return the <code>Future</code> associated with <code>key</code>
+   * @since 3.2.3
+   */
+  @SuppressWarnings("unchecked")
+  public <V> Future<V> prefetch(Key<V> key) {
+    Future<V> fut = (Future<V>) cache.get(key);
+    if (fut == null) {
+      final Request<V> req = new Request<V>(key, null);
+      req.prefetch = true;
+
+      fut = (Future<V>) cache.putIfAbsent(key, req);
+      if (fut == null) {
+        submit(req);
+        prefetched.incrementAndGet();
+        fut = req;
       }
     }
 
     return fut;
   }
 
-/////
-// FIXME: finalize this...
+  private void submit(Request<?> req) {
+    threadPool.submit(req);
+
+    submitted.incrementAndGet();
+    final int depth = requestQueue.size();
+    for (int max; depth > (max = maxQueueDepth.get()); ) {
+      if (maxQueueDepth.compareAndSet(max, depth)) break;
+    }
+  }
+
+  /**
+   * Cancels a request made by {@link #getFuture}, if it has not started.
+   * A request which is running is left to complete, since its result will
+   * be cached.
+   *
+   * @param fut the <code>Future</code> for the request
+   * @return <code>true</code> if the request was cancelled
+   */
+  public boolean cancel(Future<?> fut) {
+    if (requestQueue.remove(fut)) {
+      // remove it now, so that a new request for the key is not given it
+      cache.remove(((Request<?>) fut).key, fut);
+      fut.cancel(false);
+      cancelled.incrementAndGet();
+      return true;
+    }
+
+    if (fut instanceof Request && !fut.isDone()) {
+      // the request is running, but no longer wanted
+      unwanted.incrementAndGet();
+    }
+
+    return false;
+  }
+
+  /**
+   * Orders queued requests so that the one most recently made is run
+   * first. Prefetch requests are run after all others.
+   */
+  private static final Comparator<Runnable> mostRecentlyWanted =
+                                                   new Comparator<Runnable>() {
+    public int compare(Runnable a, Runnable b) {
+      final Request<?> ra = (Request<?>) a;
+      final Request<?> rb = (Request<?>) b;
+
+      if (ra.prefetch != rb.prefetch) {
+        return ra.prefetch ? 1 : -1;
+      }
+      return ra.wanted > rb.wanted ? -1 : (ra.wanted == rb.wanted ? 0 : 1);
+    }
+  };
+
+  // counts requests as they are made, so that no two are made at once
+  private final AtomicLong sequence = new AtomicLong();
+
   private final BlockingQueue<Runnable> requestQueue =
-    new LinkedBlockingQueue<Runnable>();
+    new PriorityBlockingQueue<Runnable>(64, mostRecentlyWanted);
 
   private static class Ex extends ThreadPoolExecutor {
     public Ex(int corePoolSize, int maximumPoolSize, long keepAliveTime,
               TimeUnit unit, BlockingQueue<Runnable> workQueue) {
-      super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
+      super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue,
+            new DaemonThreadFactory(OpCache.class.getSimpleName()));
     }
 
     public <V> Future<V> submit(SwingWorker<V,?> req) {
@@ -365,9 +569,131 @@ public class OpCache {
     }
   }
 
-  private final Ex threadPool =
-    new Ex(2, 2, 60, TimeUnit.SECONDS, requestQueue);
-/////
+  /**
+   * The number of threads on which a cache runs requests, unless given
+   * another number. Ops are mostly bound by the processor, so this is one
+   * thread per core.
+   *
+   * @since 3.2.3
+   */
+  public static final int THREADS =
+    Math.max(2, Runtime.getRuntime().availableProcessors());
+
+  private final Ex threadPool;
+
+  // statistics
+  private final AtomicLong submitted = new AtomicLong();
+  private final AtomicLong prefetched = new AtomicLong();
+  private final AtomicLong started = new AtomicLong();
+  private final AtomicLong cancelled = new AtomicLong();
+  private final AtomicLong unwanted = new AtomicLong();
+  private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+  /**
+   * @return the number of requests waiting to run
+   */
+  public int getQueueDepth() {
+    return requestQueue.size();
+  }
+
+  /**
+   * @return the greatest number of requests which have waited to run
+   */
+  public int getMaxQueueDepth() {
+    return maxQueueDepth.get();
+  }
+
+  /**
+   * @return the number of asynchronous requests made
+   */
+  public long getSubmittedCount() {
+    return submitted.get();
+  }
+
+  /**
+   * @return the number of asynchronous requests made by {@link #prefetch}
+   */
+  public long getPrefetchedCount() {
+    return prefetched.get();
+  }
+
+  /**
+   * @return the number of asynchronous requests which have started to run
+   */
+  public long getStartedCount() {
+    return started.get();
+  }
+
+  /**
+   * @return the number of requests cancelled before they started
+   */
+  public long getCancelledCount() {
+    return cancelled.get();
+  }
+
+  /**
+   * @return the number of requests which were no longer wanted when they
+   * were running, which is wasted work unless their results are requested
+   * again while they remain cached
+   */
+  public long getUnwantedCount() {
+    return unwanted.get();
+  }
+
+  /**
+   * @return the memory, in bytes, which cached results may take
+   */
+  public long getBudget() {
+    return lru.getBudget();
+  }
+
+  /**
+   * Sets the memory which cached results may take. If the cache holds
+   * more, the least recently used results are evicted.
+   *
+   * @param budget the budget, in bytes
+   */
+  public void setBudget(long budget) {
+    lru.setBudget(budget);
+  }
+
+  /**
+   * @return the memory, in bytes, taken by cached results
+   */
+  public long getResidentBytes() {
+    return lru.getWeight();
+  }
+
+  /**
+   * @return the number of lookups which found a result or request
+   */
+  public long getHitCount() {
+    return lru.getHitCount();
+  }
+
+  /**
+   * @return the number of lookups which found nothing
+   */
+  public long getMissCount() {
+    return lru.getMissCount();
+  }
+
+  /**
+   * @return the proportion of lookups which found a result or request,
+   * or <code>0</code> if there have been no lookups
+   */
+  public double getHitRate() {
+    final long hits = lru.getHitCount();
+    final long total = hits + lru.getMissCount();
+    return total == 0 ? 0.0 : (double) hits / total;
+  }
+
+  /**
+   * @return the number of results evicted to stay within the budget
+   */
+  public long getEvictionCount() {
+    return lru.getEvictionCount();
+  }
 
   /**
    * Gets a value from the cache, if it is already calculated.
@@ -392,8 +718,17 @@ public class OpCache {
     return null;
   }
 
+  /**
+   * Cancels all requests which have not started, and empties the cache.
+   */
   public void clear() {
-// FIXME: should cancel all pending requests?
+    final List<Runnable> pending = new ArrayList<Runnable>();
+    requestQueue.drainTo(pending);
+    for (Runnable r : pending) {
+      ((Future<?>) r).cancel(false);
+    }
+    cancelled.addAndGet(pending.size());
+
     cache.clear();
   }
 }
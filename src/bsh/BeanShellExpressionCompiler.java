@@ -0,0 +1,324 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+package bsh;
+
+import java.io.StringReader;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Translate a BeanShell expression into Java source which gives the same
+ * result, so that it can be compiled instead of interpreted.
+ *
+ * Only a common subset of expressions is translated: literals, variables,
+ * parentheses, the unary operators <code>! ~ - +</code>, the binary
+ * operators other than <code>instanceof</code>, the conditional operator
+ * and calls to functions provided by a base class. Operators are applied
+ * by the same code BeanShell uses, so the results are identical. For
+ * anything else, {@link #getSource} returns <code>null</code>.
+ *
+ * The source is the body of a method
+ *
+ * <pre>
+ *   public String evaluate(Object[] v, Object[] k) throws bsh.UtilEvalError
+ * </pre>
+ *
+ * to be compiled in a subclass of the base class. <code>v</code> holds
+ * the values of the variables listed by {@link #getVariables} and
+ * <code>k</code> the values listed by {@link #getConstants}, both in the
+ * form BeanShell uses: {@link Primitive}s or Objects. A function is any
+ * method of the base class taking and returning Objects.
+ *
+ * The generated code throws a {@link UtilEvalError} whenever it meets a
+ * case it does not handle exactly as BeanShell would, including every
+ * error. As expressions have no side effects, the caller can then simply
+ * evaluate the expression with BeanShell instead.
+ *
+ * @since 3.2.3
+ */
+public class BeanShellExpressionCompiler {
+
+  private static final String SELF = BeanShellExpressionCompiler.class.getName();
+
+  protected Class<?> base;
+  protected List<String> variables = new ArrayList<String>();
+  protected List<Object> constants = new ArrayList<Object>();
+  protected StringBuilder source = new StringBuilder();
+  protected int temps = 0;
+  protected boolean valid;
+
+  /**
+   * Translate an expression
+   *
+   * @param expression Expression to translate
+   * @param base Class providing the functions the expression may call
+   */
+  public BeanShellExpressionCompiler(String expression, Class<?> base) {
+    this.base = base;
+
+    try {
+      final Parser p = new Parser(new StringReader(expression + ";"));
+      if (!p.Line()) {
+        final SimpleNode node = p.popNode();
+        if (p.Line()) {
+          final String result = translate(node);
+          if (result != null) {
+            source.append("return ").append(SELF).append(".toResult(")
+                  .append(result).append(");\n");
+            valid = true;
+          }
+        }
+      }
+    }
+    catch (ParseException e) {
+      // Not an error, BeanShell will report it
+    }
+    catch (TokenMgrError e) {
+      // Not an error, BeanShell will report it
+    }
+  }
+
+  /**
+   * Return the translated method body
+   *
+   * @return Java source, or null if the expression could not be translated
+   */
+  public String getSource() {
+    return valid ? source.toString() : null;
+  }
+
+  /**
+   * Return the names of the variables used by the translation
+   *
+   * @return List of variables
+   */
+  public List<String> getVariables() {
+    return variables;
+  }
+
+  /**
+   * Return the literal values used by the translation
+   *
+   * @return List of constants
+   */
+  public List<Object> getConstants() {
+    return constants;
+  }
+
+  /**
+   * Append statements evaluating a node to the source.
+   *
+   * @param node Parser Node
+   * @return the name of the local variable holding the value, or null if
+   * the node cannot be translated
+   */
+  protected String translate(SimpleNode node) {
+    if (node instanceof BSHPrimaryExpression) {
+      return node.jjtGetNumChildren() == 1 ? translate(node.getChild(0)) : null;
+    }
+    else if (node instanceof BSHLiteral) {
+      final Object value = ((BSHLiteral) node).value;
+      if (value == null) {
+        return null;
+      }
+      constants.add(value);
+      return declare("k[" + (constants.size()-1) + "]");
+    }
+    else if (node instanceof BSHAmbiguousName) {
+      final String name = ((BSHAmbiguousName) node).text;
+      if (name.indexOf('.') >= 0) {
+        return null;
+      }
+      int i = variables.indexOf(name);
+      if (i < 0) {
+        variables.add(name);
+        i = variables.size()-1;
+      }
+      return declare("v[" + i + "]");
+    }
+    else if (node instanceof BSHUnaryExpression) {
+      final BSHUnaryExpression u = (BSHUnaryExpression) node;
+      if (u.postfix || u.kind == ParserConstants.INCR ||
+                       u.kind == ParserConstants.DECR) {
+        return null;
+      }
+      final String op = translate(u.getChild(0));
+      return op == null ? null :
+        declare(SELF + ".unary(" + op + ", " + u.kind + ")");
+    }
+    else if (node instanceof BSHBinaryExpression) {
+      final int kind = ((BSHBinaryExpression) node).kind;
+      if (kind == ParserConstants.INSTANCEOF) {
+        return null;
+      }
+
+      final String lhs = translate(node.getChild(0));
+      if (lhs == null) {
+        return null;
+      }
+
+      // the rhs is evaluated only if the lhs does not decide the result
+      final String result =
+        declare(SELF + ".shortCircuit(" + lhs + ", " + kind + ")");
+      source.append("if (").append(result).append(" == null) {\n");
+      final String rhs = translate(node.getChild(1));
+      if (rhs == null) {
+        return null;
+      }
+      source.append(result).append(" = ").append(SELF).append(".binary(")
+            .append(lhs).append(", ").append(rhs).append(", ").append(kind)
+            .append(");\n}\n");
+      return result;
+    }
+    else if (node instanceof BSHTernaryExpression) {
+      final String cond = translate(node.getChild(0));
+      if (cond == null) {
+        return null;
+      }
+
+      final String result = declare("null");
+      source.append("if (").append(SELF).append(".condition(").append(cond)
+            .append(")) {\n");
+      final String a = translate(node.getChild(1));
+      if (a == null) {
+        return null;
+      }
+      source.append(result).append(" = ").append(a).append(";\n}\nelse {\n");
+      final String b = translate(node.getChild(2));
+      if (b == null) {
+        return null;
+      }
+      source.append(result).append(" = ").append(b).append(";\n}\n");
+      return result;
+    }
+    else if (node instanceof BSHMethodInvocation) {
+      final BSHMethodInvocation m = (BSHMethodInvocation) node;
+      final String name = m.getNameNode().text;
+      final BSHArguments args = m.getArgsNode();
+      final int count = args.jjtGetNumChildren();
+      if (!isFunction(name, count)) {
+        return null;
+      }
+
+      final StringBuilder call = new StringBuilder(name).append('(');
+      for (int i = 0; i < count; ++i) {
+        final String arg = translate(args.getChild(i));
+        if (arg == null) {
+          return null;
+        }
+        if (i > 0) {
+          call.append(", ");
+        }
+        call.append(arg);
+      }
+      return declare(call.append(')').toString());
+    }
+    else {
+      return null;
+    }
+  }
+
+  /**
+   * Declare a new local variable
+   *
+   * @param value Java expression giving its initial value
+   * @return the name of the local variable
+   */
+  protected String declare(String value) {
+    final String name = "t" + (temps++);
+    source.append("Object ").append(name).append(" = ").append(value)
+          .append(";\n");
+    return name;
+  }
+
+  /**
+   * Is there a function of the given name and number of arguments?
+   */
+  protected boolean isFunction(String name, int count) {
+    if (name.indexOf('.') >= 0) {
+      return false;
+    }
+
+    for (Method m : base.getDeclaredMethods()) {
+      if (m.getName().equals(name) &&
+          !Modifier.isPrivate(m.getModifiers()) &&
+          m.getReturnType() == Object.class &&
+          m.getParameterTypes().length == count) {
+        boolean objects = true;
+        for (Class<?> c : m.getParameterTypes()) {
+          objects &= c == Object.class;
+        }
+        if (objects) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /*****************************************************************
+   * Operations called from compiled expressions
+   **/
+
+  public static Object shortCircuit(Object lhs, int kind) {
+    return BSHBinaryExpression.shortCircuit(lhs, kind);
+  }
+
+  public static Object binary(Object lhs, Object rhs, int kind)
+                                                       throws UtilEvalError {
+    try {
+      return BSHBinaryExpression.operate(lhs, rhs, kind);
+    }
+    catch (InterpreterError e) {
+      throw new UtilEvalError(e.getMessage());
+    }
+  }
+
+  public static Object unary(Object op, int kind) throws UtilEvalError {
+    // BeanShell treats wrappers and other Objects differently
+    if (!(op instanceof Primitive)) {
+      throw new UtilEvalError("Unary operation on object");
+    }
+
+    try {
+      return Primitive.unaryOperation((Primitive) op, kind);
+    }
+    catch (InterpreterError e) {
+      throw new UtilEvalError(e.getMessage());
+    }
+  }
+
+  public static boolean condition(Object cond) throws UtilEvalError {
+    final Object value =
+      cond instanceof Primitive ? ((Primitive) cond).getValue() : cond;
+    if (value instanceof Boolean) {
+      return ((Boolean) value).booleanValue();
+    }
+    throw new UtilEvalError("Condition must evaluate to a Boolean or boolean.");
+  }
+
+  public static String toResult(Object value) throws UtilEvalError {
+    if (value == null || value == Primitive.NULL || value == Primitive.VOID) {
+      throw new UtilEvalError("Result is null or void");
+    }
+    return value.toString();
+  }
+}
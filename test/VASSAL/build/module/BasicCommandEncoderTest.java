@@ -0,0 +1,182 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.build.module;
+
+import java.lang.reflect.Field;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import VASSAL.build.GameModule;
+import VASSAL.counters.BasicPiece;
+import VASSAL.counters.Decorator;
+import VASSAL.counters.DynamicProperty;
+import VASSAL.counters.GamePiece;
+import VASSAL.counters.Hideable;
+import VASSAL.counters.Immobilized;
+import VASSAL.counters.Labeler;
+import VASSAL.counters.Marker;
+import VASSAL.tools.SequenceEncoder;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class BasicCommandEncoderTest {
+
+  private BasicCommandEncoder encoder;
+  private String type;
+  private String state;
+  private String otherState;
+
+  private Field moduleField;
+  private Object oldModule;
+
+  @Before
+  public void setUp() throws Exception {
+    // pieces look up properties they lack, such as their id, in the module
+    moduleField = GameModule.class.getDeclaredField("theModule");
+    moduleField.setAccessible(true);
+    oldModule = moduleField.get(null);
+    moduleField.set(null, mock(GameModule.class));
+
+    encoder = new BasicCommandEncoder();
+
+    GamePiece p = new BasicPiece(BasicPiece.ID + ";;;Soldier");
+    p = new Marker(Marker.ID + "Side,Rank", p);
+    final DynamicProperty strength =
+      new DynamicProperty(DynamicProperty.ID + "Strength", p);
+    final Labeler label = new Labeler(Labeler.ID, strength);
+    p = new Immobilized(label, Immobilized.ID);
+    p = new Hideable(Hideable.ID, p);
+
+    type = p.getType();
+
+    strength.setValue("5");
+    label.setLabel("Guard");
+    state = p.getState();
+
+    strength.setValue("3");
+    label.setLabel("Reserve");
+    otherState = p.getState();
+
+    assertFalse(state.equals(otherState));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    moduleField.set(null, oldModule);
+  }
+
+  /** Parses a type as createPiece did before there was a type cache. */
+  private GamePiece parse(String t) {
+    final SequenceEncoder.Decoder st = new SequenceEncoder.Decoder(t, '\t');
+    final String outer = st.nextToken();
+    return st.hasMoreTokens() ?
+      encoder.createDecorator(outer, parse(st.nextToken())) :
+      encoder.createBasic(outer);
+  }
+
+  private void assertSameLayers(GamePiece expected, GamePiece actual) {
+    assertEquals(expected.getType(), actual.getType());
+    assertEquals(expected.getState(), actual.getState());
+
+    while (expected instanceof Decorator) {
+      assertEquals(expected.getClass(), actual.getClass());
+      expected = ((Decorator) expected).getInner();
+      actual = ((Decorator) actual).getInner();
+    }
+    assertEquals(expected.getClass(), actual.getClass());
+  }
+
+  @Test
+  public void testCachedTypeMatchesParse() {
+    final GamePiece expected = parse(type);
+    expected.setState(state);
+
+    for (int i = 0; i < 3; ++i) {
+      final GamePiece p = encoder.createPiece(type);
+      p.setState(state);
+      assertEquals(type, p.getType());
+      assertSameLayers(expected, p);
+    }
+
+    assertEquals(1, encoder.getTypeCacheMisses());
+    assertEquals(2, encoder.getTypeCacheHits());
+  }
+
+  @Test
+  public void testCachedTypeSharesNoLayers() {
+    final GamePiece a = encoder.createPiece(type);
+    final GamePiece b = encoder.createPiece(type);
+    assertEquals(1, encoder.getTypeCacheHits());
+
+    a.setState(state);
+    b.setState(otherState);
+    assertEquals(state, a.getState());
+    assertEquals(otherState, b.getState());
+
+    GamePiece x = a;
+    GamePiece y = b;
+    while (x instanceof Decorator) {
+      assertNotSame(x, y);
+      x = ((Decorator) x).getInner();
+      y = ((Decorator) y).getInner();
+    }
+    assertNotSame(x, y);
+  }
+
+  private String basicType(int i) {
+    return BasicPiece.ID + ";;;Piece " + i;
+  }
+
+  @Test
+  public void testEviction() {
+    final int size = BasicCommandEncoder.TYPE_CACHE_SIZE;
+
+    for (int i = 0; i < size; ++i) {
+      encoder.createPiece(basicType(i));
+    }
+    assertEquals(size, encoder.getTypeCacheMisses());
+    assertEquals(0, encoder.getTypeCacheHits());
+
+    // using the eldest type makes the next eldest the one evicted
+    encoder.createPiece(basicType(0));
+    assertEquals(1, encoder.getTypeCacheHits());
+
+    encoder.createPiece(basicType(size));
+    assertEquals(size+1, encoder.getTypeCacheMisses());
+
+    encoder.createPiece(basicType(0));
+    assertEquals(2, encoder.getTypeCacheHits());
+
+    final GamePiece p = encoder.createPiece(basicType(1));
+    assertEquals(size+2, encoder.getTypeCacheMisses());
+    assertEquals(basicType(1), p.getType());
+
+    encoder.createPiece(basicType(size));
+    assertEquals(3, encoder.getTypeCacheHits());
+
+    // the reload of 1 evicted 2
+    encoder.createPiece(basicType(2));
+    assertEquals(size+3, encoder.getTypeCacheMisses());
+    assertEquals(3, encoder.getTypeCacheHits());
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.build.module;
+
+import java.awt.Cursor;
+import java.awt.event.ActionEvent;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.swing.AbstractAction;
+import javax.swing.JFrame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import VASSAL.build.GameModule;
+import VASSAL.command.Command;
+import VASSAL.tools.concurrent.listener.EventListener;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class GameStateTest {
+
+  private static final int LINES = 2000;
+
+  /** Stands in for the pieces on a board. */
+  private static class Board implements GameComponent {
+    final List<Integer> pieces =
+      Collections.synchronizedList(new ArrayList<Integer>());
+    volatile boolean closed = false;
+
+    public void setup(boolean gameStarting) {
+      if (!gameStarting) {
+        pieces.clear();
+        closed = true;
+      }
+    }
+
+    public Command getRestoreCommand() {
+      return null;
+    }
+  }
+
+  private class Place extends Command {
+    private final int n;
+
+    Place(int n) {
+      this.n = n;
+    }
+
+    protected void executeCommand() {
+      board.pieces.add(n);
+    }
+
+    protected Command myUndoCommand() {
+      return null;
+    }
+  }
+
+  private static class TestAction extends AbstractAction {
+    private static final long serialVersionUID = 1L;
+
+    public void actionPerformed(ActionEvent e) {}
+  }
+
+  private Field moduleField;
+  private Object oldModule;
+
+  private GameState gs;
+  private Board board;
+  private final CountDownLatch loaded = new CountDownLatch(1);
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() throws Exception {
+    gs = new GameState();
+    gs.loadGame = new TestAction();
+    gs.saveGame = new TestAction();
+    gs.newGame = new TestAction();
+    gs.closeGame = new TestAction();
+
+    board = new Board();
+    gs.addGameComponent(board);
+
+    // the frame cursor is reset when loading has finished
+    final JFrame frame = mock(JFrame.class);
+    doAnswer(new Answer<Object>() {
+      public Object answer(InvocationOnMock inv) {
+        final Cursor c = (Cursor) inv.getArguments()[0];
+        if (c.getType() == Cursor.DEFAULT_CURSOR) loaded.countDown();
+        return null;
+      }
+    }).when(frame).setCursor(any(Cursor.class));
+
+    // decodes one command per line, as the lines are read
+    final GameModule module = mock(GameModule.class);
+    when(module.getFrame()).thenReturn(frame);
+    when(module.getGameState()).thenReturn(gs);
+    doAnswer(new Answer<Object>() {
+      public Object answer(InvocationOnMock inv) throws Exception {
+        final BufferedReader in =
+          new BufferedReader((Reader) inv.getArguments()[0]);
+        final EventListener<Command> l =
+          (EventListener<Command>) inv.getArguments()[1];
+        for (String s; (s = in.readLine()) != null; ) {
+          l.receive(module, new Place(Integer.parseInt(s.split(" ")[0])));
+        }
+        return null;
+      }
+    }).when(module).decode(any(Reader.class), any(EventListener.class));
+
+    // GameModule is a singleton; swap in the mock for this test only
+    moduleField = GameModule.class.getDeclaredField("theModule");
+    moduleField.setAccessible(true);
+    oldModule = moduleField.get(null);
+    moduleField.set(null, module);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    moduleField.set(null, oldModule);
+  }
+
+  private static byte[] save() throws Exception {
+    final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    final ZipOutputStream out = new ZipOutputStream(bout);
+    out.putNextEntry(new ZipEntry(GameState.SAVEFILE_ZIP_ENTRY));
+
+    // pad the lines with noise so that the entry compresses poorly, and a
+    // broken save is not noticed before the first batch is executed
+    final Random r = new Random(42);
+    for (int i = 0; i < LINES; ++i) {
+      out.write((i + " " + Long.toHexString(r.nextLong()) + "\n")
+        .getBytes("UTF-8"));
+    }
+    out.closeEntry();
+    out.close();
+    return bout.toByteArray();
+  }
+
+  private void load(byte[] bytes) throws Exception {
+    gs.loadGameInBackground("test", new ByteArrayInputStream(bytes));
+    assertTrue(loaded.await(30, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testLoad() throws Exception {
+    load(save());
+
+    assertEquals(LINES, board.pieces.size());
+    assertFalse(board.closed);
+  }
+
+  @Test
+  public void testTruncatedSaveIsRolledBack() throws Exception {
+    // the save breaks off part way through the saved game entry
+    final byte[] b = save();
+    final byte[] half = new byte[b.length / 2];
+    System.arraycopy(b, 0, half, 0, half.length);
+    load(half);
+
+    // some commands were applied before the failure, and undone after it
+    assertTrue(board.closed);
+    assertTrue(board.pieces.isEmpty());
+    assertFalse(gs.isGameStarted());
+  }
+
+  @Test
+  public void testCorruptSaveIsRolledBack() throws Exception {
+    final byte[] b = save();
+    for (int i = b.length / 2; i < b.length; ++i) b[i] = (byte) 0xff;
+    load(b);
+
+    assertTrue(board.closed);
+    assertTrue(board.pieces.isEmpty());
+  }
+}
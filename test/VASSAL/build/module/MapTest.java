@@ -0,0 +1,238 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.build.module;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import VASSAL.build.GameModule;
+import VASSAL.counters.GamePiece;
+import VASSAL.counters.Highlighter;
+import VASSAL.counters.KeyBuffer;
+import VASSAL.counters.Properties;
+import VASSAL.counters.Stack;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class MapTest {
+
+  private static final int SIZE = 600;
+
+  /** How far the highlighting of a selected piece extends beyond it. */
+  private static final int HIGHLIGHT = 40;
+
+  private Map map;
+  private final List<GamePiece> all = new ArrayList<GamePiece>();
+  private final Random random = new Random(42);
+
+  private Field moduleField;
+  private Object oldModule;
+
+  @Before
+  public void setUp() throws Exception {
+    moduleField = GameModule.class.getDeclaredField("theModule");
+    moduleField.setAccessible(true);
+    oldModule = moduleField.get(null);
+    // with no module, the view sets up without preferences
+    moduleField.set(null, null);
+
+    map = new Map();
+
+    // selected pieces are outlined well beyond their bounds
+    map.setHighlighter(new Highlighter() {
+      public void draw(GamePiece p, Graphics g, int x, int y,
+                       Component obs, double zoom) {
+        final Rectangle r = boundingBox(p);
+        g.setColor(Color.RED);
+        g.drawRect(x + r.x, y + r.y, r.width-1, r.height-1);
+      }
+
+      public Rectangle boundingBox(GamePiece p) {
+        final Rectangle r = p.boundingBox();
+        r.grow(HIGHLIGHT, HIGHLIGHT);
+        return r;
+      }
+    });
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    KeyBuffer.getBuffer().clear();
+    moduleField.set(null, oldModule);
+  }
+
+  /** A piece which fills its bounding box with a color of its own. */
+  private GamePiece piece(int x, int y, int w, int h, boolean selected) {
+    final GamePiece p = mock(GamePiece.class);
+    final Rectangle bounds = new Rectangle(-w/2, -h/2, w, h);
+    final Color color = new Color(random.nextInt(0xFFFFFF));
+
+    when(p.getPosition()).thenReturn(new Point(x, y));
+    when(p.boundingBox()).thenAnswer(new Answer<Rectangle>() {
+      public Rectangle answer(InvocationOnMock inv) {
+        return new Rectangle(bounds);
+      }
+    });
+    when(p.getShape()).thenReturn(new Rectangle(bounds));
+    when(p.getMap()).thenReturn(map);
+    when(p.getProperty(Properties.SELECTED))
+      .thenReturn(selected ? Boolean.TRUE : null);
+
+    doAnswer(new Answer<Object>() {
+      public Object answer(InvocationOnMock inv) {
+        final Object[] a = inv.getArguments();
+        final Graphics g = (Graphics) a[0];
+        g.setColor(color);
+        g.fillRect((Integer) a[1] + bounds.x, (Integer) a[2] + bounds.y,
+                   bounds.width, bounds.height);
+        return null;
+      }
+    }).when(p).draw(any(Graphics.class), anyInt(), anyInt(),
+                    any(Component.class), anyDouble());
+
+    if (selected) {
+      KeyBuffer.getBuffer().add(p);
+    }
+    all.add(p);
+    return p;
+  }
+
+  private void addPieces() {
+    // a scattering of pieces, some selected and some off the edges
+    for (int i = 0; i < 60; ++i) {
+      map.addPiece(piece(random.nextInt(SIZE + 100) - 50,
+                         random.nextInt(SIZE + 100) - 50,
+                         10 + random.nextInt(60), 10 + random.nextInt(60),
+                         random.nextInt(6) == 0));
+    }
+
+    // expanded and unexpanded stacks, with selected pieces in them
+    for (int i = 0; i < 8; ++i) {
+      final Stack s = new Stack();
+      for (int j = 0; j < 4; ++j) {
+        s.add(piece(0, 0, 40, 40, j == i % 4));
+      }
+      s.setExpanded(i % 2 == 0);
+      s.setPosition(new Point(random.nextInt(SIZE), random.nextInt(SIZE)));
+      map.addPiece(s);
+    }
+  }
+
+  private BufferedImage draw(Rectangle clip) {
+    final BufferedImage img =
+      new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+    final Graphics2D g = img.createGraphics();
+    g.setColor(Color.WHITE);
+    g.fillRect(0, 0, SIZE, SIZE);
+    g.setClip(clip);
+    map.drawPiecesInRegion(g, new Rectangle(0, 0, SIZE, SIZE), map.getView());
+    g.dispose();
+    return img;
+  }
+
+  private void assertDrawnAlike(BufferedImage expected, Rectangle clip) {
+    final BufferedImage actual = draw(clip);
+    final Rectangle r = clip.intersection(new Rectangle(0, 0, SIZE, SIZE));
+    for (int y = r.y; y < r.y + r.height; ++y) {
+      for (int x = r.x; x < r.x + r.width; ++x) {
+        if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+          fail("pixel " + x + "," + y + " differs in clip " + clip);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testClipDrawsAsUnclipped() {
+    addPieces();
+
+    final BufferedImage expected = draw(null);
+    final int count = map.getLastPiecesDrawn();
+
+    for (int i = 0; i < 200; ++i) {
+      final int w = 1 + random.nextInt(SIZE/3);
+      final int h = 1 + random.nextInt(SIZE/3);
+      assertDrawnAlike(expected, new Rectangle(random.nextInt(SIZE - w),
+                                               random.nextInt(SIZE - h),
+                                               w, h));
+    }
+
+    // the clip is culled to
+    draw(new Rectangle(0, 0, 10, 10));
+    assertTrue(map.getLastPiecesDrawn() < count);
+  }
+
+  @Test
+  public void testClipAtEdges() {
+    final GamePiece plain = piece(200, 200, 40, 40, false);
+    final GamePiece selected = piece(400, 400, 40, 40, true);
+    map.addPiece(plain);
+    map.addPiece(selected);
+
+    final BufferedImage expected = draw(null);
+
+    // a one pixel strip along each edge of the piece and its highlight
+    for (GamePiece p : new GamePiece[] { plain, selected }) {
+      final Point pos = p.getPosition();
+      final Rectangle b = map.getHighlighter().boundingBox(p);
+      b.translate(pos.x, pos.y);
+      for (Rectangle r : new Rectangle[] {
+             new Rectangle(b.x, 0, 1, SIZE),
+             new Rectangle(b.x + b.width - 1, 0, 1, SIZE),
+             new Rectangle(0, b.y, SIZE, 1),
+             new Rectangle(0, b.y + b.height - 1, SIZE, 1),
+             new Rectangle(b.x - 5, b.y - 5, 6, 6),
+             new Rectangle(b.x + b.width - 1, b.y + b.height - 1, 6, 6) }) {
+        assertDrawnAlike(expected, r);
+      }
+    }
+  }
+
+  @Test
+  public void testHighlightMarginFoundOncePerPaint() {
+    addPieces();
+
+    final Map spied = spy(map);
+    final BufferedImage img =
+      new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+    final Graphics2D g = img.createGraphics();
+    g.setClip(10, 10, 100, 100);
+    spied.paintRegion(g, new Rectangle(0, 0, SIZE, SIZE), map.getView());
+    g.dispose();
+
+    verify(spied, times(1)).getHighlightMargin();
+  }
+}
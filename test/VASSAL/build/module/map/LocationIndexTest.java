@@ -0,0 +1,197 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.build.module.map;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import VASSAL.build.module.Map;
+import VASSAL.counters.BasicPiece;
+import VASSAL.counters.GamePiece;
+import VASSAL.counters.Stack;
+import VASSAL.counters.VisualVersion;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class LocationIndexTest {
+
+  private Map map;
+  private final List<GamePiece> pieces = new ArrayList<GamePiece>();
+  private LocationIndex index;
+
+  @Before
+  public void setUp() {
+    // each location is a column 100 wide
+    map = mock(Map.class);
+    when(map.locationName(any(Point.class))).thenAnswer(new Answer<String>() {
+      public String answer(InvocationOnMock inv) {
+        return "L" + ((Point) inv.getArguments()[0]).x / 100;
+      }
+    });
+    when(map.getAllPieces()).thenAnswer(new Answer<GamePiece[]>() {
+      public GamePiece[] answer(InvocationOnMock inv) {
+        return pieces.toArray(new GamePiece[pieces.size()]);
+      }
+    });
+
+    index = new LocationIndex(map);
+  }
+
+  private BasicPiece piece(int x, int strength) {
+    final BasicPiece p = new BasicPiece();
+    p.setPosition(new Point(x, 0));
+    p.setProperty("Strength", String.valueOf(strength));
+    p.setMap(map);
+    return p;
+  }
+
+  /** Adds a piece to the map, as {@link Map#addPiece} does. */
+  private void add(GamePiece p) {
+    pieces.add(p);
+    index.add(p);
+  }
+
+  /** Moves a piece, as {@link Map#pieceMoved} does. */
+  private void move(GamePiece p, int x) {
+    p.setPosition(new Point(x, 0));
+    index.move(p);
+  }
+
+  @Test
+  public void testMoveBetweenLocations() {
+    final BasicPiece a = piece(10, 1);
+    final BasicPiece b = piece(20, 2);
+    final BasicPiece c = piece(110, 4);
+    add(a);
+    add(b);
+    add(c);
+
+    assertEquals(3, index.getTotal("L0", "Strength"));
+    assertEquals(4, index.getTotal("L1", "Strength"));
+    assertEquals(0, index.getTotal("L2", "Strength"));
+
+    move(b, 150);
+    assertEquals(1, index.getTotal("L0", "Strength"));
+    assertEquals(6, index.getTotal("L1", "Strength"));
+    assertArrayEquals(new GamePiece[] { c, b }, index.getPieces("L1"));
+
+    move(a, 250);
+    assertEquals(0, index.getTotal("L0", "Strength"));
+    assertEquals(0, index.getPieces("L0").length);
+    assertEquals(1, index.getTotal("L2", "Strength"));
+
+    // a move within a location changes nothing
+    move(c, 190);
+    assertEquals(6, index.getTotal("L1", "Strength"));
+
+    pieces.remove(c);
+    index.remove(c);
+    assertEquals(2, index.getTotal("L1", "Strength"));
+
+    final BasicPiece d = piece(260, 8);
+    add(d);
+    assertEquals(9, index.getTotal("L2", "Strength"));
+  }
+
+  @Test
+  public void testStacks() {
+    final Stack s = new Stack();
+    s.setPosition(new Point(10, 0));
+    s.add(piece(0, 1));
+    s.add(piece(0, 2));
+    add(s);
+    add(piece(20, 4));
+
+    assertEquals(7, index.getTotal("L0", "Strength"));
+
+    // the contents move with the stack
+    move(s, 110);
+    assertEquals(4, index.getTotal("L0", "Strength"));
+    assertEquals(3, index.getTotal("L1", "Strength"));
+
+    // pieces joining a stack change its total
+    s.add(piece(0, 8));
+    index.changed(s);
+    assertEquals(11, index.getTotal("L1", "Strength"));
+  }
+
+  @Test
+  public void testChangedPiece() {
+    final BasicPiece a = piece(10, 1);
+    final BasicPiece b = piece(20, 2);
+    add(a);
+    add(b);
+    assertEquals(3, index.getTotal("L0", "Strength"));
+
+    // the total is kept until the map reports the change
+    a.setProperty("Strength", "5");
+    assertEquals(3, index.getTotal("L0", "Strength"));
+    index.changed(a);
+    assertEquals(7, index.getTotal("L0", "Strength"));
+
+    // as it is when properties outside of pieces change
+    b.setProperty("Strength", "x");
+    VisualVersion.propertiesChanged();
+    assertEquals(5, index.getTotal("L0", "Strength"));
+  }
+
+  @Test
+  public void testDisabledLayer() {
+    final LayeredPieceCollection.Collection layers =
+      new LayeredPieceCollection.Collection("Layer", new String[] { "A", "B" });
+    when(map.getPieceCollection()).thenReturn(layers);
+
+    final BasicPiece a = piece(10, 1);
+    a.setProperty("Layer", "A");
+    final BasicPiece b = piece(20, 2);
+    b.setProperty("Layer", "B");
+    add(a);
+    add(b);
+    assertEquals(3, index.getTotal("L0", "Strength"));
+
+    layers.setLayerEnabled("B", false);
+    assertEquals(1, index.getTotal("L0", "Strength"));
+    assertArrayEquals(new GamePiece[] { a }, index.getPieces("L0"));
+
+    layers.setLayerEnabled("B", true);
+    assertEquals(3, index.getTotal("L0", "Strength"));
+  }
+
+  @Test
+  public void testRebuild() {
+    add(piece(10, 1));
+    add(piece(110, 2));
+    assertEquals(1, index.getTotal("L0", "Strength"));
+
+    // location names change, as when boards are set
+    doReturn("all").when(map).locationName(any(Point.class));
+    index.invalidate();
+    assertEquals(3, index.getTotal("all", "Strength"));
+    assertEquals(0, index.getTotal("L0", "Strength"));
+  }
+}
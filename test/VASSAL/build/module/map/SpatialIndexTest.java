@@ -0,0 +1,165 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+package VASSAL.build.module.map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+
+import org.junit.Test;
+
+import VASSAL.counters.GamePiece;
+
+public class SpatialIndexTest {
+
+  private GamePiece piece(int x, int y, int size) {
+    final GamePiece p = mock(GamePiece.class);
+    when(p.getPosition()).thenReturn(new Point(x, y));
+    final Rectangle r = new Rectangle(-size/2, -size/2, size, size);
+    when(p.boundingBox()).thenReturn(new Rectangle(r));
+    when(p.getShape()).thenReturn(new Rectangle(r));
+    return p;
+  }
+
+  private GamePiece[] grid() {
+    final GamePiece[] pieces = new GamePiece[100];
+    for (int i = 0; i < 10; ++i) {
+      for (int j = 0; j < 10; ++j) {
+        pieces[10*i + j] = piece(100*i - 500, 100*j - 500, 40);
+      }
+    }
+    return pieces;
+  }
+
+  private SpatialIndex index(GamePiece[] pieces) {
+    final SpatialIndex index = new SpatialIndex();
+    for (int i = 0; i < pieces.length; ++i) {
+      index.add(pieces[i], i);
+    }
+    return index;
+  }
+
+  @Test
+  public void testPoint() {
+    final GamePiece[] pieces = grid();
+    final SpatialIndex index = index(pieces);
+
+    assertArrayEquals(new GamePiece[] { pieces[56] },
+      index.getPieces(new Rectangle(new Point(10, 110))));
+    assertArrayEquals(new GamePiece[] { pieces[0] },
+      index.getPieces(new Rectangle(new Point(-510, -490))));
+    assertEquals(0,
+      index.getPieces(new Rectangle(new Point(5000, 0))).length);
+  }
+
+  @Test
+  public void testArea() {
+    final GamePiece[] pieces = grid();
+    final SpatialIndex index = index(pieces);
+
+    assertArrayEquals(new GamePiece[] { pieces[44], pieces[45], pieces[54], pieces[55] },
+      index.getPieces(new Rectangle(-100, -100, 100, 100)));
+    assertArrayEquals(pieces,
+      index.getPieces(new Rectangle(-10000, -10000, 20000, 20000)));
+  }
+
+  @Test
+  public void testRemove() {
+    final GamePiece[] pieces = grid();
+    final SpatialIndex index = index(pieces);
+
+    index.remove(pieces[56]);
+    assertEquals(0, index.getPieces(new Rectangle(new Point(10, 110))).length);
+    assertEquals(99,
+      index.getPieces(new Rectangle(-10000, -10000, 20000, 20000)).length);
+
+    index.clear();
+    assertEquals(0,
+      index.getPieces(new Rectangle(-10000, -10000, 20000, 20000)).length);
+  }
+
+  @Test
+  public void testMove() {
+    final GamePiece[] pieces = grid();
+    final SpatialIndex index = index(pieces);
+    final Rectangle area = new Rectangle(new Point(1000, 1000));
+
+    assertEquals(0, index.getPieces(area).length);
+
+    // the index is not rebuilt, so it sees only the moves it is told of
+    when(pieces[3].getPosition()).thenReturn(new Point(1000, 1000));
+    assertEquals(0, index.getPieces(area).length);
+
+    index.move(pieces[3]);
+    assertArrayEquals(new GamePiece[] { pieces[3] }, index.getPieces(area));
+    assertEquals(0,
+      index.getPieces(new Rectangle(new Point(-500, -200))).length);
+  }
+
+  @Test
+  public void testReshape() {
+    final GamePiece[] pieces = grid();
+    final SpatialIndex index = index(pieces);
+    final Rectangle area = new Rectangle(new Point(-450, -500));
+
+    assertEquals(0, index.getPieces(area).length);
+
+    // pieces[0] grows to overlap the area
+    final Rectangle r = new Rectangle(-60, -60, 120, 120);
+    when(pieces[0].boundingBox()).thenReturn(r);
+    when(pieces[0].getShape()).thenReturn(r);
+    index.reshape(pieces[0]);
+    assertEquals(pieces[0], index.getPieces(area)[0]);
+
+    // and shrinks again, leaving a smaller reach
+    final Rectangle s = new Rectangle(-20, -20, 40, 40);
+    when(pieces[0].boundingBox()).thenReturn(s);
+    when(pieces[0].getShape()).thenReturn(s);
+    index.reshape(pieces[0]);
+    assertEquals(0, index.getPieces(area).length);
+  }
+
+  @Test
+  public void testOrder() {
+    final GamePiece[] pieces = grid();
+    final SimplePieceCollection c = new SimplePieceCollection();
+    for (GamePiece p : pieces) {
+      c.add(p);
+    }
+    final Rectangle area = new Rectangle(-100, -100, 100, 100);
+
+    c.moveToBack(pieces[55]);
+    assertArrayEquals(new GamePiece[] { pieces[55], pieces[44], pieces[45], pieces[54] },
+      c.getPiecesNear(area));
+
+    c.remove(pieces[44]);
+    c.moveToFront(pieces[55]);
+    assertArrayEquals(new GamePiece[] { pieces[45], pieces[54], pieces[55] },
+      c.getPiecesNear(area));
+
+    when(pieces[45].getPosition()).thenReturn(new Point(1000, 1000));
+    c.pieceMoved(pieces[45]);
+    assertArrayEquals(new GamePiece[] { pieces[54], pieces[55] },
+      c.getPiecesNear(area));
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.build.module.properties;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PropertyValueTest {
+  private static final String[] TEXTS = {
+    "", " ", "0", "-0", "7", "-7", "+7", "123456789", "-123456789",
+    "1234567890", "2147483647", "2147483648", "-2147483648", "007",
+    "2.5", "-2.5", ".5", "5.", "1e3", "1.5f", "2d", " 3", "3 ", "0x10",
+    "0x1p3", "NaN", "-Infinity", "Infantry", "abc", "-", "+", ".", "1st",
+    "true", "false", "True", "null"
+  };
+
+  @Test
+  public void testParseLikeValueOf() {
+    for (String s : TEXTS) {
+      final PropertyValue pv = PropertyValue.valueOf(s);
+      assertEquals(s, pv.toString());
+
+      Integer i = null;
+      try {
+        i = Integer.valueOf(s);
+      }
+      catch (NumberFormatException e) {
+      }
+
+      Float f = null;
+      if (i == null) {
+        try {
+          f = Float.valueOf(s);
+        }
+        catch (NumberFormatException e) {
+        }
+      }
+
+      assertEquals(s, i != null, pv.isInt());
+      if (i != null) {
+        assertEquals(s, i.intValue(), pv.intValue());
+      }
+
+      assertEquals(s, f != null, pv.isFloat());
+      if (f != null) {
+        assertEquals(s, f.floatValue(), pv.floatValue(), 0.0f);
+      }
+
+      final boolean b = "true".equals(s) || "false".equals(s);
+      assertEquals(s, b, pv.isBoolean());
+      assertEquals(s, "true".equals(s), pv.booleanValue());
+    }
+  }
+
+  @Test
+  public void testNull() {
+    final PropertyValue pv = PropertyValue.valueOf(null);
+    assertTrue(pv.isNull());
+    assertEquals("null", pv.toString());
+    assertFalse(pv.isInt());
+    assertFalse(pv.isBoolean());
+  }
+
+  @Test
+  public void testNullText() {
+    final PropertyValue pv = PropertyValue.valueOf(new Object() {
+      @Override
+      public String toString() {
+        return null;
+      }
+    });
+    assertFalse(pv.isNull());
+    assertEquals("", pv.toString());
+    assertFalse(pv.isInt());
+    assertFalse(pv.isFloat());
+    assertFalse(pv.isBoolean());
+  }
+
+  @Test
+  public void testNonString() {
+    final PropertyValue pv = PropertyValue.valueOf(Integer.valueOf(42));
+    assertTrue(pv.isInt());
+    assertEquals(42, pv.intValue());
+    assertEquals("42", pv.toString());
+  }
+
+  @Test
+  public void testReuse() {
+    final String s = "42";
+    final PropertyValue pv = PropertyValue.valueOf(s);
+    assertSame(pv, PropertyValue.valueOf(s, pv));
+    assertNotSame(pv, PropertyValue.valueOf(new String(s), pv));
+  }
+
+  @Test
+  public void testNoReuseOfMutable() {
+    final StringBuilder sb = new StringBuilder("1");
+    final PropertyValue pv = PropertyValue.valueOf(sb);
+    sb.append('2');
+    final PropertyValue pv2 = PropertyValue.valueOf(sb, pv);
+    assertNotSame(pv, pv2);
+    assertEquals(12, pv2.intValue());
+  }
+
+  @Test
+  public void testCache() {
+    final PropertyValueCache cache = new PropertyValueCache();
+    final String s = "5";
+    final PropertyValue pv = cache.get("key", s);
+    assertSame(pv, cache.get("key", s));
+    assertEquals(6, cache.get("key", "6").intValue());
+  }
+}
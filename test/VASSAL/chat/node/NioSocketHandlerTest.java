@@ -0,0 +1,243 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.chat.node;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NioSocketHandlerTest {
+
+  private static class Watcher implements SocketWatcher {
+    final BlockingQueue<String> messages = new LinkedBlockingQueue<String>();
+    final CountDownLatch closed = new CountDownLatch(1);
+
+    public void handleMessage(String msg) {
+      messages.add(msg);
+    }
+
+    public void socketClosed(SocketHandler handler) {
+      closed.countDown();
+    }
+
+    String next() throws InterruptedException {
+      final String msg = messages.poll(10, TimeUnit.SECONDS);
+      assertNotNull("timed out waiting for a message", msg);
+      return msg;
+    }
+  }
+
+  private SelectorThread selector;
+  private ServerSocketChannel server;
+  private Socket client;
+  private Watcher watcher;
+  private NioSocketHandler handler;
+
+  @Before
+  public void setUp() throws IOException {
+    selector = new SelectorThread("test selector");
+    selector.setDaemon(true);
+    selector.start();
+
+    server = ServerSocketChannel.open();
+    server.socket().bind(
+      new InetSocketAddress(InetAddress.getByName(null), 0));
+
+    client = new Socket(InetAddress.getByName(null),
+                        server.socket().getLocalPort());
+    final SocketChannel channel = server.accept();
+
+    watcher = new Watcher();
+    handler = new NioSocketHandler(channel, selector, watcher);
+    handler.start();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    client.close();
+    server.close();
+  }
+
+  private void send(String s) throws IOException {
+    final OutputStream out = client.getOutputStream();
+    out.write(s.getBytes("UTF-8"));
+    out.flush();
+  }
+
+  private static String repeat(char c, int n) {
+    final char[] a = new char[n];
+    Arrays.fill(a, c);
+    return new String(a);
+  }
+
+  @Test
+  public void testLineTerminators() throws Exception {
+    send("a\nb\r\nc\rd\n\ne");
+    client.shutdownOutput();
+
+    assertEquals("a", watcher.next());
+    assertEquals("b", watcher.next());
+    assertEquals("c", watcher.next());
+    assertEquals("d", watcher.next());
+    // an unterminated last line is passed on at end of stream
+    assertEquals("e", watcher.next());
+    assertTrue(watcher.closed.await(10, TimeUnit.SECONDS));
+    assertTrue(watcher.messages.isEmpty());
+  }
+
+  @Test
+  public void testLinesSplitAcrossReads() throws Exception {
+    final byte[] b = "f\u00e9\u4e2d\r\ng\n".getBytes("UTF-8");
+    final OutputStream out = client.getOutputStream();
+
+    // send a byte at a time, splitting characters and the CRLF
+    for (byte x : b) {
+      out.write(x);
+      out.flush();
+      Thread.sleep(5);
+    }
+
+    assertEquals("f\u00e9\u4e2d", watcher.next());
+    assertEquals("g", watcher.next());
+  }
+
+  @Test
+  public void testLongLine() throws Exception {
+    // longer than both the line buffer and the read buffer
+    final String line = repeat('x', 100000);
+    send(line + "\nshort\n");
+
+    assertEquals(line, watcher.next());
+    assertEquals("short", watcher.next());
+  }
+
+  @Test
+  public void testSignOff() throws Exception {
+    send("before\n!BYE\nafter\n");
+
+    assertEquals("before", watcher.next());
+    assertTrue(watcher.closed.await(10, TimeUnit.SECONDS));
+    assertTrue(watcher.messages.isEmpty());
+  }
+
+  @Test
+  public void testPartialWrites() throws Exception {
+    // lines too long to be written to the socket in one go
+    final String a = repeat('a', 4 << 20);
+    final String b = repeat('b', 4 << 20);
+    handler.writeLine(a);
+    handler.writeLine(b);
+    handler.writeLine("end");
+
+    final BufferedReader in = new BufferedReader(
+      new InputStreamReader(client.getInputStream(), "UTF-8"));
+    assertEquals(a, in.readLine());
+    assertEquals(b, in.readLine());
+    assertEquals("end", in.readLine());
+  }
+
+  @Test
+  public void testBackpressure() throws Exception {
+    // fill the socket buffers and leave more than HIGH_WATER queued,
+    // while the client reads nothing
+    final String line = repeat('z', 1 << 16);
+    final int lines = 256;
+    for (int i = 0; i < lines; ++i) handler.writeLine(line);
+
+    // nothing from the client is handled while its output is backed up
+    send("held\n");
+    assertNull(watcher.messages.poll(500, TimeUnit.MILLISECONDS));
+
+    // once the client catches up, reading resumes
+    final BufferedReader in = new BufferedReader(
+      new InputStreamReader(client.getInputStream(), "UTF-8"));
+    for (int i = 0; i < lines; ++i) assertEquals(line, in.readLine());
+
+    assertEquals("held", watcher.next());
+    assertEquals(1, watcher.closed.getCount());
+  }
+
+  @Test
+  public void testUnresponsiveClientDropped() throws Exception {
+    // queue more than MAX_PENDING for a client which reads nothing
+    final String line = repeat('z', 1 << 16);
+    for (int i = 0; i < 1024 && watcher.closed.getCount() > 0; ++i) {
+      handler.writeLine(line);
+    }
+
+    assertTrue(watcher.closed.await(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testFailingConnectionDoesNotStopSelector() throws Exception {
+    // a connection whose handling throws on the selector thread
+    final Socket bad = new Socket(InetAddress.getByName(null),
+                                  server.socket().getLocalPort());
+    final NioSocketHandler h = new NioSocketHandler(
+      server.accept(), selector, new Watcher() {
+        @Override
+        public void socketClosed(SocketHandler handler) {
+          throw new IllegalStateException("test");
+        }
+      }
+    );
+    h.start();
+
+    bad.getOutputStream().write("x\n".getBytes("UTF-8"));
+    bad.close();
+
+    // a connection closed from another thread, cancelling its key
+    for (int i = 0; i < 100; ++i) handler.writeLine("x");
+    handler.closeSocket();
+    assertTrue(watcher.closed.await(10, TimeUnit.SECONDS));
+
+    // other connections on the same selector are still served
+    final Socket other = new Socket(InetAddress.getByName(null),
+                                    server.socket().getLocalPort());
+    try {
+      final Watcher w = new Watcher();
+      new NioSocketHandler(server.accept(), selector, w).start();
+
+      other.getOutputStream().write("still here\n".getBytes("UTF-8"));
+      other.getOutputStream().flush();
+      assertEquals("still here", w.next());
+    }
+    finally {
+      other.close();
+    }
+  }
+}
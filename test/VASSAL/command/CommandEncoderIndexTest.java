@@ -0,0 +1,145 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.command;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CommandEncoderIndexTest {
+
+  /** A command which records which encoder decoded it. */
+  private static class Decoded extends NullCommand {
+    final CommandEncoder by;
+
+    Decoded(CommandEncoder by) {
+      this.by = by;
+    }
+  }
+
+  /** Decodes commands starting with its id, as many encoders do. */
+  private static class IdEncoder implements IndexedCommandEncoder {
+    String id;
+    final List<String> offered = new ArrayList<String>();
+
+    IdEncoder(String id) {
+      this.id = id;
+    }
+
+    public Command decode(String command) {
+      offered.add(command);
+      return command.startsWith(id) ? new Decoded(this) : null;
+    }
+
+    public String encode(Command c) {
+      return c instanceof Decoded && ((Decoded) c).by == this ? id : null;
+    }
+
+    public String[] getCommandPrefixes() {
+      return new String[]{id};
+    }
+
+    public Class<?>[] getCommandClasses() {
+      return new Class<?>[]{Decoded.class};
+    }
+  }
+
+  /** Decodes more than its superclass declares. */
+  private static class WiderEncoder extends IdEncoder {
+    WiderEncoder(String id) {
+      super(id);
+    }
+
+    @Override
+    public Command decode(String command) {
+      return command.startsWith("wide") ? new Decoded(this) :
+                                          super.decode(command);
+    }
+  }
+
+  private static CommandEncoder by(Command c) {
+    return c == null ? null : ((Decoded) c).by;
+  }
+
+  @Test
+  public void testOnlyMatchingEncodersOffered() {
+    final CommandEncoderIndex index = new CommandEncoderIndex();
+    final IdEncoder a = new IdEncoder("A1");
+    final IdEncoder b = new IdEncoder("A2");
+    index.add(a);
+    index.add(b);
+
+    assertSame(b, by(index.decode("A2\tx")));
+    assertTrue(a.offered.isEmpty());
+    assertEquals("A2", index.encode(new Decoded(b)));
+  }
+
+  @Test
+  public void testOrderKept() {
+    // both decode "A12", so the first added wins
+    final CommandEncoderIndex index = new CommandEncoderIndex();
+    final IdEncoder a = new IdEncoder("A12");
+    final IdEncoder b = new IdEncoder("A1");
+    index.add(a);
+    index.add(b);
+
+    assertSame(a, by(index.decode("A12")));
+    assertSame(b, by(index.decode("A13")));
+  }
+
+  @Test
+  public void testChangedPrefix() {
+    final CommandEncoderIndex index = new CommandEncoderIndex();
+    final IdEncoder a = new IdEncoder("A1");
+    index.add(a);
+    assertSame(a, by(index.decode("A1")));
+
+    // the id changes after the index is built
+    a.id = "B1";
+    assertSame(a, by(index.decode("B1")));
+    assertNull(index.decode("A1"));
+  }
+
+  @Test
+  public void testEmptyStringOfferedToAll() {
+    final CommandEncoderIndex index = new CommandEncoderIndex();
+    final IdEncoder a = new IdEncoder("A1");
+    index.add(a);
+
+    assertNull(index.decode(""));
+    assertEquals(1, a.offered.size());
+  }
+
+  @Test
+  public void testOverridingSubclassNotIndexed() {
+    final CommandEncoderIndex index = new CommandEncoderIndex();
+    final IdEncoder a = new IdEncoder("A1");
+    final IdEncoder w = new WiderEncoder("W1");
+    index.add(a);
+    index.add(w);
+
+    assertSame(w, by(index.decode("wide")));
+    assertSame(w, by(index.decode("W1")));
+    assertSame(a, by(index.decode("A1")));
+  }
+}
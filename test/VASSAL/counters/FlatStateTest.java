@@ -0,0 +1,169 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+package VASSAL.counters;
+
+import java.awt.Point;
+
+import VASSAL.command.ChangePiece;
+import VASSAL.command.ChangeTracker;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class FlatStateTest {
+
+  private static final String[] STATES = {
+    "a\tb", "c\\d;e", "", "f:\u001e7:g", "\t\\\t"
+  };
+
+  private GamePiece inner;
+
+  private TestTrait build() {
+    inner = mock(GamePiece.class);
+    when(inner.getState()).thenReturn("null;10;20;42");
+    when(inner.getPosition()).thenReturn(new Point());
+
+    GamePiece p = inner;
+    for (int i = STATES.length - 1; i >= 0; --i) {
+      p = new TestTrait(p, STATES[i]);
+    }
+    return (TestTrait) p;
+  }
+
+  private static void clear(TestTrait t) {
+    for (GamePiece p = t; p instanceof TestTrait; p = ((TestTrait) p).getInner()) {
+      ((TestTrait) p).state = "x";
+    }
+  }
+
+  private static void assertStates(TestTrait t) {
+    GamePiece p = t;
+    for (String s : STATES) {
+      assertEquals(s, ((TestTrait) p).state);
+      p = ((TestTrait) p).getInner();
+    }
+  }
+
+  @After
+  public void tearDown() {
+    FlatState.setUsedForMoves(false);
+  }
+
+  @Test
+  public void testRoundTrip() {
+    final TestTrait t = build();
+    final String flat = t.getState(true);
+    assertTrue(FlatState.isFlat(flat));
+
+    clear(t);
+    t.setState(flat);
+    assertStates(t);
+    verify(inner).setState("null;10;20;42");
+  }
+
+  @Test
+  public void testLegacyUnchanged() {
+    final TestTrait t = build();
+    final String legacy = t.getState();
+    assertFalse(FlatState.isFlat(legacy));
+
+    // only the changes sent during play are affected by the preference
+    FlatState.setUsedForMoves(true);
+    assertEquals(legacy, t.getState());
+    assertEquals(legacy, t.getState(false));
+
+    clear(t);
+    t.setState(legacy);
+    assertStates(t);
+  }
+
+  @Test
+  public void testMoves() {
+    final TestTrait t = build();
+    FlatState.setUsedForMoves(true);
+
+    final ChangeTracker tracker = new ChangeTracker(t);
+    t.state = "moved";
+    final ChangePiece c = (ChangePiece) tracker.getChangeCommand();
+    assertTrue(FlatState.isFlat(c.getOldState()));
+    assertTrue(FlatState.isFlat(c.getNewState()));
+
+    t.state = "x";
+    t.mergeState(c.getNewState(), c.getOldState());
+    assertEquals("moved", t.state);
+  }
+
+  @Test
+  public void testLegacyStartingWithMarker() {
+    // states which would be taken for flat states if not quoted
+    final String[] states = {
+      "\u001e1:a", "\u001e3:a\tb", "\u001e", "\u001e'", "\u001e\\"
+    };
+
+    for (String s : states) {
+      final TestTrait t = build();
+      t.state = s;
+      ((TestTrait) t.getInner()).state = s;
+
+      final String legacy = t.getState();
+      assertFalse(FlatState.isFlat(legacy));
+
+      clear(t);
+      t.setState(legacy);
+      assertEquals(s, t.state);
+      assertEquals(s, ((TestTrait) t.getInner()).state);
+
+      // and when merged
+      final String oldState = t.getState();
+      ((TestTrait) t.getInner()).state = "changed";
+      final String newState = t.getState();
+      ((TestTrait) t.getInner()).state = s;
+      t.mergeState(newState, oldState);
+      assertEquals(s, t.state);
+      assertEquals("changed", ((TestTrait) t.getInner()).state);
+    }
+  }
+
+  @Test
+  public void testMerge() {
+    final TestTrait t = build();
+    final String oldState = t.getState(true);
+    ((TestTrait) t.getInner()).state = "changed";
+    final String newState = t.getState(true);
+
+    ((TestTrait) t.getInner()).state = STATES[1];
+    t.state = "local";
+    t.mergeState(newState, oldState);
+    assertEquals("local", t.state);
+    assertEquals("changed", ((TestTrait) t.getInner()).state);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMalformed() {
+    build().setState("\u001e99:short");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testMissingInner() {
+    build().setState("\u001e1:a");
+  }
+}
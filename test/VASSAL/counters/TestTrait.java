@@ -0,0 +1,93 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.counters;
+
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import javax.swing.KeyStroke;
+
+import VASSAL.build.module.documentation.HelpFile;
+import VASSAL.command.Command;
+
+/**
+ * A trait for tests, which draws nothing and whose state is a plain
+ * <code>String</code>. Any key event sets its state to "keyed".
+ */
+public class TestTrait extends Decorator {
+  public String state;
+
+  public TestTrait(GamePiece inner) {
+    this(inner, "");
+  }
+
+  public TestTrait(GamePiece inner, String state) {
+    setInner(inner);
+    this.state = state;
+  }
+
+  public void mySetState(String newState) {
+    state = newState;
+  }
+
+  public String myGetState() {
+    return state;
+  }
+
+  public String myGetType() {
+    return "trait;";
+  }
+
+  public void mySetType(String type) {
+  }
+
+  protected KeyCommand[] myGetKeyCommands() {
+    return new KeyCommand[0];
+  }
+
+  public Command myKeyEvent(KeyStroke stroke) {
+    state = "keyed";
+    return null;
+  }
+
+  public void draw(Graphics g, int x, int y, Component obs, double zoom) {
+  }
+
+  public Rectangle boundingBox() {
+    return new Rectangle();
+  }
+
+  public Shape getShape() {
+    return new Rectangle();
+  }
+
+  public String getName() {
+    return "trait";
+  }
+
+  public String getDescription() {
+    return "trait";
+  }
+
+  public HelpFile getHelpFile() {
+    return null;
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.counters;
+
+import java.awt.Point;
+import javax.swing.KeyStroke;
+
+import org.junit.Test;
+
+import VASSAL.tools.imageop.GamePieceOp;
+import VASSAL.tools.imageop.GamePieceOpImpl;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class VisualVersionTest {
+
+  @Test
+  public void testVersionIncreases() {
+    final BasicPiece bp = new BasicPiece();
+    final TestTrait t = new TestTrait(bp);
+
+    long v = VisualVersion.of(t);
+    assertTrue(v >= 0);
+
+    t.keyEvent(KeyStroke.getKeyStroke('A'));
+    assertTrue(VisualVersion.of(t) > v);
+    v = VisualVersion.of(t);
+
+    bp.setPosition(new Point(10, 10));
+    assertTrue(VisualVersion.of(t) > v);
+    v = VisualVersion.of(t);
+
+    t.setProperty("foo", "bar");
+    assertTrue(VisualVersion.of(t) > v);
+    v = VisualVersion.of(t);
+
+    VisualVersion.propertiesChanged();
+    assertTrue(VisualVersion.of(t) > v);
+    v = VisualVersion.of(t);
+
+    assertEquals(v, VisualVersion.of(t));
+  }
+
+  @Test
+  public void testUncountedPiece() {
+    assertEquals(-1, VisualVersion.of(new TestTrait(mock(GamePiece.class))));
+  }
+
+  @Test
+  public void testImageChanged() {
+    final TestTrait t = new TestTrait(new BasicPiece());
+    final GamePieceOp op = new GamePieceOpImpl(t);
+    assertFalse(op.isChanged());
+
+    t.keyEvent(KeyStroke.getKeyStroke('A'));
+    assertTrue(op.isChanged());
+  }
+
+  @Test
+  public void testLabelShowingUncountedProperty() {
+    // a property which changes without being counted
+    final String[] calc = { "1" };
+    final BasicPiece bp = new BasicPiece() {
+      @Override
+      public Object getProperty(Object key) {
+        return "Calc".equals(key) ? calc[0] : super.getProperty(key);
+      }
+    };
+
+    final Labeler l = new Labeler(Labeler.ID, bp);
+    l.setLabel("plain");
+    assertTrue(VisualVersion.of(l) >= 0);
+
+    l.setLabel("$Calc$");
+    assertEquals(-1, VisualVersion.of(l));
+
+    final GamePieceOp op = new GamePieceOpImpl(l);
+    assertFalse(op.isChanged());
+
+    calc[0] = "2";
+    assertTrue(op.isChanged());
+  }
+}
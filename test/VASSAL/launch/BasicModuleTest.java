@@ -0,0 +1,417 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.launch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.FilterReader;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import VASSAL.build.GameModule;
+import VASSAL.build.module.GameState;
+import VASSAL.build.module.properties.ChangePropertyCommand;
+import VASSAL.build.module.properties.ChangePropertyCommandEncoder;
+import VASSAL.build.module.properties.MutablePropertiesContainer;
+import VASSAL.build.module.properties.MutableProperty;
+import VASSAL.command.Command;
+import VASSAL.command.CommandEncoder;
+import VASSAL.command.CommandEncoderIndex;
+import VASSAL.tools.concurrent.listener.EventListener;
+import VASSAL.tools.io.DeobfuscatingInputStream;
+import VASSAL.tools.io.FileArchive;
+import VASSAL.tools.io.ObfuscatingOutputStream;
+import VASSAL.tools.io.ZipArchive;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class BasicModuleTest {
+
+  private static final char ESC = 27;
+
+  /** Texts which are escaped or quoted when encoded. */
+  private static final String[] TEXTS = {
+    "", "a", "a b", "\\", "a\\", "\\\\", "'", "''", "'a'", "'a\\'", "a'",
+    "'a", "\t", "a\tb\\", "\\'"
+  };
+
+  /** A command carrying some text. */
+  private static class Text extends Command {
+    final String text;
+
+    Text(String text) {
+      this.text = text;
+    }
+
+    protected void executeCommand() {}
+
+    protected Command myUndoCommand() {
+      return null;
+    }
+  }
+
+  /** A command which must see its subcommands, as logged commands do. */
+  private static class Logged extends Text {
+    Logged(String text) {
+      super(text);
+    }
+
+    @Override
+    public void execute() {
+      super.execute();
+    }
+  }
+
+  /** A command whose encoding is empty. */
+  private static class Empty extends Text {
+    Empty() {
+      super("");
+    }
+  }
+
+  private static class TextEncoder implements CommandEncoder {
+    public Command decode(String s) {
+      if (s.startsWith("T")) return new Text(s.substring(1));
+      if (s.startsWith("L")) return new Logged(s.substring(1));
+      return null;
+    }
+
+    public String encode(Command c) {
+      if (c instanceof Empty) return "";
+      if (c instanceof Logged) return "L" + ((Text) c).text;
+      if (c instanceof Text) return "T" + ((Text) c).text;
+      return null;
+    }
+  }
+
+  /** Saves the given command as the game. */
+  private static class SavingState extends GameState {
+    private final Command restore;
+
+    SavingState(Command restore) {
+      this.restore = restore;
+    }
+
+    @Override
+    public Command getRestoreCommand() {
+      return restore;
+    }
+
+    void save(FileArchive archive) throws IOException {
+      writeSave(archive);
+    }
+  }
+
+  private BasicModule module;
+  private CommandEncoderIndex index;
+  private MutableProperty property;
+
+  private Field moduleField;
+  private Object oldModule;
+  private File tmp;
+
+  @Before
+  public void setUp() throws Exception {
+    final MutablePropertiesContainer container =
+      mock(MutablePropertiesContainer.class);
+    property = mock(MutableProperty.class);
+    when(container.getMutablePropertiesContainerId()).thenReturn("Module");
+    when(container.getMutableProperty(anyString())).thenReturn(property);
+    when(property.getParent()).thenReturn(container);
+
+    index = new CommandEncoderIndex();
+    index.add(new TextEncoder());
+    index.add(new ChangePropertyCommandEncoder(container));
+
+    // a module with its codec, but nothing else built
+    module = mock(BasicModule.class, CALLS_REAL_METHODS);
+    final Field f = GameModule.class.getDeclaredField("commandEncoderIndex");
+    f.setAccessible(true);
+    f.set(module, index);
+
+    // GameModule is a singleton; swap in ours for this test only
+    moduleField = GameModule.class.getDeclaredField("theModule");
+    moduleField.setAccessible(true);
+    oldModule = moduleField.get(null);
+    moduleField.set(null, module);
+
+    tmp = File.createTempFile("BasicModuleTest", ".vsav");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    moduleField.set(null, oldModule);
+    tmp.delete();
+  }
+
+  private String text(Random r, boolean escapes) {
+    String s = TEXTS[r.nextInt(TEXTS.length)];
+    if (escapes && r.nextInt(4) == 0) {
+      s += ESC + TEXTS[r.nextInt(TEXTS.length)];
+    }
+    return s;
+  }
+
+  private Command leaf(Random r, boolean escapes) {
+    switch (r.nextInt(5)) {
+    case 0:
+      return new Logged(text(r, escapes));
+    case 1:
+      return new Empty();
+    case 2:
+      return new ChangePropertyCommand(
+        property, "p" + text(r, escapes), text(r, escapes), text(r, escapes));
+    default:
+      return new Text(text(r, escapes));
+    }
+  }
+
+  /**
+   * @param escapes whether commands may themselves contain the command
+   * separator, which a compound command cannot be told apart from
+   * @return a random tree of commands
+   */
+  Command tree(Random r, int depth, boolean escapes) {
+    final Command c = leaf(r, escapes);
+    if (depth > 0) {
+      for (int n = r.nextInt(4); n > 0; --n) {
+        c.append(tree(r, depth - 1, escapes));
+      }
+    }
+    return c;
+  }
+
+  /**
+   * @return the encodings of the commands in a tree, in order, leaving
+   * out those which are empty
+   */
+  List<String> flatten(Command c, List<String> l) {
+    if (c != null) {
+      final String s = index.encode(c);
+      if (s != null && s.length() > 0) {
+        l.add(s);
+      }
+      for (Command sub : c.getSubCommands()) {
+        flatten(sub, l);
+      }
+    }
+    return l;
+  }
+
+  /** Reads one character at a time, to split tokens across reads. */
+  private static class TrickleReader extends FilterReader {
+    TrickleReader(Reader in) {
+      super(in);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      return super.read(cbuf, off, Math.min(len, 1));
+    }
+  }
+
+  /**
+   * @return the commands decoded from a stream, in the order received
+   */
+  private List<Command> decodeStream(Reader in) throws IOException {
+    final List<Command> l = new ArrayList<Command>();
+    module.decode(in, new EventListener<Command>() {
+      public void receive(Object src, Command c) {
+        l.add(c);
+      }
+    });
+    return l;
+  }
+
+  private void assertDecodesAlike(String s) throws IOException {
+    final List<String> expected =
+      flatten(module.decode(s), new ArrayList<String>());
+
+    for (Reader in : new Reader[] {
+           new StringReader(s), new TrickleReader(new StringReader(s)) }) {
+      final List<String> actual = new ArrayList<String>();
+      for (Command c : decodeStream(in)) {
+        flatten(c, actual);
+      }
+      assertEquals(expected, actual);
+    }
+  }
+
+  private String stream(Command c) throws IOException {
+    final StringWriter out = new StringWriter();
+    module.encode(c, out);
+    return out.toString();
+  }
+
+  @Test
+  public void testStreamedEncoding() throws IOException {
+    final Random r = new Random(42);
+    for (int i = 0; i < 500; ++i) {
+      final Command c = tree(r, 3, true);
+      final String s = module.encode(c);
+      assertEquals(s == null ? "" : s, stream(c));
+    }
+  }
+
+  @Test
+  public void testNestedEscapes() throws IOException {
+    // separators and backslashes are escaped once more at each level
+    final Command c = new Text("a\\");
+    c.append(new Text("'b'").append(new Text("c" + ESC + "d\\")
+                            .append(new Logged("'"))));
+    c.append(new Empty());
+    c.append(new Text("e"));
+
+    final String s = module.encode(c);
+    assertTrue(s.indexOf("\\" + ESC) >= 0);
+    assertEquals(s, stream(c));
+  }
+
+  @Test
+  public void testSavedEntry() throws IOException {
+    final Random r = new Random(7);
+    // large enough to be written in many chunks
+    final Command c = tree(r, 3, false);
+    for (int i = 0; i < 200; ++i) {
+      c.append(tree(r, 3, false));
+    }
+    c.append(new Text("x\\").append(new Text("\\").append(new Text("y"))));
+
+    final SavingState gs = new SavingState(c);
+
+    final ZipArchive archive = new ZipArchive(tmp);
+    try {
+      gs.save(archive);
+    }
+    finally {
+      archive.close();
+    }
+
+    final byte[] entry;
+    final ZipFile zf = new ZipFile(tmp);
+    try {
+      final InputStream in =
+        zf.getInputStream(zf.getEntry(GameState.SAVEFILE_ZIP_ENTRY));
+      entry = IOUtils.toByteArray(in);
+      in.close();
+    }
+    finally {
+      zf.close();
+    }
+
+    // the entry is the whole encoding, obfuscated with the key it names
+    // one byte at a time, as saves were written before they were streamed
+    final int hl = ObfuscatingOutputStream.HEADER.length();
+    final byte key = (byte) Integer.parseInt(
+      new String(entry, hl, 2, "US-ASCII"), 16);
+
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    final ObfuscatingOutputStream out =
+      new ObfuscatingOutputStream(expected, key);
+    for (byte b : module.encode(c).getBytes("UTF-8")) {
+      out.write(b);
+    }
+    out.close();
+
+    assertArrayEquals(expected.toByteArray(), entry);
+
+    // and decodes to the commands saved
+    final String save = IOUtils.toString(
+      new DeobfuscatingInputStream(new ByteArrayInputStream(entry)), "UTF-8");
+    assertEquals(flatten(c, new ArrayList<String>()),
+                 flatten(module.decode(save), new ArrayList<String>()));
+  }
+
+  @Test
+  public void testDecodeStream() throws IOException {
+    final Random r = new Random(42);
+    for (int i = 0; i < 500; ++i) {
+      final String s = module.encode(tree(r, 3, true));
+      if (s != null) {
+        assertDecodesAlike(s);
+      }
+    }
+  }
+
+  @Test
+  public void testDecodeStreamEdges() throws IOException {
+    final String[] streams = {
+      // empty, and empty commands
+      "", String.valueOf(ESC), "" + ESC + ESC, "Ta" + ESC + ESC + "Tb",
+      // with and without a trailing delimiter
+      "Ta" + ESC + "Tb", "Ta" + ESC + "Tb" + ESC, "Ta",
+      // escaped delimiters, and quotes around a trailing backslash
+      "Ta\\" + ESC + "Tb" + ESC + "'Tc\\'",
+      "Ta" + ESC + "Tb\\" + ESC + "Tc\\\\" + ESC + "Td",
+      "'Ta\\'", "'Ta\\'" + ESC + "''", "''" + ESC + "'T'",
+      "Ta" + ESC + "'Tb\\" + ESC + "Tc\\'",
+      // a stream which ends inside an escape
+      "Ta" + ESC + "Tb\\"
+    };
+
+    for (String s : streams) {
+      assertDecodesAlike(s);
+    }
+  }
+
+  @Test
+  public void testDecodeStreamDeliversEachSubCommand() throws IOException {
+    final Command c = new Text("a");
+    c.append(new Text("b").append(new Text("c")));
+    c.append(new Text("d"));
+
+    final List<Command> l =
+      decodeStream(new StringReader(module.encode(c)));
+    assertEquals(4, l.size());
+    for (Command sub : l) {
+      assertEquals(0, sub.getSubCommands().length);
+    }
+  }
+
+  @Test
+  public void testDecodeStreamDeliversLoggedWhole() throws IOException {
+    // a command which overrides execute() must see its subcommands
+    final Command c = new Logged("a");
+    c.append(new Text("b").append(new Text("c")));
+    c.append(new Text("d"));
+
+    final String s = module.encode(c);
+    final List<Command> l = decodeStream(new StringReader(s));
+    assertEquals(1, l.size());
+    assertTrue(l.get(0) instanceof Logged);
+    assertEquals(flatten(c, new ArrayList<String>()),
+                 flatten(l.get(0), new ArrayList<String>()));
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.launch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PlayerPoolTest {
+
+  private static final List<String> A = Arrays.asList("-Xmx512M", "a");
+  private static final List<String> B = Arrays.asList("-Xmx512M", "b");
+  private static final List<String> C = Arrays.asList("-Xmx512M", "c");
+
+  /** A warm player with no process behind it. */
+  private static class StubPlayer extends PlayerPool.WarmPlayer {
+    volatile boolean alive = true;
+    volatile boolean destroyed = false;
+
+    StubPlayer(List<String> options, Map<String,String> prefs) {
+      super(options, prefs, null, null, null);
+    }
+
+    @Override
+    boolean isAlive() {
+      return alive && !destroyed;
+    }
+
+    @Override
+    void destroy() {
+      destroyed = true;
+    }
+  }
+
+  /** A pool which starts stub players. */
+  private static class StubPool extends PlayerPool {
+    volatile int size = 2;
+    final Map<String,String> prefs = new HashMap<String,String>();
+    final List<StubPlayer> started =
+      Collections.synchronizedList(new ArrayList<StubPlayer>());
+
+    @Override
+    int getSize() {
+      return size;
+    }
+
+    @Override
+    synchronized Map<String,String> getPrefs() {
+      return new HashMap<String,String>(prefs);
+    }
+
+    synchronized void setPref(String key, String value) {
+      prefs.put(key, value);
+    }
+
+    @Override
+    WarmPlayer start(List<String> options, Map<String,String> prefs) {
+      final StubPlayer p = new StubPlayer(options, prefs);
+      started.add(p);
+      return p;
+    }
+
+    StubPlayer player(int i) {
+      return started.get(i);
+    }
+  }
+
+  private StubPool pool;
+
+  @Before
+  public void setUp() {
+    pool = new StubPool();
+    pool.setPref("locale", "en");
+  }
+
+  /** Waits for the given numbers of players to be started and idle. */
+  private void await(int started, int idle) throws InterruptedException {
+    for (int i = 0; i < 1000; ++i) {
+      if (pool.started.size() == started && pool.getIdleCount() == idle) {
+        return;
+      }
+      Thread.sleep(10);
+    }
+    fail("started " + pool.started.size() + ", idle " + pool.getIdleCount());
+  }
+
+  @Test
+  public void testTakeMatching() throws Exception {
+    pool.warm(A);
+    await(1, 1);
+
+    assertNull(pool.take(B));
+    assertSame(pool.player(0), pool.take(A));
+    assertNull(pool.take(A));
+    assertFalse(pool.player(0).destroyed);
+  }
+
+  @Test
+  public void testNotStartedTwice() throws Exception {
+    pool.warm(A);
+    pool.warm(A);
+    pool.warm(B);
+    await(2, 2);
+
+    assertEquals(A, pool.player(0).options);
+    assertEquals(B, pool.player(1).options);
+  }
+
+  @Test
+  public void testPrefsChanged() throws Exception {
+    pool.warm(A);
+    await(1, 1);
+
+    // a player which read other preferences is of no use
+    pool.setPref("locale", "de");
+    assertNull(pool.take(A));
+    assertTrue(pool.player(0).destroyed);
+    assertEquals(0, pool.getIdleCount());
+
+    // but one is started with the new ones
+    pool.warm(A);
+    await(2, 1);
+    assertSame(pool.player(1), pool.take(A));
+    assertEquals("de", pool.player(1).prefs.get("locale"));
+  }
+
+  @Test
+  public void testDeadPlayerDropped() throws Exception {
+    pool.warm(A);
+    await(1, 1);
+
+    pool.player(0).alive = false;
+    assertNull(pool.take(A));
+    assertTrue(pool.player(0).destroyed);
+    assertEquals(0, pool.getIdleCount());
+  }
+
+  @Test
+  public void testOldestEvicted() throws Exception {
+    pool.warm(A);
+    pool.warm(B);
+    pool.warm(C);
+    await(3, 2);
+
+    assertTrue(pool.player(0).destroyed);
+    assertNull(pool.take(A));
+    assertSame(pool.player(1), pool.take(B));
+    assertSame(pool.player(2), pool.take(C));
+  }
+
+  @Test
+  public void testTurnedOff() throws Exception {
+    pool.warm(A);
+    await(1, 1);
+
+    pool.size = 0;
+    assertNull(pool.take(A));
+    assertTrue(pool.player(0).destroyed);
+    assertEquals(0, pool.getIdleCount());
+  }
+
+  @Test
+  public void testShutDown() throws Exception {
+    pool.warm(A);
+    await(1, 1);
+
+    pool.shutDown();
+    assertTrue(pool.player(0).destroyed);
+    assertEquals(0, pool.getIdleCount());
+
+    // nothing more is started or kept
+    pool.warm(B);
+    final StubPlayer late = new StubPlayer(C, pool.getPrefs());
+    pool.add(late);
+    assertTrue(late.destroyed);
+    assertEquals(0, pool.getIdleCount());
+    assertEquals(1, pool.started.size());
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.launch;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import VASSAL.tools.io.ProcessWrapper;
+
+import static org.junit.Assert.*;
+
+public class TilingHandlerTest {
+
+  @Test(timeout=60000)
+  public void testTilerWhichDiesBeforeConnecting() throws Exception {
+    final boolean[] started = new boolean[1];
+
+    // a JVM cannot start with no heap, so the tiler never connects
+    try {
+      TilingHandler.runTiler(
+        "none.zip", new File("none"), new Dimension(256, 256), 0, "0",
+        Collections.singletonList("images/none.png"),
+        new TilingHandler.TilerListener() {
+          public void started(ProcessWrapper proc) {
+            started[0] = true;
+          }
+          public void startingImage(String ipath) {}
+          public void tileWritten() {}
+        }
+      );
+      fail("tiler succeeded");
+    }
+    catch (IOException e) {
+      // expected
+    }
+
+    assertFalse(started[0]);
+  }
+}
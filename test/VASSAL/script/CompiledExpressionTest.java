@@ -0,0 +1,137 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.script;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import VASSAL.build.module.properties.PropertySource;
+import VASSAL.script.expression.ExpressionException;
+import bsh.UtilEvalError;
+
+import static org.junit.Assert.*;
+
+public class CompiledExpressionTest {
+
+  private static class Source implements PropertySource {
+    final Map<String,String> props = new HashMap<String,String>();
+
+    public Object getProperty(Object key) {
+      return props.get(key);
+    }
+
+    public Object getLocalizedProperty(Object key) {
+      return getProperty(key);
+    }
+  }
+
+  private static final String[] EXPRESSIONS = {
+    "Strength + 2",
+    "Strength - 7",
+    "Strength * Ratio",
+    "Strength / 2",
+    "Strength / 2.0",
+    "Strength % 3",
+    "-Strength",
+    "Ratio * 2",
+    "Name + \"x\"",
+    "Name + Strength",
+    "Strength + Name",
+    "Name == \"Tiger\"",
+    "Name != \"Tiger\"",
+    "Strength > 3 ? \"big\" : \"small\"",
+    "Strength <= 3 ? 1 : 2",
+    "Flag && Strength == 5",
+    "!Flag || Strength < 0",
+    "Empty + 1",
+    "Missing + Name",
+    "GetProperty(\"Strength\") + 1",
+    "GetProperty(\"Name\") == \"Tiger\"",
+    "$Strength$ * 10",
+    "(Strength + 1) * (Strength - 1)",
+  };
+
+  private Source source() {
+    final Source s = new Source();
+    s.props.put("Strength", "5");
+    s.props.put("Ratio", "1.5");
+    s.props.put("Name", "Tiger");
+    s.props.put("Flag", "true");
+    s.props.put("Empty", "");
+    return s;
+  }
+
+  /**
+   * Checks that the compiled expression gives the result BeanShell does,
+   * or hands the evaluation back to BeanShell when BeanShell fails.
+   */
+  private static void assertSameResult(String msg, ExpressionInterpreter interp,
+                                       CompiledExpression ce, Source s) {
+    String expected = null;
+    try {
+      expected = interp.evaluate(s);
+    }
+    catch (ExpressionException e) {
+      // BeanShell cannot evaluate it, so neither may the compiled code
+    }
+
+    interp.source = s;
+    try {
+      final String actual = ce.evaluate(interp, false);
+      assertNotNull(msg + " = " + actual + ", but BeanShell failed", expected);
+      assertEquals(msg, expected, actual);
+    }
+    catch (UtilEvalError e) {
+      assertNull(msg + " was handed back to BeanShell", expected);
+    }
+    catch (RuntimeException e) {
+      assertNull(msg + " was handed back to BeanShell", expected);
+    }
+  }
+
+  @Test
+  public void testSameAsBeanShell() throws Exception {
+    final Source s = source();
+    for (String e : EXPRESSIONS) {
+      final ExpressionInterpreter interp =
+        ExpressionInterpreter.createInterpreter(e);
+      final CompiledExpression ce = CompiledExpression.compile(e);
+      assertNotNull(e, ce);
+      assertSameResult(e, interp, ce, s);
+    }
+  }
+
+  @Test
+  public void testSameAsBeanShellForChangedProperties() throws Exception {
+    final Source s = source();
+    final String e = "Strength > 3 ? Strength * 2 : Name";
+    final ExpressionInterpreter interp =
+      ExpressionInterpreter.createInterpreter(e);
+    final CompiledExpression ce = CompiledExpression.compile(e);
+    assertNotNull(ce);
+
+    for (String v : new String[] { "1", "4", "2.5", "x", "" }) {
+      s.props.put("Strength", v);
+      assertSameResult(e + " for " + v, interp, ce, s);
+    }
+  }
+}
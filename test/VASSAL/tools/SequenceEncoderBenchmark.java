@@ -0,0 +1,197 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+package VASSAL.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.NoSuchElementException;
+import java.util.zip.ZipFile;
+
+import VASSAL.build.module.GameState;
+import VASSAL.tools.io.DeobfuscatingInputStream;
+
+/**
+ * Compares the speed of {@link SequenceEncoder.Decoder} with the decoder
+ * it replaced, which copied the remainder of the String after every
+ * token.
+ *
+ * Each saved game (.vsav) named on the command line is split into
+ * commands, and every command is split recursively on the delimiters
+ * used within saved games. With no arguments, a synthetic Stack state
+ * holding many piece ids is decoded instead.
+ *
+ * <pre>
+ * java VASSAL.tools.SequenceEncoderBenchmark [file.vsav ...]
+ * </pre>
+ */
+public class SequenceEncoderBenchmark {
+  private static final char[] DELIMITERS = { 27, '/', '\t', ';', ',' };
+
+  private static final int WARMUP = 5;
+  private static final int RUNS = 10;
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      final SequenceEncoder se = new SequenceEncoder(';');
+      se.append("Main Map").append(100).append(200);
+      for (int i = 0; i < 20000; ++i) {
+        se.append(String.valueOf(1234567890L + i));
+      }
+      run("synthetic Stack state", se.getValue());
+    }
+    else {
+      for (String name : args) {
+        run(name, readSavedGame(new File(name)));
+      }
+    }
+  }
+
+  private static String readSavedGame(File f) throws IOException {
+    final ZipFile zip = new ZipFile(f);
+    try {
+      final Reader in = new InputStreamReader(new DeobfuscatingInputStream(
+        zip.getInputStream(zip.getEntry(GameState.SAVEFILE_ZIP_ENTRY))),
+        "UTF-8");
+      final StringBuilder sb = new StringBuilder();
+      final char[] buf = new char[8192];
+      int n;
+      while ((n = in.read(buf)) != -1) {
+        sb.append(buf, 0, n);
+      }
+      return sb.toString();
+    }
+    finally {
+      zip.close();
+    }
+  }
+
+  private static void run(String name, String s) {
+    System.out.println(name + ": " + s.length() + " characters");
+
+    long tokens = 0;
+    for (int i = 0; i < WARMUP; ++i) {
+      tokens = decodeLegacy(s, 0) + decode(s, 0);
+    }
+
+    long legacy = 0, current = 0;
+    for (int i = 0; i < RUNS; ++i) {
+      long t = System.nanoTime();
+      tokens = decodeLegacy(s, 0);
+      legacy += System.nanoTime() - t;
+
+      t = System.nanoTime();
+      if (decode(s, 0) != tokens) {
+        throw new IllegalStateException("Decoders disagree");
+      }
+      current += System.nanoTime() - t;
+    }
+
+    System.out.println("  " + tokens + " tokens");
+    System.out.println("  previous decoder: " + (legacy / RUNS / 1000) + " us");
+    System.out.println("  current decoder:  " + (current / RUNS / 1000) + " us");
+  }
+
+  private static long decode(String s, int depth) {
+    if (depth == DELIMITERS.length) {
+      return 1;
+    }
+
+    long n = 0;
+    final SequenceEncoder.Decoder sd =
+      new SequenceEncoder.Decoder(s, DELIMITERS[depth]);
+    while (sd.hasMoreTokens()) {
+      n += decode(sd.nextToken(), depth + 1);
+    }
+    return n;
+  }
+
+  private static long decodeLegacy(String s, int depth) {
+    if (depth == DELIMITERS.length) {
+      return 1;
+    }
+
+    long n = 0;
+    final LegacyDecoder sd = new LegacyDecoder(s, DELIMITERS[depth]);
+    while (sd.hasMoreTokens()) {
+      n += decodeLegacy(sd.nextToken(), depth + 1);
+    }
+    return n;
+  }
+
+  /** The decoder used by VASSAL 3.2.2 and earlier */
+  private static class LegacyDecoder {
+    private String val;
+    private final char delimit;
+
+    public LegacyDecoder(String value, char delimiter) {
+      val = value;
+      delimit = delimiter;
+    }
+
+    public boolean hasMoreTokens() {
+      return val != null;
+    }
+
+    public String nextToken() {
+      if (!hasMoreTokens()) throw new NoSuchElementException();
+
+      String value;
+
+      final int i = val.indexOf(delimit);
+      if (i < 0) {
+        value = val;
+        val = null;
+      }
+      else {
+        final StringBuilder buffer = new StringBuilder();
+        int begin = 0;
+        int end = i;
+        while (begin < end) {
+          if (val.charAt(end - 1) == '\\') {
+            buffer.append(val.substring(begin, end - 1));
+            begin = end;
+            end = val.indexOf(delimit, end + 1);
+          }
+          else {
+            break;
+          }
+        }
+
+        if (end < 0) {
+          buffer.append(val.substring(begin));
+          val = null;
+        }
+        else {
+          buffer.append(val.substring(begin, end));
+          val = end >= val.length() - 1 ? "" : val.substring(end + 1);
+        }
+
+        value = buffer.toString();
+      }
+
+      if (value.startsWith("'") && value.endsWith("'") && value.length() > 1) {
+        value = value.substring(1, value.length() - 1);
+      }
+
+      return value;
+    }
+  }
+}
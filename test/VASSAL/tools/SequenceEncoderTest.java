@@ -199,4 +199,62 @@ public class SequenceEncoderTest {
     assertEquals("", sd.nextToken());
     assertEquals(value2, sd.nextToken());
   }
+
+  @Test
+  public void testEscapedAndQuotedTokens() {
+    final String[] values = { "a,b", ",", "", "x\\", "'q'", "1,2,3", "end," };
+    final SequenceEncoder se = new SequenceEncoder(',');
+    for (String v : values) {
+      se.append(v);
+    }
+
+    final SequenceEncoder.Decoder sd =
+      new SequenceEncoder.Decoder(se.getValue(), ',');
+    for (String v : values) {
+      assertEquals(v, sd.nextToken());
+    }
+    assertFalse(sd.hasMoreTokens());
+  }
+
+  @Test
+  public void testTrailingDelimiter() {
+    final SequenceEncoder.Decoder sd = new SequenceEncoder.Decoder("a,", ',');
+    assertEquals("a", sd.nextToken());
+    assertTrue(sd.hasMoreTokens());
+    assertEquals("", sd.nextToken());
+    assertFalse(sd.hasMoreTokens());
+  }
+
+  @Test
+  public void testCopy() {
+    final SequenceEncoder.Decoder sd =
+      new SequenceEncoder.Decoder("a,b,c", ',');
+    sd.nextToken();
+    final SequenceEncoder.Decoder copy = sd.copy();
+    assertEquals("b", sd.nextToken());
+    assertEquals("b", copy.nextToken());
+    assertEquals("c", copy.nextToken());
+    assertFalse(copy.hasMoreTokens());
+    assertTrue(sd.hasMoreTokens());
+  }
+
+  @Test
+  public void testTypedTokens() {
+    final String value =
+      "-123,9223372036854775807,'7',x,-2147483648,true,'true',True,9\\,,5";
+
+    final SequenceEncoder.Decoder sd = new SequenceEncoder.Decoder(value, ',');
+    assertEquals(-123, sd.nextInt(0));
+    assertEquals(Long.MAX_VALUE, sd.nextLong(0));
+    assertEquals(7, sd.nextInt(0));
+    assertEquals(42, sd.nextInt(42));
+    assertEquals(Integer.MIN_VALUE, sd.nextInt(0));
+    assertTrue(sd.nextBoolean(false));
+    assertTrue(sd.nextBoolean(false));
+    assertFalse(sd.nextBoolean(true));
+    assertEquals(-1, sd.nextInt(-1));
+    assertEquals(5, sd.nextInt(0));
+    assertEquals(6, sd.nextInt(6));
+    assertFalse(sd.nextBoolean(false));
+  }
 }
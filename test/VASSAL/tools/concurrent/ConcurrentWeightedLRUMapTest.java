@@ -0,0 +1,119 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentWeightedLRUMapTest {
+
+  private static final ConcurrentWeightedLRUMap.Weigher<AtomicLong> weigher =
+    new ConcurrentWeightedLRUMap.Weigher<AtomicLong>() {
+      public long weigh(AtomicLong value) {
+        return value.get();
+      }
+    };
+
+  private ConcurrentWeightedLRUMap<String,AtomicLong> map;
+
+  @Before
+  public void setUp() {
+    map = new ConcurrentWeightedLRUMap<String,AtomicLong>(10, weigher);
+  }
+
+  @Test
+  public void testEvictLeastRecentlyUsed() {
+    map.put("a", new AtomicLong(4));
+    map.put("b", new AtomicLong(4));
+    assertNotNull(map.get("a"));
+
+    map.put("c", new AtomicLong(4));
+    assertEquals(2, map.size());
+    assertTrue(map.containsKey("a"));
+    assertFalse(map.containsKey("b"));
+    assertTrue(map.containsKey("c"));
+    assertEquals(8, map.getWeight());
+    assertEquals(1, map.getEvictionCount());
+  }
+
+  @Test
+  public void testKeepMostRecentlyUsed() {
+    map.put("a", new AtomicLong(4));
+    map.put("b", new AtomicLong(20));
+    assertEquals(1, map.size());
+    assertTrue(map.containsKey("b"));
+  }
+
+  @Test
+  public void testReweigh() {
+    final AtomicLong a = new AtomicLong(0);
+    map.put("a", a);
+    map.put("b", new AtomicLong(6));
+    map.put("c", new AtomicLong(4));
+    assertEquals(10, map.getWeight());
+
+    // weightless values are not evicted
+    map.put("d", new AtomicLong(1));
+    assertTrue(map.containsKey("a"));
+    assertFalse(map.containsKey("b"));
+
+    a.set(5);
+    map.reweigh("a");
+    assertEquals(10, map.getWeight());
+    assertTrue(map.containsKey("a"));
+    assertTrue(map.containsKey("c"));
+    assertTrue(map.containsKey("d"));
+
+    map.setBudget(5);
+    assertEquals(1, map.size());
+    assertTrue(map.containsKey("a"));
+  }
+
+  @Test
+  public void testConcurrentOperations() {
+    final AtomicLong a = new AtomicLong(2);
+    final AtomicLong b = new AtomicLong(3);
+
+    assertNull(map.putIfAbsent("a", a));
+    assertSame(a, map.putIfAbsent("a", b));
+    assertFalse(map.replace("a", b, b));
+    assertTrue(map.replace("a", a, b));
+    assertEquals(3, map.getWeight());
+    assertFalse(map.remove("a", a));
+    assertTrue(map.remove("a", b));
+    assertEquals(0, map.getWeight());
+    assertNull(map.replace("a", a));
+    assertTrue(map.isEmpty());
+  }
+
+  @Test
+  public void testHitsAndMisses() {
+    map.put("a", new AtomicLong(1));
+    map.get("a");
+    map.get("a");
+    map.get("b");
+    assertEquals(2, map.getHitCount());
+    assertEquals(1, map.getMissCount());
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+package VASSAL.tools.image;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+/**
+ * Compares the time {@link GeneralFilter} takes to scale an image on one
+ * thread with the time taken when the destination is split into bands
+ * resampled on all processors.
+ *
+ * Each case is run for a number of warmup iterations, so that the JIT
+ * has compiled the filter, and then timed over a number of measurement
+ * iterations, reporting the mean and standard deviation.
+ *
+ * It then scales square destinations of increasing size in one band and
+ * in two, reporting what the second band costs. Two bands on one
+ * processor do the work of one band and the cost of splitting; two
+ * processors save about half the work. Splitting pays where the half
+ * saved is well above the cost, which is how the least destination
+ * {@link GeneralFilter} splits was chosen.
+ *
+ * <pre>
+ * java VASSAL.tools.image.GeneralFilterBenchmark [width [height [scale]]]
+ * </pre>
+ */
+public class GeneralFilterBenchmark {
+  private static final int WARMUP = 3;
+  private static final int MEASURE = 10;
+
+  public static void main(String[] args) {
+    final int w = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+    final int h = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+    final float scale = args.length > 2 ? Float.parseFloat(args[2]) : 0.406f;
+
+    final int procs = Runtime.getRuntime().availableProcessors();
+    System.out.println(w + "x" + h + " at " + scale + ", " +
+                       procs + " processor(s)");
+
+    final int[] types = {
+      BufferedImage.TYPE_INT_ARGB,
+      BufferedImage.TYPE_INT_ARGB_PRE,
+      BufferedImage.TYPE_INT_RGB
+    };
+    final String[] names = { "ARGB", "ARGB_PRE", "RGB" };
+
+    for (int t = 0; t < types.length; ++t) {
+      final BufferedImage src = source(w, h, types[t]);
+      final Rectangle dst = new Rectangle(
+        0, 0, Math.max(1, (int) (w*scale)), Math.max(1, (int) (h*scale)));
+
+      report(names[t], 1, measure(src, dst, 1));
+      report(names[t], procs, measure(src, dst, procs));
+    }
+
+    System.out.println();
+    for (int side = 128; side <= 1024; side *= 2) {
+      final BufferedImage src = source((int) (side/scale), (int) (side/scale),
+                                       BufferedImage.TYPE_INT_ARGB_PRE);
+      final Rectangle dst = new Rectangle(0, 0, side, side);
+
+      final double one = mean(measure(src, dst, 1));
+      final double two = mean(measure(src, dst, 2));
+      System.out.printf(
+        "%4dx%-4d %7d px: %9.1f ms/op in 1 band, second band costs %6.1f%n",
+        side, side, side*side, one, two - one);
+    }
+  }
+
+  private static double mean(double[] ms) {
+    double mean = 0.0;
+    for (double t : ms) mean += t;
+    return mean / ms.length;
+  }
+
+  private static void report(String type, int bands, double[] ms) {
+    final double mean = mean(ms);
+
+    double var = 0.0;
+    for (double t : ms) var += (t - mean)*(t - mean);
+    final double sd = Math.sqrt(var / Math.max(1, ms.length - 1));
+
+    System.out.printf("%-8s %2d band(s): %9.1f ms/op +- %6.1f%n",
+                      type, bands, mean, sd);
+  }
+
+  /**
+   * @return the time taken by each measurement iteration, in milliseconds
+   */
+  private static double[] measure(BufferedImage src, Rectangle dst,
+                                  int bands) {
+    final GeneralFilter.Filter filter = new GeneralFilter.Lanczos3Filter();
+    final WritableRaster dstR =
+      src.getColorModel().createCompatibleWritableRaster(dst.width, dst.height);
+
+    for (int i = 0; i < WARMUP; ++i) {
+      GeneralFilter.zoom(dstR, dst, src, filter, bands);
+    }
+
+    final double[] ms = new double[MEASURE];
+    for (int i = 0; i < MEASURE; ++i) {
+      final long t = System.nanoTime();
+      GeneralFilter.zoom(dstR, dst, src, filter, bands);
+      ms[i] = (System.nanoTime() - t) / 1e6;
+    }
+    return ms;
+  }
+
+  /**
+   * @return an image with areas of constant color and areas of noise,
+   * like a scanned map board
+   */
+  private static BufferedImage source(int w, int h, int type) {
+    final BufferedImage img = new BufferedImage(w, h, type);
+    final Random r = new Random(42);
+    final int[] row = new int[w];
+    for (int y = 0; y < h; ++y) {
+      for (int x = 0; x < w; ++x) {
+        row[x] = (x/64 + y/64) % 2 == 0 ? 0xff336699 : r.nextInt() | 0xc0000000;
+      }
+      img.setRGB(0, y, w, 1, row, 0, w);
+    }
+    return img;
+  }
+}
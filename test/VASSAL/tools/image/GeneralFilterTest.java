@@ -21,11 +21,18 @@ package VASSAL.tools.image;
 
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
 import java.awt.Graphics2D;
 import java.io.File;
 import java.io.IOException;
+import java.util.Random;
 import javax.imageio.ImageIO;
 
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
 public class GeneralFilterTest {
   /** A program for running filter benchmarks. */
   public static void main(String[] args) throws IOException {
@@ -86,4 +93,67 @@ public class GeneralFilterTest {
 
     return time;
   }
+
+  private static BufferedImage noise(int w, int h, int type) {
+    final BufferedImage img = new BufferedImage(w, h, type);
+    final Random r = new Random(42);
+    for (int y = 0; y < h; ++y) {
+      for (int x = 0; x < w; ++x) {
+        // mix areas of constant color with noise
+        img.setRGB(x, y, (x/40 + y/30) % 3 == 0 ? 0x80336699 : r.nextInt());
+      }
+    }
+    return img;
+  }
+
+  private static int[] zoom(BufferedImage src, Rectangle dst, Rectangle tile,
+                            int bands) {
+    final WritableRaster dstR = src.getColorModel()
+      .createCompatibleWritableRaster(tile.width, tile.height)
+      .createWritableTranslatedChild(tile.x, tile.y);
+    GeneralFilter.zoom(dstR, dst, src, new GeneralFilter.Lanczos3Filter(),
+                       bands);
+    return ((DataBufferInt) dstR.getDataBuffer()).getData();
+  }
+
+  private static void assertBandsMatch(int type, float scale) {
+    final BufferedImage src = noise(400, 300, type);
+    final Rectangle dst = new Rectangle(
+      0, 0, (int) (400*scale), (int) (300*scale));
+
+    final int[] serial = zoom(src, dst, dst, 1);
+    for (int bands = 2; bands <= 7; ++bands) {
+      assertArrayEquals(serial, zoom(src, dst, dst, bands));
+    }
+
+    // a tile from the middle of the destination
+    final Rectangle tile = new Rectangle(
+      dst.width/4, dst.height/3, dst.width/2, dst.height/2);
+    assertArrayEquals(zoom(src, dst, tile, 1), zoom(src, dst, tile, 5));
+  }
+
+  @Test
+  public void testBandsMatchOpaque() {
+    assertBandsMatch(BufferedImage.TYPE_INT_RGB, 0.37f);
+    assertBandsMatch(BufferedImage.TYPE_INT_RGB, 1.6f);
+  }
+
+  @Test
+  public void testBandsMatchPremultiplied() {
+    assertBandsMatch(BufferedImage.TYPE_INT_ARGB_PRE, 0.37f);
+    assertBandsMatch(BufferedImage.TYPE_INT_ARGB_PRE, 1.6f);
+  }
+
+  @Test
+  public void testBandsMatchUnpremultiplied() {
+    assertBandsMatch(BufferedImage.TYPE_INT_ARGB, 0.37f);
+    assertBandsMatch(BufferedImage.TYPE_INT_ARGB, 1.6f);
+  }
+
+  @Test
+  public void testMoreBandsThanRows() {
+    final BufferedImage src = noise(50, 10, BufferedImage.TYPE_INT_ARGB);
+    final Rectangle dst = new Rectangle(0, 0, 25, 5);
+    assertArrayEquals(zoom(src, dst, dst, 1), zoom(src, dst, dst, 8));
+  }
 }
@@ -0,0 +1,170 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+package VASSAL.tools.image.svg;
+
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares the rate at which tiles of a large SVG board are rendered from
+ * one shared {@link SVGRenderer}, which builds a GVT tree once for each
+ * thread, with the rate when each tile has a renderer of its own, as each
+ * tile op had before, which parses the document and builds the tree for
+ * every tile.
+ *
+ * A synthetic board of hexes, paths and labels is rendered in 256x256
+ * tiles, on one thread and on all processors.
+ *
+ * <pre>
+ * java VASSAL.tools.image.svg.SVGRendererBenchmark [hexes]
+ * </pre>
+ */
+public class SVGRendererBenchmark {
+  private static final int RUNS = 3;
+  private static final int TILE = 256;
+
+  public static void main(String[] args) throws Exception {
+    final int hexes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    final byte[] svg = board(hexes);
+
+    final SVGRenderer probe = renderer(svg);
+    final int w = probe.render().getWidth();
+    final int h = probe.render().getHeight();
+
+    final List<Rectangle2D> tiles = new ArrayList<Rectangle2D>();
+    for (int y = 0; y < h; y += TILE) {
+      for (int x = 0; x < w; x += TILE) {
+        tiles.add(new Rectangle2D.Float(
+          x, y, Math.min(TILE, w-x), Math.min(TILE, h-y)));
+      }
+    }
+
+    System.out.println(w + "x" + h + ", " + svg.length + " bytes, " +
+                       tiles.size() + " tiles");
+
+    final int procs = Runtime.getRuntime().availableProcessors();
+
+    report("renderer per tile", 1, run(svg, tiles, 1, false));
+    report("renderer per tile", procs, run(svg, tiles, procs, false));
+    report("shared renderer", 1, run(svg, tiles, 1, true));
+    report("shared renderer", procs, run(svg, tiles, procs, true));
+  }
+
+  private static void report(String label, int threads,
+                             double tilesPerSecond) {
+    System.out.printf("%-18s %2d thread(s): %8.1f tiles/s%n",
+                      label, threads, tilesPerSecond);
+  }
+
+  /**
+   * @return the best rate over several runs, in tiles per second
+   */
+  private static double run(final byte[] svg, List<Rectangle2D> tiles,
+                            int threads, final boolean shared)
+                                throws IOException, InterruptedException,
+                                       ExecutionException {
+    final ExecutorService ex = Executors.newFixedThreadPool(threads);
+    try {
+      double best = 0.0;
+      for (int run = 0; run < RUNS; ++run) {
+        final SVGRenderer r = shared ? renderer(svg) : null;
+
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        final long t = System.nanoTime();
+        for (final Rectangle2D aoi : tiles) {
+          futures.add(ex.submit(new Callable<Void>() {
+            public Void call() throws IOException {
+              (shared ? r : renderer(svg)).render(0.0, 1.0, aoi);
+              return null;
+            }
+          }));
+        }
+
+        for (Future<?> f : futures) f.get();
+
+        best = Math.max(best, tiles.size() / ((System.nanoTime() - t) / 1e9));
+      }
+      return best;
+    }
+    finally {
+      ex.shutdown();
+    }
+  }
+
+  private static SVGRenderer renderer(byte[] svg) throws IOException {
+    return new SVGRenderer("file:/board.svg", new ByteArrayInputStream(svg));
+  }
+
+  /**
+   * @return a board of hexes, each with a terrain path and a label
+   */
+  private static byte[] board(int hexes) {
+    final int cols = (int) Math.ceil(Math.sqrt(hexes));
+    final int rows = (hexes + cols - 1) / cols;
+    final double s = 40.0;
+    final double dx = 1.5*s;
+    final double dy = Math.sqrt(3.0)*s;
+
+    final StringBuilder b = new StringBuilder();
+    b.append("<svg xmlns='http://www.w3.org/2000/svg' width='")
+     .append((int) (cols*dx + s)).append("px' height='")
+     .append((int) ((rows + 0.5)*dy)).append("px'>");
+
+    final Random r = new Random(42);
+    for (int i = 0; i < hexes; ++i) {
+      final int c = i % cols;
+      final int row = i / cols;
+      final double cx = s + c*dx;
+      final double cy = dy/2 + row*dy + (c % 2)*dy/2;
+
+      b.append("<g transform='translate(").append(cx).append(',')
+       .append(cy).append(")'>");
+
+      b.append("<polygon points='");
+      for (int k = 0; k < 6; ++k) {
+        final double a = Math.PI/3*k;
+        b.append(s*Math.cos(a)).append(',').append(s*Math.sin(a)).append(' ');
+      }
+      b.append("' fill='#").append(Integer.toHexString(0x808080 |
+                                                     r.nextInt(0x7f7f7f)))
+       .append("' stroke='black' stroke-width='2'/>");
+
+      b.append("<path d='M").append(-s/2).append(',').append(r.nextInt(20))
+       .append(" C0,").append(-r.nextInt(30)).append(' ').append(s/4)
+       .append(',').append(r.nextInt(30)).append(' ').append(s/2)
+       .append(",0' fill='none' stroke='blue' stroke-width='3'/>");
+
+      b.append("<text x='-12' y='").append(-s/2)
+       .append("' font-size='10'>").append(c).append('.').append(row)
+       .append("</text></g>");
+    }
+
+    b.append("</svg>");
+    return b.toString().getBytes();
+  }
+}
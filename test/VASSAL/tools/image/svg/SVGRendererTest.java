@@ -0,0 +1,221 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.image.svg;
+
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.batik.ext.awt.image.rendered.TileCache;
+import org.apache.batik.gvt.GraphicsNode;
+import org.junit.Test;
+
+import VASSAL.tools.opcache.OpCache;
+
+import static org.junit.Assert.*;
+
+public class SVGRendererTest {
+
+  private static final String SVG =
+    "<svg xmlns='http://www.w3.org/2000/svg' width='200px' height='100px'>" +
+    "<rect x='0' y='0' width='100' height='100' fill='#ff0000'/>" +
+    "<rect x='100' y='0' width='100' height='100' fill='#0000ff'/>" +
+    "<circle cx='100' cy='50' r='30' fill='#00ff00' stroke='black'/>" +
+    "<text x='10' y='20' font-size='12'>label</text>" +
+    "</svg>";
+
+  // filters keep rendering state in the GVT tree
+  private static final String FILTERED_SVG =
+    "<svg xmlns='http://www.w3.org/2000/svg' width='200px' height='100px'>" +
+    "<defs>" +
+    "<filter id='blur'><feGaussianBlur stdDeviation='4'/></filter>" +
+    "<filter id='shadow'>" +
+    "<feOffset in='SourceAlpha' dx='3' dy='3' result='off'/>" +
+    "<feGaussianBlur in='off' stdDeviation='2' result='blur'/>" +
+    "<feMerge><feMergeNode in='blur'/><feMergeNode in='SourceGraphic'/>" +
+    "</feMerge></filter>" +
+    "</defs>" +
+    "<rect x='10' y='10' width='80' height='80' fill='#ff0000'" +
+    " filter='url(#blur)'/>" +
+    "<circle cx='140' cy='50' r='30' fill='#00ff00' filter='url(#shadow)'/>" +
+    "</svg>";
+
+  private static SVGRenderer renderer() throws IOException {
+    return renderer(SVG);
+  }
+
+  private static SVGRenderer renderer(String svg) throws IOException {
+    return new SVGRenderer(
+      "file:/test.svg", new ByteArrayInputStream(svg.getBytes()));
+  }
+
+  private static void assertSameImage(BufferedImage a, BufferedImage b) {
+    assertEquals(a.getWidth(), b.getWidth());
+    assertEquals(a.getHeight(), b.getHeight());
+    for (int y = 0; y < a.getHeight(); ++y) {
+      for (int x = 0; x < a.getWidth(); ++x) {
+        assertEquals(a.getRGB(x, y), b.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void testRender() throws IOException {
+    final BufferedImage img = renderer().render(0.0, 2.0);
+    assertEquals(400, img.getWidth());
+    assertEquals(200, img.getHeight());
+    assertEquals(0xffff0000, img.getRGB(20, 180));
+    assertEquals(0xff0000ff, img.getRGB(380, 180));
+    assertEquals(0xff00ff00, img.getRGB(200, 100));
+  }
+
+  @Test
+  public void testRenderTile() throws IOException {
+    final SVGRenderer r = renderer();
+    final BufferedImage full = r.render();
+
+    final BufferedImage tile =
+      r.render(0.0, 1.0, new Rectangle2D.Float(50, 25, 100, 50));
+    assertEquals(100, tile.getWidth());
+    assertEquals(50, tile.getHeight());
+    assertEquals(full.getRGB(60, 70), tile.getRGB(10, 45));
+    assertEquals(full.getRGB(140, 70), tile.getRGB(90, 45));
+    assertEquals(full.getRGB(100, 50), tile.getRGB(50, 25));
+  }
+
+  @Test
+  public void testReuseTree() throws IOException {
+    // renderings from a shared tree match those from fresh ones
+    final SVGRenderer r = renderer();
+    assertSameImage(renderer().render(30.0, 1.5), r.render(30.0, 1.5));
+    assertSameImage(renderer().render(), r.render());
+    assertSameImage(renderer().render(90.0, 0.5), r.render(90.0, 0.5));
+  }
+
+  @Test
+  public void testTreeReused() throws Exception {
+    final SVGRenderer r = renderer(FILTERED_SVG);
+    final GraphicsNode mine = r.getRoot();
+    assertSame(mine, r.getRoot());
+
+    // a tree not in use is lent to any thread
+    final ExecutorService ex = Executors.newSingleThreadExecutor();
+    try {
+      final GraphicsNode theirs = ex.submit(new Callable<GraphicsNode>() {
+        public GraphicsNode call() throws Exception {
+          return r.getRoot();
+        }
+      }).get();
+      assertSame(mine, theirs);
+      assertEquals(1, r.getTreeCount());
+    }
+    finally {
+      ex.shutdown();
+    }
+  }
+
+  @Test
+  public void testTreesFreedWithRenderer() throws Exception {
+    final ExecutorService ex = Executors.newSingleThreadExecutor();
+    try {
+      // the thread which rendered the image outlives the renderer
+      final WeakReference<GraphicsNode> root =
+        ex.submit(new Callable<WeakReference<GraphicsNode>>() {
+          public WeakReference<GraphicsNode> call() throws Exception {
+            final SVGRenderer r = renderer(FILTERED_SVG);
+            r.render();
+            return new WeakReference<GraphicsNode>(r.getRoot());
+          }
+        }).get();
+
+      // Batik's own cache of recent tiles holds them, and so the tree,
+      // until pushed out by others; empty it, then restore its default
+      TileCache.setSize(0);
+      TileCache.setSize(50);
+
+      for (int i = 0; i < 50 && root.get() != null; ++i) {
+        System.gc();
+        Thread.sleep(10);
+      }
+      assertNull(root.get());
+    }
+    finally {
+      ex.shutdown();
+    }
+  }
+
+  @Test
+  public void testConcurrentTiles() throws Exception {
+    assertConcurrentTiles(SVG);
+  }
+
+  @Test
+  public void testConcurrentFilteredTiles() throws Exception {
+    assertConcurrentTiles(FILTERED_SVG);
+  }
+
+  private static void assertConcurrentTiles(String svg) throws Exception {
+    final List<Rectangle2D> aois = new ArrayList<Rectangle2D>();
+    for (int y = 0; y < 100; y += 25) {
+      for (int x = 0; x < 200; x += 25) {
+        aois.add(new Rectangle2D.Float(x, y, 25, 25));
+      }
+    }
+
+    final List<BufferedImage> expected = new ArrayList<BufferedImage>();
+    for (Rectangle2D aoi : aois) {
+      expected.add(renderer(svg).render(0.0, 1.0, aoi));
+    }
+
+    final ExecutorService ex = Executors.newFixedThreadPool(4);
+    try {
+      for (int run = 0; run < 5; ++run) {
+        final SVGRenderer r = renderer(svg);
+        final List<Future<BufferedImage>> futures =
+          new ArrayList<Future<BufferedImage>>();
+        for (final Rectangle2D aoi : aois) {
+          futures.add(ex.submit(new Callable<BufferedImage>() {
+            public BufferedImage call() {
+              return r.render(0.0, 1.0, aoi);
+            }
+          }));
+        }
+
+        for (int i = 0; i < aois.size(); ++i) {
+          assertSameImage(expected.get(i), futures.get(i).get());
+        }
+
+        // no more trees than the OpCache has threads
+        assertTrue(r.getTreeCount() <= OpCache.THREADS);
+      }
+    }
+    finally {
+      ex.shutdown();
+    }
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.image.tilecache;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import VASSAL.tools.DataArchive;
+import VASSAL.tools.io.ZipArchive;
+
+import static org.junit.Assert.*;
+import static VASSAL.tools.image.AssertImage.*;
+
+public class LazyImageTileDiskCacheTest {
+
+  private static final String BIG = "images/big.png";
+  private static final String SMALL = "images/small.png";
+
+  private File dir;
+  private DataArchive archive;
+  private LazyImageTileDiskCache cache;
+
+  private static void addImage(ZipArchive za, String name, int w, int h)
+                                                          throws IOException {
+    final Random r = new Random(w);
+    final BufferedImage img =
+      new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < h; ++y) {
+      for (int x = 0; x < w; ++x) {
+        img.setRGB(x, y, r.nextInt(5) == 0 ? r.nextInt() : x*y);
+      }
+    }
+
+    final OutputStream out = za.getOutputStream(name);
+    ImageIO.write(img, "png", out);
+    out.close();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    dir = File.createTempFile("LazyImageTileDiskCacheTest", "");
+    dir.delete();
+    dir.mkdir();
+
+    final File zip = new File(dir, "module.zip");
+    final ZipArchive za = new ZipArchive(zip);
+    addImage(za, BIG, 600, 300);
+    addImage(za, SMALL, 100, 80);
+    za.close();
+
+    archive = new DataArchive(zip.getPath());
+    cache = new LazyImageTileDiskCache(
+      new File(dir, "tiles").getPath(), archive, 256, 256
+    );
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    archive.close();
+    FileUtils.deleteDirectory(dir);
+  }
+
+  private void waitForPack(String name) throws Exception {
+    for (int i = 0; i < 600 && !cache.isFresh(name); ++i) {
+      Thread.sleep(50);
+    }
+    assertTrue(cache.isFresh(name));
+  }
+
+  @Test
+  public void testSmallImageIsNotTiled() throws IOException {
+    assertFalse(cache.tileExists(SMALL, 0, 0, 1.0));
+  }
+
+  @Test
+  public void testTileSizes() throws IOException {
+    assertTrue(cache.tileExists(BIG, 2, 1, 1.0));
+    assertFalse(cache.tileExists(BIG, 3, 0, 1.0));
+    assertTrue(cache.tileExists(BIG, 1, 0, 0.5));
+    assertFalse(cache.tileExists(BIG, 2, 0, 0.5));
+    assertEquals(new Dimension(88, 44), cache.getTileSize(BIG, 2, 1, 1.0));
+    assertEquals(new Dimension(150, 75), cache.getTileSize(BIG, 0, 0, 0.25));
+  }
+
+  @Test
+  public void testOnDemandTilesMatchPack() throws Exception {
+    // tiles sliced on demand are the same as those in the tile pack
+    final BufferedImage t21 = cache.getTile(BIG, 2, 1, 1.0);
+    final BufferedImage h00 = cache.getTile(BIG, 0, 0, 0.5);
+    assertEquals(88, t21.getWidth());
+    assertEquals(44, t21.getHeight());
+
+    waitForPack(BIG);
+
+    final TilePack pack = new TilePack(
+      new File(new File(dir, "tiles"), TileUtils.packName(BIG)));
+    assertImageEquals(pack.getTile(2, 1, 1), t21);
+    assertImageEquals(pack.getTile(0, 0, 2), h00);
+    assertImageEquals(t21, cache.getTile(BIG, 2, 1, 1.0));
+  }
+
+  @Test
+  public void testLargeImageIsSlicedInTiler() throws Exception {
+    // no image may be loaded here, so the tiler process slices them
+    final LazyImageTileDiskCache c = new LazyImageTileDiskCache(
+      new File(dir, "tiles").getPath(), archive, 256, 256
+    ) {
+      @Override
+      protected long getMaxSourceBytes() {
+        return 0;
+      }
+
+      @Override
+      protected BufferedImage getSource(String name) {
+        throw new AssertionError("loaded " + name);
+      }
+    };
+
+    final BufferedImage t21 = c.getTile(BIG, 2, 1, 1.0);
+    assertEquals(88, t21.getWidth());
+    assertEquals(44, t21.getHeight());
+    assertImageEquals(cache.getTile(BIG, 2, 1, 1.0), t21);
+  }
+
+  @Test
+  public void testSlicingContinuesAfterFailure() throws Exception {
+    final LazyImageTileDiskCache c = new LazyImageTileDiskCache(
+      new File(dir, "tiles").getPath(), archive, 256, 256
+    ) {
+      private boolean thrown = false;
+
+      @Override
+      protected void slice(String name) throws IOException {
+        if (!thrown) {
+          thrown = true;
+          throw new IllegalStateException("first slice fails");
+        }
+        super.slice(name);
+      }
+    };
+    cache = c;
+
+    // the first image fails, but a later one is still sliced
+    c.schedule(SMALL, false);
+    c.schedule(BIG, false);
+    waitForPack(BIG);
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.image.tilecache;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import VASSAL.tools.io.ZipArchive;
+
+import static org.junit.Assert.*;
+
+public class TileCacheManifestTest {
+
+  private static final String NAME = "images/map.png";
+
+  private File dir;
+  private File zip;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = File.createTempFile("TileCacheManifestTest", "");
+    dir.delete();
+    dir.mkdir();
+
+    zip = new File(dir, "module.zip");
+    writeImage(new byte[] { 1, 2, 3 });
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(dir);
+  }
+
+  private void writeImage(byte[] data) throws IOException {
+    final ZipArchive za = new ZipArchive(zip);
+    za.add(NAME, data);
+    za.close();
+  }
+
+  private void writePack(File cdir) throws IOException {
+    final TilePackWriter w = new TilePackWriter(
+      new File(cdir, TileUtils.packName(NAME)), TilePack.CODEC_NONE);
+    w.add(0, 0, 1, new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB));
+    w.finish();
+  }
+
+  private boolean isFresh(File cdir) throws IOException {
+    final ZipArchive za = new ZipArchive(zip);
+    try {
+      final ImageTileDiskCache tc = new ImageTileDiskCache(cdir.getPath());
+      final boolean fresh = tc.isFresh(za, NAME, 256, 256);
+      tc.getManifest().save();
+      return fresh;
+    }
+    finally {
+      za.close();
+    }
+  }
+
+  private void setFresh(File cdir) throws IOException {
+    final ZipArchive za = new ZipArchive(zip);
+    try {
+      final ImageTileDiskCache tc = new ImageTileDiskCache(cdir.getPath());
+      tc.setFresh(za, NAME, 256, 256);
+      tc.getManifest().save();
+    }
+    finally {
+      za.close();
+    }
+  }
+
+  @Test
+  public void testContentKey() throws IOException {
+    final ZipArchive za = new ZipArchive(zip);
+    try {
+      assertEquals("55bc801d:3:256x256",
+        TileCacheManifest.contentKey(za, NAME, 256, 256));
+    }
+    finally {
+      za.close();
+    }
+  }
+
+  @Test
+  public void testFreshByContent() throws IOException {
+    final File cdir = new File(dir, "a");
+    writePack(cdir);
+    setFresh(cdir);
+
+    // the tiles are fresh, whatever their modification time
+    new File(cdir, TileUtils.packName(NAME)).setLastModified(0);
+    assertTrue(isFresh(cdir));
+
+    // the tiles are stale once the image changes, even if they are newer
+    writeImage(new byte[] { 4, 5, 6 });
+    new File(cdir, TileUtils.packName(NAME)).setLastModified(
+      System.currentTimeMillis() + 100000);
+    assertFalse(isFresh(cdir));
+  }
+
+  @Test
+  public void testFreshByTimeWithoutManifest() throws IOException {
+    final File cdir = new File(dir, "a");
+    writePack(cdir);
+    new File(cdir, TileUtils.packName(NAME)).setLastModified(
+      System.currentTimeMillis() + 100000);
+    assertTrue(isFresh(cdir));
+
+    // the content is recorded for next time
+    assertNotNull(new TileCacheManifest(cdir).get(NAME));
+  }
+
+  @Test
+  public void testShareBetweenCaches() throws IOException {
+    final File a = new File(dir, "a");
+    writePack(a);
+    setFresh(a);
+
+    final File b = new File(dir, "b");
+    b.mkdir();
+    assertTrue(isFresh(b));
+    assertTrue(new File(b, TileUtils.packName(NAME)).isFile());
+    assertEquals(new TileCacheManifest(a).get(NAME),
+                 new TileCacheManifest(b).get(NAME));
+
+    // nothing to share once the content differs
+    writeImage(new byte[] { 4, 5, 6 });
+    final File c = new File(dir, "c");
+    c.mkdir();
+    assertFalse(isFresh(c));
+  }
+}
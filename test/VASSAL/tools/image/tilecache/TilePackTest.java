@@ -0,0 +1,342 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.image.tilecache;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static VASSAL.tools.image.AssertImage.*;
+
+public class TilePackTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = File.createTempFile("TilePackTest", "");
+    dir.delete();
+    dir.mkdir();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(dir);
+  }
+
+  private static BufferedImage tile(int w, int h, long seed) {
+    final Random r = new Random(seed);
+    final BufferedImage img =
+      new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+    for (int y = 0; y < h; ++y) {
+      for (int x = 0; x < w; ++x) {
+        img.setRGB(x, y, r.nextInt(3) == 0 ? r.nextInt() : 0xFF000000 | x);
+      }
+    }
+    return img;
+  }
+
+  private void assertRoundTrip(int codec) throws IOException {
+    final File f = new File(dir, "a/ab/test.pack");
+    final TilePackWriter w = new TilePackWriter(f, codec);
+    w.add(0, 0, 1, tile(256, 256, 1));
+    w.add(1, 0, 1, tile(44, 256, 2));
+    w.add(0, 0, 2, tile(150, 128, 3));
+    w.finish();
+
+    final TilePack pack = new TilePack(f);
+    assertTrue(pack.hasTile(1, 0, 1));
+    assertFalse(pack.hasTile(0, 1, 1));
+    assertFalse(pack.hasTile(1, 0, 2));
+    assertEquals(new Dimension(44, 256), pack.getTileSize(1, 0, 1));
+    assertImageEquals(tile(256, 256, 1), pack.getTile(0, 0, 1));
+    assertImageEquals(tile(44, 256, 2), pack.getTile(1, 0, 1));
+    assertImageEquals(tile(150, 128, 3), pack.getTile(0, 0, 2));
+  }
+
+  @Test
+  public void testRoundTripNone() throws IOException {
+    assertRoundTrip(TilePack.CODEC_NONE);
+  }
+
+  @Test
+  public void testRoundTripDeflate() throws IOException {
+    assertRoundTrip(TilePack.CODEC_DEFLATE);
+  }
+
+  @Test(expected=IOException.class)
+  public void testMissingTile() throws IOException {
+    final File f = new File(dir, "test.pack");
+    final TilePackWriter w = new TilePackWriter(f, TilePack.CODEC_DEFLATE);
+    w.add(0, 0, 1, tile(1, 1, 1));
+    w.finish();
+
+    new TilePack(f).getTile(0, 0, 2);
+  }
+
+  @Test(expected=IOException.class)
+  public void testNotAPack() throws IOException {
+    final File f = new File(dir, "test.pack");
+    FileUtils.writeByteArrayToFile(f, new byte[100]);
+    new TilePack(f);
+  }
+
+  @Test
+  public void testAbortLeavesNoPack() throws IOException {
+    final File f = new File(dir, "test.pack");
+    final TilePackWriter w = new TilePackWriter(f, TilePack.CODEC_NONE);
+    w.add(0, 0, 1, tile(1, 1, 1));
+    w.abort();
+
+    assertFalse(f.exists());
+    assertEquals(0, dir.list().length);
+  }
+
+  @Test
+  public void testInterruptedReader() throws IOException {
+    final File f = new File(dir, "test.pack");
+    final TilePackWriter w = new TilePackWriter(f, TilePack.CODEC_DEFLATE);
+    w.add(0, 0, 1, tile(16, 16, 1));
+    w.finish();
+
+    final TilePack pack = new TilePack(f);
+    try {
+      // the interrupted read fails
+      Thread.currentThread().interrupt();
+      try {
+        pack.getTile(0, 0, 1);
+        fail("interrupted read succeeded");
+      }
+      catch (IOException e) {
+        // expected
+      }
+      finally {
+        Thread.interrupted();
+      }
+
+      // but the pack can still be read
+      assertImageEquals(tile(16, 16, 1), pack.getTile(0, 0, 1));
+    }
+    finally {
+      pack.close();
+    }
+  }
+
+  @Test
+  public void testMigrate() throws IOException {
+    final String name = "images/board.png";
+    final ImageTileDiskCache cache =
+      new ImageTileDiskCache(dir.getAbsolutePath());
+
+    // tiles as written before tile packs
+    final File t00 = new File(dir, TileUtils.tileName(name, 0, 0, 1));
+    final File t01 = new File(dir, TileUtils.tileName(name, 0, 1, 1));
+    final File h00 = new File(dir, TileUtils.tileName(name, 0, 0, 2));
+    t00.getParentFile().mkdirs();
+    t01.getParentFile().mkdirs();
+    h00.getParentFile().mkdirs();
+    TileUtils.write(tile(64, 64, 1), t00);
+    TileUtils.write(tile(64, 20, 2), t01);
+    TileUtils.write(tile(32, 42, 3), h00);
+    t00.setLastModified(1000000000000L);
+
+    // legacy tiles are read until they are migrated
+    assertTrue(cache.tileExists(name, 0, 1, 1.0));
+    assertImageEquals(tile(64, 20, 2), cache.getTile(name, 0, 1, 1.0));
+
+    assertTrue(cache.migrate(name));
+    assertFalse(t00.exists());
+    assertFalse(t01.exists());
+    assertFalse(h00.exists());
+
+    final File pf = new File(dir, TileUtils.packName(name));
+    assertEquals(0L, t00.lastModified());
+    assertEquals(1000000000000L, pf.lastModified());
+
+    assertTrue(cache.tileExists(name, 0, 1, 1.0));
+    assertFalse(cache.tileExists(name, 1, 0, 1.0));
+    assertEquals(new Dimension(32, 42), cache.getTileSize(name, 0, 0, 0.5));
+    assertImageEquals(tile(64, 64, 1), cache.getTile(name, 0, 0, 1.0));
+    assertImageEquals(tile(32, 42, 3), cache.getTile(name, 0, 0, 0.5));
+
+    // nothing left to migrate
+    assertFalse(cache.migrate(name));
+  }
+
+  @Test
+  public void testTileBeyond2GB() throws IOException {
+    // a sparse pack holding one uncompressed tile at 3GB
+    final BufferedImage img = tile(4, 2, 5);
+    final int[] px = new int[8];
+    img.getRGB(0, 0, 4, 2, px, 0, 4);
+
+    final long off = 3L << 30;
+    final File f = new File(dir, "big.pack");
+    final RandomAccessFile raf = new RandomAccessFile(f, "rw");
+    try {
+      raf.write(TilePack.SIGNATURE);
+      raf.writeInt(TilePack.VERSION);
+      raf.writeInt(TilePack.CODEC_NONE);
+
+      raf.seek(off);
+      for (int p : px) raf.writeInt(p);
+
+      final long ioff = raf.getFilePointer();
+      for (int i : new int[] { 1, 0, 0, 4, 2, img.getType() }) {
+        raf.writeInt(i);
+      }
+      raf.writeLong(off);
+      raf.writeInt(4 * px.length);
+
+      raf.writeLong(ioff);
+      raf.writeInt(1);
+      raf.writeInt(TilePack.END_SIGNATURE);
+    }
+    finally {
+      raf.close();
+    }
+
+    final TilePack pack = new TilePack(f);
+    try {
+      assertImageEquals(img, pack.getTile(0, 0, 1));
+    }
+    finally {
+      pack.close();
+    }
+  }
+
+  @Test
+  public void testReplacedPackIsReopened() throws IOException {
+    final String name = "images/board.png";
+    final ImageTileDiskCache cache =
+      new ImageTileDiskCache(dir.getAbsolutePath());
+    final File f = new File(dir, TileUtils.packName(name));
+
+    TilePackWriter w = new TilePackWriter(f, TilePack.CODEC_DEFLATE);
+    w.add(0, 0, 1, tile(8, 8, 1));
+    w.finish();
+    assertImageEquals(tile(8, 8, 1), cache.getTile(name, 0, 0, 1.0));
+
+    // the open pack is closed before it is replaced
+    final TilePack old = cache.getPack(name);
+    old.release();
+    cache.closePack(name);
+    w = new TilePackWriter(f, TilePack.CODEC_DEFLATE);
+    w.add(0, 0, 1, tile(8, 8, 2));
+    w.finish();
+    f.setLastModified(f.lastModified() + 2000);
+
+    final TilePack pack = cache.getPack(name);
+    pack.release();
+    assertNotSame(old, pack);
+    assertImageEquals(tile(8, 8, 2), cache.getTile(name, 0, 0, 1.0));
+    cache.close();
+  }
+
+  @Test
+  public void testReplacedPackIsClosedAfterReading() throws IOException {
+    final String name = "images/board.png";
+    final ImageTileDiskCache cache =
+      new ImageTileDiskCache(dir.getAbsolutePath());
+    final File f = new File(dir, TileUtils.packName(name));
+
+    TilePackWriter w = new TilePackWriter(f, TilePack.CODEC_DEFLATE);
+    w.add(0, 0, 1, tile(8, 8, 1));
+    w.finish();
+
+    // another thread is reading the pack when it is rewritten
+    final TilePack reading = cache.getPack(name);
+    w = new TilePackWriter(f, TilePack.CODEC_DEFLATE);
+    w.add(0, 0, 1, tile(8, 8, 2));
+    w.finish();
+    f.setLastModified(f.lastModified() + 2000);
+
+    assertImageEquals(tile(8, 8, 2), cache.getTile(name, 0, 0, 1.0));
+
+    // the replaced pack stays open for its reader
+    assertFalse(reading.acquire());
+    assertImageEquals(tile(8, 8, 1), reading.getTile(0, 0, 1));
+    reading.release();
+
+    try {
+      reading.getTile(0, 0, 1);
+      fail("replaced pack not closed");
+    }
+    catch (IOException e) {
+      // expected
+    }
+    cache.close();
+  }
+
+  @Test
+  public void testConcurrentReaders() throws Exception {
+    final String name = "images/board.png";
+    final ImageTileDiskCache cache =
+      new ImageTileDiskCache(dir.getAbsolutePath());
+    final File f = new File(dir, TileUtils.packName(name));
+
+    final TilePackWriter w = new TilePackWriter(f, TilePack.CODEC_DEFLATE);
+    w.add(0, 0, 1, tile(64, 64, 1));
+    w.finish();
+
+    // readers on many threads, while the pack is closed and reopened
+    final Thread[] threads = new Thread[4];
+    final Throwable[] failure = new Throwable[1];
+    for (int i = 0; i < threads.length; ++i) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int j = 0; j < 200; ++j) {
+              assertImageEquals(tile(64, 64, 1),
+                                cache.getTile(name, 0, 0, 1.0));
+            }
+          }
+          catch (Throwable t) {
+            synchronized (failure) {
+              failure[0] = t;
+            }
+          }
+        }
+      };
+      threads[i].start();
+    }
+
+    for (int j = 0; j < 50; ++j) {
+      cache.closePack(name);
+      Thread.yield();
+    }
+
+    for (Thread t : threads) t.join();
+    synchronized (failure) {
+      if (failure[0] != null) throw new AssertionError(failure[0]);
+    }
+    cache.close();
+  }
+}
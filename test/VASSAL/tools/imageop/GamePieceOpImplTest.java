@@ -0,0 +1,68 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.imageop;
+
+import org.junit.Test;
+
+import VASSAL.counters.GamePiece;
+import VASSAL.counters.Properties;
+import VASSAL.counters.TestTrait;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class GamePieceOpImplTest {
+
+  private static GamePiece piece(String image) {
+    final GamePiece inner = mock(GamePiece.class);
+    when(inner.getType()).thenReturn("piece;;;" + image + ";Infantry");
+    when(inner.getProperty(Properties.VISIBLE_STATE)).thenReturn("");
+    return new TestTrait(inner);
+  }
+
+  @Test
+  public void testIdenticalPiecesAreEqual() {
+    final GamePieceOp a = new GamePieceOpImpl(piece("inf.png"));
+    final GamePieceOp b = new GamePieceOpImpl(piece("inf.png"));
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+
+    // so operations on them are equal too
+    assertEquals(Op.rotateScale(a, 60, 1.0), Op.rotateScale(b, 60, 1.0));
+    assertEquals(a.newKey(), b.newKey());
+  }
+
+  @Test
+  public void testDifferentTypesAreNotEqual() {
+    assertFalse(new GamePieceOpImpl(piece("inf.png")).equals(
+                new GamePieceOpImpl(piece("cav.png"))));
+  }
+
+  @Test
+  public void testDifferentStatesAreNotEqual() {
+    final GamePiece p = piece("inf.png");
+    final GamePieceOp a = new GamePieceOpImpl(p);
+    ((TestTrait) p).mySetState("flipped");
+    final GamePieceOp b = new GamePieceOpImpl(p);
+    assertFalse(a.equals(b));
+    assertTrue(a.isChanged());
+    assertFalse(b.isChanged());
+  }
+}
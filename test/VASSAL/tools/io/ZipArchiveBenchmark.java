@@ -0,0 +1,173 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+package VASSAL.tools.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Compares the time {@link ZipArchive} takes to save an archive after
+ * one entry is modified with the time taken by the way it saved before,
+ * which recompressed every unmodified entry.
+ *
+ * A synthetic archive of partly compressible entries is written to the
+ * temporary directory, then saved repeatedly by both methods. The time
+ * taken to write every entry anew is also compared with compression on
+ * one thread and on all processors.
+ *
+ * <pre>
+ * java VASSAL.tools.io.ZipArchiveBenchmark [entries [entrySize]]
+ * </pre>
+ */
+public class ZipArchiveBenchmark {
+  private static final int RUNS = 5;
+
+  public static void main(String[] args) throws IOException {
+    final int entries = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    final int size = args.length > 1 ? Integer.parseInt(args[1]) : 65536;
+
+    final File src = File.createTempFile("ZipArchiveBenchmark", ".zip");
+    final File dst = File.createTempFile("ZipArchiveBenchmark", ".zip");
+    try {
+      src.delete();
+      final Random r = new Random(42);
+      final byte[] b = new byte[size];
+      final ZipArchive za = new ZipArchive(src);
+      for (int i = 0; i < entries; ++i) {
+        for (int j = 0; j < b.length; ++j) {
+          b[j] = (byte) (r.nextInt(4) == 0 ? r.nextInt() : j / 64);
+        }
+        za.add("images/image" + i + ".png", b);
+      }
+      za.close();
+
+      System.out.println(entries + " entries, " + src.length() + " bytes");
+
+      long copying = 0;
+      long recompressing = 0;
+      for (int run = 0; run < RUNS; ++run) {
+        FileUtils.copyFile(src, dst);
+        long t = System.nanoTime();
+        final ZipArchive mod = new ZipArchive(dst);
+        mod.add("images/image0.png", new byte[] { 1, 2, 3 });
+        mod.close();
+        copying += System.nanoTime() - t;
+
+        t = System.nanoTime();
+        recompress(src, dst, "images/image0.png", new byte[] { 1, 2, 3 });
+        recompressing += System.nanoTime() - t;
+      }
+
+      System.out.printf("raw copy:      %8.1f ms%n", copying / 1e6 / RUNS);
+      System.out.printf("recompression: %8.1f ms%n",
+                        recompressing / 1e6 / RUNS);
+
+      // rewrite every entry, as when saving a new module
+      long serial = 0;
+      long parallel = 0;
+      for (int run = 0; run < RUNS; ++run) {
+        serial += copyArchive(src, dst, false);
+        parallel += copyArchive(src, dst, true);
+      }
+
+      System.out.printf("new archive, one thread:    %8.1f ms%n",
+                        serial / 1e6 / RUNS);
+      System.out.printf("new archive, %2d threads:    %8.1f ms%n",
+                        Runtime.getRuntime().availableProcessors(),
+                        parallel / 1e6 / RUNS);
+    }
+    finally {
+      src.delete();
+      dst.delete();
+    }
+  }
+
+  /**
+   * @return the time taken to write a new archive holding the entries of
+   * another
+   */
+  private static long copyArchive(File src, File dst, boolean parallel)
+                                                          throws IOException {
+    final ZipArchive in = new ZipArchive(src);
+    final ZipArchive out = new ZipArchive(dst, true);
+    try {
+      out.setParallelCompression(parallel);
+      out.setCompressionLevel("png", 9);
+      for (String name : in.getFiles()) {
+        final InputStream is = in.getInputStream(name);
+        try {
+          out.add(name, is);
+        }
+        finally {
+          is.close();
+        }
+      }
+
+      final long t = System.nanoTime();
+      out.close();
+      return System.nanoTime() - t;
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Replaces one entry the way {@link ZipArchive} did before unmodified
+   * entries were copied as stored.
+   */
+  private static void recompress(File src, File dst, String name,
+                                 byte[] data) throws IOException {
+    final byte[] buf = new byte[8192];
+    final ZipInputStream in = new ZipInputStream(
+      new BufferedInputStream(new FileInputStream(src)));
+    final ZipOutputStream out = new ZipOutputStream(
+      new BufferedOutputStream(new FileOutputStream(dst)));
+    try {
+      out.setLevel(9);
+
+      ZipEntry ze;
+      while ((ze = in.getNextEntry()) != null) {
+        if (ze.getName().equals(name)) continue;
+
+        out.putNextEntry(new ZipEntry(ze.getName()));
+        IOUtils.copy(in, out, buf);
+      }
+
+      out.putNextEntry(new ZipEntry(name));
+      out.write(data);
+      out.close();
+    }
+    finally {
+      IOUtils.closeQuietly(in);
+      IOUtils.closeQuietly(out);
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+package VASSAL.tools.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ZipArchiveTest {
+
+  private File file;
+  private final Map<String,byte[]> contents = new HashMap<String,byte[]>();
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("ZipArchiveTest", ".zip");
+    file.delete();
+
+    final Random r = new Random(42);
+    for (int i = 0; i < 20; ++i) {
+      final byte[] b = new byte[r.nextInt(20000)];
+      for (int j = 0; j < b.length; ++j) {
+        b[j] = (byte) (r.nextInt(4) == 0 ? r.nextInt() : j / 64);
+      }
+      contents.put("images/été" + i + ".png", b);
+    }
+    contents.put("empty", new byte[0]);
+
+    final ZipArchive za = new ZipArchive(file);
+    for (Map.Entry<String,byte[]> e : contents.entrySet()) {
+      final OutputStream out =
+        za.getOutputStream(e.getKey(), !e.getKey().endsWith("3.png"));
+      out.write(e.getValue());
+      out.close();
+    }
+    za.close();
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  private void assertContents() throws IOException {
+    // read through the central directory
+    final ZipFile zf = new ZipFile(file);
+    try {
+      assertEquals(contents.size(), zf.size());
+      for (Map.Entry<String,byte[]> e : contents.entrySet()) {
+        final ZipEntry ze = zf.getEntry(e.getKey());
+        assertNotNull(e.getKey(), ze);
+        assertArrayEquals(e.getValue(),
+                          IOUtils.toByteArray(zf.getInputStream(ze)));
+      }
+    }
+    finally {
+      zf.close();
+    }
+
+    // read through the local headers
+    final ZipInputStream in = new ZipInputStream(new FileInputStream(file));
+    try {
+      int count = 0;
+      ZipEntry ze;
+      while ((ze = in.getNextEntry()) != null) {
+        assertArrayEquals(contents.get(ze.getName()),
+                          IOUtils.toByteArray(in));
+        ++count;
+      }
+      assertEquals(contents.size(), count);
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testWrite() throws IOException {
+    assertContents();
+  }
+
+  @Test
+  public void testModify() throws IOException {
+    final ZipArchive za = new ZipArchive(file);
+    contents.put("images/été4.png", new byte[] { 1, 2, 3 });
+    za.add("images/été4.png", new byte[] { 1, 2, 3 });
+    contents.remove("images/été5.png");
+    za.remove("images/été5.png");
+    contents.put("new", new byte[] { 4 });
+    za.add("new", new byte[] { 4 });
+    za.close();
+
+    assertContents();
+  }
+
+  @Test
+  public void testCopyPreservesTime() throws IOException {
+    ZipFile zf = new ZipFile(file);
+    final long time = zf.getEntry("empty").getTime();
+    zf.close();
+
+    final ZipArchive za = new ZipArchive(file);
+    za.add("new", new byte[] { 4 });
+    za.close();
+
+    zf = new ZipFile(file);
+    try {
+      assertEquals(time, zf.getEntry("empty").getTime());
+    }
+    finally {
+      zf.close();
+    }
+  }
+
+  @Test(expected = ZipException.class)
+  public void testRejectPrefixed() throws IOException {
+    // ZipArchive falls back to recompressing such archives
+    final byte[] zip = FileUtils.readFileToByteArray(file);
+    final OutputStream out = new FileOutputStream(file);
+    out.write(new byte[100]);
+    out.write(zip);
+    out.close();
+
+    new ZipCentralDirectory(file).close();
+  }
+}
@@ -229,4 +229,33 @@ public class IPCMessengerTest {
       assertTrue(f2[i].get() instanceof Ack);
     }
   }
+
+  @Test
+  public void testIsReceiving() throws IOException, InterruptedException {
+    final PipedOutputStream out1 = new PipedOutputStream();
+    final PipedInputStream in2 = new PipedInputStream(out1);
+
+    final PipedOutputStream out2 = new PipedOutputStream();
+    final PipedInputStream in1 = new PipedInputStream(out2);
+
+    // the other side writes its stream header first, so that creating
+    // the messenger does not block reading it
+    final ObjectOutputStream out = new ObjectOutputStream(out2);
+    out.flush();
+
+    final IPCMessenger ipc = new IPCMessenger(in1, out1);
+    assertFalse(ipc.isReceiving());
+
+    ipc.start();
+    assertTrue(ipc.isReceiving());
+
+    // closing the other side ends reception
+    out.close();
+    for (int i = 0; i < 100 && ipc.isReceiving(); ++i) {
+      Thread.sleep(50);
+    }
+    assertFalse(ipc.isReceiving());
+
+    in2.close();
+  }
 }
@@ -0,0 +1,249 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2012 by The VASSAL Development Team
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License (LGPL) as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, copies are available
+ * at http://www.opensource.org.
+ */
+
+package VASSAL.tools.opcache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OpCacheTest {
+
+  private OpCache cache;
+  private CountDownLatch gate;
+  private List<String> order;
+  private Future<String> blocker;
+
+  private class NamedOp extends AbstractOpImpl<String> {
+    private final String name;
+    private final boolean blocks;
+
+    public NamedOp(OpCache cache, String name, boolean blocks) {
+      super(cache);
+      this.name = name;
+      this.blocks = blocks;
+    }
+
+    public List<Op<?>> getSources() {
+      return Collections.emptyList();
+    }
+
+    public String eval() throws Exception {
+      if (blocks) {
+        gate.await();
+      }
+      else {
+        synchronized (order) {
+          order.add(name);
+        }
+      }
+      return name;
+    }
+  }
+
+  private final OpObserver<String> obs = new OpObserver<String>() {
+    public void succeeded(Op<String> op, String val) {}
+    public void cancelled(Op<String> op, CancellationException e) {}
+    public void interrupted(Op<String> op, InterruptedException e) {}
+    public void failed(Op<String> op, ExecutionException e) {}
+  };
+
+  /** Records the result of which it is notified. */
+  private static class Waiter implements OpObserver<String> {
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile String value;
+
+    public void succeeded(Op<String> op, String val) {
+      value = val;
+      done.countDown();
+    }
+
+    public void cancelled(Op<String> op, CancellationException e) {
+      done.countDown();
+    }
+
+    public void interrupted(Op<String> op, InterruptedException e) {
+      done.countDown();
+    }
+
+    public void failed(Op<String> op, ExecutionException e) {
+      done.countDown();
+    }
+
+    String await() throws InterruptedException {
+      assertTrue("observer not notified", done.await(10, TimeUnit.SECONDS));
+      return value;
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    // one thread, so that queued requests run in the order they are taken
+    cache = new OpCache(Runtime.getRuntime().maxMemory()/4, 1);
+    gate = new CountDownLatch(1);
+    order = new ArrayList<String>();
+
+    // occupy the thread, so that later requests wait in the queue
+    blocker = new NamedOp(cache, "blocker", true).getFuture(obs);
+    while (cache.getStartedCount() < 1) {
+      Thread.sleep(10);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    gate.countDown();
+  }
+
+  private void finish() throws Exception {
+    gate.countDown();
+    blocker.get();
+  }
+
+  @Test
+  public void testMostRecentlyWantedFirst() throws Exception {
+    final NamedOp a = new NamedOp(cache, "a", false);
+    final Future<String> fa = a.getFuture(obs);
+    final Future<String> fb = new NamedOp(cache, "b", false).getFuture(obs);
+    final Future<String> fc = new NamedOp(cache, "c", false).getFuture(obs);
+
+    // wanting a again moves it ahead of the others
+    assertSame(fa, a.getFuture(obs));
+    assertEquals(3, cache.getQueueDepth());
+
+    finish();
+    fa.get();
+    fb.get();
+    fc.get();
+
+    assertEquals(Arrays.asList("a", "c", "b"), order);
+    assertEquals(3, cache.getMaxQueueDepth());
+  }
+
+  @Test
+  public void testPrefetchLast() throws Exception {
+    final NamedOp a = new NamedOp(cache, "a", false);
+    final NamedOp b = new NamedOp(cache, "b", false);
+    final Future<String> fa = cache.prefetch(a.newKey());
+    final Future<String> fb = cache.prefetch(b.newKey());
+    final Future<String> fc = new NamedOp(cache, "c", false).getFuture(obs);
+
+    // wanting b makes it an ordinary request
+    assertSame(fb, b.getFuture(obs));
+    assertEquals(2, cache.getPrefetchedCount());
+
+    finish();
+    fa.get();
+    fb.get();
+    fc.get();
+
+    assertEquals(Arrays.asList("b", "c", "a"), order);
+  }
+
+  @Test
+  public void testPrefetchQueuedThenWanted() throws Exception {
+    final NamedOp a = new NamedOp(cache, "a", false);
+    final Future<String> fa = cache.prefetch(a.newKey());
+
+    // the observer given when the queued prefetch is wanted is notified
+    final Waiter w = new Waiter();
+    assertSame(fa, a.getFuture(w));
+
+    finish();
+    assertEquals("a", w.await());
+  }
+
+  @Test
+  public void testPrefetchRunningThenWanted() throws Exception {
+    final CountDownLatch running = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Op<String> a = new AbstractOpImpl<String>(cache) {
+      public List<Op<?>> getSources() {
+        return Collections.emptyList();
+      }
+
+      public String eval() throws Exception {
+        running.countDown();
+        release.await();
+        return "a";
+      }
+    };
+
+    final Future<String> fa = cache.prefetch(a.newKey());
+    finish();
+    assertTrue(running.await(10, TimeUnit.SECONDS));
+
+    // the observer given when the running prefetch is wanted is notified
+    final Waiter w = new Waiter();
+    assertSame(fa, cache.getFuture(a.newKey(), w));
+    release.countDown();
+    assertEquals("a", w.await());
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    final NamedOp a = new NamedOp(cache, "a", false);
+    final Future<String> fa = a.getFuture(obs);
+    final Future<String> fb = new NamedOp(cache, "b", false).getFuture(obs);
+
+    assertTrue(cache.cancel(fa));
+    assertTrue(fa.isCancelled());
+    assertEquals(1, cache.getCancelledCount());
+
+    // a running request is left to finish
+    assertFalse(cache.cancel(blocker));
+    assertEquals(1, cache.getUnwantedCount());
+
+    // a cancelled request is not given to the next to want it
+    final Future<String> fa2 = a.getFuture(obs);
+    assertNotSame(fa, fa2);
+
+    finish();
+    assertEquals("a", fa2.get());
+    assertEquals("b", fb.get());
+    assertEquals(Arrays.asList("a", "b"), order);
+  }
+
+  @Test
+  public void testClearCancelsPending() throws Exception {
+    final Future<String> fa = new NamedOp(cache, "a", false).getFuture(obs);
+    final Future<String> fb = new NamedOp(cache, "b", false).getFuture(obs);
+
+    cache.clear();
+    assertEquals(0, cache.getQueueDepth());
+    assertTrue(fa.isCancelled());
+    assertTrue(fb.isCancelled());
+    assertEquals(2, cache.getCancelledCount());
+
+    finish();
+    assertTrue(order.isEmpty());
+  }
+}